@@ -0,0 +1,110 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueue, dequeue and re-prioritization cost of {@link DynamicPriorityQueue} across level counts,
+ * uncontended and with every available core hitting the same queue. Value-indexed enqueue and
+ * lookup are measured next to the handle-based offer and changePriority.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DynamicPriorityQueueBenchmark {
+
+    private static final int PREFILL = 1024;
+
+    @Param({"1", "8", "64", "256", "4096"})
+    public int levels;
+
+    private DynamicPriorityQueue<Object> queue;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queue = new DynamicPriorityQueue<>(levels);
+        for (int i = 0; i < PREFILL; i++) {
+            queue.enqueue(new Object(), i % levels);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object enqueueDequeue() {
+        return enqueueDequeue0();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object enqueueDequeueContended() {
+        return enqueueDequeue0();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object offerDequeue() {
+        queue.offer(new Object(), ThreadLocalRandom.current().nextInt(levels));
+        return queue.dequeue();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean changePriority(Element element) {
+        return changePriority0(element);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean changePriorityContended(Element element) {
+        return changePriority0(element);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean changePriorityByHandle(Element element) {
+        return changePriorityByHandle0(element);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean changePriorityByHandleContended(Element element) {
+        return changePriorityByHandle0(element);
+    }
+
+    private Object enqueueDequeue0() {
+        queue.enqueue(new Object(), ThreadLocalRandom.current().nextInt(levels));
+        return queue.dequeue();
+    }
+
+    private boolean changePriority0(Element element) {
+        element.priority = (element.priority + 1) % levels;
+        return queue.changePriority(element.value, element.priority);
+    }
+
+    private boolean changePriorityByHandle0(Element element) {
+        element.priority = (element.priority + 1) % levels;
+        return element.handle.changePriority(element.priority);
+    }
+
+    /**
+     * One element per benchmark thread that stays queued and keeps moving between levels.
+     */
+    @State(Scope.Thread)
+    public static class Element {
+        final Object value = new Object();
+        DynamicPriorityQueue.Handle<Object> handle;
+        int priority;
+
+        @Setup(Level.Iteration)
+        public void setUp(DynamicPriorityQueueBenchmark benchmark) {
+            priority = 0;
+            handle = benchmark.queue.offerIndexed(value, priority);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submit-to-completion latency of {@link ExecutorManager}: every operation schedules one task and
+ * spins until a worker has run it. Submitting threads either share no lock, contend on one
+ * exclusive token, or hold one token in shared mode. With {@code metrics} set the executor records
+ * metrics, so the two runs of a configuration give the cost of recording them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ExecutorManagerBenchmark {
+
+    public enum Contention {
+        NONE, EXCLUSIVE, SHARED, INDEXED_EXCLUSIVE
+    }
+
+    private static final LockToken TOKEN = new LockToken() {};
+    private static final LockToken INDEXED_TOKEN = (IndexedLockToken) () -> 0L;
+
+    @Param({"GLOBAL_QUEUE", "WORK_STEALING"})
+    public ExecutionMode executionMode;
+
+    @Param
+    public Contention contention;
+
+    @Param({"4"})
+    public int workers;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private ExecutorManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ExecutorConfig config = ExecutorConfig.builder()
+                .priorityCount(64)
+                .executionMode(executionMode)
+                .metricsEnabled(metrics)
+                .build();
+        manager = new ExecutorManager(workers, thread -> thread.setDaemon(true), config);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public void submitToRun(Submission submission) {
+        submission.done = false;
+        manager.schedule(submission);
+        while (!submission.done) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * A reusable task per submitting thread, so the measured path allocates only what the
+     * executor itself allocates.
+     */
+    @State(Scope.Thread)
+    public static class Submission implements Task {
+        private static final LockToken[] NO_LOCKS = new LockToken[0];
+
+        volatile boolean done;
+        private LockToken[] tokens;
+
+        @Setup(Level.Trial)
+        public void setUp(ExecutorManagerBenchmark benchmark) {
+            tokens = switch (benchmark.contention) {
+                case NONE -> NO_LOCKS;
+                case EXCLUSIVE -> new LockToken[]{TOKEN};
+                case SHARED -> new LockToken[]{TOKEN.shared()};
+                case INDEXED_EXCLUSIVE -> new LockToken[]{INDEXED_TOKEN};
+            };
+        }
+
+        @Override
+        public void run(Runnable releaseLocks) {
+            releaseLocks.run();
+            done = true;
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            t.printStackTrace();
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return tokens;
+        }
+
+        @Override
+        public int priority() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.MessageQueue;
+import mi.m4x.carbide.scheduler.structures.MpmcArrayQueue;
+import mi.m4x.carbide.scheduler.structures.MpscArrayQueue;
+import mi.m4x.carbide.scheduler.structures.MpscChunkedQueue;
+import mi.m4x.carbide.scheduler.structures.SpscArrayQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offer+poll round trips of the in-house queues next to {@link ConcurrentLinkedQueue}, one element
+ * at a time and in batches through {@link MessageQueue#fill} and {@link MessageQueue#drain}.
+ * Contended MPMC round trips run on every available core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageQueueBenchmark {
+
+    private static final int BATCH = 32;
+    private static final Object ELEMENT = new Object();
+
+    @Param({"clq", "spsc", "mpsc", "mpscChunked", "mpmc"})
+    public String type;
+
+    private Queue<Object> queue;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queue = switch (type) {
+            case "clq" -> new ConcurrentLinkedQueue<>();
+            case "spsc" -> new SpscArrayQueue<>(1024);
+            case "mpsc" -> new MpscArrayQueue<>(1024);
+            case "mpscChunked" -> new MpscChunkedQueue<>();
+            case "mpmc" -> new MpmcArrayQueue<>(1024);
+            default -> throw new IllegalArgumentException(type);
+        };
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object offerPoll() {
+        queue.offer(ELEMENT);
+        return queue.poll();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int fillDrain() {
+        if (!(queue instanceof MessageQueue<Object> messages)) {
+            // The linked queue has no batch operations, so it moves the batch one by one
+            for (int i = 0; i < BATCH; i++) {
+                queue.offer(ELEMENT);
+            }
+            int drained = 0;
+            while (queue.poll() != null) {
+                drained++;
+            }
+            return drained;
+        }
+        messages.fill(() -> ELEMENT, BATCH);
+        return messages.drain(element -> {}, BATCH);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object offerPollContended() {
+        // Only meaningful for the multi-consumer queues
+        if (!type.equals("clq") && !type.equals("mpmc")) {
+            return null;
+        }
+        queue.offer(ELEMENT);
+        return queue.poll();
+    }
+}
@@ -0,0 +1,76 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.ObjectPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip cost of {@link ObjectPool#alloc()} and {@link ObjectPool#release(Object)}, with the
+ * pool warm and with every borrow overflowing a drained pool. {@code magazineSize} 0 measures the
+ * monitor-guarded pool, anything else the thread-cached one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectPoolBenchmark {
+
+    @Param({"1024"})
+    public int capacity;
+
+    @Param({"0", "16"})
+    public int magazineSize;
+
+    private ObjectPool<long[]> pool;
+    private ObjectPool<long[]> drained;
+    private ObjectPool<long[]> adaptive;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        pool = magazineSize == 0
+                ? new ObjectPool<>(owner -> new long[8], array -> {}, array -> array[0] = 0L, capacity)
+                : ObjectPool.threadCached(owner -> new long[8], array -> {}, array -> array[0] = 0L, capacity, magazineSize);
+        drained = new ObjectPool<>(owner -> new long[8], array -> {}, array -> array[0] = 0L, 1);
+        drained.alloc();
+        adaptive = ObjectPool.adaptive(owner -> new long[8], array -> {}, array -> array[0] = 0L, 0, capacity,
+                TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long[] allocRelease() {
+        return roundTrip(pool);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long[] allocReleaseContended() {
+        return roundTrip(pool);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long[] allocReleaseAdaptive() {
+        // Demand tracking reads the clock on every call
+        return roundTrip(adaptive);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long[] allocOverflow() {
+        // The single slot is held by setUp, so every alloc constructs and every release drops
+        long[] array = drained.alloc();
+        array[0]++;
+        return array;
+    }
+
+    private static long[] roundTrip(ObjectPool<long[]> pool) {
+        long[] array = pool.alloc();
+        array[0]++;
+        pool.release(array);
+        return array;
+    }
+}
@@ -0,0 +1,69 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.ConcurrentLong2ObjectMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and put+remove round trips on packed coordinate keys, {@link ConcurrentLong2ObjectMap}
+ * next to a boxed {@link ConcurrentHashMap}, on every available core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class PrimitiveMapBenchmark {
+
+    private static final int KEYS = 1 << 16;
+    private static final Object VALUE = new Object();
+
+    private final ConcurrentHashMap<Long, Object> boxed = new ConcurrentHashMap<>();
+    private final ConcurrentLong2ObjectMap<Object> primitive = new ConcurrentLong2ObjectMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < KEYS; i++) {
+            boxed.put(key(i), VALUE);
+            primitive.put(key(i), VALUE);
+        }
+    }
+
+    private static long key(int i) {
+        // Chunk-style coordinates, outside the small Long cache
+        return ((long) (i >> 8) << 32) | (i & 0xFF);
+    }
+
+    private static long randomKey() {
+        return key(ThreadLocalRandom.current().nextInt(KEYS));
+    }
+
+    @Benchmark
+    public Object getBoxed() {
+        return boxed.get(randomKey());
+    }
+
+    @Benchmark
+    public Object getPrimitive() {
+        return primitive.get(randomKey());
+    }
+
+    @Benchmark
+    public Object putRemoveBoxed() {
+        long key = randomKey() + KEYS;
+        boxed.put(key, VALUE);
+        return boxed.remove(key);
+    }
+
+    @Benchmark
+    public Object putRemovePrimitive() {
+        long key = randomKey() + KEYS;
+        primitive.put(key, VALUE);
+        return primitive.remove(key);
+    }
+}
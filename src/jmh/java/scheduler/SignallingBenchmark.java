@@ -0,0 +1,79 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.BusyReferenceCounter;
+import mi.m4x.carbide.scheduler.CancellationSignaller;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Reference counting with {@link BusyReferenceCounter} and completion fan-out with
+ * {@link CancellationSignaller}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignallingBenchmark {
+
+    @Param({"1", "8"})
+    public int listeners;
+
+    private final BusyReferenceCounter sharedCounter = new BusyReferenceCounter();
+    private final LongAdder fired = new LongAdder();
+    private final Runnable onZero = fired::increment;
+    private final Consumer<Throwable> onComplete = failure -> fired.increment();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // Keep the shared counter busy so contended threads never drain it to zero
+        sharedCounter.incrementRefCount();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        sharedCounter.decrementRefCount();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void referenceCountCycle() {
+        BusyReferenceCounter counter = new BusyReferenceCounter();
+        counter.incrementRefCount();
+        for (int i = 0; i < listeners; i++) {
+            counter.addListener(onZero);
+        }
+        counter.decrementRefCount();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean referenceCountContended() {
+        sharedCounter.incrementRefCount();
+        sharedCounter.decrementRefCount();
+        return sharedCounter.isBusy();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CancellationSignaller signalCompletion() {
+        CancellationSignaller signaller = new CancellationSignaller(cancelled -> {});
+        for (int i = 0; i < listeners; i++) {
+            signaller.addListener(onComplete);
+        }
+        signaller.fireComplete(null);
+        return signaller;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public CancellationSignaller cancel() {
+        CancellationSignaller signaller = new CancellationSignaller(cancelled -> fired.increment());
+        signaller.cancel();
+        return signaller;
+    }
+}
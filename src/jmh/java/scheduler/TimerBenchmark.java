@@ -0,0 +1,55 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.Cancellable;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling and cancelling a timeout that never fires, the usual life of a timer guarding an
+ * operation, on the {@link ExecutorManager} timer wheel next to a
+ * {@link ScheduledThreadPoolExecutor} that removes cancelled tasks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class TimerBenchmark {
+
+    private static final Runnable TIMEOUT = () -> {};
+
+    private ExecutorManager manager;
+    private ScheduledThreadPoolExecutor pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        manager = new ExecutorManager(Runtime.getRuntime().availableProcessors());
+        pool = new ScheduledThreadPoolExecutor(1);
+        pool.setRemoveOnCancelPolicy(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean timerWheel() {
+        Cancellable timer = manager.scheduleAfter(TIMEOUT, 1, TimeUnit.SECONDS, 8);
+        timer.cancel();
+        return timer.isCancelled();
+    }
+
+    @Benchmark
+    public boolean scheduledThreadPool() {
+        ScheduledFuture<?> timer = pool.schedule(TIMEOUT, 1, TimeUnit.SECONDS);
+        return timer.cancel(false);
+    }
+}
@@ -0,0 +1,353 @@
+package mi.m4x.carbide.natives;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The logical CPUs of the host, grouped into physical cores, sockets and NUMA nodes.
+ * <p>
+ * On Linux the topology is read from sysfs: the online CPUs from
+ * {@code /sys/devices/system/cpu/online}, each CPU's socket from
+ * {@code cpuN/topology/physical_package_id} and its core from the hyper-threads listed in
+ * {@code cpuN/topology/thread_siblings_list}, and the NUMA nodes from
+ * {@code /sys/devices/system/node/nodeN/cpulist}. Only the CPUs the process may run on are kept.
+ * Everywhere else, or if sysfs cannot be read, {@link #detect()} falls back to a
+ * {@linkplain #uniform(int) uniform} topology of one socket with one core per available processor.
+ * <p>
+ * Sockets are numbered from 0 in the order of their package ids, so they can index arrays.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class CpuTopology {
+
+    private static final Path SYSFS = Path.of("/sys/devices/system");
+    private static final Path PROCESS_STATUS = Path.of("/proc/self/status");
+    private static final String ALLOWED_CPUS = "Cpus_allowed_list:";
+
+    // Parallel arrays, ascending by CPU number
+    private final int[] cpus;
+    private final int[] sockets;
+    private final int[] cores;
+    private final int[] nodes;
+    private final int socketCount;
+    private final int coreCount;
+    private final int nodeCount;
+    private final boolean detected;
+
+    /**
+     * @param cpus       CPU numbers, ascending
+     * @param packageIds the socket id of each CPU, as reported
+     * @param coreIds    an id of each CPU's core that is unique across sockets
+     * @param nodes      the NUMA node of each CPU
+     */
+    private CpuTopology(int[] cpus, int[] packageIds, int[] coreIds, int[] nodes, boolean detected) {
+        this.cpus = cpus;
+        this.sockets = rank(packageIds);
+        this.cores = rank(coreIds);
+        this.nodes = nodes;
+        this.socketCount = distinct(packageIds).length;
+        this.coreCount = distinct(coreIds).length;
+        this.nodeCount = distinct(nodes).length;
+        this.detected = detected;
+    }
+
+    /**
+     * Detects the topology of the host, see the class description.
+     *
+     * @return the host's topology, or a uniform one if it cannot be read
+     */
+    public static CpuTopology detect() {
+        if (OperatingSystems.detect() == OperatingSystems.LINUX) {
+            try {
+                return read(SYSFS, allowedCpus());
+            } catch (IOException | RuntimeException unreadable) {
+                // Sysfs missing or in an unexpected format
+            }
+        }
+        return uniform(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the topology from a sysfs tree laid out like {@code /sys/devices/system}, keeping every
+     * online CPU.
+     *
+     * @param system the directory holding the {@code cpu} and {@code node} directories
+     * @return the topology described there
+     * @throws IOException if a CPU's files cannot be read
+     */
+    public static CpuTopology read(Path system) throws IOException {
+        return read(system, null);
+    }
+
+    /**
+     * Creates a topology without structure: one socket and NUMA node, each CPU a core of its own.
+     *
+     * @param cpuCount the number of CPUs, numbered from 0
+     * @return the uniform topology
+     * @throws IllegalArgumentException if {@code cpuCount} is not positive
+     */
+    public static CpuTopology uniform(int cpuCount) {
+        if (cpuCount <= 0) {
+            throw new IllegalArgumentException("CPU count must be positive: " + cpuCount);
+        }
+        int[] cpus = new int[cpuCount];
+        Arrays.setAll(cpus, cpu -> cpu);
+        return new CpuTopology(cpus, new int[cpuCount], cpus.clone(), new int[cpuCount], false);
+    }
+
+    private static CpuTopology read(Path system, int[] allowed) throws IOException {
+        Path cpuDirectory = system.resolve("cpu");
+        int[] cpus = parseCpuList(readLine(cpuDirectory.resolve("online")));
+        if (allowed != null) {
+            int[] usable = Arrays.stream(cpus).filter(cpu -> Arrays.binarySearch(allowed, cpu) >= 0).toArray();
+            // A mask naming no online CPU says nothing useful, keep them all
+            if (usable.length != 0) {
+                cpus = usable;
+            }
+        }
+        if (cpus.length == 0) {
+            throw new IOException("No online CPUs listed under " + cpuDirectory);
+        }
+
+        int[] packageIds = new int[cpus.length];
+        int[] coreIds = new int[cpus.length];
+        for (int i = 0; i < cpus.length; i++) {
+            Path topology = cpuDirectory.resolve("cpu" + cpus[i]).resolve("topology");
+            packageIds[i] = Integer.parseInt(readLine(topology.resolve("physical_package_id")));
+            // Hyper-threads of one core list each other, the lowest names the core
+            String siblings = readOptionalLine(topology.resolve("thread_siblings_list"));
+            int[] threads = siblings != null ? parseCpuList(siblings) : new int[0];
+            coreIds[i] = threads.length != 0 ? threads[0] : cpus[i];
+        }
+
+        int[] nodes = new int[cpus.length];
+        Path nodeDirectory = system.resolve("node");
+        if (Files.isDirectory(nodeDirectory)) {
+            try (DirectoryStream<Path> nodeDirectories = Files.newDirectoryStream(nodeDirectory, "node[0-9]*")) {
+                for (Path node : nodeDirectories) {
+                    int id = Integer.parseInt(node.getFileName().toString().substring("node".length()));
+                    String cpuList = readOptionalLine(node.resolve("cpulist"));
+                    for (int cpu : cpuList != null ? parseCpuList(cpuList) : new int[0]) {
+                        int index = Arrays.binarySearch(cpus, cpu);
+                        if (index >= 0) {
+                            nodes[index] = id;
+                        }
+                    }
+                }
+            }
+        }
+        return new CpuTopology(cpus, packageIds, coreIds, nodes, true);
+    }
+
+    /**
+     * @return the CPUs the process may run on according to the kernel, or {@code null} if unknown
+     */
+    private static int[] allowedCpus() {
+        try {
+            List<String> lines = Files.readAllLines(PROCESS_STATUS);
+            for (String line : lines) {
+                if (line.startsWith(ALLOWED_CPUS)) {
+                    return parseCpuList(line.substring(ALLOWED_CPUS.length()));
+                }
+            }
+        } catch (IOException | RuntimeException unreadable) {
+            // Keep every online CPU
+        }
+        return null;
+    }
+
+    /**
+     * Parses the kernel's CPU list format, comma-separated numbers and ranges such as {@code 0-3,8-11}.
+     *
+     * @return the CPUs listed, ascending
+     */
+    static int[] parseCpuList(String list) {
+        String trimmed = list.trim();
+        if (trimmed.isEmpty()) {
+            return new int[0];
+        }
+        int[] cpus = new int[16];
+        int count = 0;
+        for (String part : trimmed.split(",")) {
+            int dash = part.indexOf('-');
+            int first = Integer.parseInt(part.substring(0, dash < 0 ? part.length() : dash).trim());
+            int last = dash < 0 ? first : Integer.parseInt(part.substring(dash + 1).trim());
+            if (first < 0 || last < first) {
+                throw new IllegalArgumentException("Malformed CPU list: " + list);
+            }
+            for (int cpu = first; cpu <= last; cpu++) {
+                if (count == cpus.length) {
+                    cpus = Arrays.copyOf(cpus, count * 2);
+                }
+                cpus[count++] = cpu;
+            }
+        }
+        int[] sorted = Arrays.copyOf(cpus, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static String readLine(Path file) throws IOException {
+        return Files.readString(file).trim();
+    }
+
+    private static String readOptionalLine(Path file) throws IOException {
+        try {
+            return readLine(file);
+        } catch (NoSuchFileException missing) {
+            return null;
+        }
+    }
+
+    private static int[] distinct(int[] values) {
+        return Arrays.stream(values).distinct().sorted().toArray();
+    }
+
+    /**
+     * @return each value replaced by its position among the distinct values
+     */
+    private static int[] rank(int[] values) {
+        int[] distinct = distinct(values);
+        int[] ranks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ranks[i] = Arrays.binarySearch(distinct, values[i]);
+        }
+        return ranks;
+    }
+
+    private int indexOf(int cpu) {
+        int index = Arrays.binarySearch(cpus, cpu);
+        if (index < 0) {
+            throw new IllegalArgumentException("CPU " + cpu + " is not part of this topology");
+        }
+        return index;
+    }
+
+    /**
+     * @return {@code true} if the topology was read from the host, {@code false} for a uniform fallback
+     */
+    public boolean isDetected() {
+        return detected;
+    }
+
+    /**
+     * @return the number of logical CPUs, hyper-threads included
+     */
+    public int cpuCount() {
+        return cpus.length;
+    }
+
+    /**
+     * @return the number of physical cores
+     */
+    public int coreCount() {
+        return coreCount;
+    }
+
+    /**
+     * @return the number of sockets
+     */
+    public int socketCount() {
+        return socketCount;
+    }
+
+    /**
+     * @return the number of NUMA nodes
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the logical CPU numbers, ascending
+     */
+    public int[] cpus() {
+        return cpus.clone();
+    }
+
+    /**
+     * @param cpu a logical CPU of this topology
+     * @return the socket of the CPU, from 0 to {@link #socketCount()} - 1
+     * @throws IllegalArgumentException if the CPU is not part of this topology
+     */
+    public int socketOf(int cpu) {
+        return sockets[indexOf(cpu)];
+    }
+
+    /**
+     * @param cpu a logical CPU of this topology
+     * @return the physical core of the CPU, from 0 to {@link #coreCount()} - 1
+     * @throws IllegalArgumentException if the CPU is not part of this topology
+     */
+    public int coreOf(int cpu) {
+        return cores[indexOf(cpu)];
+    }
+
+    /**
+     * @param cpu a logical CPU of this topology
+     * @return the NUMA node of the CPU, as numbered by the kernel
+     * @throws IllegalArgumentException if the CPU is not part of this topology
+     */
+    public int nodeOf(int cpu) {
+        return nodes[indexOf(cpu)];
+    }
+
+    /**
+     * @param socket a socket from 0 to {@link #socketCount()} - 1
+     * @return the logical CPUs of the socket, ascending
+     */
+    public int[] cpusOfSocket(int socket) {
+        int[] result = new int[cpus.length];
+        int count = 0;
+        for (int i = 0; i < cpus.length; i++) {
+            if (sockets[i] == socket) {
+                result[count++] = cpus[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Orders the CPUs for placing threads: one hyper-thread of every physical core first, filling
+     * one socket before the next, then the second hyper-threads in the same order, and so on. The
+     * first {@code n} entries put {@code n} threads on distinct cores for as long as there are
+     * cores, on as few sockets as possible.
+     *
+     * @return every logical CPU, once, in placement order
+     */
+    public int[] placement() {
+        // Position of each CPU among the hyper-threads of its core
+        int[] thread = new int[cpus.length];
+        int[] seen = new int[coreCount];
+        int threadsPerCore = 0;
+        for (int i = 0; i < cpus.length; i++) {
+            thread[i] = seen[cores[i]]++;
+            threadsPerCore = Math.max(threadsPerCore, thread[i] + 1);
+        }
+
+        int[] order = new int[cpus.length];
+        int count = 0;
+        for (int t = 0; t < threadsPerCore; t++) {
+            for (int socket = 0; socket < socketCount; socket++) {
+                for (int i = 0; i < cpus.length; i++) {
+                    if (thread[i] == t && sockets[i] == socket) {
+                        order[count++] = cpus[i];
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    @Override
+    public String toString() {
+        return "CpuTopology[" + cpus.length + " CPUs, " + coreCount + " cores, " + socketCount + " sockets, "
+                + nodeCount + " NUMA nodes" + (detected ? "" : ", uniform") + "]";
+    }
+}
@@ -0,0 +1,139 @@
+package mi.m4x.carbide.natives;
+
+import mi.m4x.carbide.natives.annotation.OperatingSystemArchPair;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+/**
+ * Thread affinity through glibc's {@code sched_setaffinity} and {@code sched_getcpu}, called with
+ * the foreign function and memory API.
+ * <p>
+ * The API is bound reflectively: it is final from Java 22 on but still a preview in Java 21, which
+ * this project compiles against, and the preview classes can be used at runtime without
+ * {@code --enable-preview}. The binding therefore works unchanged on 21 and on later releases.
+ * Linking is a restricted operation, so the JVM prints a warning once unless started with
+ * {@code --enable-native-access=ALL-UNNAMED}, and refuses it if native access is denied, in which
+ * case the constructor fails and pinning is not supported.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+@OperatingSystemArchPair(os = OperatingSystems.LINUX, arch = Architecture.X86_64)
+@OperatingSystemArchPair(os = OperatingSystems.LINUX, arch = Architecture.ARM)
+@OperatingSystemArchPair(os = OperatingSystems.LINUX, arch = Architecture.RISC_V)
+final class LinuxAffinity implements NativeAffinity {
+
+    // The size of glibc's cpu_set_t; larger masks are passed for machines with more CPUs
+    private static final int MIN_MASK_BYTES = 128;
+
+    private final MethodHandle schedSetaffinity;
+    private final MethodHandle schedGetcpu;
+    private final MethodHandle openArena;
+    private final MethodHandle allocate;
+    private final MethodHandle closeArena;
+    private final MethodHandle setLong;
+    private final Object javaLong;
+
+    LinuxAffinity() throws ReflectiveOperationException {
+        Class<?> linkerType = Class.forName("java.lang.foreign.Linker");
+        Class<?> optionType = Class.forName("java.lang.foreign.Linker$Option");
+        Class<?> symbolLookupType = Class.forName("java.lang.foreign.SymbolLookup");
+        Class<?> descriptorType = Class.forName("java.lang.foreign.FunctionDescriptor");
+        Class<?> memoryLayoutType = Class.forName("java.lang.foreign.MemoryLayout");
+        Class<?> valueLayoutType = Class.forName("java.lang.foreign.ValueLayout");
+        Class<?> ofLongType = Class.forName("java.lang.foreign.ValueLayout$OfLong");
+        Class<?> segmentType = Class.forName("java.lang.foreign.MemorySegment");
+        Class<?> arenaType = Class.forName("java.lang.foreign.Arena");
+
+        Object javaInt = valueLayoutType.getField("JAVA_INT").get(null);
+        this.javaLong = valueLayoutType.getField("JAVA_LONG").get(null);
+        Object address = valueLayoutType.getField("ADDRESS").get(null);
+        // size_t is as wide as a pointer, 4 bytes on 32-bit ARM
+        boolean narrowSize = (long) memoryLayoutType.getMethod("byteSize").invoke(address) == Integer.BYTES;
+        Object sizeT = narrowSize ? javaInt : javaLong;
+
+        Object linker = linkerType.getMethod("nativeLinker").invoke(null);
+        Object symbols = linkerType.getMethod("defaultLookup").invoke(linker);
+        Method find = symbolLookupType.getMethod("find", String.class);
+        Method describe = descriptorType.getMethod("of", memoryLayoutType, memoryLayoutType.arrayType());
+        Method downcall = linkerType.getMethod("downcallHandle", segmentType, descriptorType, optionType.arrayType());
+        Object noOptions = Array.newInstance(optionType, 0);
+
+        // int sched_setaffinity(pid_t pid, size_t cpusetsize, const cpu_set_t *mask)
+        Object setaffinity = ((Optional<?>) find.invoke(symbols, "sched_setaffinity")).orElseThrow();
+        Object setaffinityDescriptor = describe.invoke(null, javaInt, layouts(memoryLayoutType, javaInt, sizeT, address));
+        MethodHandle setaffinityHandle = (MethodHandle) downcall.invoke(linker, setaffinity, setaffinityDescriptor, noOptions);
+        // Always called with a long size, narrowed where size_t is an int; masks are far below 2 GiB
+        this.schedSetaffinity = MethodHandles.explicitCastArguments(setaffinityHandle,
+                setaffinityHandle.type().changeParameterType(1, long.class));
+
+        // int sched_getcpu(void)
+        Object getcpu = ((Optional<?>) find.invoke(symbols, "sched_getcpu")).orElseThrow();
+        Object getcpuDescriptor = describe.invoke(null, javaInt, layouts(memoryLayoutType));
+        this.schedGetcpu = (MethodHandle) downcall.invoke(linker, getcpu, getcpuDescriptor, noOptions);
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        this.openArena = lookup.unreflect(arenaType.getMethod("ofConfined"));
+        this.allocate = lookup.unreflect(arenaType.getMethod("allocate", long.class, long.class));
+        this.closeArena = lookup.unreflect(arenaType.getMethod("close"));
+        this.setLong = lookup.unreflect(segmentType.getMethod("set", ofLongType, long.class, long.class));
+    }
+
+    private static Object layouts(Class<?> memoryLayoutType, Object... layouts) {
+        Object array = Array.newInstance(memoryLayoutType, layouts.length);
+        for (int i = 0; i < layouts.length; i++) {
+            Array.set(array, i, layouts[i]);
+        }
+        return array;
+    }
+
+    @Override
+    public boolean pin(int[] cpus) {
+        int highest = 0;
+        for (int cpu : cpus) {
+            if (cpu < 0) {
+                return false;
+            }
+            highest = Math.max(highest, cpu);
+        }
+        // Little-endian 64-bit words lay out the same bits as glibc's 32-bit words on 32-bit targets
+        long[] words = new long[Math.max(MIN_MASK_BYTES / Long.BYTES, highest / Long.SIZE + 1)];
+        for (int cpu : cpus) {
+            words[cpu / Long.SIZE] |= 1L << (cpu % Long.SIZE);
+        }
+        long maskBytes = (long) words.length * Long.BYTES;
+
+        try {
+            Object arena = openArena.invoke();
+            try {
+                // Allocated zeroed, only the words with CPUs in them need writing
+                Object mask = allocate.invoke(arena, maskBytes, (long) Long.BYTES);
+                for (int i = 0; i < words.length; i++) {
+                    if (words[i] != 0L) {
+                        setLong.invoke(mask, javaLong, (long) i * Long.BYTES, words[i]);
+                    }
+                }
+                // Pid 0 is the calling thread
+                int result = (int) schedSetaffinity.invoke(0, maskBytes, mask);
+                return result == 0;
+            } finally {
+                closeArena.invoke(arena);
+            }
+        } catch (Throwable failure) {
+            return false;
+        }
+    }
+
+    @Override
+    public int currentCpu() {
+        try {
+            return (int) schedGetcpu.invoke();
+        } catch (Throwable failure) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package mi.m4x.carbide.natives;
+
+/**
+ * A platform's way of binding the calling thread to CPUs, behind {@link ThreadAffinity}.
+ * Implementations declare their platforms with
+ * {@link mi.m4x.carbide.natives.annotation.OperatingSystemArchPair} and have a no-argument
+ * constructor that fails if the native calls cannot be bound.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+interface NativeAffinity {
+
+    /**
+     * Restricts the calling thread to the given CPUs.
+     *
+     * @param cpus logical CPU numbers, not empty
+     * @return {@code true} if the operating system accepted the set
+     */
+    boolean pin(int[] cpus);
+
+    /**
+     * @return the CPU the calling thread runs on right now, or -1 if unknown
+     */
+    int currentCpu();
+}
@@ -0,0 +1,72 @@
+package mi.m4x.carbide.natives;
+
+import mi.m4x.carbide.natives.utility.PlatformSelector;
+
+/**
+ * Binds threads to CPUs, to keep them on the caches and memory of the cores they were placed on
+ * instead of letting the operating system migrate them.
+ * <p>
+ * The implementation is selected once, by the {@link mi.m4x.carbide.natives.annotation.OperatingSystemArchPair}s
+ * of the candidates: on Linux it calls {@code sched_setaffinity} through the foreign function API.
+ * On every other platform, or where native access is unavailable, nothing is pinned and
+ * {@link #pinCurrentThread(int...)} returns {@code false}.
+ * <p>
+ * Only the calling thread can be pinned, so a thread pins itself once it runs.
+ *
+ * This class cannot be instantiated.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class ThreadAffinity {
+
+    // Null where pinning is not supported
+    private static final NativeAffinity AFFINITY = load();
+
+    // Private constructor to prevent instantiation
+    private ThreadAffinity() {
+    }
+
+    private static NativeAffinity load() {
+        Class<?> selected = PlatformSelector.select(LinuxAffinity.class);
+        if (selected == LinuxAffinity.class) {
+            try {
+                return new LinuxAffinity();
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError unavailable) {
+                // No foreign function API, or native access denied
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} if threads can be pinned on this platform
+     */
+    public static boolean isSupported() {
+        return AFFINITY != null;
+    }
+
+    /**
+     * Restricts the calling thread to the given CPUs. The operating system still moves it between
+     * them, so a single CPU pins it to that CPU.
+     *
+     * @param cpus logical CPU numbers, as in {@link CpuTopology#cpus()}
+     * @return {@code true} if the thread was pinned, {@code false} if pinning is not supported or
+     *         the set was rejected, for instance because none of its CPUs is available to the process
+     * @throws IllegalArgumentException if no CPU is given
+     */
+    public static boolean pinCurrentThread(int... cpus) {
+        if (cpus.length == 0) {
+            throw new IllegalArgumentException("At least one CPU is needed");
+        }
+        return AFFINITY != null && AFFINITY.pin(cpus);
+    }
+
+    /**
+     * @return the CPU the calling thread runs on right now, or -1 if this is not supported
+     */
+    public static int currentCpu() {
+        return AFFINITY != null ? AFFINITY.currentCpu() : -1;
+    }
+}
@@ -3,12 +3,24 @@ package mi.m4x.carbide.natives.annotation;
 import mi.m4x.carbide.natives.Architecture;
 import mi.m4x.carbide.natives.OperatingSystems;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
 /**
  * Annotation to specify a pair of operating system and architecture.
+ * <p>
+ * Retained at runtime and repeatable, so a native implementation can list every platform it
+ * supports and be selected with {@link mi.m4x.carbide.natives.utility.PlatformSelector}.
  *
  * @author M4ximumpizza
  * @since 1.0.0
  */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(OperatingSystemArchPair.List.class)
 public @interface OperatingSystemArchPair {
     /**
      * @return the operating system of the system
@@ -19,4 +31,18 @@ public @interface OperatingSystemArchPair {
      * @return the architecture of the system
      */
     Architecture arch();
+
+    /**
+     * Container of the pairs of a type annotated more than once.
+     *
+     * @since 1.0.5
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @interface List {
+        /**
+         * @return the pairs
+         */
+        OperatingSystemArchPair[] value();
+    }
 }
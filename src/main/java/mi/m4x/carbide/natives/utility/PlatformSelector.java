@@ -0,0 +1,54 @@
+package mi.m4x.carbide.natives.utility;
+
+import mi.m4x.carbide.natives.Architecture;
+import mi.m4x.carbide.natives.OperatingSystems;
+import mi.m4x.carbide.natives.annotation.OperatingSystemArchPair;
+
+/**
+ * PlatformSelector picks native implementations by the {@link OperatingSystemArchPair}s they
+ * are annotated with, matched against the detected {@link OperatingSystems} and {@link Architecture}.
+ *
+ * This class cannot be instantiated.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class PlatformSelector {
+
+    private static final OperatingSystems OS = OperatingSystems.detect();
+    private static final Architecture ARCH = Architecture.detect();
+
+    // Private constructor to prevent instantiation
+    private PlatformSelector() {
+    }
+
+    /**
+     * Checks whether a type declares support for the running platform.
+     *
+     * @param type the annotated type
+     * @return {@code true} if one of its pairs matches the detected operating system and architecture
+     */
+    public static boolean supports(Class<?> type) {
+        for (OperatingSystemArchPair pair : type.getAnnotationsByType(OperatingSystemArchPair.class)) {
+            if (pair.os() == OS && pair.arch() == ARCH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the first candidate that supports the running platform.
+     *
+     * @param candidates the annotated types, in order of preference
+     * @return the selected type, or {@code null} if none supports this platform
+     */
+    public static Class<?> select(Class<?>... candidates) {
+        for (Class<?> candidate : candidates) {
+            if (supports(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
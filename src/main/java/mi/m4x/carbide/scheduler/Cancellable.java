@@ -1,30 +1,44 @@
 package mi.m4x.carbide.scheduler;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * A lightweight, thread-safe cancellation token.
  *
  * Designed for concurrent systems where tasks may be cancelled asynchronously.
- * Backed by an AtomicBoolean to allow safe publication and visibility across threads.
+ * Backed by a single volatile flag to allow safe publication and visibility across threads.
+ * Subclasses may react to the first cancellation through {@link #onCancel()}.
  *
  * Use case: worker shutdown signals, async interruption, or cooperative task cancellation.
  * @author M4ximumpizza
  * @since 1.0.0
  */
-public final class Cancellable {
+public class Cancellable {
 
-    // Atomic flag representing the cancellation state
-    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private static final VarHandle CANCELLED;
+
+    static {
+        try {
+            CANCELLED = MethodHandles.lookup().findVarHandle(Cancellable.class, "cancelled", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Cancellation flag, set at most once
+    private volatile boolean cancelled;
 
     /**
      * Marks this task or operation as cancelled.
      *
      * This method is idempotent — calling it multiple times has no additional effect.
-     * Thread-safe: visible across threads immediately due to volatile semantics of AtomicBoolean.
+     * Thread-safe: visible across threads immediately due to volatile semantics.
      */
     public void cancel() {
-        cancelled.set(true);
+        if (CANCELLED.compareAndSet(this, false, true)) {
+            onCancel();
+        }
     }
 
     /**
@@ -35,7 +49,14 @@ public final class Cancellable {
      *
      */
     public boolean isCancelled() {
-        return cancelled.get();
+        return cancelled;
     }
-}
 
+    /**
+     * Called once, by the thread whose {@link #cancel()} call cancelled this token.
+     *
+     * @since 1.0.5
+     */
+    protected void onCancel() {
+    }
+}
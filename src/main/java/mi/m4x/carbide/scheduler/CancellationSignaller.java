@@ -23,9 +23,12 @@ public final class CancellationSignaller {
     /** A reusable, already-completed signaller instance. */
     public static final CancellationSignaller COMPLETED;
 
+    // Stands in for a null failure cause, so a successful completion is still recorded
+    private static final Throwable SUCCESS = new Throwable("Completed successfully", null, false, false) {};
+
     static {
         final CancellationSignaller signaller = new CancellationSignaller(unused -> {});
-        signaller.finished.set(null);
+        signaller.finished.set(SUCCESS);
         signaller.cancelled.set(true);
         COMPLETED = signaller;
     }
@@ -58,7 +61,7 @@ public final class CancellationSignaller {
      */
     public void fireComplete(Throwable throwable) {
         // Only allow a single thread to complete
-        if (finished.compareAndSet(null, throwable)) {
+        if (finished.compareAndSet(null, throwable != null ? throwable : SUCCESS)) {
             Consumer[] listeners;
             synchronized (this) {
                 listeners = onComplete.toArray(Consumer[]::new);
@@ -85,20 +88,40 @@ public final class CancellationSignaller {
         Objects.requireNonNull(callback);
         Throwable result = finished.get();
         if (result != null) {
-            callback.accept(result);
+            callback.accept(result != SUCCESS ? result : null);
             return;
         }
 
         synchronized (this) {
             result = finished.get();
             if (result != null) {
-                callback.accept(result);
+                callback.accept(result != SUCCESS ? result : null);
             } else {
                 onComplete.add(callback);
             }
         }
     }
 
+    /**
+     * Checks whether this signaller has completed, successfully or not.
+     *
+     * @return {@code true} once {@link #fireComplete(Throwable)} has been called
+     * @since 1.0.5
+     */
+    public boolean isComplete() {
+        return finished.get() != null;
+    }
+
+    /**
+     * Checks whether {@link #cancel()} has been called.
+     *
+     * @return {@code true} if this signal was cancelled
+     * @since 1.0.5
+     */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
     /**
      * Cancels this signal if it hasn’t already been cancelled.
      * Runs the cancellation callback once.
@@ -1,8 +1,18 @@
 package mi.m4x.carbide.scheduler;
 
+import mi.m4x.carbide.scheduler.structures.ConcurrentInt2ObjectMap;
+import mi.m4x.carbide.scheduler.structures.ConcurrentIntSet;
+import mi.m4x.carbide.scheduler.structures.ConcurrentLong2ObjectMap;
+import mi.m4x.carbide.scheduler.structures.ConcurrentLongSet;
+import mi.m4x.carbide.scheduler.structures.MpmcArrayQueue;
+import mi.m4x.carbide.scheduler.structures.MpscArrayQueue;
+import mi.m4x.carbide.scheduler.structures.MpscChunkedQueue;
+import mi.m4x.carbide.scheduler.structures.SpscArrayQueue;
+
 import java.util.Collections;
 import java.util.Set;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -32,6 +42,50 @@ public interface ObjectFactory {
      */
     <E> Set<E> createConcurrentSet();
 
+    /**
+     * Creates a concurrent map with primitive {@code long} keys, which stores keys unboxed and
+     * looks them up without allocating.
+     *
+     * @param <V> the type of values
+     * @return a new concurrent long-keyed map instance
+     * @since 1.0.5
+     */
+    default <V> ConcurrentLong2ObjectMap<V> createConcurrentLong2ObjectMap() {
+        return new ConcurrentLong2ObjectMap<>();
+    }
+
+    /**
+     * Creates a concurrent map with primitive {@code int} keys, which stores keys unboxed and
+     * looks them up without allocating.
+     *
+     * @param <V> the type of values
+     * @return a new concurrent int-keyed map instance
+     * @since 1.0.5
+     */
+    default <V> ConcurrentInt2ObjectMap<V> createConcurrentInt2ObjectMap() {
+        return new ConcurrentInt2ObjectMap<>();
+    }
+
+    /**
+     * Creates a concurrent set of primitive {@code long} values.
+     *
+     * @return a new concurrent long set instance
+     * @since 1.0.5
+     */
+    default ConcurrentLongSet createConcurrentLongSet() {
+        return new ConcurrentLongSet();
+    }
+
+    /**
+     * Creates a concurrent set of primitive {@code int} values.
+     *
+     * @return a new concurrent int set instance
+     * @since 1.0.5
+     */
+    default ConcurrentIntSet createConcurrentIntSet() {
+        return new ConcurrentIntSet();
+    }
+
     /**
      * Creates a multiple-producer, multiple-consumer (MPMC) queue.
      * Suitable for situations where many threads produce and consume.
@@ -50,6 +104,45 @@ public interface ObjectFactory {
      */
     <E> Queue<E> newMPSCQueue();
 
+    /**
+     * Creates a bounded multiple-producer, multiple-consumer (MPMC) queue.
+     * Offers fail once the queue holds {@code capacity} elements.
+     *
+     * @param capacity the most elements the queue holds; implementations may round it up
+     * @param <E> the type of elements
+     * @return a new bounded MPMC queue instance
+     * @since 1.0.5
+     */
+    default <E> Queue<E> newBoundedMPMCQueue(int capacity) {
+        return new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Creates a bounded multiple-producer, single-consumer (MPSC) queue.
+     * Offers fail once the queue holds {@code capacity} elements.
+     *
+     * @param capacity the most elements the queue holds; implementations may round it up
+     * @param <E> the type of elements
+     * @return a new bounded MPSC queue instance
+     * @since 1.0.5
+     */
+    default <E> Queue<E> newBoundedMPSCQueue(int capacity) {
+        return new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Creates a bounded single-producer, single-consumer (SPSC) queue.
+     * Offers fail once the queue holds {@code capacity} elements.
+     *
+     * @param capacity the most elements the queue holds; implementations may round it up
+     * @param <E> the type of elements
+     * @return a new bounded SPSC queue instance
+     * @since 1.0.5
+     */
+    default <E> Queue<E> newSPSCQueue(int capacity) {
+        return new ArrayBlockingQueue<>(capacity);
+    }
+
     /**
      * Default implementation of ObjectFactory using standard Java concurrency utilities.
      */
@@ -78,4 +171,38 @@ public interface ObjectFactory {
             return new ConcurrentLinkedQueue<>();
         }
     }
+
+    /**
+     * Implementation of ObjectFactory backed by Carbide's own queues: padded array rings for the
+     * bounded queues and a chunked queue for unbounded MPSC, none of which allocate per element.
+     * There is no in-house unbounded MPMC queue, so {@link #newMPMCQueue()} stays a
+     * {@link ConcurrentLinkedQueue}.
+     * <p>
+     * The returned queues implement {@link mi.m4x.carbide.scheduler.structures.MessageQueue} and
+     * enforce their producer and consumer counts only by contract.
+     *
+     * @since 1.0.5
+     */
+    class HighPerformanceObjectFactory extends DefaultObjectFactory {
+
+        @Override
+        public <E> Queue<E> newMPSCQueue() {
+            return new MpscChunkedQueue<>();
+        }
+
+        @Override
+        public <E> Queue<E> newBoundedMPMCQueue(int capacity) {
+            return new MpmcArrayQueue<>(capacity);
+        }
+
+        @Override
+        public <E> Queue<E> newBoundedMPSCQueue(int capacity) {
+            return new MpscArrayQueue<>(capacity);
+        }
+
+        @Override
+        public <E> Queue<E> newSPSCQueue(int capacity) {
+            return new SpscArrayQueue<>(capacity);
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * Passed to {@link Task#propagateException(Throwable)} for a task that was dropped under
+ * {@link MissedDeadlinePolicy#DROP} because its deadline passed before it could start.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class DeadlineMissedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long latenessNanos;
+
+    DeadlineMissedException(long latenessNanos) {
+        super("Deadline passed " + latenessNanos + " ns before the task could start", null, false, false);
+        this.latenessNanos = latenessNanos;
+    }
+
+    /**
+     * @return how long before the task was taken its deadline had passed, in nanoseconds
+     */
+    public long latenessNanos() {
+        return latenessNanos;
+    }
+}
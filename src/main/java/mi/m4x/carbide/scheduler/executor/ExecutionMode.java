@@ -0,0 +1,34 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * Selects how an {@link ExecutorManager} distributes queued tasks between its worker threads.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public enum ExecutionMode {
+
+    /**
+     * All tasks are placed in a single shared priority queue that every worker polls.
+     * Simple and strictly ordered, but the shared queue becomes a contention point on many cores.
+     */
+    GLOBAL_QUEUE,
+
+    /**
+     * Each worker owns a local priority queue. Tasks scheduled from inside a worker stay on that
+     * worker's queue, external submissions go to the shared queue, and idle workers steal from
+     * the local queues of other workers.
+     * <p>
+     * A worker always takes the higher-priority head of its local queue and the shared queue,
+     * so priority ordering is preserved per worker while most traffic avoids shared state.
+     */
+    WORK_STEALING,
+
+    /**
+     * Workers only dispatch: each task is dequeued in priority order, has its lock tokens acquired,
+     * and is then run on a fresh virtual thread. Tasks that block (I/O, waiting on futures) do not
+     * pin a platform worker, and the number of tasks in flight is capped by
+     * {@link ExecutorConfig#virtualThreadLimit()}.
+     */
+    VIRTUAL_THREADS
+}
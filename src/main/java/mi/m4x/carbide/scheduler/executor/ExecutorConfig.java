@@ -0,0 +1,568 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.natives.CpuTopology;
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.util.Objects;
+
+/**
+ * Immutable set of tuning options for an {@link ExecutorManager}.
+ * <p>
+ * Every option has a default matching the behaviour of the plain constructors, so a config only
+ * needs to name the options it changes:
+ *
+ * <pre>{@code
+ * ExecutorConfig config = ExecutorConfig.builder()
+ *         .executionMode(ExecutionMode.VIRTUAL_THREADS)
+ *         .virtualThreadLimit(2_000)
+ *         .build();
+ * ExecutorManager manager = new ExecutorManager(1, thread -> {}, config);
+ * }</pre>
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class ExecutorConfig {
+
+    /** The configuration used by the constructors that take no config. */
+    public static final ExecutorConfig DEFAULT = builder().build();
+
+    private final int priorityCount;
+    private final long priorityAgingNanos;
+    private final int queueRingCapacity;
+    private final ExecutionMode executionMode;
+    private final IdleStrategy idleStrategy;
+    private final int virtualThreadLimit;
+    private final int lockTableSize;
+    private final boolean metricsEnabled;
+    private final boolean indexTasks;
+    private final boolean reuseReleaseCallbacks;
+    private final long timerTickNanos;
+    private final QueueingPolicy queueingPolicy;
+    private final MissedDeadlinePolicy missedDeadlinePolicy;
+    private final int defaultGroupWeight;
+    private final int maxWorkers;
+    private final long workerKeepAliveNanos;
+    private final int growQueueDepth;
+    private final long growWaitNanos;
+    private final PoolListener poolListener;
+    private final WorkerPlacement workerPlacement;
+    private final CpuTopology cpuTopology;
+
+    private ExecutorConfig(Builder builder) {
+        this.priorityCount = builder.priorityCount;
+        this.priorityAgingNanos = builder.priorityAgingNanos;
+        this.queueRingCapacity = builder.queueRingCapacity;
+        this.executionMode = builder.executionMode;
+        this.idleStrategy = builder.idleStrategy;
+        this.virtualThreadLimit = builder.virtualThreadLimit;
+        this.lockTableSize = builder.lockTableSize;
+        this.metricsEnabled = builder.metricsEnabled;
+        this.indexTasks = builder.indexTasks;
+        this.reuseReleaseCallbacks = builder.reuseReleaseCallbacks;
+        this.timerTickNanos = builder.timerTickNanos;
+        this.queueingPolicy = builder.queueingPolicy;
+        this.missedDeadlinePolicy = builder.missedDeadlinePolicy;
+        this.defaultGroupWeight = builder.defaultGroupWeight;
+        this.maxWorkers = builder.maxWorkers;
+        this.workerKeepAliveNanos = builder.workerKeepAliveNanos;
+        this.growQueueDepth = builder.growQueueDepth;
+        this.growWaitNanos = builder.growWaitNanos;
+        this.poolListener = builder.poolListener;
+        this.workerPlacement = builder.workerPlacement;
+        this.cpuTopology = builder.cpuTopology;
+    }
+
+    /**
+     * Creates a builder initialized with the default options.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a builder initialized with the options of this config.
+     *
+     * @return a new builder
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.priorityCount = priorityCount;
+        builder.priorityAgingNanos = priorityAgingNanos;
+        builder.queueRingCapacity = queueRingCapacity;
+        builder.executionMode = executionMode;
+        builder.idleStrategy = idleStrategy;
+        builder.virtualThreadLimit = virtualThreadLimit;
+        builder.lockTableSize = lockTableSize;
+        builder.metricsEnabled = metricsEnabled;
+        builder.indexTasks = indexTasks;
+        builder.reuseReleaseCallbacks = reuseReleaseCallbacks;
+        builder.timerTickNanos = timerTickNanos;
+        builder.queueingPolicy = queueingPolicy;
+        builder.missedDeadlinePolicy = missedDeadlinePolicy;
+        builder.defaultGroupWeight = defaultGroupWeight;
+        builder.maxWorkers = maxWorkers;
+        builder.workerKeepAliveNanos = workerKeepAliveNanos;
+        builder.growQueueDepth = growQueueDepth;
+        builder.growWaitNanos = growWaitNanos;
+        builder.poolListener = poolListener;
+        builder.workerPlacement = workerPlacement;
+        builder.cpuTopology = cpuTopology;
+        return builder;
+    }
+
+    /**
+     * @return the number of priority levels of the task queues
+     */
+    public int priorityCount() {
+        return priorityCount;
+    }
+
+    /**
+     * @return the wait in nanoseconds that promotes a starved priority level by one, or 0 if disabled
+     */
+    public long priorityAgingNanos() {
+        return priorityAgingNanos;
+    }
+
+    /**
+     * @return the capacity of the ring in front of every priority level, or 0 if levels are linked only
+     */
+    public int queueRingCapacity() {
+        return queueRingCapacity;
+    }
+
+    /**
+     * @return how queued tasks are distributed between the workers
+     */
+    public ExecutionMode executionMode() {
+        return executionMode;
+    }
+
+    /**
+     * @return what workers do when they find no work
+     */
+    public IdleStrategy idleStrategy() {
+        return idleStrategy;
+    }
+
+    /**
+     * @return the maximum number of tasks running on virtual threads at once
+     */
+    public int virtualThreadLimit() {
+        return virtualThreadLimit;
+    }
+
+    /**
+     * @return the number of stripes in the lock table for {@link IndexedLockToken}s
+     */
+    public int lockTableSize() {
+        return lockTableSize;
+    }
+
+    /**
+     * @return whether the manager records {@link ExecutorMetrics}
+     */
+    public boolean metricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * @return whether queued tasks other than {@link PriorityTask}s are indexed by value
+     */
+    public boolean indexTasks() {
+        return indexTasks;
+    }
+
+    /**
+     * @return whether workers reuse one release callback for all the tasks they run
+     */
+    public boolean reuseReleaseCallbacks() {
+        return reuseReleaseCallbacks;
+    }
+
+    /**
+     * @return the resolution in nanoseconds of the wheel holding delayed and periodic tasks
+     */
+    public long timerTickNanos() {
+        return timerTickNanos;
+    }
+
+    /**
+     * @return the order in which queued tasks are handed to the workers
+     */
+    public QueueingPolicy queueingPolicy() {
+        return queueingPolicy;
+    }
+
+    /**
+     * @return what happens to a task whose deadline passed before a worker took it
+     */
+    public MissedDeadlinePolicy missedDeadlinePolicy() {
+        return missedDeadlinePolicy;
+    }
+
+    /**
+     * @return the weight of the tasks scheduled outside any {@link TaskGroup}
+     */
+    public int defaultGroupWeight() {
+        return defaultGroupWeight;
+    }
+
+    /**
+     * @return the most workers an elastic pool grows to, or 0 if the pool keeps its initial size
+     */
+    public int maxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * @return how long a worker of an elastic pool idles before it retires
+     */
+    public long workerKeepAliveNanos() {
+        return workerKeepAliveNanos;
+    }
+
+    /**
+     * @return the queued tasks per worker at which an elastic pool grows without waiting
+     */
+    public int growQueueDepth() {
+        return growQueueDepth;
+    }
+
+    /**
+     * @return how long tasks must have been waiting with every worker busy before an elastic pool grows
+     */
+    public long growWaitNanos() {
+        return growWaitNanos;
+    }
+
+    /**
+     * @return the listener told about workers started and retired, or {@code null}
+     */
+    public PoolListener poolListener() {
+        return poolListener;
+    }
+
+    /**
+     * @return how workers are placed on the CPUs of the host
+     */
+    public WorkerPlacement workerPlacement() {
+        return workerPlacement;
+    }
+
+    /**
+     * @return the topology workers are placed on, or {@code null} to detect the host's
+     */
+    public CpuTopology cpuTopology() {
+        return cpuTopology;
+    }
+
+    /**
+     * Fluent builder for {@link ExecutorConfig}. Not thread-safe.
+     */
+    public static final class Builder {
+        private int priorityCount = 64;
+        private long priorityAgingNanos = 0L;
+        private int queueRingCapacity = 0;
+        private ExecutionMode executionMode = ExecutionMode.GLOBAL_QUEUE;
+        private IdleStrategy idleStrategy = IdleStrategy.blocking();
+        private int virtualThreadLimit = 10_000;
+        private int lockTableSize = 4096;
+        private boolean metricsEnabled = false;
+        private boolean indexTasks = false;
+        private boolean reuseReleaseCallbacks = false;
+        private long timerTickNanos = 1_000_000L;
+        private QueueingPolicy queueingPolicy = QueueingPolicy.PRIORITY;
+        private MissedDeadlinePolicy missedDeadlinePolicy = MissedDeadlinePolicy.RUN;
+        private int defaultGroupWeight = 1;
+        private int maxWorkers = 0;
+        private long workerKeepAliveNanos = 60_000_000_000L;
+        private int growQueueDepth = 64;
+        private long growWaitNanos = 1_000_000L;
+        private PoolListener poolListener;
+        private WorkerPlacement workerPlacement = WorkerPlacement.NONE;
+        private CpuTopology cpuTopology;
+
+        private Builder() {}
+
+        /**
+         * Sets the number of priority levels. Finding the highest queued level costs the same from a
+         * handful of levels to thousands, so fine-grained priorities can be mapped one-to-one.
+         *
+         * @param priorityCount number of priority levels supported by the task queues (default 64)
+         * @return this builder
+         */
+        public Builder priorityCount(int priorityCount) {
+            Assertions.assertTrue(priorityCount > 0, "Priority count must be positive");
+            this.priorityCount = priorityCount;
+            return this;
+        }
+
+        /**
+         * Enables priority aging of the task queues. A priority level whose tasks have not been
+         * served for a while competes as if it were one level higher for every
+         * {@code priorityAgingNanos} it waited, which bounds how long a steady flow of
+         * higher-priority tasks can starve it. Levels served within that time keep strict
+         * priority order. See {@link mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue#DynamicPriorityQueue(int, long)}.
+         *
+         * @param priorityAgingNanos wait that promotes a level by one, or 0 to disable aging (default 0)
+         * @return this builder
+         */
+        public Builder priorityAgingNanos(long priorityAgingNanos) {
+            Assertions.assertTrue(priorityAgingNanos >= 0, "Priority aging interval must not be negative");
+            this.priorityAgingNanos = priorityAgingNanos;
+            return this;
+        }
+
+        /**
+         * Puts a bounded ring in front of every priority level of the task queues. Tasks that fit in
+         * the ring are queued without allocating a link, and workers take them with a CAS on an
+         * index instead of contending on a list head; the linked queue takes the overflow. Every
+         * queue allocates {@code priorityCount} rings up front, one global queue plus one per
+         * worker in {@link ExecutionMode#WORK_STEALING} mode. See
+         * {@link mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue#DynamicPriorityQueue(int, long, int)}.
+         *
+         * @param queueRingCapacity tasks each level's ring holds, or 0 for linked levels only (default 0)
+         * @return this builder
+         */
+        public Builder queueRingCapacity(int queueRingCapacity) {
+            Assertions.assertTrue(queueRingCapacity >= 0, "Queue ring capacity must not be negative");
+            this.queueRingCapacity = queueRingCapacity;
+            return this;
+        }
+
+        /**
+         * @param executionMode how queued tasks are distributed (default {@link ExecutionMode#GLOBAL_QUEUE})
+         * @return this builder
+         */
+        public Builder executionMode(ExecutionMode executionMode) {
+            this.executionMode = Objects.requireNonNull(executionMode, "Execution mode must not be null");
+            return this;
+        }
+
+        /**
+         * @param idleStrategy what workers do when idle (default {@link IdleStrategy#blocking()})
+         * @return this builder
+         */
+        public Builder idleStrategy(IdleStrategy idleStrategy) {
+            this.idleStrategy = Objects.requireNonNull(idleStrategy, "Idle strategy must not be null");
+            return this;
+        }
+
+        /**
+         * Caps the number of tasks in flight on virtual threads in
+         * {@link ExecutionMode#VIRTUAL_THREADS} mode. Ignored by the other modes.
+         *
+         * @param virtualThreadLimit maximum number of concurrently running tasks (default 10,000)
+         * @return this builder
+         */
+        public Builder virtualThreadLimit(int virtualThreadLimit) {
+            Assertions.assertTrue(virtualThreadLimit > 0, "Virtual thread limit must be positive");
+            this.virtualThreadLimit = virtualThreadLimit;
+            return this;
+        }
+
+        /**
+         * Sets the number of stripes used for {@link IndexedLockToken}s. More stripes mean fewer
+         * false conflicts between distinct indices, at one cache line of memory per stripe.
+         *
+         * @param lockTableSize number of stripes, a power of two (default 4096)
+         * @return this builder
+         */
+        public Builder lockTableSize(int lockTableSize) {
+            Assertions.assertTrue(lockTableSize > 0 && Integer.bitCount(lockTableSize) == 1,
+                    "Lock table size must be a power of two");
+            this.lockTableSize = lockTableSize;
+            return this;
+        }
+
+        /**
+         * Enables recording of {@link ExecutorMetrics}, readable through
+         * {@link ExecutorManager#metrics()}. Recording uses striped counters and costs a few
+         * timestamps per task; when disabled it costs nothing beyond a null check.
+         *
+         * @param metricsEnabled whether to record metrics (default {@code false})
+         * @return this builder
+         */
+        public Builder metricsEnabled(boolean metricsEnabled) {
+            this.metricsEnabled = metricsEnabled;
+            return this;
+        }
+
+        /**
+         * Indexes queued tasks that are not {@link PriorityTask}s by value. Scheduling such a task
+         * while it is still queued is then rejected, and {@link ExecutorManager#notifyPriorityChange}
+         * finds it with one map lookup per queue instead of walking the queue's levels. Every
+         * scheduled task then costs a map insert and remove. A {@link PriorityTask} carries its own
+         * queue handle, so it is rejected and moved in O(1) either way.
+         *
+         * @param indexTasks whether to index tasks by value (default {@code false})
+         * @return this builder
+         */
+        public Builder indexTasks(boolean indexTasks) {
+            this.indexTasks = indexTasks;
+            return this;
+        }
+
+        /**
+         * Makes every worker reuse a single release callback for the tasks it runs, so running a
+         * queued task allocates nothing. The callback passed to {@link Task#run(Runnable)} is then
+         * only valid until {@code run} returns: locks still held at that point are released, and
+         * a task must not keep the callback to release them later. Only calls on the worker's own
+         * thread take effect, so a callback handed to asynchronous work does nothing there rather
+         * than releasing the locks of a later task. Tasks without lock tokens and tasks locking
+         * {@link IndexedLockToken}s run allocation-free; other tokens allocate a lock state while
+         * they are in use. Ignored in {@link ExecutionMode#VIRTUAL_THREADS} mode.
+         *
+         * @param reuseReleaseCallbacks whether workers reuse release callbacks (default {@code false})
+         * @return this builder
+         */
+        public Builder reuseReleaseCallbacks(boolean reuseReleaseCallbacks) {
+            this.reuseReleaseCallbacks = reuseReleaseCallbacks;
+            return this;
+        }
+
+        /**
+         * Sets the tick of the timing wheel behind {@link ExecutorManager#scheduleAfter}. Deadlines
+         * are rounded up to a whole tick, so a delayed task never runs early and runs at most about
+         * one tick late while a worker is free. Six levels of 64 slots cover 2^36 ticks, later
+         * deadlines are re-placed once the wheel gets there.
+         *
+         * @param timerTickNanos tick in nanoseconds (default 1 ms)
+         * @return this builder
+         */
+        public Builder timerTickNanos(long timerTickNanos) {
+            Assertions.assertTrue(timerTickNanos > 0, "Timer tick must be positive");
+            this.timerTickNanos = timerTickNanos;
+            return this;
+        }
+
+        /**
+         * @param queueingPolicy the order of queued tasks (default {@link QueueingPolicy#PRIORITY})
+         * @return this builder
+         */
+        public Builder queueingPolicy(QueueingPolicy queueingPolicy) {
+            this.queueingPolicy = Objects.requireNonNull(queueingPolicy, "Queueing policy must not be null");
+            return this;
+        }
+
+        /**
+         * Sets what {@link QueueingPolicy#EARLIEST_DEADLINE_FIRST} does with a task whose deadline
+         * passed before a worker took it. Ignored under {@link QueueingPolicy#PRIORITY}.
+         *
+         * @param missedDeadlinePolicy the policy (default {@link MissedDeadlinePolicy#RUN})
+         * @return this builder
+         */
+        public Builder missedDeadlinePolicy(MissedDeadlinePolicy missedDeadlinePolicy) {
+            this.missedDeadlinePolicy = Objects.requireNonNull(missedDeadlinePolicy, "Missed deadline policy must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the weight that the tasks scheduled directly on the manager share against the
+         * {@link TaskGroup}s created on it. Without task groups it has no effect.
+         *
+         * @param defaultGroupWeight weight between 1 and {@link TaskGroup#MAX_WEIGHT} (default 1)
+         * @return this builder
+         */
+        public Builder defaultGroupWeight(int defaultGroupWeight) {
+            Assertions.assertTrue(defaultGroupWeight > 0 && defaultGroupWeight <= TaskGroup.MAX_WEIGHT,
+                    "Default group weight must be between 1 and " + TaskGroup.MAX_WEIGHT);
+            this.defaultGroupWeight = defaultGroupWeight;
+            return this;
+        }
+
+        /**
+         * Makes the worker pool elastic: the worker count passed to the manager becomes the
+         * minimum, and workers are added up to this maximum while tasks queue up with every worker
+         * busy, then retired again once they have idled for the keep-alive time.
+         *
+         * @param maxWorkers the most workers, at least the manager's worker count; 0 keeps the pool fixed (default 0)
+         * @return this builder
+         */
+        public Builder maxWorkers(int maxWorkers) {
+            Assertions.assertTrue(maxWorkers >= 0, "Max workers must not be negative");
+            this.maxWorkers = maxWorkers;
+            return this;
+        }
+
+        /**
+         * @param workerKeepAliveNanos idle time after which an elastic pool retires a worker above the minimum (default 60 s)
+         * @return this builder
+         */
+        public Builder workerKeepAliveNanos(long workerKeepAliveNanos) {
+            Assertions.assertTrue(workerKeepAliveNanos > 0, "Worker keep-alive must be positive");
+            this.workerKeepAliveNanos = workerKeepAliveNanos;
+            return this;
+        }
+
+        /**
+         * Sets the backlog at which an elastic pool adds a worker at once, rather than after
+         * {@link #growWaitNanos(long)}.
+         *
+         * @param growQueueDepth queued tasks per worker (default 64)
+         * @return this builder
+         */
+        public Builder growQueueDepth(int growQueueDepth) {
+            Assertions.assertTrue(growQueueDepth > 0, "Grow queue depth must be positive");
+            this.growQueueDepth = growQueueDepth;
+            return this;
+        }
+
+        /**
+         * Sets how long tasks must keep waiting while every worker is busy before an elastic pool
+         * adds a worker. Short bursts that the workers absorb within this time start no worker.
+         *
+         * @param growWaitNanos wait in nanoseconds (default 1 ms)
+         * @return this builder
+         */
+        public Builder growWaitNanos(long growWaitNanos) {
+            Assertions.assertTrue(growWaitNanos > 0, "Grow wait must be positive");
+            this.growWaitNanos = growWaitNanos;
+            return this;
+        }
+
+        /**
+         * @param poolListener told about every worker an elastic pool starts or retires, or {@code null} (default)
+         * @return this builder
+         */
+        public Builder poolListener(PoolListener poolListener) {
+            this.poolListener = poolListener;
+            return this;
+        }
+
+        /**
+         * Sets how workers are placed on the CPUs of the host. Placing workers pins them where the
+         * platform supports it, see {@link WorkerPlacement}.
+         *
+         * @param workerPlacement the placement (default {@link WorkerPlacement#NONE})
+         * @return this builder
+         */
+        public Builder workerPlacement(WorkerPlacement workerPlacement) {
+            this.workerPlacement = Objects.requireNonNull(workerPlacement, "Worker placement must not be null");
+            return this;
+        }
+
+        /**
+         * Overrides the topology workers are placed on, for hosts whose sysfs does not describe the
+         * CPUs a process gets. Ignored under {@link WorkerPlacement#NONE}.
+         *
+         * @param cpuTopology the topology, or {@code null} to {@linkplain CpuTopology#detect() detect} it (default)
+         * @return this builder
+         */
+        public Builder cpuTopology(CpuTopology cpuTopology) {
+            this.cpuTopology = cpuTopology;
+            return this;
+        }
+
+        /**
+         * @return a new immutable config
+         */
+        public ExecutorConfig build() {
+            return new ExecutorConfig(this);
+        }
+    }
+}
@@ -1,24 +1,109 @@
 package mi.m4x.carbide.scheduler.executor;
 
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import mi.m4x.carbide.natives.CpuTopology;
+import mi.m4x.carbide.scheduler.Cancellable;
+import mi.m4x.carbide.scheduler.structures.DeadlineQueue;
 import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+import mi.m4x.carbide.scheduler.structures.ObjectPool;
+import mi.m4x.carbide.scheduler.utility.Assertions;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 /**
  * Manages task execution using a priority-based global queue and lock-based task coordination.
  * Tasks are only executed when their required lock tokens are available.
+ * <p>
+ * In {@link ExecutionMode#WORK_STEALING} mode every worker additionally owns a local priority
+ * queue, which receives the tasks scheduled from that worker and is stolen from by idle workers.
+ * In {@link ExecutionMode#VIRTUAL_THREADS} mode the workers only dispatch: each task is run on its
+ * own virtual thread once its locks are acquired, up to a configurable number in flight.
+ * <p>
+ * Lock tokens are exclusive unless wrapped with {@link LockToken#shared()}, in which case any
+ * number of tasks may hold them at once.
+ * <p>
+ * Under {@link QueueingPolicy#EARLIEST_DEADLINE_FIRST} tasks with a deadline wait in a striped
+ * {@link DeadlineQueue} instead and are taken before the priority queues, earliest deadline first.
+ * <p>
+ * Subsystems sharing one manager can each schedule into a weighted {@link TaskGroup}; workers then
+ * share their time between the groups by weight, and by priority within each group.
+ * <p>
+ * Delayed and periodic tasks wait in a {@link TimerWheel} that the workers advance themselves,
+ * and enter the priority queues in batches once due.
+ * <p>
+ * With {@link ExecutorConfig.Builder#maxWorkers(int)} the pool is elastic: a {@link PoolController}
+ * adds workers while tasks keep waiting with every worker busy, and workers idle for the keep-alive
+ * time retire, down to the worker count the manager was created with.
+ * <p>
+ * Under a {@link WorkerPlacement} other than {@code NONE} the workers are spread over the physical
+ * cores of the {@link CpuTopology}, pinned where the platform allows it, and keep stealing and
+ * wakeups within their socket where they can.
  *
  * @author M4ximumpizza
  * @since 1.0.0
  */
 public class ExecutorManager {
 
+    private static final LockToken[] NO_LOCKS = new LockToken[0];
+    private static final TaskGroup[] NO_GROUPS = new TaskGroup[0];
+    // Keeps deadlines far from nanoTime overflow while still covering centuries
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 2;
+
     private final DynamicPriorityQueue<Task> globalWorkQueue;
-    private final ConcurrentMap<LockToken, FreeableTaskList> lockListeners = new ConcurrentHashMap<>();
-    final Object workerMonitor = new Object();
-    private final WorkerThread[] workerThreads;
+    // Only exists under QueueingPolicy.EARLIEST_DEADLINE_FIRST
+    private final DeadlineQueue<Task> deadlineQueue;
+    private final MissedDeadlinePolicy missedDeadlinePolicy;
+    private final ConcurrentMap<LockToken, LockState> lockStates = new ConcurrentHashMap<>();
+    private final StripedLockTable lockTable;
+    // One per socket when workers are placed on more than one, so wakeups stay within a socket
+    private final ParkedWorkers[] parkedWorkers;
+    private final AtomicInteger parkedCount = new AtomicInteger();
+    // Workers that found no task on their last poll, parked or not; only counted in an elastic pool
+    private final AtomicInteger idleCount = new AtomicInteger();
+    // Copied on write; only changes in an elastic pool
+    private volatile WorkerThread[] workerThreads;
+    private final ExecutionMode executionMode;
+    private final IdleStrategy idleStrategy;
+    private final int priorityCount;
+    private final Consumer<Thread> threadInitializer;
+    private final ThreadFactory virtualThreadFactory;
+    private final Semaphore virtualThreadPermits;
+    final MetricsRecorder metrics;
+    final boolean reuseReleaseCallbacks;
+    // Plain keyed tasks are only indexed by value on request, PriorityTasks carry their handle
+    private final boolean indexTasks;
+    // Recycled lists of the waiters a released lock was handed to
+    private final ObjectPool<ReferenceArrayList<Task>> grantedLists;
+    final TimerWheel timers;
+    // The tasks queued on the manager itself, weighed against the groups once there are any
+    private final TaskGroup defaultGroup;
+    // Copied on write, groups are created rarely and scanned on every poll
+    private volatile TaskGroup[] groups = NO_GROUPS;
+    // Tasks handed a lock while there are groups; created with the first group, so read it after groups
+    private DynamicPriorityQueue<Task> handoffQueue;
+    // Start tag of the task dequeued last, where idle groups resume from
+    private final AtomicLong virtualClock = new AtomicLong();
+    private final int minWorkers;
+    private final int maxWorkers;
+    // 0 for a fixed pool, whose workers never retire
+    private final long workerKeepAliveNanos;
+    // Only exists for an elastic pool
+    private final PoolController poolController;
+    private final PoolListener poolListener;
+    // Guarded by this
+    private int nextWorkerIndex;
+    private boolean shutdown;
+    // Only set under a WorkerPlacement other than NONE
+    private final WorkerPlacement workerPlacement;
+    private final CpuTopology topology;
+    private final int[] placement;
 
     /**
      * Constructs an ExecutorManager with the specified number of worker threads.
@@ -47,48 +132,186 @@ public class ExecutorManager {
      * @param priorityCount     Number of priority levels supported by the task queue.
      */
     public ExecutorManager(int workerThreadCount, Consumer<Thread> threadInitializer, int priorityCount) {
-        this.globalWorkQueue = new DynamicPriorityQueue<>(priorityCount);
-        this.workerThreads = new WorkerThread[workerThreadCount];
+        this(workerThreadCount, threadInitializer, priorityCount, ExecutionMode.GLOBAL_QUEUE);
+    }
+
+    /**
+     * Constructs an ExecutorManager with full configuration and an explicit execution mode.
+     *
+     * @param workerThreadCount Number of worker threads.
+     * @param threadInitializer Callback to customize each worker thread.
+     * @param priorityCount     Number of priority levels supported by the task queue.
+     * @param executionMode     How queued tasks are distributed between the workers.
+     * @since 1.0.5
+     */
+    public ExecutorManager(int workerThreadCount, Consumer<Thread> threadInitializer, int priorityCount,
+                           ExecutionMode executionMode) {
+        this(workerThreadCount, threadInitializer, priorityCount, executionMode, IdleStrategy.blocking());
+    }
+
+    /**
+     * Constructs an ExecutorManager with full configuration, execution mode and idle strategy.
+     *
+     * @param workerThreadCount Number of worker threads.
+     * @param threadInitializer Callback to customize each worker thread.
+     * @param priorityCount     Number of priority levels supported by the task queue.
+     * @param executionMode     How queued tasks are distributed between the workers.
+     * @param idleStrategy      What workers do when they find no work.
+     * @since 1.0.5
+     */
+    public ExecutorManager(int workerThreadCount, Consumer<Thread> threadInitializer, int priorityCount,
+                           ExecutionMode executionMode, IdleStrategy idleStrategy) {
+        this(workerThreadCount, threadInitializer, ExecutorConfig.builder()
+                .priorityCount(priorityCount)
+                .executionMode(executionMode)
+                .idleStrategy(idleStrategy)
+                .build());
+    }
+
+    /**
+     * Constructs an ExecutorManager from a config.
+     * <p>
+     * In {@link ExecutionMode#VIRTUAL_THREADS} mode the worker threads act as dispatchers and
+     * {@code threadInitializer} is applied to every virtual thread as well, so it must only use
+     * operations that virtual threads support.
+     *
+     * @param workerThreadCount Number of worker threads.
+     * @param threadInitializer Callback to customize each worker thread.
+     * @param config            Tuning options for queues, workers and execution.
+     * @since 1.0.5
+     */
+    public ExecutorManager(int workerThreadCount, Consumer<Thread> threadInitializer, ExecutorConfig config) {
+        Objects.requireNonNull(config, "Config must not be null");
+        this.globalWorkQueue = new DynamicPriorityQueue<>(config.priorityCount(), config.priorityAgingNanos(),
+                config.queueRingCapacity());
+        this.deadlineQueue = config.queueingPolicy() == QueueingPolicy.EARLIEST_DEADLINE_FIRST
+                ? new DeadlineQueue<>(Math.max(2, workerThreadCount)) : null;
+        this.missedDeadlinePolicy = config.missedDeadlinePolicy();
+        this.executionMode = config.executionMode();
+        this.idleStrategy = config.idleStrategy();
+        this.priorityCount = config.priorityCount();
+        this.threadInitializer = Objects.requireNonNull(threadInitializer, "Thread initializer must not be null");
+        this.lockTable = new StripedLockTable(config.lockTableSize());
+        this.metrics = config.metricsEnabled() ? new MetricsRecorder(config.priorityCount()) : null;
+        this.reuseReleaseCallbacks = config.reuseReleaseCallbacks();
+        this.indexTasks = config.indexTasks();
+        // Workers take and return granted lists themselves, so they get per-thread magazines. Short-lived
+        // virtual threads would only fill magazines they never reuse
+        this.grantedLists = executionMode == ExecutionMode.VIRTUAL_THREADS
+                ? new ObjectPool<>(pool -> new ReferenceArrayList<>(), list -> {}, ReferenceArrayList::clear,
+                        Math.max(16, 2 * workerThreadCount))
+                : ObjectPool.threadCached(pool -> new ReferenceArrayList<>(), list -> {}, ReferenceArrayList::clear,
+                        Math.max(16, 2 * workerThreadCount), 4);
+        this.timers = new TimerWheel(this, config.timerTickNanos());
+        this.defaultGroup = new TaskGroup(this, "default", config.defaultGroupWeight(), null, 0L);
+        boolean elastic = config.maxWorkers() != 0;
+        Assertions.assertTrue(!elastic || (workerThreadCount > 0 && config.maxWorkers() >= workerThreadCount),
+                "An elastic pool needs at least one worker and max workers of at least the worker count");
+        this.minWorkers = workerThreadCount;
+        this.maxWorkers = elastic ? config.maxWorkers() : workerThreadCount;
+        this.workerKeepAliveNanos = elastic ? config.workerKeepAliveNanos() : 0L;
+        this.poolListener = config.poolListener();
+        this.poolController = elastic ? new PoolController(this, config) : null;
+        this.nextWorkerIndex = workerThreadCount;
+        this.workerPlacement = config.workerPlacement();
+        if (workerPlacement != WorkerPlacement.NONE) {
+            this.topology = config.cpuTopology() != null ? config.cpuTopology() : CpuTopology.detect();
+            this.placement = topology.placement();
+        } else {
+            this.topology = null;
+            this.placement = null;
+        }
+        this.parkedWorkers = new ParkedWorkers[topology != null ? topology.socketCount() : 1];
+        for (int i = 0; i < parkedWorkers.length; i++) {
+            parkedWorkers[i] = new ParkedWorkers();
+        }
+        WorkerThread[] workerThreads = new WorkerThread[workerThreadCount];
+        this.workerThreads = workerThreads;
+
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            this.virtualThreadFactory = Thread.ofVirtual().name("Carbide Virtual Worker-", 0).factory();
+            this.virtualThreadPermits = new Semaphore(config.virtualThreadLimit());
+        } else {
+            this.virtualThreadFactory = null;
+            this.virtualThreadPermits = null;
+        }
 
         for (int i = 0; i < workerThreadCount; i++) {
-            WorkerThread thread = new WorkerThread(this);
+            workerThreads[i] = new WorkerThread(this, i, placement != null ? i % placement.length : -1);
+        }
+
+        // Start only once the array is complete, so stealing never observes a missing worker
+        for (WorkerThread thread : workerThreads) {
             threadInitializer.accept(thread);
             thread.start();
-            workerThreads[i] = thread;
+        }
+        if (poolController != null) {
+            poolController.start();
         }
     }
 
     /**
-     * Attempts to acquire all locks required by the task.
-     * If any lock is already held, the task is added as a listener and not executed now.
+     * Attempts to acquire all locks required by the task, each in its requested mode.
+     * If any lock is unavailable, the locks taken so far are released, the task is queued on the
+     * unavailable lock and not executed now. That lock is later handed to it directly, and the
+     * task is rescheduled already holding it.
+     * <p>
+     * {@link IndexedLockToken}s are taken through the striped lock table and allocate nothing;
+     * other tokens go through the lock map.
      *
      * @param task Task to lock.
      * @return {@code true} if the task acquired all locks, {@code false} otherwise.
      */
     boolean tryLock(Task task) {
         LockToken[] tokens = task.lockTokens();
-        FreeableTaskList localList = new FreeableTaskList();
+        if (tokens.length == 0) {
+            return true;
+        }
+        LockWaiter waiter = task instanceof LockWaiter handedOver ? handedOver : null;
 
         retry:
         while (true) {
+            LockState granted = waiter != null ? waiter.lock : null;
+            boolean grantedInRange = false;
+
             for (int i = 0; i < tokens.length; i++) {
-                LockToken token = tokens[i];
-                FreeableTaskList existing = lockListeners.putIfAbsent(token, localList);
+                if (isLockTakenBefore(tokens, i)) {
+                    continue;
+                }
 
-                if (existing != null) {
-                    // Rollback inserted tokens
-                    for (int j = 0; j < i; j++) {
-                        lockListeners.remove(tokens[j], localList);
-                    }
+                boolean shared = isSharedOnly(tokens, i);
+                LockState lock = lockOf(unwrap(tokens[i]));
+                if (lock == granted) {
+                    grantedInRange = true; // released with the tokens before the failing one
+                    continue;
+                }
+                if (lock.tryAcquire(shared)) {
+                    continue;
+                }
 
-                    // Try adding safely
-                    if (!existing.addIfNotFreed(task)) {
-                        continue retry;
+                // Never wait while holding other locks, including one handed over to us
+                releaseRange(tokens, i);
+                if (granted != null) {
+                    if (!grantedInRange) {
+                        release(granted, waiter.shared);
                     }
+                    waiter.lock = null;
+                }
 
-                    callListeners(localList);
-                    return false;
+                if (waiter == null) {
+                    waiter = new LockWaiter(task);
                 }
+                if (metrics != null) {
+                    metrics.onLockWait(waiter, unwrap(tokens[i]).getClass());
+                }
+                if (!lock.addWaiter(waiter, shared)) {
+                    continue retry;
+                }
+                return false;
+            }
+
+            if (waiter != null) {
+                waiter.lock = null;
             }
             return true;
         }
@@ -101,52 +324,372 @@ public class ExecutorManager {
      */
     void releaseLocks(Task task) {
         LockToken[] tokens = task.lockTokens();
-        FreeableTaskList sharedListeners = null;
+        releaseRange(tokens, tokens.length);
+    }
+
+    /**
+     * Releases the locks of the first {@code count} tokens and schedules the waiting tasks that
+     * any of them was handed to.
+     *
+     * @param tokens The task's tokens.
+     * @param count  Number of leading tokens that were acquired.
+     */
+    private void releaseRange(LockToken[] tokens, int count) {
+        for (int i = 0; i < count; i++) {
+            if (isLockTakenBefore(tokens, i)) {
+                continue;
+            }
+
+            boolean shared = isSharedOnly(tokens, i);
+            LockToken token = unwrap(tokens[i]);
+
+            if (token instanceof IndexedLockToken indexed) {
+                release(lockTable.lockOf(indexed), shared);
+                continue;
+            }
 
-        for (LockToken token : tokens) {
-            FreeableTaskList list = lockListeners.remove(token);
-            if (list == null) {
+            LockState lock = lockStates.get(token);
+            if (lock == null) {
                 throw new IllegalStateException("Lock not found: " + token);
             }
+            release(lock, shared);
+
+            // Drop free locks so the map only holds tokens that are in use
+            if (lock.tryRetire()) {
+                lockStates.remove(token, lock);
+            }
+        }
+    }
+
+    /**
+     * Releases one hold of a lock and schedules the waiters it was handed to.
+     *
+     * @param lock   The lock to release.
+     * @param shared The mode it was held in.
+     */
+    private void release(LockState lock, boolean shared) {
+        ReferenceArrayList<Task> granted = lock.release(shared, grantedLists);
+        if (granted != null) {
+            if (metrics != null) {
+                metrics.onHandOver(granted);
+            }
+            callListeners(granted);
+            grantedLists.release(granted);
+        }
+    }
+
+    /**
+     * Looks up the lock state of a token, creating it for ordinary tokens that are not locked yet.
+     *
+     * @param token An unwrapped token.
+     * @return the live lock state
+     */
+    private LockState lockOf(LockToken token) {
+        if (token instanceof IndexedLockToken indexed) {
+            return lockTable.lockOf(indexed);
+        }
+
+        while (true) {
+            LockState lock = lockStates.get(token);
+            if (lock == null) {
+                lock = lockStates.computeIfAbsent(token, key -> new LockState());
+            }
+            if (!lock.isRetired()) {
+                return lock;
+            }
+            // Retired by a releasing task that has not removed it yet
+            lockStates.remove(token, lock);
+        }
+    }
+
+    /**
+     * Checks whether an earlier token of the same task resolves to the same lock, in which case
+     * the lock is handled with that token and must not be taken twice.
+     *
+     * @param tokens The task's tokens.
+     * @param end    Index of the token being examined.
+     * @return {@code true} if a token before {@code end} uses the same lock
+     */
+    private boolean isLockTakenBefore(LockToken[] tokens, int end) {
+        LockToken token = unwrap(tokens[end]);
+        for (int j = 0; j < end; j++) {
+            if (isSameLock(unwrap(tokens[j]), token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decides the mode of the lock behind {@code tokens[start]}: shared only if no token of the
+     * task asks for the same lock exclusively.
+     *
+     * @param tokens The task's tokens.
+     * @param start  Index of the first token using the lock.
+     * @return {@code true} to acquire the lock in shared mode
+     */
+    private boolean isSharedOnly(LockToken[] tokens, int start) {
+        if (!(tokens[start] instanceof SharedLockToken)) {
+            return false;
+        }
 
-            if (sharedListeners == null) {
-                sharedListeners = list;
-            } else if (sharedListeners != list) {
-                throw new IllegalStateException("Inconsistent lock listener state.");
+        LockToken token = unwrap(tokens[start]);
+        for (int j = start + 1; j < tokens.length; j++) {
+            if (!(tokens[j] instanceof SharedLockToken) && isSameLock(tokens[j], token)) {
+                return false;
             }
         }
+        return true;
+    }
 
-        if (sharedListeners != null) {
-            callListeners(sharedListeners);
+    private boolean isSameLock(LockToken a, LockToken b) {
+        if (a instanceof IndexedLockToken first) {
+            return b instanceof IndexedLockToken second && lockTable.stripeOf(first) == lockTable.stripeOf(second);
         }
+        return !(b instanceof IndexedLockToken) && a.equals(b);
+    }
+
+    private static LockToken unwrap(LockToken token) {
+        return token instanceof SharedLockToken shared ? shared.token() : token;
     }
 
     /**
-     * Wakes up all listeners in the list and marks it as freed.
+     * Schedules the waiting tasks a released lock was handed to.
      *
-     * @param listeners Listener task list to wake up.
+     * @param listeners Waiting tasks that now hold the lock.
      */
-    private void callListeners(FreeableTaskList listeners) {
-        listeners.markFreed();
+    private void callListeners(ReferenceArrayList<Task> listeners) {
         if (!listeners.isEmpty()) {
+            boolean grouped = groups.length != 0;
             for (Task task : listeners) {
-                schedule0(task);
+                if (grouped) {
+                    scheduleHandedOver(task);
+                } else if (((LockWaiter) task).task instanceof PriorityTask) {
+                    // Only a PriorityTask can be found again, every other waiter takes the unkeyed lane
+                    schedule0(task);
+                } else {
+                    scheduleUnkeyed0(task);
+                }
             }
+            wakeup(listeners.size());
+        }
+    }
+
+    /**
+     * Queues a waiter that was handed a lock while there are groups. It holds the lock and blocks
+     * every other waiter on it, so it goes to the handoff queue, which is polled ahead of the groups
+     * instead of waiting for the default group's turn.
+     */
+    private void scheduleHandedOver(Task task) {
+        if (offerDeadline(task)) {
+            return;
+        }
+        if (metrics != null) {
+            metrics.onEnqueue(task);
+        }
+        DynamicPriorityQueue<Task> queue = handoffQueue;
+        if (((LockWaiter) task).task instanceof PriorityTask) {
+            queue.offer(newHandle(queue, task), task.priority());
+        } else {
+            queue.offerUnkeyed(task, task.priority());
         }
-        wakeup();
     }
 
     /**
      * Retrieves the next executable task if any exists.
      *
+     * @param worker The worker asking for work.
      * @return Task ready for execution or {@code null}.
      */
-    Task pollExecutableTask() {
+    Task pollExecutableTask(WorkerThread worker) {
         Task task;
-        while ((task = globalWorkQueue.dequeue()) != null) {
+        while ((task = pollTask(worker)) != null) {
+            if (metrics != null) {
+                metrics.onDequeue(task);
+            }
             if (tryLock(task)) {
                 return task;
             }
+            // Queued on a lock: its group keeps the estimated charge, the run is not measured
+            worker.group = null;
+        }
+        return null;
+    }
+
+    /**
+     * Takes the next queued task for the given worker, without acquiring its locks: a deadline
+     * task first, then, if there are any groups, a task that was handed a lock and otherwise the
+     * next task of the group whose turn it is.
+     *
+     * @param worker The worker asking for work.
+     * @return The dequeued task or {@code null} if none was found.
+     */
+    private Task pollTask(WorkerThread worker) {
+        if (deadlineQueue != null) {
+            Task task = pollDeadlineTask();
+            if (task != null) {
+                return task;
+            }
+        }
+
+        TaskGroup[] groups = this.groups;
+        if (groups.length != 0) {
+            Task task = handoffQueue.dequeue();
+            return task != null ? task : pollGroups(worker, groups);
+        }
+        return pollOwnQueues(worker);
+    }
+
+    /**
+     * Takes the next task from the backlogged group with the smallest start tag, the default group
+     * included, and charges it to that group. Ties go to the default group, then to the group
+     * created first.
+     *
+     * @param worker The worker asking for work; remembers the group to settle the run with.
+     * @param groups The groups created on this manager.
+     * @return The dequeued task or {@code null} if every group is empty.
+     */
+    private Task pollGroups(WorkerThread worker, TaskGroup[] groups) {
+        while (true) {
+            long clock = virtualClock.get();
+            TaskGroup next = null;
+            long nextTag = Long.MAX_VALUE;
+            if (hasOwnQueuedTasks()) {
+                next = defaultGroup;
+                nextTag = defaultGroup.startTag(clock);
+            }
+            for (TaskGroup group : groups) {
+                if (group.queue.peekPriority() >= 0) {
+                    long tag = group.startTag(clock);
+                    if (next == null || tag < nextTag) {
+                        next = group;
+                        nextTag = tag;
+                    }
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+
+            Task task = next == defaultGroup ? pollOwnQueues(worker) : next.queue.dequeue();
+            if (task == null) {
+                // Emptied by another worker since the scan
+                continue;
+            }
+            // A waiter's group was charged when the task was first taken
+            if (!(task instanceof LockWaiter)) {
+                virtualClock.accumulateAndGet(nextTag, Math::max);
+                worker.groupCharge = next.charge(clock);
+                worker.group = next;
+            }
+            return task;
+        }
+    }
+
+    /**
+     * Takes the next task from the manager's own queues. In work-stealing mode the worker prefers
+     * whichever of its local queue and the global queue has the higher-priority head, and falls
+     * back to stealing from other workers.
+     *
+     * @param worker The worker asking for work.
+     * @return The dequeued task or {@code null} if none was found.
+     */
+    private Task pollOwnQueues(WorkerThread worker) {
+        DynamicPriorityQueue<Task> localQueue = worker.localQueue;
+        if (localQueue == null) {
+            return globalWorkQueue.dequeue();
+        }
+
+        int localPriority = localQueue.peekPriority();
+        int globalPriority = globalWorkQueue.peekPriority();
+
+        Task task = null;
+        if (localPriority >= 0 && (globalPriority < 0 || localPriority <= globalPriority)) {
+            task = localQueue.dequeue();
+        }
+        if (task == null) {
+            task = globalWorkQueue.dequeue();
+        }
+        if (task == null) {
+            task = localQueue.dequeue();
+        }
+        if (task == null) {
+            task = steal(worker);
+        }
+        return task;
+    }
+
+    /**
+     * Takes the task with the earliest deadline, applying the {@link MissedDeadlinePolicy} to
+     * tasks whose deadline has already passed.
+     *
+     * @return the task to run, or {@code null} if no deadline task is left
+     */
+    private Task pollDeadlineTask() {
+        Task task;
+        while ((task = deadlineQueue.poll()) != null) {
+            // A waiter was handed a lock that other tasks wait for, so it runs regardless
+            if (missedDeadlinePolicy == MissedDeadlinePolicy.RUN || task instanceof LockWaiter) {
+                return task;
+            }
+            long lateness = System.nanoTime() - task.deadlineNanos();
+            if (lateness <= 0L) {
+                return task;
+            }
+
+            if (missedDeadlinePolicy == MissedDeadlinePolicy.DEMOTE) {
+                if (metrics != null) {
+                    metrics.onDemoted();
+                }
+                DynamicPriorityQueue<Task> queue = targetQueue();
+                if (task.lockTokens().length == 0) {
+                    queue.offerUnkeyed(task, task.priority());
+                } else {
+                    requeue(queue, task);
+                }
+            } else {
+                if (metrics != null) {
+                    metrics.onDequeue(task);
+                    metrics.onDropped(lateness);
+                }
+                // Nothing is locked yet
+                WorkerThread.failTask(this, task, new DeadlineMissedException(lateness), null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Steals the head of the first other worker's local queue that holds a task, which is that
+     * victim's highest-priority task. Victims are not compared with each other, so a queue scanned
+     * later may hold a more urgent task. Victims are scanned starting at a random index to spread
+     * contention. Placed on more than one socket, a worker scans the workers of its own socket
+     * first, and only then the others.
+     *
+     * @param thief The worker looking for work.
+     * @return A stolen task or {@code null} if every other local queue is empty.
+     */
+    private Task steal(WorkerThread thief) {
+        WorkerThread[] workers = workerThreads;
+        int count = workers.length;
+        if (count <= 1) {
+            return null;
+        }
+
+        int start = ThreadLocalRandom.current().nextInt(count);
+        boolean localFirst = parkedWorkers.length > 1 && thief.socket >= 0;
+        for (int pass = localFirst ? 0 : 1; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                WorkerThread victim = workers[(start + i) % count];
+                if (victim == thief || (localFirst && (victim.socket == thief.socket) != (pass == 0))) {
+                    continue;
+                }
+
+                Task task = victim.localQueue.dequeue();
+                if (task != null) {
+                    return task;
+                }
+            }
         }
         return null;
     }
@@ -155,101 +698,1174 @@ public class ExecutorManager {
      * Gracefully shuts down all worker threads.
      */
     public void shutdown() {
-        for (WorkerThread thread : workerThreads) {
+        WorkerThread[] workers;
+        synchronized (this) {
+            // No worker is added from now on
+            shutdown = true;
+            workers = workerThreads;
+        }
+        if (poolController != null) {
+            poolController.shutdown();
+        }
+        for (WorkerThread thread : workers) {
             thread.shutdown();
         }
     }
 
     /**
-     * Schedules a task for execution.
+     * Returns the current number of workers, which only changes in an elastic pool.
      *
-     * @param task Task to schedule.
+     * @return the worker count
+     * @since 1.0.5
      */
-    public void schedule(Task task) {
-        schedule0(task);
-        wakeup();
+    public int workerCount() {
+        return workerThreads.length;
     }
 
     /**
-     * Schedules a simple runnable task with a given priority.
+     * Returns the topology workers are placed on.
      *
-     * @param runnable Runnable to execute.
-     * @param priority Priority level of execution.
+     * @return the topology, or {@code null} under {@link WorkerPlacement#NONE}
+     * @since 1.0.5
      */
-    public void schedule(Runnable runnable, int priority) {
-        schedule(new SimpleTask(runnable, priority));
+    public CpuTopology cpuTopology() {
+        return topology;
     }
 
     /**
-     * Provides an Executor interface bound to a fixed priority.
+     * Picks the placement slot for a new worker, the first of those taken by the fewest workers,
+     * so retired workers leave their cores to the next ones.
      *
-     * @param priority Priority level for execution.
-     * @return An {@link Executor} that submits tasks at the given priority.
+     * @param current The current workers.
+     * @return the slot, or -1 if workers are not placed
      */
-    public Executor executor(int priority) {
-        return runnable -> schedule(runnable, priority);
+    private int freeSlot(WorkerThread[] current) {
+        if (placement == null) {
+            return -1;
+        }
+        int[] taken = new int[placement.length];
+        for (WorkerThread worker : current) {
+            if (worker.slot >= 0) {
+                taken[worker.slot]++;
+            }
+        }
+        int slot = 0;
+        for (int i = 1; i < taken.length; i++) {
+            if (taken[i] < taken[slot]) {
+                slot = i;
+            }
+        }
+        return slot;
     }
 
     /**
-     * Notifies the manager that a task's priority has changed, updating its position in the queue.
+     * Returns the CPUs a worker is pinned to.
      *
-     * @param task Task whose priority has changed.
+     * @param slot The worker's placement slot.
+     * @return the CPUs, or {@code null} if the worker is not placed
      */
-    public void notifyPriorityChange(Task task) {
-        globalWorkQueue.changePriority(task, task.priority());
+    int[] cpusOf(int slot) {
+        if (slot < 0) {
+            return null;
+        }
+        int cpu = placement[slot];
+        return workerPlacement == WorkerPlacement.PER_CORE
+                ? new int[]{cpu}
+                : topology.cpusOfSocket(topology.socketOf(cpu));
     }
 
     /**
-     * Checks if there are any tasks pending in the work queue.
+     * Returns the socket a worker is placed on.
      *
-     * @return {@code true} if tasks are pending; {@code false} otherwise.
+     * @param slot The worker's placement slot.
+     * @return the socket, or -1 if the worker is not placed
      */
-    public boolean hasPendingTasks() {
-        return globalWorkQueue.size() > 0;
+    int socketOf(int slot) {
+        return slot >= 0 ? topology.socketOf(placement[slot]) : -1;
     }
 
-    private void schedule0(Task task) {
-        globalWorkQueue.enqueue(task, task.priority());
+    /**
+     * Adds a worker, unless the pool is at its maximum or shut down. Called by the pool controller.
+     */
+    void addWorker() {
+        WorkerThread worker;
+        int count;
+        synchronized (this) {
+            WorkerThread[] current = workerThreads;
+            if (shutdown || current.length >= maxWorkers) {
+                return;
+            }
+            worker = new WorkerThread(this, nextWorkerIndex++, freeSlot(current));
+            threadInitializer.accept(worker);
+            WorkerThread[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = worker;
+            workerThreads = grown;
+            count = grown.length;
+        }
+        // Started once published, so it can be stolen from and shut down from the start
+        worker.start();
+        if (poolListener != null) {
+            poolListener.workerStarted(worker, count);
+        }
     }
 
-    private void wakeup() {
-        synchronized (workerMonitor) {
-            workerMonitor.notifyAll();
+    /**
+     * Removes an idle worker from an elastic pool above its minimum size, and hands the tasks left
+     * in its local queue back to the global queue. Called by the worker itself, which terminates
+     * if this succeeds.
+     *
+     * @param worker The calling worker, no longer parked.
+     * @return {@code true} if the worker was retired
+     */
+    boolean retireWorker(WorkerThread worker) {
+        int count;
+        synchronized (this) {
+            WorkerThread[] current = workerThreads;
+            if (shutdown || current.length <= minWorkers) {
+                return false;
+            }
+            WorkerThread[] remaining = new WorkerThread[current.length - 1];
+            int kept = 0;
+            for (WorkerThread thread : current) {
+                if (thread != worker) {
+                    if (kept == remaining.length) {
+                        return false; // Not one of ours
+                    }
+                    remaining[kept++] = thread;
+                }
+            }
+            workerThreads = remaining;
+            count = remaining.length;
+        }
+
+        DynamicPriorityQueue<Task> localQueue = worker.localQueue;
+        if (localQueue != null) {
+            // Only this worker offered to its queue, but other threads move queued tasks through
+            // their handles: the close waits for moves in flight and refuses new ones
+            localQueue.close();
+            while (true) {
+                Task task = localQueue.dequeue();
+                if (task == null) {
+                    // A thief may have claimed an entry without uncounting it yet
+                    if (localQueue.size() == 0) {
+                        break;
+                    }
+                    Thread.yield();
+                } else if (task.lockTokens().length == 0 && !(task instanceof PriorityTask)) {
+                    globalWorkQueue.offerUnkeyed(task, task.priority());
+                } else {
+                    requeue(globalWorkQueue, task);
+                }
+            }
+        }
+        if (hasPendingTasks()) {
+            wakeup(1);
         }
+        // There is room to grow again
+        LockSupport.unpark(poolController);
+        if (poolListener != null) {
+            poolListener.workerRetired(worker, count);
+        }
+        return true;
+    }
+
+    /**
+     * Returns how long an idle worker waits before it retires.
+     *
+     * @return the keep-alive in nanoseconds, or 0 if workers never retire
+     */
+    long workerKeepAliveNanos() {
+        return workerKeepAliveNanos;
     }
 
     /**
-     * Internal class for managing a list of listeners waiting for lock release.
+     * Checks whether tasks are waiting while no worker is idle to take them. Workers that spin or
+     * yield instead of parking count as idle too, so such a pool does not grow while it idles.
+     *
+     * @return {@code true} if the pool is saturated
      */
-    private static class FreeableTaskList extends ReferenceArrayList<Task> {
-        private volatile boolean freed = false;
+    boolean isSaturated() {
+        return idleCount.get() == 0 && hasPendingTasks();
+    }
 
-        /**
-         * Marks this list as freed, in a thread-safe way.
-         * @since 1.0.2
-         */
-        public void markFreed() {
-            synchronized (this) {
-                this.freed = true;
-            }
+    /**
+     * Counts a worker of an elastic pool in or out of the idle workers. The last idle worker to
+     * leave signals the controller: producers that woke it saw an idle worker and did not.
+     *
+     * @param idle {@code true} when its poll found no task, {@code false} when it found one again
+     *             or retires
+     */
+    void markIdle(boolean idle) {
+        if (idle) {
+            idleCount.incrementAndGet();
+        } else if (idleCount.decrementAndGet() == 0) {
+            poolController.signal();
         }
+    }
 
-        /**
-         * Attempts to add a task if not freed.
-         *
-         * @param task Task to add.
-         * @return true if added, false if already freed.
-         * @since 1.0.2
-         */
-        public boolean addIfNotFreed(Task task) {
-            synchronized (this) {
-                if (freed) {
-                    return false;
-                }
-                add(task);
-                return true;
+    /**
+     * Counts the tasks queued in every queue of this manager, as a snapshot.
+     *
+     * @return the number of queued tasks
+     */
+    int queuedTaskCount() {
+        int count = globalWorkQueue.size() + (deadlineQueue != null ? deadlineQueue.size() : 0);
+        if (executionMode == ExecutionMode.WORK_STEALING) {
+            for (WorkerThread thread : workerThreads) {
+                count += thread.localQueue.size();
             }
         }
+        TaskGroup[] groups = this.groups;
+        if (groups.length != 0) {
+            count += handoffQueue.size();
+        }
+        for (TaskGroup group : groups) {
+            count += group.queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * Schedules a task for execution.
+     *
+     * @param task Task to schedule.
+     * @throws IllegalArgumentException if the task is still queued in the queue it would join, checked
+     *                                  for a {@link PriorityTask} and, with {@link ExecutorConfig#indexTasks()},
+     *                                  for any other task
+     */
+    public void schedule(Task task) {
+        schedule0(task);
+        wakeup(1);
+    }
+
+    /**
+     * Schedules a simple runnable task with a given priority. Runnables take the unkeyed lane,
+     * see {@link #scheduleUnkeyed(Task)}.
+     *
+     * @param runnable Runnable to execute.
+     * @param priority Priority level of execution.
+     */
+    public void schedule(Runnable runnable, int priority) {
+        scheduleUnkeyed0(new SimpleTask(runnable, priority));
+        wakeup(1);
     }
-}
 
+    /**
+     * Schedules a runnable that should have finished by a deadline. Under
+     * {@link QueueingPolicy#EARLIEST_DEADLINE_FIRST} it runs before every task without a
+     * deadline; under {@link QueueingPolicy#PRIORITY} it runs by priority and the deadline only
+     * counts in the metrics.
+     *
+     * @param runnable      Runnable to execute.
+     * @param priority      Priority level of execution, also used if the task is demoted.
+     * @param deadlineNanos {@link System#nanoTime()} value by which the runnable should have finished.
+     * @since 1.0.5
+     */
+    public void schedule(Runnable runnable, int priority, long deadlineNanos) {
+        scheduleUnkeyed0(new SimpleTask(runnable, priority, deadlineNanos));
+        wakeup(1);
+    }
+
+    /**
+     * Schedules a task without locks on the unkeyed fast lane. The task is queued as it is,
+     * without a queue handle, and runs without any lock bookkeeping. It is ordered with all other
+     * tasks by priority, but {@link #notifyPriorityChange(Task)} has no effect on it.
+     *
+     * @param task Task to schedule; it must have no lock tokens.
+     * @throws IllegalArgumentException if the task has lock tokens
+     * @since 1.0.5
+     */
+    public void scheduleUnkeyed(Task task) {
+        if (task.lockTokens().length != 0) {
+            throw new IllegalArgumentException("Tasks with lock tokens cannot be scheduled unkeyed");
+        }
+        scheduleUnkeyed0(task);
+        wakeup(1);
+    }
+
+    /**
+     * Creates a task group that shares this manager's workers with the other groups in proportion
+     * to its weight. Tasks scheduled directly on the manager form the {@link #defaultGroup()}.
+     *
+     * @param name   Name of the group, unique within this manager.
+     * @param weight Share of the group relative to the others, between 1 and {@link TaskGroup#MAX_WEIGHT}.
+     * @return the new group
+     * @throws IllegalArgumentException if the weight is out of range or the name is taken
+     * @since 1.0.5
+     */
+    public synchronized TaskGroup createGroup(String name, int weight) {
+        Objects.requireNonNull(name, "Group name must not be null");
+        if (weight <= 0 || weight > TaskGroup.MAX_WEIGHT) {
+            throw new IllegalArgumentException("Group weight must be between 1 and " + TaskGroup.MAX_WEIGHT + ", was " + weight);
+        }
+        TaskGroup[] current = groups;
+        if (defaultGroup.name().equals(name)) {
+            throw new IllegalArgumentException("Group " + name + " already exists");
+        }
+        for (TaskGroup group : current) {
+            if (group.name().equals(name)) {
+                throw new IllegalArgumentException("Group " + name + " already exists");
+            }
+        }
+
+        // Starts at the current virtual time, like a group coming back from idle
+        TaskGroup group = new TaskGroup(this, name, weight, new DynamicPriorityQueue<>(priorityCount,
+                globalWorkQueue.agingNanos(), globalWorkQueue.ringCapacity()), virtualClock.get());
+        if (handoffQueue == null) {
+            handoffQueue = new DynamicPriorityQueue<>(priorityCount, 0L, globalWorkQueue.ringCapacity());
+        }
+        TaskGroup[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = group;
+        groups = updated;
+        return group;
+    }
+
+    /**
+     * Returns the group of the tasks scheduled directly on this manager, weighted by
+     * {@link ExecutorConfig#defaultGroupWeight()}.
+     *
+     * @return the default group
+     * @since 1.0.5
+     */
+    public TaskGroup defaultGroup() {
+        return defaultGroup;
+    }
+
+    /**
+     * Schedules a runnable and returns a future of its completion. Continuations registered on the
+     * future run on this manager.
+     *
+     * @param runnable Runnable to execute.
+     * @param priority Priority level of execution.
+     * @return a future completing once the runnable has run
+     * @since 1.0.5
+     */
+    public TaskFuture<Void> submit(Runnable runnable, int priority) {
+        return submit0(new TaskFuture.Submitted<>(this, runnable, priority, NO_LOCKS));
+    }
+
+    /**
+     * Schedules a callable and returns a future of its result. Continuations registered on the
+     * future run on this manager.
+     *
+     * @param callable Callable to execute.
+     * @param priority Priority level of execution.
+     * @param <T>      Type of the result.
+     * @return a future of the callable's result
+     * @since 1.0.5
+     */
+    public <T> TaskFuture<T> submit(Callable<T> callable, int priority) {
+        return submit0(new TaskFuture.Submitted<>(this, callable, priority, NO_LOCKS));
+    }
+
+    /**
+     * Schedules a runnable holding the given locks while it runs, and returns a future of its
+     * completion. The locks are released before the future completes.
+     *
+     * @param runnable   Runnable to execute.
+     * @param priority   Priority level of execution.
+     * @param lockTokens Locks the runnable holds.
+     * @return a future completing once the runnable has run
+     * @since 1.0.5
+     */
+    public TaskFuture<Void> submit(Runnable runnable, int priority, LockToken... lockTokens) {
+        return submit0(new TaskFuture.Submitted<>(this, runnable, priority, lockTokens));
+    }
+
+    /**
+     * Schedules a callable holding the given locks while it runs, and returns a future of its
+     * result. The locks are released before the future completes.
+     *
+     * @param callable   Callable to execute.
+     * @param priority   Priority level of execution.
+     * @param lockTokens Locks the callable holds.
+     * @param <T>        Type of the result.
+     * @return a future of the callable's result
+     * @since 1.0.5
+     */
+    public <T> TaskFuture<T> submit(Callable<T> callable, int priority, LockToken... lockTokens) {
+        return submit0(new TaskFuture.Submitted<>(this, callable, priority, lockTokens));
+    }
+
+    /**
+     * Schedules a runnable to run once the delay has elapsed. The runnable enters the queue at
+     * the given priority on the first timer tick at or after its deadline, so it never runs
+     * early. Timers still pending when the manager shuts down never run.
+     *
+     * @param runnable Runnable to execute.
+     * @param delay    Delay from now; zero or negative runs it on the next tick.
+     * @param unit     Unit of the delay.
+     * @param priority Priority level of execution.
+     * @return a handle whose {@link Cancellable#cancel()} removes the runnable in O(1)
+     * @throws IllegalArgumentException if the priority is outside this manager's levels
+     * @since 1.0.5
+     */
+    public Cancellable scheduleAfter(Runnable runnable, long delay, TimeUnit unit, int priority) {
+        return scheduleAt(runnable, deadlineAfter(delay, unit), priority);
+    }
+
+    /**
+     * Schedules a runnable to run at a point of the {@link System#nanoTime()} clock.
+     *
+     * @param runnable  Runnable to execute.
+     * @param timeNanos {@link System#nanoTime()} value from which the runnable may run.
+     * @param priority  Priority level of execution.
+     * @return a handle whose {@link Cancellable#cancel()} removes the runnable in O(1)
+     * @throws IllegalArgumentException if the priority is outside this manager's levels
+     * @see #scheduleAfter(Runnable, long, TimeUnit, int)
+     * @since 1.0.5
+     */
+    public Cancellable scheduleAt(Runnable runnable, long timeNanos, int priority) {
+        checkPriority(priority);
+        ScheduledTask scheduled = new ScheduledTask(timers, runnable, priority, timeNanos, 0L);
+        timers.add(scheduled);
+        return scheduled;
+    }
+
+    /**
+     * Schedules a task to be queued once the delay has elapsed, at the priority it reports now.
+     * Its locks are acquired when it is dequeued, like those of any other task, and
+     * {@link #notifyPriorityChange(Task)} has no effect on it.
+     *
+     * @param task  Task to schedule.
+     * @param delay Delay from now; zero or negative queues it on the next tick.
+     * @param unit  Unit of the delay.
+     * @return a handle whose {@link Cancellable#cancel()} keeps the task from running
+     * @throws IllegalArgumentException if the task's priority is outside this manager's levels
+     * @see #scheduleAfter(Runnable, long, TimeUnit, int)
+     * @since 1.0.5
+     */
+    public Cancellable scheduleAfter(Task task, long delay, TimeUnit unit) {
+        checkPriority(task.priority());
+        ScheduledTask scheduled = new ScheduledTask(timers, task, deadlineAfter(delay, unit));
+        timers.add(scheduled);
+        return scheduled;
+    }
+
+    /**
+     * Schedules a runnable to run periodically. Runs are due at fixed multiples of the period
+     * after the first deadline, regardless of how long each one takes, and never overlap: a run
+     * that overruns its period delays the next one instead. A run that throws ends the schedule.
+     *
+     * @param runnable     Runnable to execute.
+     * @param initialDelay Delay before the first run.
+     * @param period       Interval between the deadlines of consecutive runs.
+     * @param unit         Unit of the delay and period.
+     * @param priority     Priority level of execution.
+     * @return a handle whose {@link Cancellable#cancel()} stops further runs
+     * @throws IllegalArgumentException if the period is not positive or the priority is outside
+     *                                  this manager's levels
+     * @since 1.0.5
+     */
+    public Cancellable scheduleAtFixedRate(Runnable runnable, long initialDelay, long period, TimeUnit unit,
+                                           int priority) {
+        if (period <= 0L) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        checkPriority(priority);
+        long periodNanos = Math.min(unit.toNanos(period), MAX_DELAY_NANOS);
+        ScheduledTask scheduled = new ScheduledTask(timers, runnable, priority, deadlineAfter(initialDelay, unit),
+                periodNanos);
+        timers.add(scheduled);
+        return scheduled;
+    }
+
+    /**
+     * Returns the number of delayed and periodic tasks waiting for their deadline. Cancelled
+     * tasks leave the count within about a timer tick.
+     *
+     * @return the number of pending timers
+     * @since 1.0.5
+     */
+    public int pendingTimers() {
+        return timers.pending();
+    }
+
+    private static long deadlineAfter(long delay, TimeUnit unit) {
+        return System.nanoTime() + Math.min(Math.max(unit.toNanos(delay), 0L), MAX_DELAY_NANOS);
+    }
+
+    private void checkPriority(int priority) {
+        // Checked up front, the wheel would only fail on the worker that queues the expired task
+        if (priority < 0 || priority >= priorityCount) {
+            throw new IllegalArgumentException("Priority " + priority + " is outside the executor's "
+                    + priorityCount + " priority levels");
+        }
+    }
+
+    /**
+     * Schedules a batch of tasks with one enqueue pass and a single wakeup.
+     * Tasks are inserted per priority level in bulk and at most one worker is woken per task.
+     * If any task is rejected, none of the batch is scheduled.
+     *
+     * @param tasks Tasks to schedule.
+     * @throws IllegalArgumentException if a task is still queued, or listed more than once, checked as
+     *                                  in {@link #schedule(Task)}
+     * @since 1.0.5
+     */
+    public void scheduleAll(Task[] tasks) {
+        if (tasks.length == 0) {
+            return;
+        }
+        if (deadlineQueue != null && hasDeadline(tasks)) {
+            scheduleAllByDeadline(tasks);
+            return;
+        }
+        DynamicPriorityQueue<Task> queue = targetQueue();
+        @SuppressWarnings("unchecked")
+        DynamicPriorityQueue.Handle<Task>[] handles = new DynamicPriorityQueue.Handle[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            handles[i] = newHandle(queue, tasks[i]);
+        }
+        // A task listed twice took the later handle, and its earlier one would be queued as well
+        for (int i = 0; i < tasks.length; i++) {
+            if (tasks[i] instanceof PriorityTask priorityTask && priorityTask.queueHandle != handles[i]) {
+                throw new IllegalArgumentException("Task is listed more than once in the batch");
+            }
+        }
+
+        if (metrics == null) {
+            queue.offerAll(handles, 0, handles.length, Task::priority);
+        } else {
+            for (Task task : tasks) {
+                metrics.onEnqueue(task);
+            }
+            try {
+                queue.offerAll(handles, 0, handles.length, Task::priority);
+            } catch (RuntimeException rejected) {
+                for (Task task : tasks) {
+                    metrics.onRejected(task);
+                }
+                throw rejected;
+            }
+        }
+        wakeup(Math.min(tasks.length, workerThreads.length));
+    }
+
+    private static boolean hasDeadline(Task[] tasks) {
+        for (Task task : tasks) {
+            if (task.deadlineNanos() != Task.NO_DEADLINE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a batch between the deadline queue and the priority queues, keeping the promise that
+     * a rejected batch is not scheduled at all.
+     */
+    private void scheduleAllByDeadline(Task[] tasks) {
+        int withoutDeadline = 0;
+        for (Task task : tasks) {
+            if (task.deadlineNanos() != Task.NO_DEADLINE) {
+                checkPriority(task.priority());
+            } else {
+                withoutDeadline++;
+            }
+        }
+
+        if (withoutDeadline != 0) {
+            Task[] rest = new Task[withoutDeadline];
+            int count = 0;
+            for (Task task : tasks) {
+                if (task.deadlineNanos() == Task.NO_DEADLINE) {
+                    rest[count++] = task;
+                }
+            }
+            // Rejects before any deadline task is queued
+            scheduleAll(rest);
+        }
+        for (Task task : tasks) {
+            offerDeadline(task);
+        }
+        wakeup(Math.min(tasks.length - withoutDeadline, workerThreads.length));
+    }
+
+    /**
+     * Schedules a collection of tasks with one enqueue pass and a single wakeup.
+     *
+     * @param tasks Tasks to schedule.
+     * @see #scheduleAll(Task[])
+     * @since 1.0.5
+     */
+    public void scheduleAll(Collection<? extends Task> tasks) {
+        scheduleAll(tasks.toArray(new Task[0]));
+    }
+
+    /**
+     * Schedules a batch of runnables sharing the same priority.
+     *
+     * @param runnables Runnables to execute.
+     * @param priority  Priority level of execution.
+     * @see #scheduleAll(Task[])
+     * @since 1.0.5
+     */
+    public void scheduleAll(Runnable[] runnables, int priority) {
+        if (runnables.length == 0) {
+            return;
+        }
+
+        Task[] tasks = new Task[runnables.length];
+        for (int i = 0; i < runnables.length; i++) {
+            tasks[i] = new SimpleTask(runnables[i], priority);
+        }
+
+        // Runnables take the unkeyed lane, like single ones
+        DynamicPriorityQueue<Task> queue = targetQueue();
+        if (metrics != null) {
+            for (Task task : tasks) {
+                metrics.onEnqueue(task);
+            }
+        }
+        queue.offerAllUnkeyed(tasks, 0, tasks.length, Task::priority);
+        wakeup(Math.min(tasks.length, workerThreads.length));
+    }
+
+    /**
+     * Provides an Executor interface bound to a fixed priority.
+     *
+     * @param priority Priority level for execution.
+     * @return An {@link Executor} that submits tasks at the given priority.
+     */
+    public Executor executor(int priority) {
+        return runnable -> schedule(runnable, priority);
+    }
+
+    /**
+     * Notifies the manager that a task's priority has changed, updating its position in the queue.
+     * O(1) for a {@link PriorityTask}. Other tasks are looked up in the index of each queue with
+     * {@link ExecutorConfig#indexTasks()}, one O(1) lookup per task group and worker-local queue;
+     * without it they are searched for in the levels of each queue.
+     *
+     * @param task Task whose priority has changed.
+     */
+    public void notifyPriorityChange(Task task) {
+        int priority = task.priority();
+        if (task instanceof PriorityTask priorityTask) {
+            DynamicPriorityQueue.Handle<Task> handle = priorityTask.queueHandle;
+            // A retiring worker's queue refuses moves and requeues its tasks, so follow the task
+            while (handle != null && !handle.changePriority(priority)) {
+                DynamicPriorityQueue.Handle<Task> current = priorityTask.queueHandle;
+                if (current == handle) {
+                    break;
+                }
+                handle = current;
+            }
+            return;
+        }
+
+        if (changePriority(globalWorkQueue, task, priority)) {
+            return;
+        }
+        for (TaskGroup group : groups) {
+            if (changePriority(group.queue, task, priority)) {
+                return;
+            }
+        }
+        if (executionMode != ExecutionMode.WORK_STEALING) {
+            return;
+        }
+
+        for (WorkerThread thread : workerThreads) {
+            if (changePriority(thread.localQueue, task, priority)) {
+                return;
+            }
+        }
+    }
+
+    private boolean changePriority(DynamicPriorityQueue<Task> queue, Task task, int priority) {
+        if (!indexTasks) {
+            return queue.changePriority(task, priority);
+        }
+        // Tasks are indexed when queued, so a queue that does not index the task does not hold it
+        DynamicPriorityQueue.Handle<Task> handle = queue.handleOf(task);
+        return handle != null && handle.changePriority(priority);
+    }
+
+    /**
+     * Checks if there are any tasks pending in the work queue.
+     *
+     * @return {@code true} if tasks are pending; {@code false} otherwise.
+     */
+    public boolean hasPendingTasks() {
+        if ((deadlineQueue != null && !deadlineQueue.isEmpty()) || hasOwnQueuedTasks()) {
+            return true;
+        }
+        TaskGroup[] groups = this.groups;
+        if (groups.length != 0 && handoffQueue.peekPriority() >= 0) {
+            return true;
+        }
+        for (TaskGroup group : groups) {
+            if (group.queue.peekPriority() >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the global queue or, in work-stealing mode, any local queue holds a task
+     */
+    private boolean hasOwnQueuedTasks() {
+        if (globalWorkQueue.peekPriority() >= 0) {
+            return true;
+        }
+
+        if (executionMode == ExecutionMode.WORK_STEALING) {
+            for (WorkerThread thread : workerThreads) {
+                if (thread.localQueue.peekPriority() >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes a snapshot of this manager's metrics without pausing any worker.
+     *
+     * @return the current metrics
+     * @throws IllegalStateException if metrics were not enabled in the {@link ExecutorConfig}
+     * @since 1.0.5
+     */
+    public ExecutorMetrics metrics() {
+        if (metrics == null) {
+            throw new IllegalStateException("Metrics are not enabled for this executor");
+        }
+
+        WorkerThread[] workers = workerThreads;
+        TaskGroup[] groups = this.groups;
+        int[] queueDepth = new int[priorityCount];
+        for (int level = 0; level < priorityCount; level++) {
+            queueDepth[level] = globalWorkQueue.size(level);
+            if (executionMode == ExecutionMode.WORK_STEALING) {
+                for (WorkerThread thread : workers) {
+                    queueDepth[level] += thread.localQueue.size(level);
+                }
+            }
+            if (groups.length != 0) {
+                queueDepth[level] += handoffQueue.size(level);
+            }
+            for (TaskGroup group : groups) {
+                queueDepth[level] += group.queue.size(level);
+            }
+        }
+        return metrics.snapshot(queueDepth, deadlineQueue != null ? deadlineQueue.size() : 0, workers);
+    }
+
+    /**
+     * Returns the execution mode this manager was created with.
+     *
+     * @return the execution mode
+     * @since 1.0.5
+     */
+    public ExecutionMode executionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Returns the number of priority levels of this manager's queues.
+     *
+     * @return the priority count
+     */
+    int priorityCount() {
+        return priorityCount;
+    }
+
+    /**
+     * Creates the local queue for a worker of this manager.
+     *
+     * @return a new local queue, or {@code null} if the execution mode does not use them
+     */
+    DynamicPriorityQueue<Task> createLocalQueue() {
+        return executionMode == ExecutionMode.WORK_STEALING ? new DynamicPriorityQueue<>(priorityCount, globalWorkQueue.agingNanos(),
+                globalWorkQueue.ringCapacity()) : null;
+    }
+
+    private void schedule0(Task task) {
+        if (offerDeadline(task)) {
+            return;
+        }
+        DynamicPriorityQueue<Task> queue = targetQueue();
+        if (metrics == null) {
+            queue.offer(newHandle(queue, task), task.priority());
+            return;
+        }
+
+        // Timestamp first, a worker may take the task as soon as it is queued
+        metrics.onEnqueue(task);
+        try {
+            queue.offer(newHandle(queue, task), task.priority());
+        } catch (RuntimeException rejected) {
+            metrics.onRejected(task);
+            throw rejected;
+        }
+    }
+
+    private <T> TaskFuture<T> submit0(TaskFuture.Submitted<T> task) {
+        // A task without locks is its own queue entry, like any unkeyed task
+        if (task.lockTokens().length == 0) {
+            scheduleUnkeyed0(task);
+        } else {
+            schedule0(task);
+        }
+        wakeup(1);
+        return task;
+    }
+
+    /**
+     * Schedules a task in a group's queue and wakes a worker.
+     *
+     * @param group   Group created on this manager.
+     * @param task    Task to schedule.
+     * @param unkeyed Whether the task takes the unkeyed lane; it must have no lock tokens.
+     */
+    void scheduleInGroup(TaskGroup group, Task task, boolean unkeyed) {
+        if (group == defaultGroup) {
+            if (unkeyed) {
+                scheduleUnkeyed0(task);
+            } else {
+                schedule0(task);
+            }
+            wakeup(1);
+            return;
+        }
+
+        if (!offerDeadline(task)) {
+            DynamicPriorityQueue<Task> queue = group.queue;
+            if (metrics != null) {
+                metrics.onEnqueue(task);
+            }
+            try {
+                if (unkeyed) {
+                    queue.offerUnkeyed(task, task.priority());
+                } else {
+                    queue.offer(newHandle(queue, task), task.priority());
+                }
+            } catch (RuntimeException rejected) {
+                if (metrics != null) {
+                    metrics.onRejected(task);
+                }
+                throw rejected;
+            }
+        }
+        wakeup(1);
+    }
+
+    private void scheduleUnkeyed0(Task task) {
+        if (offerDeadline(task)) {
+            return;
+        }
+        if (metrics == null) {
+            targetQueue().offerUnkeyed(task, task.priority());
+            return;
+        }
+
+        metrics.onEnqueue(task);
+        try {
+            targetQueue().offerUnkeyed(task, task.priority());
+        } catch (RuntimeException rejected) {
+            metrics.onRejected(task);
+            throw rejected;
+        }
+    }
+
+    /**
+     * Queues the tasks the timer wheel found expired, in deadline order, and wakes a worker per
+     * task. Called by the worker advancing the wheel.
+     *
+     * @param tasks Expired tasks; the array is reused by the wheel.
+     * @param count Number of leading tasks to queue.
+     */
+    void scheduleExpired(Task[] tasks, int count) {
+        boolean unkeyedOnly = metrics == null && deadlineQueue == null;
+        for (int i = 0; i < count && unkeyedOnly; i++) {
+            unkeyedOnly = tasks[i].lockTokens().length == 0;
+        }
+
+        // Expired tasks belong to no worker, so they skip the advancing worker's local queue
+        if (unkeyedOnly) {
+            globalWorkQueue.offerAllUnkeyed(tasks, 0, count, Task::priority);
+        } else {
+            for (int i = 0; i < count; i++) {
+                Task task = tasks[i];
+                if (offerDeadline(task)) {
+                    continue;
+                }
+                if (metrics != null) {
+                    metrics.onEnqueue(task);
+                }
+                if (task.lockTokens().length == 0) {
+                    globalWorkQueue.offerUnkeyed(task, task.priority());
+                } else {
+                    requeue(globalWorkQueue, task);
+                }
+            }
+        }
+        wakeup(Math.min(count, workerThreads.length));
+    }
+
+    /**
+     * Called when a new timer became the earliest, so the worker timing the wheel must shorten
+     * its park, or a worker must be woken to take that role.
+     *
+     * @param timekeeper The parked worker timing the wheel, or {@code null} if there is none.
+     */
+    void timerDeadlineLowered(WorkerThread timekeeper) {
+        if (timekeeper != null) {
+            LockSupport.unpark(timekeeper);
+        } else {
+            wakeup(1);
+        }
+    }
+
+    /**
+     * Queues a task with a deadline on the deadline queue, if the policy orders tasks by deadline.
+     *
+     * @param task Task to schedule.
+     * @return {@code true} if the task was queued, {@code false} if it belongs in a priority queue
+     */
+    private boolean offerDeadline(Task task) {
+        if (deadlineQueue == null) {
+            return false;
+        }
+        long deadline = task.deadlineNanos();
+        if (deadline == Task.NO_DEADLINE) {
+            return false;
+        }
+
+        // The priority is only used if the task is demoted later, when the caller could not be told
+        checkPriority(task.priority());
+        if (metrics != null) {
+            metrics.onEnqueue(task);
+        }
+        deadlineQueue.offer(task, deadline);
+        return true;
+    }
+
+    /**
+     * Creates the queue handle for a task about to be queued, and hands it to the task before
+     * any worker can dequeue it when it is a {@link PriorityTask}. Other tasks are indexed by the
+     * queue with {@link ExecutorConfig#indexTasks()}, which rejects them while they are still
+     * queued there.
+     */
+    private DynamicPriorityQueue.Handle<Task> newHandle(DynamicPriorityQueue<Task> queue, Task task) {
+        // A waiter that was handed a lock is queued in place of its task
+        if (task instanceof LockWaiter waiter) {
+            DynamicPriorityQueue.Handle<Task> handle = queue.handle(task);
+            if (waiter.task instanceof PriorityTask priorityTask) {
+                priorityTask.queueHandle = handle;
+            }
+            return handle;
+        }
+        if (task instanceof PriorityTask priorityTask) {
+            if (priorityTask.isQueued()) {
+                throw new IllegalArgumentException("Task is already queued");
+            }
+            DynamicPriorityQueue.Handle<Task> handle = queue.handle(task);
+            priorityTask.queueHandle = handle;
+            return handle;
+        }
+        return indexTasks ? queue.indexedHandle(task) : queue.handle(task);
+    }
+
+    /**
+     * Queues a task the manager moves on its own, where no caller can be told that the task is
+     * still queued elsewhere. Such a task is queued once more, without an index or handle of its own.
+     */
+    private void requeue(DynamicPriorityQueue<Task> queue, Task task) {
+        try {
+            queue.offer(newHandle(queue, task), task.priority());
+        } catch (IllegalArgumentException alreadyQueued) {
+            queue.offer(queue.handle(task), task.priority());
+        }
+    }
+
+    /**
+     * Selects the queue that work submitted from the current thread goes to.
+     *
+     * @return the caller's local queue when it is one of our workers in work-stealing mode,
+     *         otherwise the global queue
+     */
+    private DynamicPriorityQueue<Task> targetQueue() {
+        // Work scheduled from one of our own workers stays on that worker's local queue
+        if (executionMode == ExecutionMode.WORK_STEALING
+                && Thread.currentThread() instanceof WorkerThread worker
+                && worker.executorManager == this
+                && worker.index >= 0) {
+            return worker.localQueue;
+        }
+        return globalWorkQueue;
+    }
+
+    /**
+     * Unparks up to {@code count} parked workers, one per new task.
+     * Costs a single volatile read when no worker is parked, two in an elastic pool, whose
+     * controller is signalled when there are more tasks than parked workers.
+     * <p>
+     * With workers placed on more than one socket, a worker wakes the parked workers of its own
+     * socket first; other producers start at a random socket.
+     *
+     * @param count Maximum number of workers to wake.
+     */
+    private void wakeup(int count) {
+        if (count > 0 && parkedCount.get() > 0) {
+            int sockets = parkedWorkers.length;
+            int first = 0;
+            if (sockets > 1) {
+                first = Thread.currentThread() instanceof WorkerThread producer && producer.executorManager == this
+                        && producer.socket >= 0 ? producer.socket : ThreadLocalRandom.current().nextInt(sockets);
+            }
+            for (int i = 0; i < sockets && count > 0 && parkedCount.get() > 0; i++) {
+                ParkedWorkers parked = parkedWorkers[(first + i) % sockets];
+                WorkerThread worker;
+                while (count > 0 && (worker = parked.workers.poll()) != null) {
+                    // Entries of workers that already left the park are skipped
+                    if (worker.parked.compareAndSet(true, false)) {
+                        parkedCount.decrementAndGet();
+                        LockSupport.unpark(worker);
+                        count--;
+                    }
+                }
+            }
+        }
+        if (count > 0 && poolController != null) {
+            poolController.signal();
+        }
+    }
+
+    /**
+     * Dequeues the next executable task and starts it on a virtual thread, provided the
+     * in-flight limit allows another task. Priority ordering is decided at the moment a permit
+     * becomes available, not when the task was submitted.
+     *
+     * @param dispatcher The worker dispatching tasks.
+     * @return {@code true} if a task was started, {@code false} if there was no task or no permit.
+     */
+    boolean dispatchToVirtualThread(WorkerThread dispatcher) {
+        if (!virtualThreadPermits.tryAcquire()) {
+            return false;
+        }
+
+        Task task = pollExecutableTask(dispatcher);
+        if (task == null) {
+            virtualThreadPermits.release();
+            return false;
+        }
+        TaskGroup group = dispatcher.group;
+        long groupCharge = dispatcher.groupCharge;
+        dispatcher.group = null;
+
+        try {
+            Thread thread = virtualThreadFactory.newThread(() -> {
+                try {
+                    if (group == null) {
+                        WorkerThread.executeTask(this, task, null);
+                    } else {
+                        WorkerThread.executeCharged(this, task, null, group, groupCharge);
+                    }
+                } finally {
+                    // A freed permit is new work for a dispatcher parked on the limit
+                    virtualThreadPermits.release();
+                    wakeup(1);
+                }
+            });
+            threadInitializer.accept(thread);
+            thread.start();
+        } catch (Throwable startFailure) {
+            virtualThreadPermits.release();
+            WorkerThread.failTask(this, task, startFailure, new LockRelease(this).arm(task));
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a worker that is about to park could make progress instead.
+     * In virtual-thread mode queued tasks only count while the in-flight limit has room.
+     *
+     * @return {@code true} if there is work the worker could take right now
+     */
+    private boolean hasDispatchableWork() {
+        if (timers.isDue()) {
+            return true;
+        }
+        if (virtualThreadPermits != null && virtualThreadPermits.availablePermits() == 0) {
+            return false;
+        }
+        return hasPendingTasks();
+    }
+
+    /**
+     * Returns the idle strategy shared by this manager's workers.
+     *
+     * @return the idle strategy
+     */
+    IdleStrategy idleStrategy() {
+        return idleStrategy;
+    }
+
+    /**
+     * Parks a worker until a producer signals it, the timeout elapses or the worker shuts down.
+     * <p>
+     * The worker publishes itself as parked before re-checking for pending work, while producers
+     * enqueue (or free a virtual-thread permit) before checking for parked workers, so either side
+     * always observes the other and no wakeup is lost.
+     * <p>
+     * The first worker to park while no other is parked becomes the timekeeper: it parks no
+     * longer than until the next timer is due, and producers of an earlier timer unpark it.
+     *
+     * @param worker    The calling worker.
+     * @param parkNanos Park timeout in nanoseconds, or {@link IdleStrategy#PARK_INDEFINITELY}.
+     */
+    void parkWorker(WorkerThread worker, long parkNanos) {
+        worker.parked.set(true);
+        ParkedWorkers parked = parkedWorkers[worker.socket >= 0 && parkedWorkers.length > 1 ? worker.socket : 0];
+        parked.workers.offer(worker);
+        parkedCount.incrementAndGet();
+        // Claimed after publishing, so a producer adding an earlier timer sees either the role or the registration
+        boolean timekeeper = timers.timekeeper.compareAndSet(null, worker);
+
+        if (!hasDispatchableWork() && !worker.isShutdown()) {
+            long deadline = parkNanos == IdleStrategy.PARK_INDEFINITELY ? 0L : System.nanoTime() + parkNanos;
+            while (worker.parked.get() && !worker.isShutdown() && !worker.isInterrupted()) {
+                long remaining = deadline == 0L ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (timekeeper) {
+                    remaining = Math.min(remaining, timers.nanosUntilDue());
+                }
+                if (remaining <= 0L) {
+                    break;
+                }
+                if (remaining == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        }
+
+        if (timekeeper) {
+            timers.timekeeper.set(null);
+        }
+        // Leaving without a signal: withdraw the registration ourselves
+        if (worker.parked.compareAndSet(true, false)) {
+            parkedCount.decrementAndGet();
+            parked.workers.remove(worker);
+        }
+        if (timekeeper) {
+            long untilDue = timers.nanosUntilDue();
+            if (untilDue > 0L && untilDue != Long.MAX_VALUE) {
+                // Woken for other work before the next timer: hand the role to another parked worker
+                wakeup(1);
+            }
+        }
+    }
+
+    /**
+     * The parked workers of one socket, or of all workers when they are not placed. A holder rather
+     * than a queue subclass, so it can form an array without taking on the queue's serializability.
+     */
+    private static final class ParkedWorkers {
+        final ConcurrentLinkedQueue<WorkerThread> workers = new ConcurrentLinkedQueue<>();
+    }
+}
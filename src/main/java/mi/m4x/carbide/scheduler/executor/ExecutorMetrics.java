@@ -0,0 +1,245 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point-in-time snapshot of an {@link ExecutorManager}'s metrics, taken while the scheduler keeps
+ * running. Values read from different counters are not captured atomically with each other, but
+ * each one is exact for the moment it was read.
+ * <p>
+ * Queue wait and run time are sampled for about one task in 64, chosen by identity hash: a task
+ * instance that is scheduled repeatedly is either always or never sampled.
+ * <p>
+ * Metrics are opt-in through {@link ExecutorConfig.Builder#metricsEnabled(boolean)} and read with
+ * {@link ExecutorManager#metrics()}:
+ *
+ * <pre>{@code
+ * ExecutorMetrics metrics = manager.metrics();
+ * long p99 = metrics.runTime(0).percentileNanos(99);
+ * }</pre>
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class ExecutorMetrics {
+
+    private final long uptimeNanos;
+    private final int[] queueDepth;
+    private final LatencyHistogram[] queueWait;
+    private final LatencyHistogram[] runTime;
+    private final Map<Class<?>, LockContention> lockContention;
+    private final long handedOverTasks;
+    private final double[] workerBusyRatios;
+    private final Deadlines deadlines;
+
+    ExecutorMetrics(long uptimeNanos, int[] queueDepth, LatencyHistogram[] queueWait, LatencyHistogram[] runTime,
+                    Map<Class<?>, LockContention> lockContention, long handedOverTasks, double[] workerBusyRatios,
+                    Deadlines deadlines) {
+        this.uptimeNanos = uptimeNanos;
+        this.queueDepth = queueDepth;
+        this.queueWait = queueWait;
+        this.runTime = runTime;
+        this.lockContention = Collections.unmodifiableMap(lockContention);
+        this.handedOverTasks = handedOverTasks;
+        this.workerBusyRatios = workerBusyRatios;
+        this.deadlines = deadlines;
+    }
+
+    /**
+     * @return nanoseconds since metrics recording started
+     */
+    public long uptimeNanos() {
+        return uptimeNanos;
+    }
+
+    /**
+     * @return the number of priority levels covered by the per-priority metrics
+     */
+    public int priorityCount() {
+        return queueDepth.length;
+    }
+
+    /**
+     * Returns the number of tasks queued at a priority level, across the global queue and all
+     * worker-local queues. Tasks waiting on a lock are not queued and not counted, tasks in the
+     * deadline queue are counted by {@link Deadlines#queued()}.
+     *
+     * @param priority the priority level
+     * @return the queue depth at that level
+     */
+    public int queueDepth(int priority) {
+        return queueDepth[priority];
+    }
+
+    /**
+     * Returns how long sampled tasks of a priority level waited in a queue before a worker took
+     * them.
+     *
+     * @param priority the priority level
+     * @return the queue wait distribution
+     */
+    public LatencyHistogram queueWait(int priority) {
+        return queueWait[priority];
+    }
+
+    /**
+     * Returns how long sampled tasks of a priority level ran, including any time spent in the task
+     * after it released its locks.
+     *
+     * @param priority the priority level
+     * @return the run time distribution
+     */
+    public LatencyHistogram runTime(int priority) {
+        return runTime[priority];
+    }
+
+    /**
+     * Returns lock contention grouped by the class of the token that was unavailable. Shared
+     * tokens are reported under the class of the token they wrap.
+     *
+     * @return an unmodifiable map from token class to its contention
+     */
+    public Map<Class<?>, LockContention> lockContention() {
+        return lockContention;
+    }
+
+    /**
+     * @return the number of waiting tasks that released locks were handed to and rescheduled
+     */
+    public long handedOverTasks() {
+        return handedOverTasks;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int workerCount() {
+        return workerBusyRatios.length;
+    }
+
+    /**
+     * Returns the fraction of its lifetime a worker spent finding and running tasks; the rest was
+     * spent idling after a poll found nothing. An idle period still in progress counts as busy
+     * until it ends. Dispatchers in {@link ExecutionMode#VIRTUAL_THREADS} mode count dispatching as
+     * busy, but are idle whenever the virtual-thread limit is reached.
+     *
+     * @param worker the worker index
+     * @return the busy ratio, between 0 and 1
+     */
+    public double workerBusyRatio(int worker) {
+        return workerBusyRatios[worker];
+    }
+
+    /**
+     * Returns how the tasks with a {@link Task#deadlineNanos() deadline} fared, under either
+     * {@link QueueingPolicy}.
+     *
+     * @return the deadline counters
+     */
+    public Deadlines deadlines() {
+        return deadlines;
+    }
+
+    /**
+     * Contention on locks of one token class.
+     */
+    public static final class LockContention {
+        private final long waits;
+        private final LatencyHistogram waitTime;
+
+        LockContention(long waits, LatencyHistogram waitTime) {
+            this.waits = waits;
+            this.waitTime = waitTime;
+        }
+
+        /**
+         * @return how often a task found such a lock unavailable and had to wait for it
+         */
+        public long waits() {
+            return waits;
+        }
+
+        /**
+         * @return how long waiting tasks took to be handed the lock
+         */
+        public LatencyHistogram waitTime() {
+            return waitTime;
+        }
+
+        @Override
+        public String toString() {
+            return "waits=" + waits + " waitTime[" + waitTime + "]";
+        }
+    }
+
+    /**
+     * Outcome of the tasks with a deadline. A task counts once it finished running, or when it was
+     * dropped; a demoted task counts when it finally ran.
+     */
+    public static final class Deadlines {
+        private final long met;
+        private final long missed;
+        private final long dropped;
+        private final long demoted;
+        private final int queued;
+        private final LatencyHistogram lateness;
+
+        Deadlines(long met, long missed, long dropped, long demoted, int queued, LatencyHistogram lateness) {
+            this.met = met;
+            this.missed = missed;
+            this.dropped = dropped;
+            this.demoted = demoted;
+            this.queued = queued;
+            this.lateness = lateness;
+        }
+
+        /**
+         * @return how many tasks finished by their deadline
+         */
+        public long met() {
+            return met;
+        }
+
+        /**
+         * @return how many tasks finished after their deadline or were dropped
+         */
+        public long missed() {
+            return missed;
+        }
+
+        /**
+         * @return how many tasks were dropped under {@link MissedDeadlinePolicy#DROP}
+         */
+        public long dropped() {
+            return dropped;
+        }
+
+        /**
+         * @return how many tasks were demoted under {@link MissedDeadlinePolicy#DEMOTE}
+         */
+        public long demoted() {
+            return demoted;
+        }
+
+        /**
+         * @return the number of tasks in the deadline queue, 0 under {@link QueueingPolicy#PRIORITY}
+         */
+        public int queued() {
+            return queued;
+        }
+
+        /**
+         * @return by how much missed deadlines were missed, at the end of the run or when dropped
+         */
+        public LatencyHistogram lateness() {
+            return lateness;
+        }
+
+        @Override
+        public String toString() {
+            return "met=" + met + " missed=" + missed + " dropped=" + dropped + " demoted=" + demoted
+                    + " queued=" + queued + " lateness[" + lateness + "]";
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+/**
+ * Decides what a {@link WorkerThread} does after a poll found no executable task.
+ * <p>
+ * The strategy is consulted once per failed poll with the number of consecutive failed polls so far,
+ * and answers with how long the worker should park. A worker that parks registers itself with its
+ * {@link ExecutorManager}, so producers only pay for a wakeup when a worker is actually parked, and
+ * then unpark exactly one worker per new task instead of waking the whole pool.
+ * <p>
+ * Implementations must be stateless or thread-safe, as a single strategy is shared by all workers.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public interface IdleStrategy {
+
+    /** Returned by {@link #idle(int)} to poll again immediately without parking. */
+    long POLL_AGAIN = 0L;
+
+    /** Returned by {@link #idle(int)} to park until a producer signals new work. */
+    long PARK_INDEFINITELY = Long.MAX_VALUE;
+
+    /**
+     * Performs one idle step.
+     *
+     * @param idleRounds number of consecutive polls that found no work, starting at 0
+     * @return {@link #POLL_AGAIN}, {@link #PARK_INDEFINITELY} or a park timeout in nanoseconds
+     */
+    long idle(int idleRounds);
+
+    /**
+     * Parks immediately until signalled. Lowest CPU usage, highest wakeup latency.
+     *
+     * @return the blocking strategy
+     */
+    static IdleStrategy blocking() {
+        return Blocking.INSTANCE;
+    }
+
+    /**
+     * Never parks and keeps polling with {@link Thread#onSpinWait()} hints.
+     * Lowest latency, but every idle worker burns a full core.
+     *
+     * @return the busy-spin strategy
+     */
+    static IdleStrategy busySpin() {
+        return BusySpin.INSTANCE;
+    }
+
+    /**
+     * Spins for a number of rounds, then keeps polling while yielding the CPU between polls.
+     *
+     * @param spins number of spin rounds before yielding
+     * @return a spin-then-yield strategy
+     */
+    static IdleStrategy spinThenYield(int spins) {
+        return new SpinThenYield(spins);
+    }
+
+    /**
+     * Spins, then yields, then parks with exponentially growing timeouts capped at {@code maxParkNanos}.
+     * Timed parks are registered like indefinite ones, so a new task still wakes the worker early.
+     *
+     * @param spins        number of spin rounds
+     * @param yields       number of yield rounds after spinning
+     * @param minParkNanos first park timeout
+     * @param maxParkNanos upper bound of the park timeout
+     * @return a spin-then-park strategy
+     */
+    static IdleStrategy spinThenPark(int spins, int yields, long minParkNanos, long maxParkNanos) {
+        return new SpinThenPark(spins, yields, minParkNanos, maxParkNanos);
+    }
+
+    /**
+     * Parks until signalled on the first failed poll.
+     */
+    final class Blocking implements IdleStrategy {
+        private static final Blocking INSTANCE = new Blocking();
+
+        private Blocking() {}
+
+        @Override
+        public long idle(int idleRounds) {
+            return PARK_INDEFINITELY;
+        }
+    }
+
+    /**
+     * Spins forever without parking.
+     */
+    final class BusySpin implements IdleStrategy {
+        private static final BusySpin INSTANCE = new BusySpin();
+
+        private BusySpin() {}
+
+        @Override
+        public long idle(int idleRounds) {
+            Thread.onSpinWait();
+            return POLL_AGAIN;
+        }
+    }
+
+    /**
+     * Spins for a fixed number of rounds, then yields between polls.
+     */
+    final class SpinThenYield implements IdleStrategy {
+        private final int spins;
+
+        SpinThenYield(int spins) {
+            Assertions.assertTrue(spins >= 0, "Spin count must not be negative");
+            this.spins = spins;
+        }
+
+        @Override
+        public long idle(int idleRounds) {
+            if (idleRounds < spins) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+            return POLL_AGAIN;
+        }
+    }
+
+    /**
+     * Spins, yields, then parks with exponential backoff.
+     */
+    final class SpinThenPark implements IdleStrategy {
+        private final int spins;
+        private final int yields;
+        private final long minParkNanos;
+        private final long maxParkNanos;
+
+        SpinThenPark(int spins, int yields, long minParkNanos, long maxParkNanos) {
+            Assertions.assertTrue(spins >= 0 && yields >= 0, "Spin and yield counts must not be negative");
+            Assertions.assertTrue(minParkNanos > 0 && maxParkNanos >= minParkNanos, "Invalid park bounds");
+            this.spins = spins;
+            this.yields = yields;
+            this.minParkNanos = minParkNanos;
+            this.maxParkNanos = maxParkNanos;
+        }
+
+        @Override
+        public long idle(int idleRounds) {
+            if (idleRounds < spins) {
+                Thread.onSpinWait();
+                return POLL_AGAIN;
+            }
+            if (idleRounds < spins + yields) {
+                Thread.yield();
+                return POLL_AGAIN;
+            }
+
+            int shift = idleRounds - spins - yields;
+            if (shift >= Long.numberOfLeadingZeros(minParkNanos) - 1) {
+                return maxParkNanos;
+            }
+            return Math.min(minParkNanos << shift, maxParkNanos);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * A {@link LockToken} identified by a dense numeric index instead of {@code equals}/{@code hashCode}.
+ * <p>
+ * Indexed tokens are resolved through the {@link ExecutorManager}'s striped lock table: acquiring and
+ * releasing one is a single CAS on an array slot, with no hashing and no allocation unless another
+ * task has to wait. Two indexed tokens with the same index are the same lock. Distinct indices may
+ * share a stripe, which only causes false contention, never incorrect exclusion.
+ * <p>
+ * Dense indices (for example packed coordinates or sequential ids) spread best over the stripes.
+ * Tasks may mix indexed and ordinary tokens freely.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public interface IndexedLockToken extends LockToken {
+
+    /**
+     * Returns the index identifying this lock.
+     *
+     * @return the lock index
+     */
+    long lockIndex();
+}
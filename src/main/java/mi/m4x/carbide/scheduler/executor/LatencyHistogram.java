@@ -0,0 +1,128 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable snapshot of a latency distribution in nanoseconds.
+ * <p>
+ * Values are counted in power-of-two buckets: bucket {@code i} holds values in
+ * {@code [2^i, 2^(i+1))}, and bucket 0 also holds zero. Percentiles are therefore accurate to
+ * within a factor of two, which is enough to tell microseconds from milliseconds at a recording
+ * cost of one striped counter increment.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class LatencyHistogram {
+
+    /** Number of buckets, enough for any non-negative {@code long}. */
+    public static final int BUCKET_COUNT = 64;
+
+    static final LatencyHistogram EMPTY = new LatencyHistogram(new long[BUCKET_COUNT], 0L);
+
+    private final long[] buckets;
+    private final long count;
+    private final long totalNanos;
+
+    private LatencyHistogram(long[] buckets, long totalNanos) {
+        long count = 0;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        this.buckets = buckets;
+        this.count = count;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the sum of all recorded values in nanoseconds
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the mean of the recorded values in nanoseconds, or 0 if there are none
+     */
+    public double meanNanos() {
+        return count == 0 ? 0.0 : (double) totalNanos / count;
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket that contains it.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated value in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentileNanos(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        }
+        if (count == 0) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return i == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of values in a bucket.
+     *
+     * @param bucket the bucket index, from 0 to {@link #BUCKET_COUNT} - 1
+     * @return the count of values in {@code [2^bucket, 2^(bucket+1))}
+     */
+    public long bucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns",
+                count, meanNanos(), percentileNanos(50), percentileNanos(99));
+    }
+
+    /**
+     * Concurrent recording side of a histogram. Every bucket is a {@link LongAdder}, so recording
+     * threads do not contend on a shared cache line.
+     */
+    static final class Recorder {
+        private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+        private final LongAdder totalNanos = new LongAdder();
+
+        Recorder() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            // Timestamps taken on different threads may be slightly out of order
+            nanos = Math.max(0L, nanos);
+            buckets[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+            totalNanos.add(nanos);
+        }
+
+        LatencyHistogram snapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new LatencyHistogram(counts, totalNanos.sum());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * The callback a running task calls to release its locks. Only the first call releases them.
+ * <p>
+ * Workers normally create one per run, so a task may keep it and release its locks after
+ * {@link Task#run(Runnable)} returned. With {@link ExecutorConfig.Builder#reuseReleaseCallbacks(boolean)}
+ * every worker reuses a single instance instead, and locks still held when the task returns are
+ * released right away. A reused callback then only acts on its worker's thread: a task that handed
+ * it to asynchronous work had its locks released when it returned, and a call from that work must
+ * not release the locks of whichever task the worker runs by then.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+final class LockRelease implements Runnable {
+
+    private final ExecutorManager executorManager;
+    // The worker reusing this callback, null for a callback created for a single run
+    private final Thread owner;
+    private Task task;
+
+    LockRelease(ExecutorManager executorManager) {
+        this(executorManager, null);
+    }
+
+    /**
+     * @param executorManager the manager holding the locks
+     * @param owner           the worker reusing this callback for its runs, or {@code null}
+     */
+    LockRelease(ExecutorManager executorManager, Thread owner) {
+        this.executorManager = executorManager;
+        this.owner = owner;
+    }
+
+    /**
+     * Binds this callback to a task whose locks are held.
+     *
+     * @param task the task about to run
+     * @return this callback
+     */
+    LockRelease arm(Task task) {
+        this.task = task;
+        return this;
+    }
+
+    @Override
+    public void run() {
+        // Only the running task is on its worker's thread, anything else holds a stale callback
+        if (owner != null && Thread.currentThread() != owner) {
+            return;
+        }
+        Task held = task;
+        if (held != null) {
+            task = null;
+            executorManager.releaseLocks(held);
+        }
+    }
+}
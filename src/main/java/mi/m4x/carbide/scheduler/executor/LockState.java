@@ -0,0 +1,185 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import mi.m4x.carbide.scheduler.structures.ObjectPool;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Shared/exclusive state of a single lock, used for both {@link IndexedLockToken} stripes and
+ * ordinary tokens.
+ * <p>
+ * The state word counts shared holders in its low bits and flags an exclusive holder and the
+ * presence of waiters in the two high bits. Uncontended acquisition and release are a single CAS.
+ * Once a task has to wait, every state change goes through this object's monitor, so a release
+ * never misses a waiter. While any task waits, new shared acquisitions wait as well, so a steady
+ * stream of readers cannot starve a waiting writer.
+ * <p>
+ * Waiters are kept in priority order, FIFO within a priority. A release hands the lock directly
+ * to the next eligible waiters instead of waking all of them: the head waiter if it is exclusive,
+ * otherwise every shared waiter ahead of the first exclusive one.
+ * <p>
+ * The states of {@link StripedLockTable} stripes are a padded subclass; states of ordinary tokens
+ * are short-lived and stay unpadded.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+class LockState {
+
+    private static final int WAITING = 1 << 31;
+    private static final int EXCLUSIVE = 1 << 30;
+    private static final int SHARED_MASK = EXCLUSIVE - 1;
+    // Exclusive and shared at once never occurs while held, so it is free to mark a dead lock
+    private static final int RETIRED = EXCLUSIVE | 1;
+
+    private static final AtomicIntegerFieldUpdater<LockState> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(LockState.class, "state");
+
+    private static final Comparator<LockWaiter> WAIT_ORDER = Comparator
+            .comparingInt((LockWaiter waiter) -> waiter.waitPriority)
+            .thenComparingLong(waiter -> waiter.sequence);
+
+    private volatile int state;
+    // Both guarded by this
+    private PriorityQueue<LockWaiter> waiters;
+    private long nextSequence;
+
+    /**
+     * Tries to take the lock without waiting.
+     *
+     * @param shared {@code true} for shared mode, {@code false} for exclusive mode
+     * @return {@code true} if the lock is now held in the requested mode
+     */
+    boolean tryAcquire(boolean shared) {
+        while (true) {
+            int current = state;
+            if (shared) {
+                if ((current & (EXCLUSIVE | WAITING)) != 0 || (current & SHARED_MASK) == SHARED_MASK) {
+                    return false;
+                }
+                if (STATE.compareAndSet(this, current, current + 1)) {
+                    return true;
+                }
+            } else {
+                return current == 0 && STATE.compareAndSet(this, 0, EXCLUSIVE);
+            }
+        }
+    }
+
+    /**
+     * Queues a task until the lock is handed to it.
+     *
+     * @param waiter the waiting task; its lock, mode and queue position are set here
+     * @param shared the mode the task asked for
+     * @return {@code true} if the task is now waiting, {@code false} if the lock became available
+     *         or was retired and the caller should retry
+     */
+    synchronized boolean addWaiter(LockWaiter waiter, boolean shared) {
+        while (true) {
+            int current = state;
+            if (current == RETIRED || current == 0
+                    || (shared && (current & (EXCLUSIVE | WAITING)) == 0 && (current & SHARED_MASK) != SHARED_MASK)) {
+                return false;
+            }
+
+            if ((current & WAITING) != 0 || STATE.compareAndSet(this, current, current | WAITING)) {
+                if (waiters == null) {
+                    waiters = new PriorityQueue<>(WAIT_ORDER);
+                }
+                waiter.lock = this;
+                waiter.shared = shared;
+                waiter.waitPriority = waiter.task.priority();
+                waiter.sequence = nextSequence++;
+                waiters.add(waiter);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases one hold of the lock.
+     *
+     * @param shared the mode the lock was acquired in
+     * @param lists  pool the returned list is taken from
+     * @return the waiters the lock was handed to, which now hold it and must be scheduled,
+     *         or {@code null} if there are none
+     * @throws IllegalStateException if the lock is not held in that mode
+     */
+    ReferenceArrayList<Task> release(boolean shared, ObjectPool<ReferenceArrayList<Task>> lists) {
+        while (true) {
+            int current = state;
+            checkHeld(current, shared);
+            if ((current & WAITING) != 0) {
+                return releaseContended(shared, lists);
+            }
+            if (STATE.compareAndSet(this, current, shared ? current - 1 : 0)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Releases a lock that has waiters and hands it over. The state is stable here: with the
+     * waiting flag set every other change also goes through the monitor.
+     */
+    private synchronized ReferenceArrayList<Task> releaseContended(boolean shared,
+                                                                   ObjectPool<ReferenceArrayList<Task>> lists) {
+        int current = state;
+        checkHeld(current, shared);
+
+        int holders = (shared ? current - 1 : current & ~EXCLUSIVE) & ~WAITING;
+        ReferenceArrayList<Task> granted = null;
+
+        LockWaiter head;
+        while ((head = waiters.peek()) != null) {
+            if (head.shared) {
+                if ((holders & EXCLUSIVE) != 0) {
+                    break;
+                }
+                holders++;
+            } else {
+                if (holders != 0) {
+                    break;
+                }
+                holders = EXCLUSIVE;
+            }
+
+            waiters.poll();
+            if (granted == null) {
+                granted = lists.alloc();
+            }
+            granted.add(head);
+        }
+
+        state = waiters.isEmpty() ? holders : holders | WAITING;
+        return granted;
+    }
+
+    /**
+     * Marks a free lock without waiters as dead, so it can be dropped from a lock map.
+     * Acquisitions of a retired lock fail and must look the lock up again.
+     *
+     * @return {@code true} if the lock was retired
+     */
+    boolean tryRetire() {
+        return state == 0 && STATE.compareAndSet(this, 0, RETIRED);
+    }
+
+    /**
+     * @return {@code true} if this lock was retired and must not be used any more
+     */
+    boolean isRetired() {
+        return state == RETIRED;
+    }
+
+    private static void checkHeld(int current, boolean shared) {
+        boolean held = current != RETIRED
+                && (shared ? (current & EXCLUSIVE) == 0 && (current & SHARED_MASK) != 0 : (current & EXCLUSIVE) != 0);
+        if (!held) {
+            throw new IllegalStateException("Lock not held in " + (shared ? "shared" : "exclusive") + " mode");
+        }
+    }
+}
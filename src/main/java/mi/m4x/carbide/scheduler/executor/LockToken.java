@@ -1,4 +1,18 @@
 package mi.m4x.carbide.scheduler.executor;
 
 public interface LockToken {
+
+    /**
+     * Requests this lock in shared mode instead of exclusive mode.
+     * <p>
+     * Any number of tasks may hold a lock in shared mode at once, while a task holding it in
+     * exclusive mode excludes every other holder. Use the returned token in
+     * {@link Task#lockTokens()} for tasks that only read the guarded resource.
+     *
+     * @return a token acquiring this lock in shared mode
+     * @since 1.0.5
+     */
+    default LockToken shared() {
+        return new SharedLockToken(this);
+    }
 }
@@ -0,0 +1,57 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * A task waiting on a {@link LockState}, and later the same task scheduled after the lock was
+ * handed to it.
+ * <p>
+ * A waiter is only allocated once a task actually has to wait. While queued on a lock it records
+ * the mode and the priority it waits with; once granted it is scheduled in place of the task and
+ * {@link #lock} is the lock it already holds, so acquiring the task's remaining tokens skips it.
+ * If another token is unavailable the granted lock is passed on and the same waiter queues again.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+final class LockWaiter implements Task {
+
+    final Task task;
+
+    // Written before the waiter is published through a lock monitor or a work queue
+    LockState lock;
+    boolean shared;
+    int waitPriority;
+    long sequence;
+
+    // Only set while metrics are enabled
+    MetricsRecorder.LockRecorder waitRecorder;
+    long waitStartNanos;
+
+    LockWaiter(Task task) {
+        this.task = task;
+    }
+
+    @Override
+    public void run(Runnable releaseLocks) {
+        task.run(releaseLocks);
+    }
+
+    @Override
+    public void propagateException(Throwable t) {
+        task.propagateException(t);
+    }
+
+    @Override
+    public LockToken[] lockTokens() {
+        return task.lockTokens();
+    }
+
+    @Override
+    public int priority() {
+        return task.priority();
+    }
+
+    @Override
+    public long deadlineNanos() {
+        return task.deadlineNanos();
+    }
+}
@@ -0,0 +1,231 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters behind {@link ExecutorMetrics}. Only exists when metrics are enabled, so the
+ * disabled cost is a null check at each recording site.
+ * <p>
+ * All counters are {@link LongAdder}s or single-writer fields, and per-priority histograms are
+ * created on first use. Queue wait and run time are measured for about one task in 64, picked by
+ * identity hash, so sampling needs no shared or random state and most tasks take no timestamp at
+ * all. Workers only read the clock when they switch between busy and idle. Enqueue times of
+ * sampled tasks live in a small fixed table, so nothing is allocated per task. Deadlines are not
+ * sampled: every task with a deadline is counted when it finishes.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+final class MetricsRecorder {
+
+    // Tasks whose identity hash has these bits clear have their queue wait and run time measured
+    private static final int SAMPLE_MASK = 63;
+    private static final int SAMPLE_BITS = 6;
+    // Queued tasks whose enqueue time is tracked at once; further samples are skipped
+    private static final int QUEUE_SAMPLE_SLOTS = 1024;
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicReferenceArray<LatencyHistogram.Recorder> queueWait;
+    private final AtomicReferenceArray<LatencyHistogram.Recorder> runTime;
+    private final AtomicReferenceArray<Task> sampledTasks = new AtomicReferenceArray<>(QUEUE_SAMPLE_SLOTS);
+    private final AtomicLongArray sampledAt = new AtomicLongArray(QUEUE_SAMPLE_SLOTS);
+    private final ConcurrentHashMap<Class<?>, LockRecorder> lockRecorders = new ConcurrentHashMap<>();
+    private final LongAdder handedOverTasks = new LongAdder();
+    private final LongAdder deadlinesMet = new LongAdder();
+    private final LongAdder deadlinesMissed = new LongAdder();
+    private final LongAdder droppedTasks = new LongAdder();
+    private final LongAdder demotedTasks = new LongAdder();
+    private final LatencyHistogram.Recorder lateness = new LatencyHistogram.Recorder();
+
+    MetricsRecorder(int priorityCount) {
+        this.queueWait = new AtomicReferenceArray<>(priorityCount);
+        this.runTime = new AtomicReferenceArray<>(priorityCount);
+    }
+
+    /**
+     * Called right before a task is put on a work queue.
+     */
+    void onEnqueue(Task task) {
+        int hash = System.identityHashCode(task);
+        if ((hash & SAMPLE_MASK) != 0) {
+            return;
+        }
+
+        int slot = sampleSlot(hash);
+        if (sampledTasks.get(slot) == null) {
+            // A racing sampler may overwrite the time, but only with one taken a moment later
+            sampledAt.set(slot, System.nanoTime());
+            sampledTasks.compareAndSet(slot, null, task);
+        }
+    }
+
+    /**
+     * Called when a queue refused a task that {@link #onEnqueue(Task)} was already called for.
+     */
+    void onRejected(Task task) {
+        sampledTasks.compareAndSet(sampleSlot(System.identityHashCode(task)), task, null);
+    }
+
+    /**
+     * Called when a task is taken off a work queue, before its locks are tried.
+     */
+    void onDequeue(Task task) {
+        int hash = System.identityHashCode(task);
+        if ((hash & SAMPLE_MASK) != 0) {
+            return;
+        }
+
+        int slot = sampleSlot(hash);
+        if (sampledTasks.get(slot) != task) {
+            return;
+        }
+
+        long enqueuedAt = sampledAt.get(slot);
+        if (sampledTasks.compareAndSet(slot, task, null)) {
+            histogram(queueWait, task.priority()).record(System.nanoTime() - enqueuedAt);
+        }
+    }
+
+    /**
+     * Called when a task found a lock unavailable, before it is queued on that lock.
+     *
+     * @param waiter     the waiter about to be queued
+     * @param tokenClass class of the token whose lock was unavailable
+     */
+    void onLockWait(LockWaiter waiter, Class<?> tokenClass) {
+        LockRecorder recorder = lockRecorders.get(tokenClass);
+        if (recorder == null) {
+            recorder = lockRecorders.computeIfAbsent(tokenClass, key -> new LockRecorder());
+        }
+        recorder.waits.increment();
+        waiter.waitRecorder = recorder;
+        waiter.waitStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Called when a released lock was handed to waiting tasks.
+     */
+    void onHandOver(ReferenceArrayList<Task> granted) {
+        long now = System.nanoTime();
+        for (Task task : granted) {
+            LockWaiter waiter = (LockWaiter) task;
+            if (waiter.waitRecorder != null) {
+                waiter.waitRecorder.waitTime.record(now - waiter.waitStartNanos);
+                waiter.waitRecorder = null;
+            }
+        }
+        handedOverTasks.add(granted.size());
+    }
+
+    /**
+     * Decides whether the run time of the task about to run is measured.
+     *
+     * @param task the task about to run
+     * @return {@code true} for a sampled task
+     */
+    boolean sampleRun(Task task) {
+        return (System.identityHashCode(task) & SAMPLE_MASK) == 0;
+    }
+
+    /**
+     * Called after a sampled task ran.
+     */
+    void onRun(Task task, long runNanos) {
+        histogram(runTime, task.priority()).record(runNanos);
+    }
+
+    /**
+     * Called when a task with a deadline finished running, successfully or not.
+     */
+    void onDeadlineRun(long deadlineNanos, long finishedNanos) {
+        long late = finishedNanos - deadlineNanos;
+        if (late <= 0L) {
+            deadlinesMet.increment();
+        } else {
+            deadlinesMissed.increment();
+            lateness.record(late);
+        }
+    }
+
+    /**
+     * Called when a task was not run because its deadline had passed when a worker took it.
+     */
+    void onDropped(long latenessNanos) {
+        droppedTasks.increment();
+        deadlinesMissed.increment();
+        lateness.record(latenessNanos);
+    }
+
+    /**
+     * Called when a task was moved to the priority queues because its deadline had passed.
+     */
+    void onDemoted() {
+        demotedTasks.increment();
+    }
+
+    ExecutorMetrics snapshot(int[] queueDepth, int deadlineQueueDepth, WorkerThread[] workers) {
+        long now = System.nanoTime();
+
+        LatencyHistogram[] queueWaitSnapshot = snapshot(queueWait);
+        LatencyHistogram[] runTimeSnapshot = snapshot(runTime);
+
+        Map<Class<?>, ExecutorMetrics.LockContention> contention = new HashMap<>();
+        lockRecorders.forEach((tokenClass, recorder) -> contention.put(tokenClass,
+                new ExecutorMetrics.LockContention(recorder.waits.sum(), recorder.waitTime.snapshot())));
+
+        double[] busyRatios = new double[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            long started = workers[i].startNanos;
+            long lifetime = now - started;
+            if (started != 0L && lifetime > 0) {
+                // An idle period that is still going on is not counted yet
+                busyRatios[i] = Math.max(0.0, 1.0 - (double) workers[i].idleNanos / lifetime);
+            }
+        }
+
+        ExecutorMetrics.Deadlines deadlines = new ExecutorMetrics.Deadlines(deadlinesMet.sum(), deadlinesMissed.sum(),
+                droppedTasks.sum(), demotedTasks.sum(), deadlineQueueDepth, lateness.snapshot());
+        return new ExecutorMetrics(now - startNanos, queueDepth, queueWaitSnapshot, runTimeSnapshot,
+                contention, handedOverTasks.sum(), busyRatios, deadlines);
+    }
+
+    private static int sampleSlot(int identityHash) {
+        return (identityHash >>> SAMPLE_BITS) & (QUEUE_SAMPLE_SLOTS - 1);
+    }
+
+    private static LatencyHistogram.Recorder histogram(AtomicReferenceArray<LatencyHistogram.Recorder> histograms,
+                                                       int priority) {
+        // The priority may have changed since the task was queued
+        int level = Math.min(Math.max(priority, 0), histograms.length() - 1);
+        LatencyHistogram.Recorder recorder = histograms.get(level);
+        if (recorder == null) {
+            LatencyHistogram.Recorder created = new LatencyHistogram.Recorder();
+            recorder = histograms.compareAndSet(level, null, created) ? created : histograms.get(level);
+        }
+        return recorder;
+    }
+
+    private static LatencyHistogram[] snapshot(AtomicReferenceArray<LatencyHistogram.Recorder> histograms) {
+        LatencyHistogram[] snapshot = new LatencyHistogram[histograms.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            LatencyHistogram.Recorder recorder = histograms.get(i);
+            snapshot[i] = recorder == null ? LatencyHistogram.EMPTY : recorder.snapshot();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Contention counters for one token class.
+     */
+    static final class LockRecorder {
+        final LongAdder waits = new LongAdder();
+        final LatencyHistogram.Recorder waitTime = new LatencyHistogram.Recorder();
+    }
+}
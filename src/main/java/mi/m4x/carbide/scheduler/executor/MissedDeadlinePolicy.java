@@ -0,0 +1,32 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * Decides what {@link QueueingPolicy#EARLIEST_DEADLINE_FIRST} does with a task whose deadline
+ * has already passed when a worker takes it. Under overload such tasks would otherwise run first
+ * and make the tasks behind them miss their deadlines as well.
+ * <p>
+ * A task that was handed a lock while waiting for it always runs, since other tasks wait for
+ * that lock.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public enum MissedDeadlinePolicy {
+
+    /**
+     * The task runs anyway, still ahead of everything without a deadline.
+     */
+    RUN,
+
+    /**
+     * The task is queued again at its priority level, behind every task that can still meet its
+     * deadline.
+     */
+    DEMOTE,
+
+    /**
+     * The task does not run: {@link Task#propagateException(Throwable)} receives a
+     * {@link DeadlineMissedException} instead.
+     */
+    DROP
+}
@@ -0,0 +1,96 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Grows the worker pool of an elastic {@link ExecutorManager}.
+ * <p>
+ * The pool is saturated while tasks are queued and no worker is idle, whether it parks, spins or
+ * yields according to its {@link IdleStrategy}. Only then does the controller sample the pool,
+ * every quarter of the grow wait, and add one worker once the backlog has lasted the whole grow
+ * wait or the queued tasks exceed the grow depth per worker. Otherwise it sleeps until a producer
+ * that found no parked worker to wake, or the last idle worker to find a task, signals it, so an
+ * idle or merely busy pool costs nothing. Shrinking is left to the workers, which retire once they
+ * idled for the keep-alive time.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+final class PoolController extends Thread {
+
+    private static final long MIN_SAMPLE_NANOS = 10_000L;
+
+    private final ExecutorManager manager;
+    private final int maxWorkers;
+    private final int growQueueDepth;
+    private final long growWaitNanos;
+    private final long sampleNanos;
+    // Set while the controller may be woken by producers
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private volatile boolean shutdown;
+
+    PoolController(ExecutorManager manager, ExecutorConfig config) {
+        super("Carbide Pool Controller");
+        setDaemon(true);
+        this.manager = manager;
+        this.maxWorkers = config.maxWorkers();
+        this.growQueueDepth = config.growQueueDepth();
+        this.growWaitNanos = config.growWaitNanos();
+        this.sampleNanos = Math.max(MIN_SAMPLE_NANOS, growWaitNanos / 4);
+    }
+
+    @Override
+    public void run() {
+        long backlogSince = 0L;
+        while (!shutdown) {
+            int workers = manager.workerCount();
+            if (workers >= maxWorkers) {
+                // Only a retiring worker can make room, and it unparks us
+                backlogSince = 0L;
+                LockSupport.park(this);
+                continue;
+            }
+
+            if (manager.isSaturated()) {
+                long now = System.nanoTime();
+                if (backlogSince == 0L) {
+                    backlogSince = now;
+                }
+                if (now - backlogSince >= growWaitNanos || manager.queuedTaskCount() >= (long) growQueueDepth * workers) {
+                    manager.addWorker();
+                    // The new worker gets a full grow wait to absorb the backlog
+                    backlogSince = now;
+                }
+                LockSupport.parkNanos(this, sampleNanos);
+                continue;
+            }
+
+            backlogSince = 0L;
+            sleeping.set(true);
+            // Published before re-checking, as producers queue before they look for us
+            if (!manager.isSaturated() && !shutdown) {
+                LockSupport.park(this);
+            }
+            sleeping.set(false);
+        }
+    }
+
+    /**
+     * Wakes the controller if it sleeps. Called by producers that found no parked worker, at the
+     * cost of one volatile read while the controller is sampling or the pool is at its maximum.
+     */
+    void signal() {
+        if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    /**
+     * Stops the controller; workers already started are shut down by the manager.
+     */
+    void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(this);
+    }
+}
@@ -0,0 +1,34 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * Observes the workers an elastic {@link ExecutorManager} starts and retires, see
+ * {@link ExecutorConfig.Builder#maxWorkers(int)}.
+ * <p>
+ * Called on the thread that changed the pool: the pool controller when a worker is started, the
+ * retiring worker itself when one is retired. Calls for different changes may overlap, so the
+ * worker counts passed are the best guide to the current size. Implementations must be quick and
+ * must not throw.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public interface PoolListener {
+
+    /**
+     * Called once a new worker has been started.
+     *
+     * @param worker      the new worker
+     * @param workerCount the number of workers including it
+     */
+    default void workerStarted(WorkerThread worker, int workerCount) {
+    }
+
+    /**
+     * Called once a worker has retired; tasks left in its local queue were handed back already.
+     *
+     * @param worker      the retired worker, about to terminate
+     * @param workerCount the number of workers left
+     */
+    default void workerRetired(WorkerThread worker, int workerCount) {
+    }
+}
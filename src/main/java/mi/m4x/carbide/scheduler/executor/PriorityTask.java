@@ -0,0 +1,28 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+
+/**
+ * Base class for tasks whose priority changes while they are queued.
+ * <p>
+ * The manager keeps the queue handle of the task's current entry in the task itself, so
+ * {@link ExecutorManager#notifyPriorityChange(Task)} moves it in O(1) wherever it is queued,
+ * instead of looking it up in every task group and worker-local queue. A task may be
+ * rescheduled once it has been dequeued, but not while it is still queued.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public abstract class PriorityTask implements Task {
+
+    // Written by the scheduling thread before the entry is published
+    volatile DynamicPriorityQueue.Handle<Task> queueHandle;
+
+    /**
+     * @return whether this task is currently waiting in one of its manager's queues
+     */
+    public boolean isQueued() {
+        DynamicPriorityQueue.Handle<Task> handle = queueHandle;
+        return handle != null && handle.isQueued();
+    }
+}
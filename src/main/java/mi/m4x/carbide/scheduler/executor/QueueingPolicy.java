@@ -0,0 +1,23 @@
+package mi.m4x.carbide.scheduler.executor;
+
+/**
+ * Selects the order in which an {@link ExecutorManager} hands queued tasks to its workers.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public enum QueueingPolicy {
+
+    /**
+     * Tasks run by priority level, lowest level first. Deadlines are only recorded in the metrics.
+     */
+    PRIORITY,
+
+    /**
+     * Tasks with a {@link Task#deadlineNanos() deadline} are kept in a striped deadline queue and
+     * run before all other tasks, earliest deadline first, whatever their priority. Tasks without a
+     * deadline run by priority whenever no deadline task is queued. What happens to a task whose
+     * deadline has already passed when a worker takes it is set by {@link MissedDeadlinePolicy}.
+     */
+    EARLIEST_DEADLINE_FIRST
+}
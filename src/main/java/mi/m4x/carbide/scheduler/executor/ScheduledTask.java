@@ -0,0 +1,108 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.scheduler.Cancellable;
+
+import java.util.Objects;
+
+/**
+ * A task waiting in an {@link ExecutorManager}'s {@link TimerWheel}, which is also the
+ * {@link Cancellable} handed to the caller and the entry queued once it expires.
+ * <p>
+ * Cancelling removes the entry from the wheel in O(1). An entry that has already expired is
+ * skipped when a worker takes it. A periodic entry re-enters the wheel after every run until it
+ * is cancelled or throws.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+final class ScheduledTask extends Cancellable implements Task {
+
+    private static final LockToken[] NO_LOCKS = new LockToken[0];
+
+    private final TimerWheel wheel;
+    // Exactly one of the two is set
+    private final Runnable body;
+    private final Task task;
+    private final int priority;
+    private final long periodNanos;
+    // When the entry leaves the wheel, not the deadline of the task itself
+    long dueNanos;
+
+    // Maintained by the thread advancing the wheel
+    long tick;
+    int slot = -1;
+    ScheduledTask previous;
+    ScheduledTask next;
+
+    ScheduledTask(TimerWheel wheel, Runnable body, int priority, long dueNanos, long periodNanos) {
+        this.wheel = wheel;
+        this.body = Objects.requireNonNull(body, "Runnable cannot be null");
+        this.task = null;
+        this.priority = priority;
+        this.dueNanos = dueNanos;
+        this.periodNanos = periodNanos;
+    }
+
+    ScheduledTask(TimerWheel wheel, Task task, long dueNanos) {
+        this.wheel = wheel;
+        this.body = null;
+        this.task = Objects.requireNonNull(task, "Task cannot be null");
+        this.priority = task.priority();
+        this.dueNanos = dueNanos;
+        this.periodNanos = 0L;
+    }
+
+    @Override
+    public void run(Runnable releaseLocks) {
+        if (isCancelled()) {
+            releaseLocks.run();
+            return;
+        }
+        if (task != null) {
+            task.run(releaseLocks);
+            return;
+        }
+
+        try {
+            body.run();
+        } finally {
+            releaseLocks.run();
+        }
+        if (periodNanos != 0L && !isCancelled()) {
+            // Fixed rate: the next run is due one period after the previous deadline, not after this run
+            dueNanos += periodNanos;
+            wheel.add(this);
+        }
+    }
+
+    @Override
+    public void propagateException(Throwable t) {
+        if (task != null) {
+            task.propagateException(t);
+            return;
+        }
+        // A failing periodic task is not run again
+        cancel();
+        t.printStackTrace();
+    }
+
+    @Override
+    public LockToken[] lockTokens() {
+        return task != null ? task.lockTokens() : NO_LOCKS;
+    }
+
+    @Override
+    public int priority() {
+        return priority;
+    }
+
+    @Override
+    public long deadlineNanos() {
+        return task != null ? task.deadlineNanos() : NO_DEADLINE;
+    }
+
+    @Override
+    protected void onCancel() {
+        wheel.cancelled(this);
+    }
+}
@@ -0,0 +1,48 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import java.util.Objects;
+
+/**
+ * Wraps a {@link LockToken} to acquire it in shared mode.
+ * <p>
+ * Tasks holding the same lock in shared mode run concurrently; a task holding it exclusively runs
+ * alone. A waiting exclusive task makes later shared requests wait too, so writers are not
+ * starved by a continuous stream of readers. If a task lists the same lock both shared and
+ * exclusively, it is acquired exclusively.
+ * <p>
+ * Instances are immutable and can be created once and reused across tasks.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class SharedLockToken implements LockToken {
+
+    private final LockToken token;
+
+    /**
+     * @param token the lock to acquire in shared mode
+     */
+    public SharedLockToken(LockToken token) {
+        Objects.requireNonNull(token, "Token must not be null");
+        this.token = token instanceof SharedLockToken shared ? shared.token : token;
+    }
+
+    /**
+     * Returns the lock acquired in shared mode.
+     *
+     * @return the wrapped token, never a {@code SharedLockToken}
+     */
+    public LockToken token() {
+        return token;
+    }
+
+    @Override
+    public LockToken shared() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "shared(" + token + ")";
+    }
+}
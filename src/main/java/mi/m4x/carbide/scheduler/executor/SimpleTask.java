@@ -17,6 +17,7 @@ public final class SimpleTask implements Task {
 
     private final Runnable wrapped;
     private final int priority;
+    private final long deadlineNanos;
 
     /**
      * Constructs a new SimpleTask.
@@ -25,8 +26,21 @@ public final class SimpleTask implements Task {
      * @param priority the priority of this task. Lower values typically indicate higher priority.
      */
     public SimpleTask(Runnable wrapped, int priority) {
+        this(wrapped, priority, NO_DEADLINE);
+    }
+
+    /**
+     * Constructs a new SimpleTask with a deadline.
+     *
+     * @param wrapped       the runnable to execute. Must not be {@code null}.
+     * @param priority      the priority of this task. Lower values typically indicate higher priority.
+     * @param deadlineNanos the {@link System#nanoTime()} value by which the task should have finished.
+     * @since 1.0.5
+     */
+    public SimpleTask(Runnable wrapped, int priority, long deadlineNanos) {
         this.wrapped = Objects.requireNonNull(wrapped, "Runnable cannot be null");
         this.priority = priority;
+        this.deadlineNanos = deadlineNanos;
     }
 
     /**
@@ -73,5 +87,15 @@ public final class SimpleTask implements Task {
     public int priority() {
         return priority;
     }
+
+    /**
+     * Returns the deadline of this task.
+     *
+     * @return the deadline, or {@link #NO_DEADLINE}.
+     */
+    @Override
+    public long deadlineNanos() {
+        return deadlineNanos;
+    }
 }
 
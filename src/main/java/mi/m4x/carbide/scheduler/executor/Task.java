@@ -1,6 +1,13 @@
 package mi.m4x.carbide.scheduler.executor;
 
 public interface Task {
+    /**
+     * Returned by {@link #deadlineNanos()} for tasks without a deadline.
+     *
+     * @since 1.0.5
+     */
+    long NO_DEADLINE = Long.MAX_VALUE;
+
     void run(Runnable releaseLocks);
 
     void propagateException(Throwable t);
@@ -8,4 +15,16 @@ public interface Task {
     LockToken[] lockTokens();
 
     int priority();
+
+    /**
+     * Returns the {@link System#nanoTime()} value by which this task should have finished. Under
+     * {@link QueueingPolicy#EARLIEST_DEADLINE_FIRST} tasks with a deadline run before all others,
+     * earliest deadline first; either policy counts met and missed deadlines in the metrics.
+     *
+     * @return the deadline, or {@link #NO_DEADLINE}
+     * @since 1.0.5
+     */
+    default long deadlineNanos() {
+        return NO_DEADLINE;
+    }
 }
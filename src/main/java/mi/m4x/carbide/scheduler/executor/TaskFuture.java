@@ -0,0 +1,697 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.scheduler.CancellationSignaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The result of a task run by an {@link ExecutorManager}, with continuations that run on the
+ * same manager.
+ * <p>
+ * A future holds its result in a single field and its dependents in a lock-free stack. Each
+ * registration, whether a continuation, a listener or a blocked {@link #get()}, pushes one node;
+ * a continuation node is itself the task that gets scheduled once the future completes, at the
+ * priority it was registered with. Continuations never run on the completing thread, so long
+ * chains cannot grow the stack.
+ * <p>
+ * A failure passes down a chain without running the continuations in between, until one
+ * registered with {@link #handle(BiFunction, int)} sees it. Cancelling a future completes it
+ * with a {@link CancellationException}; a submitted task that has not started yet is then
+ * skipped.
+ *
+ * @param <T> the type of the result
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public class TaskFuture<T> implements Future<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("Carbide Task Future");
+    private static final LockToken[] NO_LOCKS = new LockToken[0];
+    private static final VarHandle RESULT;
+    private static final VarHandle STACK;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            RESULT = lookup.findVarHandle(TaskFuture.class, "result", Object.class);
+            STACK = lookup.findVarHandle(TaskFuture.class, "stack", Completion.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Stands in for a null result, as null means the future is pending
+    private static final Object NIL = new Object();
+    // Returned by an interruptible wait that was interrupted
+    private static final Object INTERRUPTED = new Object();
+    // Replaces the stack on completion, so late registrations fire themselves
+    private static final Completion DONE = new Completion() {
+        @Override
+        void fire() {}
+    };
+
+    private static final int RUN = 0;
+    private static final int ACCEPT = 1;
+    private static final int APPLY = 2;
+    private static final int HANDLE = 3;
+    private static final int COMBINE = 4;
+
+    final ExecutorManager manager;
+    // null while pending, then NIL, the value or a Failure
+    private volatile Object result;
+    private volatile Completion stack;
+
+    TaskFuture(ExecutorManager manager) {
+        this.manager = Objects.requireNonNull(manager, "Executor manager cannot be null");
+    }
+
+    /**
+     * Creates a future completed by the caller through {@link #complete(Object)} or
+     * {@link #completeExceptionally(Throwable)}.
+     *
+     * @param manager the manager continuations run on
+     * @param <T>     the type of the result
+     * @return a new pending future
+     */
+    public static <T> TaskFuture<T> promise(ExecutorManager manager) {
+        return new TaskFuture<>(manager);
+    }
+
+    /**
+     * @param manager the manager continuations run on
+     * @param value   the result
+     * @param <T>     the type of the result
+     * @return a future already completed with {@code value}
+     */
+    public static <T> TaskFuture<T> completed(ExecutorManager manager, T value) {
+        TaskFuture<T> future = new TaskFuture<>(manager);
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * Creates a future completing with a signaller, for example the run of a {@link TaskGraph}:
+     * with {@code null} when it succeeds and with its failure otherwise. Cancelling the future
+     * cancels the signaller as well.
+     *
+     * @param manager   the manager continuations run on
+     * @param signaller the signaller to follow
+     * @return a future of the signaller's completion
+     */
+    public static TaskFuture<Void> of(ExecutorManager manager, CancellationSignaller signaller) {
+        SignalledFuture future = new SignalledFuture(manager, signaller);
+        signaller.addListener(throwable -> future.completeResult(throwable == null ? NIL : new Failure(throwable)));
+        return future;
+    }
+
+    /**
+     * Creates a future that completes once all given futures have completed, or as soon as one of
+     * them fails, with the same failure.
+     *
+     * @param manager the manager continuations run on
+     * @param futures the futures to wait for
+     * @return a future completing with {@code null} once all succeeded
+     */
+    public static TaskFuture<Void> allOf(ExecutorManager manager, TaskFuture<?>... futures) {
+        AllOf all = new AllOf(manager, futures.length);
+        if (futures.length == 0) {
+            all.completeResult(NIL);
+        }
+        for (TaskFuture<?> future : futures) {
+            future.push(new AllOfMember(all, future));
+        }
+        return all;
+    }
+
+    /**
+     * Runs {@code action} on the manager once this future succeeded.
+     *
+     * @param action   the continuation
+     * @param priority the priority it is scheduled at
+     * @return a future of the continuation
+     */
+    public TaskFuture<Void> thenRun(Runnable action, int priority) {
+        return then(RUN, action, priority, null, null);
+    }
+
+    /**
+     * Passes the result to {@code action} on the manager once this future succeeded.
+     *
+     * @param action   the continuation
+     * @param priority the priority it is scheduled at
+     * @return a future of the continuation
+     */
+    public TaskFuture<Void> thenAccept(Consumer<? super T> action, int priority) {
+        return then(ACCEPT, action, priority, null, null);
+    }
+
+    /**
+     * Maps the result with {@code function} on the manager once this future succeeded.
+     *
+     * @param function the continuation
+     * @param priority the priority it is scheduled at
+     * @param <U>      the type of the mapped result
+     * @return a future of the mapped result
+     */
+    public <U> TaskFuture<U> thenApply(Function<? super T, ? extends U> function, int priority) {
+        return then(APPLY, function, priority, null, null);
+    }
+
+    /**
+     * Combines the results of this and another future with {@code function} on the manager once
+     * both succeeded.
+     *
+     * @param other    the other future
+     * @param function the continuation
+     * @param priority the priority it is scheduled at
+     * @param <U>      the type of the other result
+     * @param <R>      the type of the combined result
+     * @return a future of the combined result
+     */
+    public <U, R> TaskFuture<R> thenCombine(TaskFuture<? extends U> other,
+                                            BiFunction<? super T, ? super U, ? extends R> function, int priority) {
+        Objects.requireNonNull(other, "Other future cannot be null");
+        return allOf(manager, this, other).then(COMBINE, function, priority, this, other);
+    }
+
+    /**
+     * Passes the result, or the failure, to {@code function} on the manager once this future
+     * completed. Exactly one of the two arguments is meaningful: the failure is {@code null} on
+     * success.
+     *
+     * @param function the continuation
+     * @param priority the priority it is scheduled at
+     * @param <U>      the type of the mapped result
+     * @return a future of the mapped result
+     */
+    public <U> TaskFuture<U> handle(BiFunction<? super T, Throwable, ? extends U> function, int priority) {
+        return then(HANDLE, function, priority, null, null);
+    }
+
+    /**
+     * Registers a listener run on the completing thread, or immediately if this future is done,
+     * with {@code null} on success and the failure otherwise. Listeners must be short; use a
+     * continuation for real work.
+     *
+     * @param listener the listener
+     */
+    public void addListener(Consumer<Throwable> listener) {
+        Objects.requireNonNull(listener, "Listener cannot be null");
+        push(new Listener(this, listener));
+    }
+
+    /**
+     * Completes this future with a value unless it is already done.
+     *
+     * @param value the result
+     * @return whether this call completed the future
+     */
+    public boolean complete(T value) {
+        return completeResult(value == null ? NIL : value);
+    }
+
+    /**
+     * Completes this future with a failure unless it is already done.
+     *
+     * @param throwable the failure
+     * @return whether this call completed the future
+     */
+    public boolean completeExceptionally(Throwable throwable) {
+        return completeResult(new Failure(Objects.requireNonNull(throwable, "Throwable cannot be null")));
+    }
+
+    /**
+     * Completes this future with a {@link CancellationException} unless it is already done.
+     * Running tasks are never interrupted.
+     *
+     * @param mayInterruptIfRunning ignored
+     * @return whether this call cancelled the future
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return completeResult(new Failure(new CancellationException("Task future was cancelled")));
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return result instanceof Failure failure && failure.cause instanceof CancellationException;
+    }
+
+    @Override
+    public boolean isDone() {
+        return result != null;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        Object result = this.result;
+        if (result == null) {
+            result = await(true, 0L);
+            if (result == INTERRUPTED) {
+                throw new InterruptedException();
+            }
+        }
+        return report(result);
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        Object result = this.result;
+        if (result == null) {
+            result = await(true, System.nanoTime() + unit.toNanos(timeout));
+            if (result == INTERRUPTED) {
+                throw new InterruptedException();
+            }
+            if (result == null) {
+                throw new TimeoutException();
+            }
+        }
+        return report(result);
+    }
+
+    /**
+     * Waits uninterruptibly for the result.
+     *
+     * @return the result
+     * @throws CancellationException if the future was cancelled
+     * @throws CompletionException   wrapping the failure of the future
+     */
+    public T join() {
+        Object result = this.result;
+        if (result == null) {
+            result = await(false, 0L);
+        }
+        if (result instanceof Failure failure) {
+            if (failure.cause instanceof CancellationException cancellation) {
+                throw cancellation;
+            }
+            throw new CompletionException(failure.cause);
+        }
+        return value(result);
+    }
+
+    boolean completeResult(Object result) {
+        if (!RESULT.compareAndSet(this, null, result)) {
+            return false;
+        }
+        Completion completion = (Completion) STACK.getAndSet(this, DONE);
+        while (completion != null) {
+            Completion next = completion.next;
+            completion.next = null;
+            completion.fire();
+            completion = next;
+        }
+        return true;
+    }
+
+    Object result() {
+        return result;
+    }
+
+    private void push(Completion completion) {
+        while (true) {
+            Completion head = popGivenUp();
+            if (head == DONE) {
+                completion.fire();
+                return;
+            }
+            completion.next = head;
+            if (STACK.compareAndSet(this, head, completion)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pops the waiters on top of the stack that gave up waiting, so repeated timed or interrupted
+     * waits on a pending future do not grow the stack. Waiters that gave up below a live node stay
+     * until that node is popped too, or the future completes.
+     *
+     * @return the head left on the stack
+     */
+    private Completion popGivenUp() {
+        Completion head = stack;
+        while (head instanceof Waiter waiter && waiter.thread == null) {
+            Completion next = head.next;
+            if (STACK.compareAndSet(this, head, next)) {
+                head = next;
+            } else {
+                head = stack;
+            }
+        }
+        return head;
+    }
+
+    private <U> TaskFuture<U> then(int mode, Object function, int priority, TaskFuture<?> first, TaskFuture<?> second) {
+        Objects.requireNonNull(function, "Continuation cannot be null");
+        if (priority < 0 || priority >= manager.priorityCount()) {
+            throw new IllegalArgumentException("Priority " + priority + " is outside the executor's "
+                    + manager.priorityCount() + " priority levels");
+        }
+        TaskFuture<U> dependent = new TaskFuture<>(manager);
+        push(new Continuation<>(this, dependent, mode, function, priority, first, second));
+        return dependent;
+    }
+
+    /**
+     * Parks until the result is set, the deadline passed or, if interruptible, the thread was
+     * interrupted.
+     *
+     * @param deadline {@link System#nanoTime()} to give up at, or 0 to wait indefinitely
+     * @return the result, {@code null} on timeout or {@link #INTERRUPTED}
+     */
+    private Object await(boolean interruptible, long deadline) {
+        Waiter waiter = new Waiter(Thread.currentThread());
+        push(waiter);
+        boolean interrupted = false;
+        Object result;
+        while ((result = this.result) == null) {
+            if (deadline == 0L) {
+                LockSupport.park(this);
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    giveUp(waiter);
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            if (Thread.interrupted()) {
+                if (interruptible) {
+                    giveUp(waiter);
+                    return INTERRUPTED;
+                }
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    /**
+     * Marks a waiter that stopped waiting before the result was set, and drops it if it is still
+     * on top of the stack; otherwise the next push or the completion gets rid of it.
+     */
+    private void giveUp(Waiter waiter) {
+        waiter.thread = null;
+        popGivenUp();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T value(Object result) {
+        return result == NIL ? null : (T) result;
+    }
+
+    private static <T> T report(Object result) throws ExecutionException {
+        if (result instanceof Failure failure) {
+            if (failure.cause instanceof CancellationException cancellation) {
+                throw cancellation;
+            }
+            throw new ExecutionException(failure.cause);
+        }
+        return value(result);
+    }
+
+    /**
+     * A failed result.
+     */
+    private record Failure(Throwable cause) {}
+
+    /**
+     * A registration on a future's stack, fired once when the future completes.
+     */
+    abstract static class Completion {
+        Completion next;
+
+        abstract void fire();
+    }
+
+    /**
+     * A continuation, scheduled on the manager as a task of its own once its source completed.
+     */
+    private static final class Continuation<U> extends Completion implements Task {
+
+        private final TaskFuture<?> source;
+        private final TaskFuture<U> dependent;
+        private final int mode;
+        private final Object function;
+        private final int priority;
+        // The futures a combination reads its arguments from
+        private final TaskFuture<?> first;
+        private final TaskFuture<?> second;
+
+        Continuation(TaskFuture<?> source, TaskFuture<U> dependent, int mode, Object function, int priority,
+                     TaskFuture<?> first, TaskFuture<?> second) {
+            this.source = source;
+            this.dependent = dependent;
+            this.mode = mode;
+            this.function = function;
+            this.priority = priority;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        void fire() {
+            source.manager.scheduleUnkeyed(this);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run(Runnable releaseLocks) {
+            // A cancelled dependent has nothing left to compute
+            if (dependent.isDone()) {
+                return;
+            }
+            Object result = source.result();
+            if (result instanceof Failure && mode != HANDLE) {
+                dependent.completeResult(result);
+                return;
+            }
+
+            Object value;
+            try {
+                value = switch (mode) {
+                    case RUN -> {
+                        ((Runnable) function).run();
+                        yield null;
+                    }
+                    case ACCEPT -> {
+                        ((Consumer<Object>) function).accept(value(result));
+                        yield null;
+                    }
+                    case APPLY -> ((Function<Object, Object>) function).apply(value(result));
+                    case HANDLE -> result instanceof Failure failure
+                            ? ((BiFunction<Object, Throwable, Object>) function).apply(null, failure.cause)
+                            : ((BiFunction<Object, Throwable, Object>) function).apply(value(result), null);
+                    default -> ((BiFunction<Object, Object, Object>) function)
+                            .apply(value(first.result()), value(second.result()));
+                };
+            } catch (Throwable throwable) {
+                dependent.completeResult(new Failure(throwable));
+                return;
+            }
+            dependent.completeResult(value == null ? NIL : value);
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            dependent.completeExceptionally(t);
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return NO_LOCKS;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+    }
+
+    /**
+     * A listener run on the completing thread.
+     */
+    private static final class Listener extends Completion {
+
+        private final TaskFuture<?> source;
+        private final Consumer<Throwable> listener;
+
+        Listener(TaskFuture<?> source, Consumer<Throwable> listener) {
+            this.source = source;
+            this.listener = listener;
+        }
+
+        @Override
+        void fire() {
+            try {
+                listener.accept(source.result() instanceof Failure failure ? failure.cause : null);
+            } catch (Throwable t) {
+                LOGGER.error("Error in task future listener", t);
+            }
+        }
+    }
+
+    /**
+     * A thread blocked in {@link #get()} or {@link #join()}.
+     */
+    private static final class Waiter extends Completion {
+
+        // Cleared once the thread gave up waiting
+        volatile Thread thread;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        void fire() {
+            Thread waiting = thread;
+            if (waiting != null) {
+                LockSupport.unpark(waiting);
+            }
+        }
+    }
+
+    /**
+     * The future of {@link #allOf}, counting the futures it still waits for.
+     */
+    private static final class AllOf extends TaskFuture<Void> {
+
+        private static final VarHandle REMAINING;
+
+        static {
+            try {
+                REMAINING = MethodHandles.lookup().findVarHandle(AllOf.class, "remaining", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private volatile int remaining;
+
+        AllOf(ExecutorManager manager, int remaining) {
+            super(manager);
+            this.remaining = remaining;
+        }
+
+        boolean countDown() {
+            return (int) REMAINING.getAndAdd(this, -1) == 1;
+        }
+    }
+
+    private static final class AllOfMember extends Completion {
+
+        private final AllOf all;
+        private final TaskFuture<?> member;
+
+        AllOfMember(AllOf all, TaskFuture<?> member) {
+            this.all = all;
+            this.member = member;
+        }
+
+        @Override
+        void fire() {
+            Object result = member.result();
+            if (result instanceof Failure) {
+                all.completeResult(result);
+            } else if (all.countDown()) {
+                all.completeResult(NIL);
+            }
+        }
+    }
+
+    /**
+     * The future of {@link #of}, which forwards cancellation to its signaller.
+     */
+    private static final class SignalledFuture extends TaskFuture<Void> {
+
+        private final CancellationSignaller signaller;
+
+        SignalledFuture(ExecutorManager manager, CancellationSignaller signaller) {
+            super(manager);
+            this.signaller = Objects.requireNonNull(signaller, "Signaller cannot be null");
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            signaller.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    /**
+     * A task submitted through {@link ExecutorManager#submit}, which is its own future.
+     */
+    static final class Submitted<T> extends TaskFuture<T> implements Task {
+
+        private final Object body;
+        private final int priority;
+        private final LockToken[] lockTokens;
+
+        Submitted(ExecutorManager manager, Object body, int priority, LockToken[] lockTokens) {
+            super(manager);
+            this.body = Objects.requireNonNull(body, "Task body cannot be null");
+            this.priority = priority;
+            this.lockTokens = lockTokens.length == 0 ? NO_LOCKS : lockTokens.clone();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run(Runnable releaseLocks) {
+            Object result;
+            try {
+                if (isDone()) {
+                    // Cancelled while queued
+                    return;
+                }
+                if (body instanceof Callable<?> callable) {
+                    T value = (T) callable.call();
+                    result = value == null ? NIL : value;
+                } else {
+                    ((Runnable) body).run();
+                    result = NIL;
+                }
+            } catch (Throwable throwable) {
+                result = new Failure(throwable);
+            } finally {
+                releaseLocks.run();
+            }
+            // Locks are released first, so dependents needing them do not wait for this task
+            completeResult(result);
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            completeExceptionally(t);
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return lockTokens;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+    }
+}
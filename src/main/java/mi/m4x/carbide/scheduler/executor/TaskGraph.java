@@ -0,0 +1,452 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import mi.m4x.carbide.scheduler.CancellationSignaller;
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A set of tasks with dependencies between them, submitted to an {@link ExecutorManager} as a
+ * whole.
+ * <p>
+ * Every node counts the parents it still waits for. The worker finishing a node decrements the
+ * counters of its children and schedules each child whose counter reaches zero right away, so a
+ * node starts as soon as its own parents are done instead of waiting for a whole stage. Roots
+ * are scheduled together on submission.
+ * <p>
+ * Nodes on the critical path, the chain of dependent nodes with the largest total
+ * {@linkplain Node#cost(long) cost}, are promoted by {@link #criticalPathBoost(int)} priority
+ * levels, so work that bounds the makespan is not queued behind work that has slack.
+ * <p>
+ * A graph is a reusable definition: every {@link #submit(ExecutorManager)} starts an independent
+ * run, and changing the graph afterwards does not affect runs already submitted. Building a graph
+ * is not thread-safe.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class TaskGraph {
+
+    private static final LockToken[] NO_LOCKS = new LockToken[0];
+
+    private final ReferenceArrayList<Node> nodes = new ReferenceArrayList<>();
+    private int criticalPathBoost = 1;
+    // The plan of the last submission, dropped whenever the graph changes
+    private Plan plan;
+
+    /**
+     * Adds a node to the graph.
+     *
+     * @param body       the work to run
+     * @param priority   the priority of the node, 0 being the highest
+     * @param lockTokens the locks the node holds while it runs
+     * @return the new node
+     */
+    public Node add(Runnable body, int priority, LockToken... lockTokens) {
+        Objects.requireNonNull(body, "Runnable cannot be null");
+        Assertions.assertTrue(priority >= 0, "Priority must not be negative");
+        for (LockToken token : lockTokens) {
+            Objects.requireNonNull(token, "Lock token cannot be null");
+        }
+        Node node = new Node(nodes.size(), body, priority, lockTokens.length == 0 ? NO_LOCKS : lockTokens.clone());
+        nodes.add(node);
+        plan = null;
+        return node;
+    }
+
+    /**
+     * Sets how many priority levels nodes on the critical path are promoted by. Promoted
+     * priorities stop at level 0.
+     *
+     * @param levels the promotion, or 0 to keep every node at its own priority (default 1)
+     * @return this graph
+     */
+    public TaskGraph criticalPathBoost(int levels) {
+        Assertions.assertTrue(levels >= 0, "Critical path boost must not be negative");
+        criticalPathBoost = levels;
+        plan = null;
+        return this;
+    }
+
+    /**
+     * @return the number of nodes in the graph
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the nodes on the critical path, the chains of dependent nodes with the largest
+     * total cost, in dependency order.
+     *
+     * @return the critical nodes; empty for an empty graph
+     * @throws IllegalStateException if the dependencies contain a cycle
+     */
+    public List<Node> criticalPath() {
+        Plan plan = plan();
+        ReferenceArrayList<Node> path = new ReferenceArrayList<>();
+        for (int index : plan.order) {
+            if (plan.critical[index]) {
+                path.add(nodes.get(index));
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Schedules the graph on an executor. Roots are scheduled immediately and every other node
+     * once its last parent finished.
+     * <p>
+     * The returned signaller completes once no node of this run is queued or running anymore:
+     * with {@code null} if every node ran, with the first exception a node threw, or with a
+     * {@link CancellationException} if the run was cancelled before all nodes started. A node
+     * failure cancels the run. Cancelling skips every node that has not started yet; running
+     * nodes finish normally.
+     *
+     * @param manager the executor to run the nodes on
+     * @return the signaller of this run
+     * @throws IllegalStateException    if the dependencies contain a cycle
+     * @throws IllegalArgumentException if a node's priority is outside the executor's levels
+     */
+    public CancellationSignaller submit(ExecutorManager manager) {
+        Objects.requireNonNull(manager, "Executor manager cannot be null");
+        Plan plan = plan();
+        for (int priority : plan.priorities) {
+            if (priority >= manager.priorityCount()) {
+                throw new IllegalArgumentException("Node priority " + priority + " is outside the executor's "
+                        + manager.priorityCount() + " priority levels");
+            }
+        }
+
+        Run run = new Run(plan, manager);
+        if (plan.roots.length == 0) {
+            run.signaller.fireComplete(null);
+            return run.signaller;
+        }
+
+        Task[] roots = new Task[plan.roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = run.tasks[plan.roots[i]];
+        }
+        manager.scheduleAll(roots);
+        return run.signaller;
+    }
+
+    private Plan plan() {
+        if (plan == null) {
+            plan = new Plan(nodes, criticalPathBoost);
+        }
+        return plan;
+    }
+
+    /**
+     * A node of a {@link TaskGraph}.
+     */
+    public final class Node {
+
+        private final int index;
+        private final Runnable body;
+        private final int priority;
+        private final LockToken[] lockTokens;
+        private final IntArrayList children = new IntArrayList();
+        private int parentCount;
+        private long cost = 1L;
+
+        private Node(int index, Runnable body, int priority, LockToken[] lockTokens) {
+            this.index = index;
+            this.body = body;
+            this.priority = priority;
+            this.lockTokens = lockTokens;
+        }
+
+        /**
+         * Makes this node wait for the given nodes to finish before it starts.
+         *
+         * @param parents nodes of the same graph
+         * @return this node
+         * @throws IllegalArgumentException if a parent belongs to another graph or is this node
+         */
+        public Node dependsOn(Node... parents) {
+            for (Node parent : parents) {
+                Objects.requireNonNull(parent, "Parent cannot be null");
+                if (parent.graph() != TaskGraph.this) {
+                    throw new IllegalArgumentException("Parent belongs to another task graph");
+                }
+                if (parent == this) {
+                    throw new IllegalArgumentException("A node cannot depend on itself");
+                }
+            }
+            for (Node parent : parents) {
+                parent.children.add(index);
+                parentCount++;
+            }
+            plan = null;
+            return this;
+        }
+
+        /**
+         * Sets the expected cost of this node, in any unit shared by the graph's nodes. Costs only
+         * decide which nodes form the critical path.
+         *
+         * @param cost the expected cost (default 1)
+         * @return this node
+         */
+        public Node cost(long cost) {
+            Assertions.assertTrue(cost > 0, "Cost must be positive");
+            this.cost = cost;
+            plan = null;
+            return this;
+        }
+
+        /**
+         * @return the priority the node was added with, before any critical-path promotion
+         */
+        public int priority() {
+            return priority;
+        }
+
+        private TaskGraph graph() {
+            return TaskGraph.this;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the graph: dependencies, effective priorities and the critical
+     * path, shared by all runs submitted until the graph changes.
+     */
+    private static final class Plan {
+
+        final Runnable[] bodies;
+        final LockToken[][] lockTokens;
+        final int[] priorities;
+        final int[][] children;
+        final int[] parentCounts;
+        final int[] roots;
+        final int[] order;
+        final boolean[] critical;
+
+        Plan(List<Node> nodes, int boost) {
+            int count = nodes.size();
+            bodies = new Runnable[count];
+            lockTokens = new LockToken[count][];
+            priorities = new int[count];
+            children = new int[count][];
+            parentCounts = new int[count];
+            IntArrayList rootList = new IntArrayList();
+            for (int i = 0; i < count; i++) {
+                Node node = nodes.get(i);
+                bodies[i] = node.body;
+                lockTokens[i] = node.lockTokens;
+                children[i] = node.children.toIntArray();
+                parentCounts[i] = node.parentCount;
+                if (node.parentCount == 0) {
+                    rootList.add(i);
+                }
+            }
+            roots = rootList.toIntArray();
+
+            // Kahn's algorithm; nodes left over sit on a cycle
+            order = new int[count];
+            int[] waiting = parentCounts.clone();
+            int ordered = 0;
+            for (int root : roots) {
+                order[ordered++] = root;
+            }
+            for (int i = 0; i < ordered; i++) {
+                for (int child : children[order[i]]) {
+                    if (--waiting[child] == 0) {
+                        order[ordered++] = child;
+                    }
+                }
+            }
+            if (ordered != count) {
+                throw new IllegalStateException("Task graph contains a cycle");
+            }
+
+            // Longest cost up to each node and from each node on; their sum is the critical
+            // length exactly for the nodes on a critical path
+            long[] before = new long[count];
+            long[] after = new long[count];
+            long criticalLength = 0L;
+            for (int i = count - 1; i >= 0; i--) {
+                int node = order[i];
+                long longest = 0L;
+                for (int child : children[node]) {
+                    longest = Math.max(longest, after[child]);
+                }
+                after[node] = nodes.get(node).cost + longest;
+                criticalLength = Math.max(criticalLength, after[node]);
+            }
+            for (int node : order) {
+                long end = before[node] + nodes.get(node).cost;
+                for (int child : children[node]) {
+                    before[child] = Math.max(before[child], end);
+                }
+            }
+
+            critical = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                critical[i] = before[i] + after[i] == criticalLength;
+                int priority = nodes.get(i).priority;
+                priorities[i] = critical[i] ? Math.max(0, priority - boost) : priority;
+            }
+        }
+    }
+
+    /**
+     * The state of one submission: the parents each node still waits for and the nodes not
+     * finished or skipped yet.
+     */
+    private static final class Run {
+
+        final Plan plan;
+        final ExecutorManager manager;
+        final NodeTask[] tasks;
+        final AtomicIntegerArray waiting;
+        final AtomicInteger remaining;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CancellationSignaller signaller;
+        volatile boolean cancelled;
+        volatile boolean skippedAny;
+
+        Run(Plan plan, ExecutorManager manager) {
+            this.plan = plan;
+            this.manager = manager;
+            this.tasks = new NodeTask[plan.bodies.length];
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = new NodeTask(this, i);
+            }
+            this.waiting = new AtomicIntegerArray(plan.parentCounts);
+            this.remaining = new AtomicInteger(tasks.length);
+            this.signaller = new CancellationSignaller(signaller -> cancelled = true);
+        }
+
+        boolean stopped() {
+            return cancelled || failure.get() != null;
+        }
+
+        void fail(Throwable throwable) {
+            if (!failure.compareAndSet(null, throwable) && failure.get() != throwable) {
+                failure.get().addSuppressed(throwable);
+            }
+        }
+
+        /**
+         * Releases the children of a node that finished or was skipped. Ready children are
+         * scheduled before the node counts as done, so the run cannot complete while they are
+         * about to be queued.
+         */
+        void complete(int node) {
+            int[] children = plan.children[node];
+            Task[] ready = null;
+            int readyCount = 0;
+            IntArrayList skipped = null;
+            for (int child : children) {
+                if (waiting.decrementAndGet(child) != 0) {
+                    continue;
+                }
+                if (stopped()) {
+                    if (skipped == null) {
+                        skipped = new IntArrayList();
+                    }
+                    skipped.add(child);
+                } else {
+                    if (ready == null) {
+                        ready = new Task[children.length];
+                    }
+                    ready[readyCount++] = tasks[child];
+                }
+            }
+
+            if (readyCount == 1) {
+                schedule(ready[0]);
+            } else if (readyCount > 1) {
+                manager.scheduleAll(readyCount == ready.length ? ready : Arrays.copyOf(ready, readyCount));
+            }
+
+            // Descendants of skipped nodes are skipped as well, without recursing
+            while (skipped != null && !skipped.isEmpty()) {
+                int skippedNode = skipped.popInt();
+                skippedAny = true;
+                for (int child : plan.children[skippedNode]) {
+                    if (waiting.decrementAndGet(child) == 0) {
+                        skipped.add(child);
+                    }
+                }
+                done();
+            }
+            done();
+        }
+
+        private void schedule(Task task) {
+            if (task.lockTokens().length == 0) {
+                manager.scheduleUnkeyed(task);
+            } else {
+                manager.schedule(task);
+            }
+        }
+
+        private void done() {
+            if (remaining.decrementAndGet() != 0) {
+                return;
+            }
+            Throwable throwable = failure.get();
+            if (throwable == null && skippedAny) {
+                throwable = new CancellationException("Task graph was cancelled");
+            }
+            signaller.fireComplete(throwable);
+        }
+    }
+
+    /**
+     * A node as scheduled for one run.
+     */
+    private static final class NodeTask implements Task {
+
+        private final Run run;
+        private final int index;
+
+        NodeTask(Run run, int index) {
+            this.run = run;
+            this.index = index;
+        }
+
+        @Override
+        public void run(Runnable releaseLocks) {
+            try {
+                if (run.stopped()) {
+                    run.skippedAny = true;
+                } else {
+                    run.plan.bodies[index].run();
+                }
+            } finally {
+                releaseLocks.run();
+            }
+            run.complete(index);
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            run.fail(t);
+            run.complete(index);
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return run.plan.lockTokens[index];
+        }
+
+        @Override
+        public int priority() {
+            return run.plan.priorities[index];
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Executor;
+
+/**
+ * A named share of an {@link ExecutorManager}'s workers, for subsystems that must not starve each
+ * other while sharing one executor.
+ * <p>
+ * Each group queues its tasks by priority in a queue of its own, so strict priority still holds
+ * within a group. Between groups, workers pick by start-time fair queueing: every group keeps a
+ * virtual time that grows by the run time of its tasks divided by its weight, and the worker takes
+ * the next task from the backlogged group with the smallest one. Under saturation each group gets
+ * a share of the run time proportional to its weight, however many tasks it queues and at which
+ * priority. A group that was idle starts again from the current virtual time, so idling does not
+ * earn credit.
+ * <p>
+ * The accounting is lock-free: a task is charged an estimate of its group's run time when it is
+ * dequeued, so workers dequeuing concurrently already see each other's charges, and the difference
+ * to the measured run time is settled once it finishes. Tasks scheduled directly on the manager form
+ * the {@linkplain ExecutorManager#defaultGroup() default group}, weighted by
+ * {@link ExecutorConfig#defaultGroupWeight()}. As long as no group is created, none of this costs
+ * anything.
+ * <p>
+ * Tasks with a deadline under {@link QueueingPolicy#EARLIEST_DEADLINE_FIRST}, and tasks that were
+ * handed a lock they waited for, run ahead of every group. A handed-over task already holds its
+ * lock, so it is queued apart from its group rather than waiting for the group's turn while every
+ * other waiter on that lock waits with it.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class TaskGroup {
+
+    /** The largest weight a group can have. */
+    public static final int MAX_WEIGHT = 1 << 16;
+
+    // Run time is scaled up before dividing by the weight, so short tasks of heavy groups still count
+    private static final int COST_SHIFT = 16;
+    private static final long INITIAL_COST_NANOS = 1_000L;
+    private static final VarHandle VIRTUAL_TIME;
+
+    static {
+        try {
+            VIRTUAL_TIME = MethodHandles.lookup().findVarHandle(TaskGroup.class, "virtualTime", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final ExecutorManager manager;
+    private final String name;
+    private final int weight;
+    // The default group has none, its tasks live in the manager's own queues
+    final DynamicPriorityQueue<Task> queue;
+
+    private volatile long virtualTime;
+    // Moving average of the run time, racy updates only cost accuracy
+    private volatile long costEstimate = INITIAL_COST_NANOS;
+
+    TaskGroup(ExecutorManager manager, String name, int weight, DynamicPriorityQueue<Task> queue, long virtualTime) {
+        this.manager = manager;
+        this.name = name;
+        this.weight = weight;
+        this.queue = queue;
+        this.virtualTime = virtualTime;
+    }
+
+    /**
+     * @return the name the group was created with
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the group's weight, its share of the workers relative to the other groups
+     */
+    public int weight() {
+        return weight;
+    }
+
+    /**
+     * @return the number of tasks queued in this group
+     */
+    public int queuedTasks() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Schedules a task in this group.
+     *
+     * @param task Task to schedule.
+     */
+    public void schedule(Task task) {
+        manager.scheduleInGroup(this, task, false);
+    }
+
+    /**
+     * Schedules a runnable in this group. Runnables take the unkeyed lane, see
+     * {@link ExecutorManager#scheduleUnkeyed(Task)}.
+     *
+     * @param runnable Runnable to execute.
+     * @param priority Priority level within the group.
+     */
+    public void schedule(Runnable runnable, int priority) {
+        manager.scheduleInGroup(this, new SimpleTask(runnable, priority), true);
+    }
+
+    /**
+     * Provides an Executor interface scheduling into this group at a fixed priority.
+     *
+     * @param priority Priority level within the group.
+     * @return An {@link Executor} that submits tasks to this group at the given priority.
+     */
+    public Executor executor(int priority) {
+        return runnable -> schedule(runnable, priority);
+    }
+
+    /**
+     * @return the start tag a task taken now would get: the group's virtual time, but never behind
+     *         the manager's virtual clock
+     */
+    long startTag(long clock) {
+        return Math.max(virtualTime, clock);
+    }
+
+    /**
+     * Charges a dequeued task's estimated run time.
+     *
+     * @return the charge, to be settled with {@link #settle(long, long)} once the task has run
+     */
+    long charge(long clock) {
+        long cost = (costEstimate << COST_SHIFT) / weight;
+        long current;
+        do {
+            current = virtualTime;
+        } while (!VIRTUAL_TIME.compareAndSet(this, current, Math.max(current, clock) + cost));
+        return cost;
+    }
+
+    /**
+     * Replaces a task's charge with its measured run time.
+     */
+    void settle(long charged, long runNanos) {
+        VIRTUAL_TIME.getAndAdd(this, (runNanos << COST_SHIFT) / weight - charged);
+        long estimate = costEstimate;
+        costEstimate = estimate + ((runNanos - estimate) >> 3);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskGroup[" + name + ", weight " + weight + "]";
+    }
+}
@@ -0,0 +1,289 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.scheduler.structures.MpscChunkedQueue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel holding the delayed and periodic tasks of an {@link ExecutorManager}.
+ * <p>
+ * Six levels of 64 slots cover 2^36 ticks; a task sits at the level of the highest 6-bit group in
+ * which its deadline tick differs from the current tick, so inserting and removing are O(1) list
+ * operations and each level finds its next occupied slot with one bit scan. When the wheel reaches
+ * a slot above level 0 its tasks cascade to lower levels, each task moving at most once per level.
+ * <p>
+ * There is no timer thread. Producers push new and cancelled tasks onto lock-free inboxes and
+ * lower {@link #nextExpiryNanos} when their deadline is the earliest. Workers compare it with the
+ * clock between tasks, and the one that wins the lock drains the inboxes, advances the wheel and
+ * moves every expired task into the priority queues in one batch. One parked worker, the
+ * timekeeper, parks only until the next expiry, so timers fire while the executor is idle.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+final class TimerWheel {
+
+    private static final int LEVELS = 6;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final long MAX_TICKS = (1L << (LEVELS * SLOT_BITS)) - 1;
+    private static final int BATCH = 256;
+
+    private final ExecutorManager manager;
+    private final long tickNanos;
+    private final long originNanos;
+    private final MpscChunkedQueue<ScheduledTask> added = new MpscChunkedQueue<>();
+    private final MpscChunkedQueue<ScheduledTask> cancelled = new MpscChunkedQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by the lock
+    private final ScheduledTask[] slots = new ScheduledTask[LEVELS * SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private final Task[] expired = new Task[BATCH];
+    private int expiredCount;
+    private long currentTick;
+    // Level and slot of the last nextExpirationTick() result
+    private int nextLevel;
+    private int nextSlot;
+
+    // Earliest time the wheel must be advanced at, Long.MAX_VALUE while there is nothing to do
+    private final AtomicLong nextExpiryNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicInteger pending = new AtomicInteger();
+    final AtomicReference<WorkerThread> timekeeper = new AtomicReference<>();
+
+    TimerWheel(ExecutorManager manager, long tickNanos) {
+        this.manager = manager;
+        this.tickNanos = tickNanos;
+        this.originNanos = System.nanoTime();
+    }
+
+    /**
+     * Hands a task to the wheel. Safe to call from any thread.
+     */
+    void add(ScheduledTask task) {
+        pending.incrementAndGet();
+        added.offer(task);
+        if (lowerNextExpiry(task.dueNanos)) {
+            manager.timerDeadlineLowered(timekeeper.get());
+        }
+    }
+
+    /**
+     * Queues a cancelled task for removal from the wheel. Safe to call from any thread.
+     */
+    void cancelled(ScheduledTask task) {
+        this.cancelled.offer(task);
+        // Removed by an advance within a tick; only the first cancellation of a tick wakes anyone
+        if (lowerNextExpiry(System.nanoTime() + tickNanos)) {
+            manager.timerDeadlineLowered(timekeeper.get());
+        }
+    }
+
+    /**
+     * @return the number of tasks scheduled and neither expired nor cancelled
+     */
+    int pending() {
+        return pending.get();
+    }
+
+    /**
+     * @return whether the wheel must be advanced at {@code nowNanos}
+     */
+    boolean isDue(long nowNanos) {
+        return nowNanos - nextExpiryNanos.get() >= 0L;
+    }
+
+    /**
+     * Cheap check for the worker loop: a single volatile read while no timer is pending.
+     */
+    boolean isDue() {
+        long next = nextExpiryNanos.get();
+        return next != Long.MAX_VALUE && System.nanoTime() - next >= 0L;
+    }
+
+    /**
+     * @return nanoseconds until the wheel must be advanced, {@link Long#MAX_VALUE} if never
+     */
+    long nanosUntilDue() {
+        long next = nextExpiryNanos.get();
+        return next == Long.MAX_VALUE ? Long.MAX_VALUE : next - System.nanoTime();
+    }
+
+    /**
+     * Drains the inboxes, advances the wheel to the current time and schedules the expired tasks,
+     * unless another thread is doing so already.
+     */
+    void advance() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            // Reset first: a producer lowering the expiry from now on is either drained below or kept
+            nextExpiryNanos.set(Long.MAX_VALUE);
+            drainInbox();
+            long now = System.nanoTime();
+            long nowTick = Math.max(currentTick, (now - originNanos) / tickNanos);
+            expireUntil(nowTick);
+            currentTick = nowTick;
+            flushExpired();
+
+            long nextTick = nextExpirationTick();
+            // The timekeeper may have parked on the reset above, so it is told the new expiry
+            if (nextTick >= 0L && lowerNextExpiry(originNanos + nextTick * tickNanos)) {
+                manager.timerDeadlineLowered(timekeeper.get());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean lowerNextExpiry(long deadline) {
+        long current;
+        do {
+            current = nextExpiryNanos.get();
+            if (current != Long.MAX_VALUE && deadline - current >= 0L) {
+                return false;
+            }
+        } while (!nextExpiryNanos.compareAndSet(current, deadline));
+        return true;
+    }
+
+    private void drainInbox() {
+        ScheduledTask task;
+        while ((task = added.poll()) != null) {
+            if (task.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+            // Deadlines are rounded up to the next tick, so tasks never fire early
+            long delta = task.dueNanos - originNanos;
+            task.tick = delta <= 0L ? 0L : (delta + tickNanos - 1) / tickNanos;
+            place(task);
+        }
+        // Additions come first, so a task cancelled before it was placed was dropped above
+        while ((task = cancelled.poll()) != null) {
+            if (task.slot >= 0) {
+                unlink(task);
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Processes occupied slots in deadline order up to and including {@code nowTick}.
+     */
+    private void expireUntil(long nowTick) {
+        while (true) {
+            long tick = nextExpirationTick();
+            if (tick < 0L || tick > nowTick) {
+                return;
+            }
+
+            int level = nextLevel;
+            int slot = nextSlot;
+            currentTick = Math.max(currentTick, tick);
+            int index = level * SLOTS + slot;
+            ScheduledTask task = slots[index];
+            slots[index] = null;
+            occupied[level] &= ~(1L << slot);
+            while (task != null) {
+                ScheduledTask next = task.next;
+                task.previous = task.next = null;
+                task.slot = -1;
+                // Cascades to a lower level, or expires once its tick has been reached
+                place(task);
+                task = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the start tick of the earliest occupied slot. Tasks at a lower level always expire
+     * before those at a higher one, so the first occupied level decides.
+     *
+     * @return the tick, or -1 if the wheel is empty
+     */
+    private long nextExpirationTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            long bits = occupied[level];
+            if (bits == 0L) {
+                continue;
+            }
+            int shift = level * SLOT_BITS;
+            // Scan from the slot after the current one: below the top level the current slot is
+            // always empty, at the top it holds clamped tasks a full rotation away
+            int start = ((int) (currentTick >>> shift) + 1) & (SLOTS - 1);
+            int slot = (Long.numberOfTrailingZeros(Long.rotateRight(bits, start)) + start) & (SLOTS - 1);
+            long levelRange = 1L << (shift + SLOT_BITS);
+            long tick = (currentTick & -levelRange) + ((long) slot << shift);
+            if (tick <= currentTick) {
+                // Only the top level wraps around
+                tick += levelRange;
+            }
+            nextLevel = level;
+            nextSlot = slot;
+            return tick;
+        }
+        return -1L;
+    }
+
+    private void place(ScheduledTask task) {
+        if (task.tick <= currentTick) {
+            pending.decrementAndGet();
+            expired[expiredCount++] = task;
+            if (expiredCount == BATCH) {
+                flushExpired();
+            }
+            return;
+        }
+
+        long tick = Math.min(task.tick, currentTick + MAX_TICKS);
+        long differing = Math.min((tick ^ currentTick) | (SLOTS - 1), MAX_TICKS);
+        int level = (63 - Long.numberOfLeadingZeros(differing)) / SLOT_BITS;
+        int slot = (int) (tick >>> (level * SLOT_BITS)) & (SLOTS - 1);
+        int index = level * SLOTS + slot;
+
+        ScheduledTask head = slots[index];
+        task.previous = null;
+        task.next = head;
+        if (head != null) {
+            head.previous = task;
+        }
+        slots[index] = task;
+        task.slot = index;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(ScheduledTask task) {
+        int index = task.slot;
+        if (task.previous != null) {
+            task.previous.next = task.next;
+        } else {
+            slots[index] = task.next;
+            if (task.next == null) {
+                occupied[index / SLOTS] &= ~(1L << (index % SLOTS));
+            }
+        }
+        if (task.next != null) {
+            task.next.previous = task.previous;
+        }
+        task.previous = task.next = null;
+        task.slot = -1;
+    }
+
+    private void flushExpired() {
+        if (expiredCount == 0) {
+            return;
+        }
+        int count = expiredCount;
+        expiredCount = 0;
+        try {
+            manager.scheduleExpired(expired, count);
+        } finally {
+            Arrays.fill(expired, 0, count, null);
+        }
+    }
+}
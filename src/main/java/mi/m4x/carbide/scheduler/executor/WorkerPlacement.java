@@ -0,0 +1,37 @@
+package mi.m4x.carbide.scheduler.executor;
+
+import mi.m4x.carbide.natives.CpuTopology;
+import mi.m4x.carbide.natives.ThreadAffinity;
+
+/**
+ * Selects how an {@link ExecutorManager} places its workers on the CPUs of the host.
+ * <p>
+ * Placed workers are spread over the {@link CpuTopology#placement()} order: one per physical core,
+ * filling a socket before the next, and onto the remaining hyper-threads only once every core has
+ * a worker. Each worker pins itself with {@link ThreadAffinity} when it starts; where that is not
+ * supported the workers run unpinned. Workers also prefer their own socket when they steal tasks
+ * and when new tasks wake parked workers, so work moves across sockets only when a socket has none.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public enum WorkerPlacement {
+
+    /**
+     * Workers are left to the operating system's scheduler, which may migrate them freely.
+     */
+    NONE,
+
+    /**
+     * Each worker is pinned to a single CPU, one worker per physical core as long as there are more
+     * cores than workers.
+     */
+    PER_CORE,
+
+    /**
+     * Each worker is assigned a CPU as with {@link #PER_CORE} but pinned to every CPU of that CPU's
+     * socket, so the operating system can still balance workers within a socket but not move them
+     * to another one.
+     */
+    PER_SOCKET
+}
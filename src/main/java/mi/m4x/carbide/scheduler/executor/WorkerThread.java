@@ -1,8 +1,11 @@
 package mi.m4x.carbide.scheduler.executor;
 
+import mi.m4x.carbide.natives.ThreadAffinity;
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.LockSupport;
 
@@ -10,7 +13,11 @@ import java.util.concurrent.locks.LockSupport;
  * WorkerThread continuously polls and executes tasks from the ExecutorManager's global queue.
  * It handles lock acquisition/release and task lifecycle including exception propagation.
  *
- * The thread will wait (block) when there are no tasks ready for execution, minimizing CPU usage.
+ * When there are no tasks ready for execution the thread idles according to the manager's
+ * {@link IdleStrategy}, which ranges from busy-spinning to parking until signalled. Between tasks
+ * it also advances the manager's timer wheel once a delayed task is due. In an elastic pool a
+ * worker that idled for the keep-alive time retires, unless the pool is at its minimum size.
+ * Under a {@link WorkerPlacement} the worker pins itself to its CPUs before taking any task.
  *
  * @author M4ximumpizza
  * @since 1.0.0
@@ -18,9 +25,28 @@ import java.util.concurrent.locks.LockSupport;
 public class WorkerThread extends Thread {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("Carbide Worker Thread");
+    private static final Runnable NO_LOCKS = () -> {};
 
-    private final ExecutorManager executorManager;
+    final ExecutorManager executorManager;
+    final DynamicPriorityQueue<Task> localQueue;
+    final int index;
+    // Position in the manager's CPU placement order, -1 if not placed
+    final int slot;
+    final int socket;
+    private final int[] cpus;
+    private final boolean virtualDispatcher;
+    final AtomicBoolean parked = new AtomicBoolean(false);
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
+    // Only set when the manager reuses release callbacks
+    private final LockRelease lockRelease;
+
+    // Group the polled task was charged to, while there are task groups; used by this thread alone
+    TaskGroup group;
+    long groupCharge;
+
+    // Only maintained while metrics are enabled; written by this thread alone
+    volatile long startNanos;
+    volatile long idleNanos;
 
     /**
      * Constructs a new worker thread bound to a specific ExecutorManager.
@@ -28,45 +54,101 @@ public class WorkerThread extends Thread {
      * @param executorManager The manager that coordinates task execution and locking.
      */
     public WorkerThread(ExecutorManager executorManager) {
+        this(executorManager, -1, -1);
+    }
+
+    /**
+     * Constructs a new worker thread occupying a slot of the manager's worker array.
+     *
+     * @param executorManager The manager that coordinates task execution and locking.
+     * @param index           The slot of this worker, or -1 if it is not tracked by the manager.
+     * @param slot            The worker's position in the manager's CPU placement, or -1 if it is not placed.
+     * @since 1.0.5
+     */
+    WorkerThread(ExecutorManager executorManager, int index, int slot) {
         this.executorManager = executorManager;
+        this.localQueue = executorManager.createLocalQueue();
+        this.index = index;
+        this.slot = slot;
+        this.socket = executorManager.socketOf(slot);
+        this.cpus = executorManager.cpusOf(slot);
+        this.virtualDispatcher = executorManager.executionMode() == ExecutionMode.VIRTUAL_THREADS;
+        this.lockRelease = executorManager.reuseReleaseCallbacks ? new LockRelease(executorManager, this) : null;
     }
 
     /**
-     * Main execution loop that repeatedly polls and runs tasks, or waits if none are ready.
+     * Main execution loop that repeatedly polls and runs tasks, or idles according to the
+     * manager's {@link IdleStrategy} if none are ready.
      */
     @Override
     public void run() {
-        mainLoop:
-        while (true) {
-            if (shutdown.get()) {
-                return;
-            }
+        IdleStrategy idleStrategy = executorManager.idleStrategy();
+        boolean recordIdle = executorManager.metrics != null;
+        long keepAliveNanos = executorManager.workerKeepAliveNanos();
+        int idleRounds = 0;
+        long idleSince = 0L;
+        long keepAliveSince = 0L;
+        TimerWheel timers = executorManager.timers;
+        if (cpus != null && ThreadAffinity.isSupported() && !ThreadAffinity.pinCurrentThread(cpus)) {
+            LOGGER.warn("Could not pin {} to CPUs {}, it runs unpinned", getName(), Arrays.toString(cpus));
+        }
+        startNanos = System.nanoTime();
 
+        while (!shutdown.get()) {
+            // Due timers enter the queues before the next poll, so they compete by priority
+            if (timers.isDue()) {
+                timers.advance();
+            }
             if (pollAndExecuteTask()) {
+                if (idleRounds != 0) {
+                    // Timestamps are only taken when switching between busy and idle
+                    if (recordIdle) {
+                        idleNanos += System.nanoTime() - idleSince;
+                    }
+                    if (keepAliveNanos != 0L) {
+                        executorManager.markIdle(false);
+                    }
+                }
+                idleRounds = 0;
                 continue;
             }
 
-            // Spin-wait optimization section (can be enabled if extremely low latency is required)
-            // Uncomment for reduced wake-up latency at the cost of some CPU
-            /*
-            for (int i = 0; i < 1000; i++) {
-                if (pollAndExecuteTask()) {
-                    continue mainLoop;
+            if (idleRounds == 0 && (recordIdle || keepAliveNanos != 0L)) {
+                idleSince = keepAliveSince = System.nanoTime();
+                // Only an elastic pool has a keep-alive, and only its controller asks for idle workers
+                if (keepAliveNanos != 0L) {
+                    executorManager.markIdle(true);
                 }
-                LockSupport.parkNanos(10_000); // 10µs
             }
-            */
 
-            // Park until notified or new task arrives
-            synchronized (executorManager.workerMonitor) {
-                if (executorManager.hasPendingTasks()) {
-                    continue;
+            long parkNanos = idleStrategy.idle(idleRounds);
+            if (idleRounds < Integer.MAX_VALUE) {
+                idleRounds++;
+            }
+
+            if (keepAliveNanos != 0L) {
+                long idleFor = System.nanoTime() - keepAliveSince;
+                if (idleFor >= keepAliveNanos) {
+                    if (executorManager.retireWorker(this)) {
+                        executorManager.markIdle(false);
+                        return;
+                    }
+                    // At the minimum size: idle for another keep-alive before asking again
+                    keepAliveSince += idleFor;
+                    idleFor = 0L;
+                }
+                if (parkNanos != IdleStrategy.POLL_AGAIN) {
+                    parkNanos = Math.min(parkNanos, keepAliveNanos - idleFor);
                 }
-                try {
-                    executorManager.workerMonitor.wait(); // Wait for work
-                } catch (InterruptedException e) {
-                    // Re-interrupt the thread to propagate the interrupt
-                    Thread.currentThread().interrupt();
+            }
+
+            if (parkNanos != IdleStrategy.POLL_AGAIN) {
+                // Park until signalled, timed out, or a new task arrives
+                executorManager.parkWorker(this, parkNanos);
+                if (isInterrupted()) {
+                    if (keepAliveNanos != 0L) {
+                        executorManager.markIdle(false);
+                    }
                     return;
                 }
             }
@@ -74,46 +156,128 @@ public class WorkerThread extends Thread {
     }
 
     /**
-     * Attempts to poll a task from the manager and execute it.
+     * Attempts to poll a task from the manager and execute it, or hand it to a virtual thread
+     * when the manager runs in {@link ExecutionMode#VIRTUAL_THREADS} mode.
      *
-     * @return {@code true} if a task was executed, {@code false} otherwise.
+     * @return {@code true} if a task was executed or dispatched, {@code false} otherwise.
      */
     private boolean pollAndExecuteTask() {
-        final Task task = executorManager.pollExecutableTask();
+        if (virtualDispatcher) {
+            return executorManager.dispatchToVirtualThread(this);
+        }
+
+        final Task task = executorManager.pollExecutableTask(this);
         if (task == null) {
             return false;
         }
 
-        final boolean[] released = new boolean[1]; // Efficient mutable holder
-        try {
-            task.run(() -> {
-                if (!released[0]) {
-                    released[0] = true;
-                    executorManager.releaseLocks(task);
+        TaskGroup charged = group;
+        if (charged == null) {
+            executeTask(executorManager, task, lockRelease);
+        } else {
+            group = null;
+            executeCharged(executorManager, task, lockRelease, charged, groupCharge);
+        }
+        return true;
+    }
+
+    /**
+     * Runs a task taken from a {@link TaskGroup} and settles its estimated charge with the measured
+     * run time.
+     *
+     * @param executorManager The manager that acquired the task's locks.
+     * @param task            The task to run.
+     * @param reusedRelease   The worker's reusable release callback, or {@code null} to create one.
+     * @param group           The group the task was charged to.
+     * @param charged         The charge taken when the task was dequeued.
+     */
+    static void executeCharged(ExecutorManager executorManager, Task task, LockRelease reusedRelease,
+                               TaskGroup group, long charged) {
+        long start = System.nanoTime();
+        executeTask(executorManager, task, reusedRelease);
+        group.settle(charged, System.nanoTime() - start);
+    }
+
+    /**
+     * Runs a task whose locks are already held, releasing them exactly once and routing any
+     * failure to {@link Task#propagateException(Throwable)}.
+     *
+     * @param executorManager The manager that acquired the task's locks.
+     * @param task            The task to run.
+     * @param reusedRelease   The worker's reusable release callback, or {@code null} to create one.
+     */
+    static void executeTask(ExecutorManager executorManager, Task task, LockRelease reusedRelease) {
+        MetricsRecorder metrics = executorManager.metrics;
+        long start = metrics != null && metrics.sampleRun(task) ? System.nanoTime() : 0L;
+
+        // A single call site, so the task body is only inlined once
+        runTask(executorManager, task, reusedRelease);
+
+        if (metrics != null) {
+            long deadline = task.deadlineNanos();
+            if (start != 0L || deadline != Task.NO_DEADLINE) {
+                long end = System.nanoTime();
+                if (start != 0L) {
+                    metrics.onRun(task, end - start);
                 }
-            });
-        } catch (Throwable taskException) {
-            // Ensure locks are always released
-            try {
-                if (!released[0]) {
-                    released[0] = true;
-                    executorManager.releaseLocks(task);
+                if (deadline != Task.NO_DEADLINE) {
+                    metrics.onDeadlineRun(deadline, end);
                 }
-            } catch (Throwable lockException) {
-                taskException.addSuppressed(lockException);
-                LOGGER.error("Error while releasing locks", taskException);
             }
+        }
+    }
 
-            // Handle propagation failure separately
+    private static void runTask(ExecutorManager executorManager, Task task, LockRelease reusedRelease) {
+        if (task.lockTokens().length == 0) {
+            // Nothing to release, so no per-run release callback is needed
             try {
-                task.propagateException(taskException);
-            } catch (Throwable propagationError) {
-                taskException.addSuppressed(propagationError);
-                LOGGER.error("Error while propagating exception", taskException);
+                task.run(NO_LOCKS);
+            } catch (Throwable taskException) {
+                failTask(executorManager, task, taskException, null);
             }
+            return;
         }
 
-        return true;
+        LockRelease release = (reusedRelease != null ? reusedRelease : new LockRelease(executorManager)).arm(task);
+        try {
+            task.run(release);
+        } catch (Throwable taskException) {
+            failTask(executorManager, task, taskException, release);
+            return;
+        }
+
+        if (reusedRelease != null) {
+            // The callback is about to serve the next task, so the locks cannot outlive the run
+            release.run();
+        }
+    }
+
+    /**
+     * Handles a task that failed: ensures its locks are released and propagates the exception.
+     *
+     * @param executorManager The manager that acquired the task's locks.
+     * @param task            The failed task.
+     * @param taskException   The failure cause.
+     * @param release         The task's release callback, or {@code null} if it holds no locks.
+     */
+    static void failTask(ExecutorManager executorManager, Task task, Throwable taskException, LockRelease release) {
+        // Ensure locks are always released; the callback ignores repeated calls
+        try {
+            if (release != null) {
+                release.run();
+            }
+        } catch (Throwable lockException) {
+            taskException.addSuppressed(lockException);
+            LOGGER.error("Error while releasing locks", taskException);
+        }
+
+        // Handle propagation failure separately
+        try {
+            task.propagateException(taskException);
+        } catch (Throwable propagationError) {
+            taskException.addSuppressed(propagationError);
+            LOGGER.error("Error while propagating exception", taskException);
+        }
     }
 
     /**
@@ -124,5 +288,26 @@ public class WorkerThread extends Thread {
         shutdown.set(true);
         LockSupport.unpark(this);
     }
+
+    /**
+     * Checks whether a shutdown has been requested for this worker.
+     *
+     * @return {@code true} if {@link #shutdown()} was called
+     * @since 1.0.5
+     */
+    public boolean isShutdown() {
+        return shutdown.get();
+    }
+
+    /**
+     * Returns the socket this worker was placed on, see {@link WorkerPlacement}.
+     *
+     * @return the socket in the manager's {@link ExecutorManager#cpuTopology() topology}, or -1
+     *         if the worker is not placed
+     * @since 1.0.5
+     */
+    public int socket() {
+        return socket;
+    }
 }
 
@@ -57,7 +57,6 @@
  *   <li><strong>Scheduling Algorithms</strong>
  *     <ul>
  *       <li><code>EDFScheduler</code>: Implements Earliest Deadline First scheduling.</li>
- *       <li><code>EDFTask</code>: Task representation for EDF scheduling.</li>
  *     </ul>
  *   </li>
  *   <li><strong>Assertions</strong>
@@ -0,0 +1,147 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * A concurrent set of primitive {@code int} values.
+ * <p>
+ * Values are spread over a power-of-two number of stripes, each a fastutil open-addressing set
+ * guarded by its own monitor, so threads working on different stripes never contend. Values are
+ * stored unboxed at 4 bytes per slot, and no operation except {@link #forEach} allocates.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class ConcurrentIntSet {
+
+    private final IntOpenHashSet[] stripes;
+    private final int shift;
+
+    /**
+     * Creates a set with four stripes per available processor.
+     */
+    public ConcurrentIntSet() {
+        this(IntOpenHashSet.DEFAULT_INITIAL_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param expectedSize the number of values the set should hold without resizing
+     * @param stripes      the number of independently locked stripes, rounded up to a power of two
+     */
+    public ConcurrentIntSet(int expectedSize, int stripes) {
+        Assertions.assertTrue(expectedSize >= 0, "Expected size must not be negative");
+        Assertions.assertTrue(stripes > 0 && stripes <= 1 << 16, "Stripe count must be between 1 and 65536");
+        int count = Math.max(2, HashCommon.nextPowerOfTwo(stripes));
+        this.stripes = new IntOpenHashSet[count];
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new IntOpenHashSet(Math.max(1, expectedSize / count));
+        }
+    }
+
+    /**
+     * Picks a stripe from the high bits of the mixed value; the set itself indexes by the low ones.
+     */
+    private IntOpenHashSet stripe(int value) {
+        return stripes[HashCommon.mix(value) >>> shift];
+    }
+
+    /**
+     * @param value the value to add
+     * @return whether the value was added, {@code false} if it was present
+     */
+    public boolean add(int value) {
+        IntOpenHashSet stripe = stripe(value);
+        synchronized (stripe) {
+            return stripe.add(value);
+        }
+    }
+
+    /**
+     * @param value the value to remove
+     * @return whether the value was removed, {@code false} if it was absent
+     */
+    public boolean remove(int value) {
+        IntOpenHashSet stripe = stripe(value);
+        synchronized (stripe) {
+            return stripe.remove(value);
+        }
+    }
+
+    /**
+     * @param value the value to look for
+     * @return whether the value is present
+     */
+    public boolean contains(int value) {
+        IntOpenHashSet stripe = stripe(value);
+        synchronized (stripe) {
+            return stripe.contains(value);
+        }
+    }
+
+    /**
+     * Returns the number of values. The result is a sum over the stripes and may be stale by the
+     * time the caller acts on it.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        int size = 0;
+        for (IntOpenHashSet stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return whether the set holds no values; a snapshot
+     */
+    public boolean isEmpty() {
+        for (IntOpenHashSet stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all values, one stripe at a time.
+     */
+    public void clear() {
+        for (IntOpenHashSet stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Passes every value to {@code action}. Each stripe is copied under its lock and visited
+     * after it was released, so the action may access the set; values changed meanwhile may or
+     * may not be seen.
+     *
+     * @param action receives each value
+     */
+    public void forEach(IntConsumer action) {
+        Objects.requireNonNull(action, "Action cannot be null");
+        for (IntOpenHashSet stripe : stripes) {
+            int[] values;
+            synchronized (stripe) {
+                values = stripe.toIntArray();
+            }
+            for (int value : values) {
+                action.accept(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.util.Objects;
+import java.util.function.LongFunction;
+
+/**
+ * A concurrent map from primitive {@code long} keys to objects.
+ * <p>
+ * Keys are spread over a power-of-two number of stripes, each a fastutil open-addressing table
+ * guarded by its own monitor, so threads working on different stripes never contend. Keys are
+ * stored unboxed in the table's {@code long[]}, which saves the {@code Long} and node objects a
+ * {@link java.util.concurrent.ConcurrentHashMap} allocates per entry, and lookups neither box the
+ * key nor allocate. Values must not be {@code null}, so {@link #get(long)} returning {@code null}
+ * means the key is absent.
+ *
+ * @param <V> the type of values
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class ConcurrentLong2ObjectMap<V> {
+
+    private final Long2ObjectOpenHashMap<V>[] stripes;
+    private final int shift;
+
+    /**
+     * Creates a map with four stripes per available processor.
+     */
+    public ConcurrentLong2ObjectMap() {
+        this(Long2ObjectOpenHashMap.DEFAULT_INITIAL_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should hold without resizing
+     * @param stripes      the number of independently locked stripes, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLong2ObjectMap(int expectedSize, int stripes) {
+        Assertions.assertTrue(expectedSize >= 0, "Expected size must not be negative");
+        Assertions.assertTrue(stripes > 0 && stripes <= 1 << 16, "Stripe count must be between 1 and 65536");
+        int count = Math.max(2, HashCommon.nextPowerOfTwo(stripes));
+        this.stripes = new Long2ObjectOpenHashMap[count];
+        this.shift = Long.SIZE - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Long2ObjectOpenHashMap<>(Math.max(1, expectedSize / count));
+        }
+    }
+
+    /**
+     * Picks a stripe from the high bits of the mixed key; the table itself indexes by the low ones.
+     */
+    private Long2ObjectOpenHashMap<V> stripe(long key) {
+        return stripes[(int) (HashCommon.mix(key) >>> shift)];
+    }
+
+    /**
+     * @param key the key
+     * @return the value mapped to the key, or {@code null} if there is none
+     */
+    public V get(long key) {
+        Long2ObjectOpenHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    /**
+     * @param key          the key
+     * @param defaultValue returned if the key is absent
+     * @return the value mapped to the key, or {@code defaultValue} if there is none
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @param key the key
+     * @return whether the key is mapped
+     */
+    public boolean containsKey(long key) {
+        Long2ObjectOpenHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.containsKey(key);
+        }
+    }
+
+    /**
+     * Maps the key to a value, replacing any previous value.
+     *
+     * @param key   the key
+     * @param value the value, not {@code null}
+     * @return the previous value, or {@code null} if there was none
+     */
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "Value cannot be null");
+        Long2ObjectOpenHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.put(key, value);
+        }
+    }
+
+    /**
+     * Maps the key to a value unless it is already mapped.
+     *
+     * @param key   the key
+     * @param value the value, not {@code null}
+     * @return the existing value, or {@code null} if the value was added
+     */
+    public V putIfAbsent(long key, V value) {
+        Objects.requireNonNull(value, "Value cannot be null");
+        Long2ObjectOpenHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.putIfAbsent(key, value);
+        }
+    }
+
+    /**
+     * Returns the value of a key, first mapping it to the result of {@code mappingFunction} if it
+     * is absent. The function runs while the key's stripe is locked, so it must be short and must
+     * not access this map.
+     *
+     * @param key             the key
+     * @param mappingFunction computes the value of an absent key; a {@code null} result maps nothing
+     * @return the current or computed value, or {@code null} if the function returned {@code null}
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction, "Mapping function cannot be null");
+        Long2ObjectOpenHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            V value = stripe.get(key);
+            if (value == null) {
+                value = mappingFunction.apply(key);
+                if (value != null) {
+                    stripe.put(key, value);
+                }
+            }
+            return value;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the removed value, or {@code null} if the key was not mapped
+     */
+    public V remove(long key) {
+        Long2ObjectOpenHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    /**
+     * Removes a key only while it is mapped to the given value.
+     *
+     * @param key   the key
+     * @param value the expected value, compared with {@code equals}
+     * @return whether the key was removed
+     */
+    public boolean remove(long key, Object value) {
+        Long2ObjectOpenHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key, value);
+        }
+    }
+
+    /**
+     * Returns the number of entries. The result is a sum over the stripes and may be stale by
+     * the time the caller acts on it.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Long2ObjectOpenHashMap<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return whether the map holds no entries; a snapshot
+     */
+    public boolean isEmpty() {
+        for (Long2ObjectOpenHashMap<V> stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all entries, one stripe at a time.
+     */
+    public void clear() {
+        for (Long2ObjectOpenHashMap<V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Passes every entry to {@code action}. Each stripe is copied under its lock and visited
+     * after it was released, so the action may access the map; entries changed meanwhile may or
+     * may not be seen.
+     *
+     * @param action receives each key and value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        Objects.requireNonNull(action, "Action cannot be null");
+        for (Long2ObjectOpenHashMap<V> stripe : stripes) {
+            long[] keys;
+            Object[] values;
+            synchronized (stripe) {
+                keys = new long[stripe.size()];
+                values = new Object[keys.length];
+                int i = 0;
+                for (Long2ObjectMap.Entry<V> entry : stripe.long2ObjectEntrySet()) {
+                    keys[i] = entry.getLongKey();
+                    values[i++] = entry.getValue();
+                }
+            }
+            for (int i = 0; i < keys.length; i++) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Receives the entries of a {@link ConcurrentLong2ObjectMap}.
+     *
+     * @param <V> the type of values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        /**
+         * @param key   the entry's key
+         * @param value the entry's value
+         */
+        void accept(long key, V value);
+    }
+}
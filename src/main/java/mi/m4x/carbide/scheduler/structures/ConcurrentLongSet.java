@@ -0,0 +1,147 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * A concurrent set of primitive {@code long} values.
+ * <p>
+ * Values are spread over a power-of-two number of stripes, each a fastutil open-addressing set
+ * guarded by its own monitor, so threads working on different stripes never contend. Values are
+ * stored unboxed at 8 bytes per slot, and no operation except {@link #forEach} allocates.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class ConcurrentLongSet {
+
+    private final LongOpenHashSet[] stripes;
+    private final int shift;
+
+    /**
+     * Creates a set with four stripes per available processor.
+     */
+    public ConcurrentLongSet() {
+        this(LongOpenHashSet.DEFAULT_INITIAL_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param expectedSize the number of values the set should hold without resizing
+     * @param stripes      the number of independently locked stripes, rounded up to a power of two
+     */
+    public ConcurrentLongSet(int expectedSize, int stripes) {
+        Assertions.assertTrue(expectedSize >= 0, "Expected size must not be negative");
+        Assertions.assertTrue(stripes > 0 && stripes <= 1 << 16, "Stripe count must be between 1 and 65536");
+        int count = Math.max(2, HashCommon.nextPowerOfTwo(stripes));
+        this.stripes = new LongOpenHashSet[count];
+        this.shift = Long.SIZE - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new LongOpenHashSet(Math.max(1, expectedSize / count));
+        }
+    }
+
+    /**
+     * Picks a stripe from the high bits of the mixed value; the set itself indexes by the low ones.
+     */
+    private LongOpenHashSet stripe(long value) {
+        return stripes[(int) (HashCommon.mix(value) >>> shift)];
+    }
+
+    /**
+     * @param value the value to add
+     * @return whether the value was added, {@code false} if it was present
+     */
+    public boolean add(long value) {
+        LongOpenHashSet stripe = stripe(value);
+        synchronized (stripe) {
+            return stripe.add(value);
+        }
+    }
+
+    /**
+     * @param value the value to remove
+     * @return whether the value was removed, {@code false} if it was absent
+     */
+    public boolean remove(long value) {
+        LongOpenHashSet stripe = stripe(value);
+        synchronized (stripe) {
+            return stripe.remove(value);
+        }
+    }
+
+    /**
+     * @param value the value to look for
+     * @return whether the value is present
+     */
+    public boolean contains(long value) {
+        LongOpenHashSet stripe = stripe(value);
+        synchronized (stripe) {
+            return stripe.contains(value);
+        }
+    }
+
+    /**
+     * Returns the number of values. The result is a sum over the stripes and may be stale by the
+     * time the caller acts on it.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        int size = 0;
+        for (LongOpenHashSet stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return whether the set holds no values; a snapshot
+     */
+    public boolean isEmpty() {
+        for (LongOpenHashSet stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all values, one stripe at a time.
+     */
+    public void clear() {
+        for (LongOpenHashSet stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Passes every value to {@code action}. Each stripe is copied under its lock and visited
+     * after it was released, so the action may access the set; values changed meanwhile may or
+     * may not be seen.
+     *
+     * @param action receives each value
+     */
+    public void forEach(LongConsumer action) {
+        Objects.requireNonNull(action, "Action cannot be null");
+        for (LongOpenHashSet stripe : stripes) {
+            long[] values;
+            synchronized (stripe) {
+                values = stripe.toLongArray();
+            }
+            for (long value : values) {
+                action.accept(value);
+            }
+        }
+    }
+}
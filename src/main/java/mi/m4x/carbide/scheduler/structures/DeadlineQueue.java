@@ -0,0 +1,198 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A concurrent queue ordered by a {@code long} deadline, earliest first.
+ * <p>
+ * Elements are spread over a power-of-two number of stripes, each a binary min-heap on parallel
+ * arrays guarded by its own monitor, so producers on different stripes never contend and queuing
+ * allocates nothing once the heaps have grown. Every stripe publishes its earliest deadline;
+ * {@link #poll()} reads those without locking and only locks the stripe holding the earliest one.
+ * Under concurrent updates a poll may return an element a little later than the true earliest,
+ * never one from an empty queue. Elements with equal deadlines come out in no particular order.
+ * <p>
+ * Deadlines are compared as {@code a - b < 0}, like {@link System#nanoTime()} values, so they may
+ * wrap around as long as the queued ones lie within 2^63 of each other.
+ *
+ * @param <E> the element type
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class DeadlineQueue<E> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe[] stripes;
+
+    /**
+     * Creates a queue with two stripes per available processor.
+     */
+    public DeadlineQueue() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes the number of independently locked heaps, rounded up to a power of two
+     */
+    public DeadlineQueue(int stripes) {
+        Assertions.assertTrue(stripes > 0 && stripes <= 1 << 16, "Stripe count must be between 1 and 65536");
+        int count = HashCommon.nextPowerOfTwo(stripes);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Queues an element on a random stripe.
+     *
+     * @param element  the element, not {@code null}
+     * @param deadline its deadline; smaller values are polled first
+     */
+    public void offer(E element, long deadline) {
+        Objects.requireNonNull(element, "Element cannot be null");
+        Stripe stripe = stripes[ThreadLocalRandom.current().nextInt() & (stripes.length - 1)];
+        synchronized (stripe) {
+            stripe.push(element, deadline);
+        }
+    }
+
+    /**
+     * Removes the element with the earliest deadline.
+     *
+     * @return the element, or {@code null} if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            Stripe earliest = earliestStripe();
+            if (earliest == null) {
+                return null;
+            }
+            synchronized (earliest) {
+                // Emptied by another poller since the scan: look again
+                if (earliest.size != 0) {
+                    return (E) earliest.pop();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the earliest queued deadline, or {@link Long#MAX_VALUE} if the queue is empty
+     */
+    public long peekDeadline() {
+        Stripe earliest = earliestStripe();
+        return earliest != null ? earliest.head : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return whether no element is queued
+     */
+    public boolean isEmpty() {
+        for (Stripe stripe : stripes) {
+            if (stripe.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of queued elements, exact only while no other thread modifies the queue
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    private Stripe earliestStripe() {
+        Stripe earliest = null;
+        long earliestDeadline = Long.MAX_VALUE;
+        for (Stripe stripe : stripes) {
+            if (stripe.size == 0) {
+                continue;
+            }
+            long head = stripe.head;
+            if (earliest == null || head - earliestDeadline < 0) {
+                earliest = stripe;
+                earliestDeadline = head;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * One heap. The arrays are only touched under the stripe's monitor; {@link #head} and
+     * {@link #size} are published for lock-free scans.
+     */
+    private static final class Stripe {
+        private long[] deadlines = new long[INITIAL_CAPACITY];
+        private Object[] elements = new Object[INITIAL_CAPACITY];
+        volatile long head = Long.MAX_VALUE;
+        volatile int size;
+
+        void push(Object element, long deadline) {
+            int index = size;
+            if (index == deadlines.length) {
+                deadlines = Arrays.copyOf(deadlines, index * 2);
+                elements = Arrays.copyOf(elements, index * 2);
+            }
+
+            // Sift up
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (deadlines[parent] - deadline <= 0) {
+                    break;
+                }
+                deadlines[index] = deadlines[parent];
+                elements[index] = elements[parent];
+                index = parent;
+            }
+            deadlines[index] = deadline;
+            elements[index] = element;
+            head = deadlines[0];
+            size++;
+        }
+
+        Object pop() {
+            Object first = elements[0];
+            int last = size - 1;
+            long deadline = deadlines[last];
+            Object element = elements[last];
+            elements[last] = null;
+
+            // Sift the last element down from the root
+            int index = 0;
+            int half = last >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < last && deadlines[child + 1] - deadlines[child] < 0) {
+                    child++;
+                }
+                if (deadline - deadlines[child] <= 0) {
+                    break;
+                }
+                deadlines[index] = deadlines[child];
+                elements[index] = elements[child];
+                index = child;
+            }
+            if (last > 0) {
+                deadlines[index] = deadline;
+                elements[index] = element;
+            }
+            head = last > 0 ? deadlines[0] : Long.MAX_VALUE;
+            size = last;
+            return first;
+        }
+    }
+}
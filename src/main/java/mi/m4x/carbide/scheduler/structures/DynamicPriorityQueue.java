@@ -1,26 +1,47 @@
 package mi.m4x.carbide.scheduler.structures;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToIntFunction;
 
 /**
  * A high-performance concurrent priority queue supporting dynamic re-prioritization.
  *
  * Each element is assigned a priority level from 0 (highest) to N-1 (lowest).
- * Internally, a fixed array of lock-free queues is used, one per priority level.
+ * Internally, a fixed array of lock-free queues is used, one per priority level, optionally
+ * fronted by a bounded {@link MpmcArrayQueue} ring that takes entries without allocating.
+ * A hierarchical occupancy bitmap finds the highest non-empty level in one bit scan per 64x
+ * levels, so dequeue cost stays flat from a handful of levels to thousands of them.
  *
  * Features:
  * - Fast enqueue and dequeue operations using per-priority queues.
  * - Lock-free design for scalability.
- * - O(1) contains, remove, and size using a concurrent map.
- * - Optional ability to change an element's priority (non-thread-safe for single element).
+ * - O(1) changePriority and remove through the {@link Handle} of a queued element.
+ * - Optional aging, so lower levels cannot be starved by a steady flow of higher-priority work.
  *
- * Notes:
- * - Priority must remain immutable or carefully changed using `changePriority()`.
- * - Thread-safe for concurrent enqueues and dequeues, but not for simultaneous
- *   `changePriority()` calls on the same element.
+ * Every queued element is owned by a {@link Handle}. Its current entry is swapped with a single
+ * CAS: dequeue, remove and changePriority each claim the entry they saw, so concurrent calls on the
+ * same element are linearizable and exactly one of them wins each entry. Entries left behind by a
+ * move or remove are skipped when a dequeue reaches them and purged in bulk once a level holds
+ * more of them than live elements.
+ *
+ * Elements added with {@link #offer(Object, int)} cost no map lookup; keep the returned handle to
+ * reprioritize or remove them. Elements added with {@link #enqueue(Object, int)},
+ * {@link #offerIndexed(Object, int)} or through an {@link #indexedHandle(Object)} are also indexed
+ * by value, which rejects duplicates and keeps {@link #contains(Object)}, {@link #handleOf(Object)},
+ * {@link #changePriority(Object, int)} and {@link #remove(Object)} O(1) for them.
+ *
+ * Elements added with {@link #offerUnkeyed(Object, int)} take the fast lane: they are stored as
+ * they are, without a handle, so they cost no allocation besides the level's own link and no CAS
+ * to dequeue. They can never be found, moved or removed. Both lanes share the same levels, so
+ * unkeyed and keyed elements are dequeued in one priority and FIFO order.
  *
  * @param <E> the type of elements held in this queue
  * @since 1.0.0
@@ -28,9 +49,30 @@ import java.util.concurrent.atomic.AtomicIntegerArray;
  */
 public final class DynamicPriorityQueue<E> {
 
+    // Per-level counters, one cache line apart so producers of adjacent levels don't collide
+    private static final int COUNT_STRIDE = 16;
+    // Within a level's stride, slot 0 counts live elements and this slot counts entries gone stale
+    private static final int STALE_OFFSET = 1;
+    // A level is purged once it went through at least this many stale entries
+    private static final int MIN_PURGE_STALE = 64;
+
     private final AtomicIntegerArray taskCount;
-    private final ConcurrentLinkedQueue<E>[] queues;
-    private final ConcurrentHashMap<E, Integer> elementPriorityMap;
+    private final OccupancyBitmap occupancy;
+    // Entries are either a Node of a keyed element or an unkeyed element itself
+    private final ConcurrentLinkedQueue<Object>[] queues;
+    // Optional bounded rings in front of the linked queues, null when disabled
+    private final MpmcArrayQueue<Object>[] rings;
+    private final ConcurrentHashMap<E, Handle<E>> indexedElements;
+
+    // Aging state, unused when agingNanos is 0
+    private final long agingNanos;
+    private final AtomicLongArray waitingSince;
+    private int agingCursor; // racy on purpose, it only spreads the aging checks over the levels
+
+    // Set once by close(), after which nothing is queued or moved
+    private volatile boolean closed;
+    // Moves announce themselves before checking closed, so close() can wait for those it missed
+    private final AtomicInteger movesInFlight = new AtomicInteger();
 
     /**
      * Initializes the dynamic priority queue with the specified number of levels.
@@ -38,41 +80,381 @@ public final class DynamicPriorityQueue<E> {
      * @param levels Number of priority levels (0 = highest)
      * @throws IllegalArgumentException if levels &lt;= 0
      */
-    @SuppressWarnings("unchecked")
     public DynamicPriorityQueue(int levels) {
+        this(levels, 0L);
+    }
+
+    /**
+     * Initializes the dynamic priority queue with the specified number of levels and aging.
+     * <p>
+     * With aging, a non-empty level that has not been served for a while competes as if it were
+     * one level higher for every {@code agingNanos} it waited. Each dequeue checks a single level
+     * for promotion, cycling through the levels, so aging costs O(1) per dequeue and never walks
+     * the queued elements. A level {@code d} levels below the highest non-empty one is therefore
+     * served at the latest after about {@code d * agingNanos} plus {@code levels} dequeues. While
+     * every level is served within its threshold nothing is promoted and the order stays strictly
+     * by priority.
+     *
+     * @param levels     Number of priority levels (0 = highest)
+     * @param agingNanos Wait in nanoseconds that promotes a level by one, or 0 to disable aging
+     * @throws IllegalArgumentException if levels &lt;= 0 or agingNanos &lt; 0
+     * @since 1.0.5
+     */
+    public DynamicPriorityQueue(int levels, long agingNanos) {
+        this(levels, agingNanos, 0);
+    }
+
+    /**
+     * Initializes the dynamic priority queue with the specified number of levels, aging and a
+     * bounded ring in front of every level.
+     * <p>
+     * With rings, a level takes new entries into its {@link MpmcArrayQueue} and only falls back to
+     * its linked queue while the ring is full or the linked queue still holds entries, which keeps
+     * each level in FIFO order. Entries that fit in the ring cost no link allocation and consumers
+     * claim them with a CAS on an index instead of on a list head. Every level allocates its ring
+     * up front, so keep {@code levels * ringCapacity} modest.
+     *
+     * @param levels       Number of priority levels (0 = highest)
+     * @param agingNanos   Wait in nanoseconds that promotes a level by one, or 0 to disable aging
+     * @param ringCapacity Entries each level's ring holds, rounded up to a power of two, or 0 for
+     *                     linked queues only
+     * @throws IllegalArgumentException if levels &lt;= 0, agingNanos &lt; 0 or ringCapacity &lt; 0
+     * @see #DynamicPriorityQueue(int, long)
+     * @since 1.0.5
+     */
+    @SuppressWarnings("unchecked")
+    public DynamicPriorityQueue(int levels, long agingNanos, int ringCapacity) {
         if (levels <= 0) throw new IllegalArgumentException("Priority levels must be positive");
+        if (agingNanos < 0) throw new IllegalArgumentException("Aging interval must not be negative");
+        if (ringCapacity < 0) throw new IllegalArgumentException("Ring capacity must not be negative");
 
-        this.taskCount = new AtomicIntegerArray(levels);
+        this.taskCount = new AtomicIntegerArray(levels * COUNT_STRIDE);
+        this.occupancy = new OccupancyBitmap(levels);
         this.queues = new ConcurrentLinkedQueue[levels];
-        this.elementPriorityMap = new ConcurrentHashMap<>();
+        this.indexedElements = new ConcurrentHashMap<>();
+        this.agingNanos = agingNanos;
+        this.waitingSince = agingNanos != 0 ? new AtomicLongArray(levels) : null;
+
+        this.rings = ringCapacity != 0 ? new MpmcArrayQueue[levels] : null;
 
         for (int i = 0; i < levels; i++) {
             queues[i] = new ConcurrentLinkedQueue<>();
+            if (rings != null) {
+                rings[i] = new MpmcArrayQueue<>(ringCapacity);
+            }
         }
     }
 
     /**
-     * Enqueues an element at the given priority level.
+     * Enqueues an element at the given priority level and indexes it by value.
      *
      * @param element the item to insert
      * @param priority priority level (0 = highest)
      * @throws IllegalArgumentException if priority is invalid or element already exists
      */
     public void enqueue(E element, int priority) {
-        Objects.requireNonNull(element, "Element cannot be null");
+        offer(indexedHandle(element), priority);
+    }
+
+    /**
+     * Enqueues an element at the given priority level and indexes it by value, like
+     * {@link #enqueue(Object, int)}, and returns its handle.
+     *
+     * @param element  the item to insert
+     * @param priority priority level (0 = highest)
+     * @return the handle of the queued element
+     * @throws IllegalArgumentException if priority is invalid or element already exists
+     * @since 1.0.5
+     */
+    public Handle<E> offerIndexed(E element, int priority) {
+        Handle<E> handle = indexedHandle(element);
+        offer(handle, priority);
+        return handle;
+    }
+
+    /**
+     * Enqueues an element at the given priority level without indexing it by value. The same
+     * element may be offered more than once; each offer is a separate entry with its own handle.
+     *
+     * @param element  the item to insert
+     * @param priority priority level (0 = highest)
+     * @return the handle of the queued element
+     * @throws IllegalArgumentException if priority is invalid
+     * @since 1.0.5
+     */
+    public Handle<E> offer(E element, int priority) {
+        Handle<E> handle = handle(element);
+        offer(handle, priority);
+        return handle;
+    }
+
+    /**
+     * Creates a handle for an element without queueing it. Useful when the element has to know
+     * its handle before any consumer can see it.
+     *
+     * @param element the element the handle stands for
+     * @return a new handle, to be queued with {@link #offer(Handle, int)}
+     * @since 1.0.5
+     */
+    public Handle<E> handle(E element) {
+        return new Handle<>(this, Objects.requireNonNull(element, "Element cannot be null"), false);
+    }
+
+    /**
+     * Creates a handle for an element without queueing it, like {@link #handle(Object)}, that
+     * indexes the element by value once it is queued. Queueing it fails if the element is
+     * already queued through another indexed handle.
+     *
+     * @param element the element the handle stands for
+     * @return a new handle, to be queued with {@link #offer(Handle, int)}
+     * @since 1.0.5
+     */
+    public Handle<E> indexedHandle(E element) {
+        return new Handle<>(this, Objects.requireNonNull(element, "Element cannot be null"), true);
+    }
+
+    /**
+     * Queues a handle created by {@link #handle(Object)} or {@link #indexedHandle(Object)}. A
+     * handle is queued at most once.
+     *
+     * @param handle   the handle to queue
+     * @param priority priority level (0 = highest)
+     * @throws IllegalArgumentException if priority is invalid, the handle belongs to another
+     *                                  queue or was queued before, or its element is already
+     *                                  queued through another indexed handle
+     * @throws IllegalStateException    if the queue is closed
+     * @since 1.0.5
+     */
+    public void offer(Handle<E> handle, int priority) {
+        checkOpen();
         validatePriority(priority);
+        claim(handle, priority);
 
-        if (elementPriorityMap.putIfAbsent(element, priority) != null) {
-            throw new IllegalArgumentException("Element already exists in the queue");
+        append(priority, handle);
+        addCount(priority, 1);
+    }
+
+    /**
+     * Enqueues an element on the unkeyed fast lane. The element gets no handle: it cannot be
+     * found by {@link #contains(Object)}, reprioritized or removed, and the same element may be
+     * offered more than once.
+     *
+     * @param element  the item to insert
+     * @param priority priority level (0 = highest)
+     * @throws IllegalArgumentException if priority is invalid or the element is a handle
+     * @throws IllegalStateException    if the queue is closed
+     * @since 1.0.5
+     */
+    public void offerUnkeyed(E element, int priority) {
+        checkOpen();
+        checkUnkeyed(element);
+        validatePriority(priority);
+
+        append(priority, element);
+        addCount(priority, 1);
+    }
+
+    /**
+     * Enqueues a batch of elements on the unkeyed fast lane, each at the priority reported by
+     * {@code priorityFunction}. Each level receives a single linked append and a single counter
+     * update. If any element is invalid, nothing is enqueued.
+     *
+     * @param elements         array holding the elements to insert
+     * @param offset           index of the first element to insert
+     * @param length           number of elements to insert
+     * @param priorityFunction supplies the priority level of each element
+     * @throws IllegalArgumentException if a priority is invalid or an element is a handle
+     * @throws IllegalStateException    if the queue is closed
+     * @see #offerUnkeyed(Object, int)
+     * @since 1.0.5
+     */
+    @SuppressWarnings("unchecked")
+    public void offerAllUnkeyed(E[] elements, int offset, int length, ToIntFunction<? super E> priorityFunction) {
+        checkOpen();
+        Objects.checkFromIndexSize(offset, length, elements.length);
+        Objects.requireNonNull(priorityFunction, "Priority function cannot be null");
+
+        ArrayList<Object>[] buckets = new ArrayList[queues.length];
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            E element = elements[i];
+            checkUnkeyed(element);
+            int priority = priorityFunction.applyAsInt(element);
+            validatePriority(priority);
+
+            ArrayList<Object> bucket = buckets[priority];
+            if (bucket == null) {
+                bucket = buckets[priority] = new ArrayList<>();
+            }
+            bucket.add(element);
         }
 
-        queues[priority].add(element);
-        taskCount.incrementAndGet(priority);
+        publish(buckets);
     }
 
     /**
-     * Atomically changes the priority of an existing element.
-     * Not thread-safe for the same element being modified concurrently.
+     * Enqueues a batch of elements, each at the priority reported by {@code priorityFunction}, and
+     * indexes them by value.
+     * <p>
+     * Elements are grouped by level and each level receives a single linked append and a single
+     * counter update. The batch is validated up front: if any element is null, has an invalid
+     * priority or is already queued (or duplicated within the batch), nothing is enqueued.
+     *
+     * @param elements         array holding the elements to insert
+     * @param offset           index of the first element to insert
+     * @param length           number of elements to insert
+     * @param priorityFunction supplies the priority level of each element
+     * @throws IllegalArgumentException if a priority is invalid or an element already exists
+     * @since 1.0.5
+     */
+    @SuppressWarnings("unchecked")
+    public void enqueueAll(E[] elements, int offset, int length, ToIntFunction<? super E> priorityFunction) {
+        Objects.checkFromIndexSize(offset, length, elements.length);
+        Objects.requireNonNull(priorityFunction, "Priority function cannot be null");
+
+        Handle<E>[] handles = new Handle[length];
+        for (int i = 0; i < length; i++) {
+            handles[i] = indexedHandle(elements[offset + i]);
+        }
+        offerAll(handles, 0, length, priorityFunction);
+    }
+
+    /**
+     * Queues a batch of handles created by {@link #handle(Object)} or {@link #indexedHandle(Object)},
+     * each at the priority {@code priorityFunction} reports for its element.
+     * <p>
+     * Handles are grouped by level and each level receives a single linked append and a single
+     * counter update. The batch is validated up front: if any handle has an invalid priority,
+     * belongs to another queue or was queued before, or indexes an element that is already queued
+     * (or duplicated within the batch), nothing is queued.
+     *
+     * @param handles          array holding the handles to queue
+     * @param offset           index of the first handle to queue
+     * @param length           number of handles to queue
+     * @param priorityFunction supplies the priority level of each element
+     * @throws IllegalArgumentException if a priority or a handle is invalid
+     * @throws IllegalStateException    if the queue is closed
+     * @since 1.0.5
+     */
+    @SuppressWarnings("unchecked")
+    public void offerAll(Handle<E>[] handles, int offset, int length, ToIntFunction<? super E> priorityFunction) {
+        checkOpen();
+        Objects.checkFromIndexSize(offset, length, handles.length);
+        Objects.requireNonNull(priorityFunction, "Priority function cannot be null");
+
+        ArrayList<Object>[] buckets = new ArrayList[queues.length];
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            Handle<E> handle = handles[i];
+            int priority;
+            try {
+                Objects.requireNonNull(handle, "Handle cannot be null");
+                priority = priorityFunction.applyAsInt(handle.element);
+                validatePriority(priority);
+                claim(handle, priority);
+            } catch (RuntimeException e) {
+                // Roll back the claims made so far, nothing has been published to the levels yet
+                for (int j = offset; j < i; j++) {
+                    handles[j].node = null;
+                    if (handles[j].indexed) {
+                        indexedElements.remove(handles[j].element, handles[j]);
+                    }
+                }
+                throw e;
+            }
+
+            ArrayList<Object> bucket = buckets[priority];
+            if (bucket == null) {
+                bucket = buckets[priority] = new ArrayList<>();
+            }
+            bucket.add(handle);
+        }
+
+        publish(buckets);
+    }
+
+    /**
+     * Appends validated entries grouped by level, one linked append and counter update per level.
+     * With rings, entries go to a level's ring as long as it has room and the rest are linked.
+     */
+    private void publish(ArrayList<Object>[] buckets) {
+        for (int level = 0; level < buckets.length; level++) {
+            ArrayList<Object> bucket = buckets[level];
+            if (bucket != null) {
+                int size = bucket.size();
+                int ringed = 0;
+                if (rings != null && queues[level].isEmpty()) {
+                    MpmcArrayQueue<Object> ring = rings[level];
+                    while (ringed < size && ring.offer(bucket.get(ringed))) {
+                        ringed++;
+                    }
+                }
+                if (ringed < size) {
+                    queues[level].addAll(ringed == 0 ? bucket : bucket.subList(ringed, size));
+                }
+                addCount(level, size);
+            }
+        }
+    }
+
+    /**
+     * Appends one entry to a level. Entries only go to the ring while the linked queue is empty,
+     * so nothing newer is taken from the ring before older linked entries.
+     */
+    private void append(int level, Object entry) {
+        if (rings == null || !queues[level].isEmpty() || !rings[level].offer(entry)) {
+            queues[level].add(entry);
+        }
+    }
+
+    /**
+     * Changes the priority of a queued element in O(1). The element keeps its place among the
+     * elements of its old level only in the sense that it is now the newest of its new level.
+     * Concurrent calls for the same handle are safe: each moves the element from wherever the
+     * previous one left it, and a concurrent dequeue or remove either wins or sees the move.
+     *
+     * @param handle      the handle of the element to reprioritize
+     * @param newPriority the new priority level
+     * @return true if the priority was changed, false if the element is no longer queued,
+     *         already at that level, or the queue is closed
+     * @throws IllegalArgumentException if the priority is invalid or the handle belongs to
+     *                                  another queue
+     * @since 1.0.5
+     */
+    public boolean changePriority(Handle<E> handle, int newPriority) {
+        validatePriority(newPriority);
+        checkOwner(handle);
+
+        movesInFlight.incrementAndGet();
+        try {
+            Node<E> moved = null;
+            while (true) {
+                Node<E> current = handle.node;
+                if (current == null || current == handle.done()) return false;
+                if (current.level == newPriority) return false;
+                if (closed) return false;
+
+                if (moved == null) {
+                    moved = new Node<>(handle, newPriority);
+                }
+                if (Handle.NODE.compareAndSet(handle, current, moved)) {
+                    append(newPriority, moved);
+                    addCount(newPriority, 1);
+                    onStale(current.level);
+                    return true;
+                }
+            }
+        } finally {
+            movesInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Changes the priority of an existing element. Elements added with {@link #enqueue(Object, int)}
+     * are found in O(1); elements added with {@link #offer(Object, int)} are searched for, so
+     * prefer {@link #changePriority(Handle, int)} for them.
      *
      * @param element     the element to reprioritize
      * @param newPriority the new priority level
@@ -82,18 +464,8 @@ public final class DynamicPriorityQueue<E> {
         Objects.requireNonNull(element, "Element cannot be null");
         validatePriority(newPriority);
 
-        Integer currentPriority = elementPriorityMap.get(element);
-        if (currentPriority == null || currentPriority == newPriority) return false;
-
-        boolean removed = queues[currentPriority].remove(element);
-        if (!removed) return false;
-
-        taskCount.decrementAndGet(currentPriority);
-        elementPriorityMap.put(element, newPriority);
-
-        queues[newPriority].add(element);
-        taskCount.incrementAndGet(newPriority);
-        return true;
+        Handle<E> handle = find(element);
+        return handle != null && changePriority(handle, newPriority);
     }
 
     /**
@@ -102,13 +474,51 @@ public final class DynamicPriorityQueue<E> {
      * @return the dequeued element, or null if all queues are empty
      */
     public E dequeue() {
-        for (int i = 0; i < queues.length; i++) {
-            if (taskCount.get(i) == 0) continue;
+        if (agingNanos != 0) {
+            return dequeueAged();
+        }
+
+        for (int i = occupancy.next(0); i >= 0; i = occupancy.next(i + 1)) {
+            if (count(i) <= 0) continue;
+
+            E element = poll(i, 0L);
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Dequeues with aging: one non-empty level per call is checked for having waited long enough
+     * to compete with the highest non-empty level, otherwise levels are scanned in priority order.
+     */
+    private E dequeueAged() {
+        int highest = peekPriority();
+        if (highest < 0) {
+            return null;
+        }
 
-            E element = queues[i].poll();
+        long now = System.nanoTime();
+        int candidate = occupancy.next(agingCursor + 1);
+        if (candidate < 0) {
+            candidate = occupancy.next(1); // level 0 is never behind another level
+        }
+        agingCursor = candidate;
+
+        if (candidate > highest && count(candidate) > 0
+                && candidate - (now - waitingSince.get(candidate)) / agingNanos <= highest) {
+            E element = poll(candidate, now);
+            if (element != null) {
+                return element;
+            }
+        }
+
+        for (int i = highest; i >= 0; i = occupancy.next(i + 1)) {
+            if (count(i) <= 0) continue;
+
+            E element = poll(i, now);
             if (element != null) {
-                taskCount.decrementAndGet(i);
-                elementPriorityMap.remove(element);
                 return element;
             }
         }
@@ -116,34 +526,337 @@ public final class DynamicPriorityQueue<E> {
     }
 
     /**
-     * Checks if the queue contains the specified element.
+     * Polls a level until an element is taken, dropping entries of moved or removed elements.
+     * Unkeyed elements are taken as they are; keyed ones are claimed from their handle first.
+     *
+     * @param now the current time when aging, otherwise unused
+     * @return the taken element, or null if the level ran out of entries
+     */
+    @SuppressWarnings("unchecked")
+    private E poll(int level, long now) {
+        ConcurrentLinkedQueue<Object> queue = queues[level];
+        MpmcArrayQueue<Object> ring = rings != null ? rings[level] : null;
+        Object entry;
+        while ((entry = take(ring, queue)) != null) {
+            E element;
+            if (entry instanceof Node<?> node) {
+                Handle<E> handle = (Handle<E>) node.handle;
+                if (!Handle.NODE.compareAndSet(handle, node, handle.done())) {
+                    continue;
+                }
+                if (handle.indexed) {
+                    indexedElements.remove(handle.element, handle);
+                }
+                element = handle.element;
+            } else {
+                element = (E) entry;
+            }
+
+            // With aging, the level restarts its wait from being served
+            if (decrementCount(level) > 0 && waitingSince != null) {
+                waitingSince.lazySet(level, now);
+            }
+            return element;
+        }
+        return null;
+    }
+
+    /**
+     * Takes the oldest entry of a level. Whenever the linked queue holds entries, the ring holds
+     * the older ones, so the ring goes first.
+     */
+    private static Object take(MpmcArrayQueue<Object> ring, ConcurrentLinkedQueue<Object> queue) {
+        if (ring != null) {
+            Object entry = ring.poll();
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return queue.poll();
+    }
+
+    private int count(int level) {
+        return taskCount.get(level * COUNT_STRIDE);
+    }
+
+    /**
+     * Adds to a level's count after its elements were published, marking the level non-empty.
+     */
+    private void addCount(int level, int delta) {
+        int count = taskCount.addAndGet(level * COUNT_STRIDE, delta);
+        // A consumer may have polled an element before it was counted, so the count can dip below 0
+        if (count > 0 && count - delta <= 0) {
+            occupancy.set(level);
+            if (waitingSince != null) {
+                // The level starts waiting from the moment it was filled
+                waitingSince.lazySet(level, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Subtracts one from a level's count after one of its elements was taken out.
+     *
+     * @return the new count
+     */
+    private int decrementCount(int level) {
+        int count = taskCount.decrementAndGet(level * COUNT_STRIDE);
+        if (count == 0) {
+            occupancy.clear(level);
+            // A producer may have refilled the level and set the bit just before it was cleared
+            if (count(level) > 0) {
+                occupancy.set(level);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Accounts for an entry that was moved or removed but still sits in its level, and purges
+     * the level once stale entries outnumber its live elements. The purge walks the level, but
+     * only after as many stale entries as it walks, so it costs O(1) per entry on average.
+     */
+    private void onStale(int level) {
+        decrementCount(level);
+
+        int staleSlot = level * COUNT_STRIDE + STALE_OFFSET;
+        int stale = taskCount.incrementAndGet(staleSlot);
+        if (stale >= MIN_PURGE_STALE && stale > count(level) && taskCount.compareAndSet(staleSlot, stale, 0)) {
+            // Stale entries in a ring are not purged, but the ring bounds how many there can be
+            queues[level].removeIf(entry -> entry instanceof Node<?> node && node.handle.node != node);
+        }
+    }
+
+    /**
+     * Closes the queue for good: offers fail from now on and moves leave elements where they are,
+     * while dequeue and remove keep working, so the queue can be drained.
+     * <p>
+     * Returns once every move that started before the close has landed. Offers are not waited
+     * for, so the caller must know that none is in progress. From then on elements only leave
+     * the queue, and it is drained once {@code dequeue} returns null and {@link #size()} returns 0.
+     *
+     * @since 1.0.5
+     */
+    public void close() {
+        closed = true;
+        int spins = 0;
+        while (movesInFlight.get() != 0) {
+            spins = PaddedRingQueue.backOff(spins);
+        }
+    }
+
+    /**
+     * @return whether {@link #close()} was called
+     * @since 1.0.5
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the highest (numerically lowest) priority level that currently holds elements.
+     * The result is a snapshot and may be stale by the time the caller acts on it.
+     *
+     * @return the highest non-empty priority level, or -1 if all levels are empty
+     * @since 1.0.5
+     */
+    public int peekPriority() {
+        for (int i = occupancy.next(0); i >= 0; i = occupancy.next(i + 1)) {
+            if (count(i) > 0) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the handle of an element that is queued and indexed by value, in O(1). Elements
+     * queued without an index are not searched for.
+     *
+     * @param element the element to look up
+     * @return the element's handle, or null if it is not queued through an indexed handle
+     * @since 1.0.5
+     */
+    public Handle<E> handleOf(E element) {
+        return indexedElements.get(Objects.requireNonNull(element, "Element cannot be null"));
+    }
+
+    /**
+     * Checks if the queue contains the specified element. O(1) for elements added with
+     * {@link #enqueue(Object, int)}, a search for the others.
      *
      * @param element the element to check
      * @return true if present, false otherwise
      */
     public boolean contains(E element) {
-        return elementPriorityMap.containsKey(element);
+        return find(element) != null;
+    }
+
+    /**
+     * Removes a queued element in O(1).
+     *
+     * @param handle the handle of the element to remove
+     * @return true if this call removed the element, false if it was no longer queued
+     * @throws IllegalArgumentException if the handle belongs to another queue
+     * @since 1.0.5
+     */
+    public boolean remove(Handle<E> handle) {
+        checkOwner(handle);
+
+        while (true) {
+            Node<E> current = handle.node;
+            if (current == null || current == handle.done()) return false;
+
+            if (Handle.NODE.compareAndSet(handle, current, handle.done())) {
+                onStale(current.level);
+                if (handle.indexed) {
+                    indexedElements.remove(handle.element, handle);
+                }
+                return true;
+            }
+        }
     }
 
     /**
-     * Removes an element from the queue.
+     * Removes an element from the queue. Elements added with {@link #enqueue(Object, int)} are
+     * found in O(1); elements added with {@link #offer(Object, int)} are searched for, so prefer
+     * {@link #remove(Handle)} for them.
      *
      * @param element the element to remove
      */
     public void remove(E element) {
-        Integer priority = elementPriorityMap.remove(element);
-        if (priority != null && queues[priority].remove(element)) {
-            taskCount.decrementAndGet(priority);
+        Handle<E> handle = find(element);
+        if (handle != null) {
+            remove(handle);
         }
     }
 
     /**
      * Returns the total number of elements in the queue.
+     * The result is a snapshot and may be stale by the time the caller acts on it.
      *
      * @return the total size
      */
     public int size() {
-        return elementPriorityMap.size();
+        int size = 0;
+        for (int i = occupancy.next(0); i >= 0; i = occupancy.next(i + 1)) {
+            size += Math.max(0, count(i));
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of elements at one priority level.
+     * The result is a snapshot and may be stale by the time the caller acts on it.
+     *
+     * @param priority the priority level
+     * @return the number of elements queued at that level
+     * @throws IllegalArgumentException if priority is invalid
+     * @since 1.0.5
+     */
+    public int size(int priority) {
+        validatePriority(priority);
+        return Math.max(0, count(priority));
+    }
+
+    /**
+     * Returns the aging interval of this queue.
+     *
+     * @return the wait in nanoseconds that promotes a level by one, or 0 if aging is disabled
+     * @since 1.0.5
+     */
+    public long agingNanos() {
+        return agingNanos;
+    }
+
+    /**
+     * Returns the capacity of the ring in front of each level.
+     *
+     * @return the entries each level's ring holds, or 0 if the levels have no rings
+     * @since 1.0.5
+     */
+    public int ringCapacity() {
+        return rings != null ? rings[0].capacity() : 0;
+    }
+
+    /**
+     * Returns the number of priority levels of this queue.
+     *
+     * @return the level count
+     * @since 1.0.5
+     */
+    public int levels() {
+        return queues.length;
+    }
+
+    /**
+     * Finds the handle of a queued element: through the index if it was enqueued with
+     * {@link #enqueue(Object, int)}, otherwise by walking the levels.
+     */
+    private Handle<E> find(E element) {
+        Handle<E> handle = indexedElements.get(element);
+        if (handle != null) {
+            return handle;
+        }
+
+        for (int level = 0; level < queues.length; level++) {
+            handle = rings != null ? find(rings[level], element) : null;
+            if (handle == null) {
+                handle = find(queues[level], element);
+            }
+            if (handle != null) {
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    private Handle<E> find(Iterable<Object> entries, E element) {
+        for (Object entry : entries) {
+            if (entry instanceof Node<?> node && node.handle.node == node && node.handle.element.equals(element)) {
+                @SuppressWarnings("unchecked")
+                Handle<E> found = (Handle<E>) node.handle;
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static void checkUnkeyed(Object element) {
+        Objects.requireNonNull(element, "Element cannot be null");
+        // Entries of keyed elements are told apart by type, so a handle cannot be an element
+        if (element instanceof Node<?>) {
+            throw new IllegalArgumentException("Handles cannot be queued as unkeyed elements");
+        }
+    }
+
+    private void claim(Handle<E> handle, int priority) {
+        checkOwner(handle);
+        if (handle.node != null) {
+            throw new IllegalArgumentException("Handle was already queued");
+        }
+        // Indexed before it is published, so the dequeue that takes it finds the entry to remove
+        if (handle.indexed && indexedElements.putIfAbsent(handle.element, handle) != null) {
+            throw new IllegalArgumentException("Element already exists in the queue");
+        }
+        handle.level = priority;
+        if (!Handle.NODE.compareAndSet(handle, null, handle)) {
+            // Another offer claimed the handle since the check above; the entry put here is ours
+            if (handle.indexed) {
+                indexedElements.remove(handle.element, handle);
+            }
+            throw new IllegalArgumentException("Handle was already queued");
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Queue is closed");
+        }
+    }
+
+    private void checkOwner(Handle<E> handle) {
+        if (handle.queue != this) {
+            throw new IllegalArgumentException("Handle belongs to another queue");
+        }
     }
 
     /**
@@ -157,4 +870,105 @@ public final class DynamicPriorityQueue<E> {
             throw new IllegalArgumentException("Priority out of range: " + priority);
         }
     }
+
+    /**
+     * An entry in one level. It is live while its handle points to it; moving or removing the
+     * element repoints the handle and leaves the entry behind as stale.
+     */
+    static class Node<E> {
+        Handle<E> handle;
+        int level;
+
+        Node(Handle<E> handle, int level) {
+            this.handle = handle;
+            this.level = level;
+        }
+    }
+
+    /**
+     * The identity of one queued element, used to reprioritize or remove it in O(1). A handle is
+     * queued once; after its element was dequeued or removed it stays done. The handle doubles as
+     * the element's first entry, so offering an element allocates a single object.
+     *
+     * @param <E> the type of the element
+     * @since 1.0.5
+     */
+    public static final class Handle<E> extends Node<E> {
+
+        static final VarHandle NODE;
+
+        static {
+            try {
+                NODE = MethodHandles.lookup().findVarHandle(Handle.class, "node", Node.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private static final Node<?> DONE = new Node<>(null, -1);
+
+        private final DynamicPriorityQueue<E> queue;
+        private final E element;
+        private final boolean indexed;
+
+        // null before the handle is queued, the live entry while queued, DONE afterwards
+        volatile Node<E> node;
+
+        private Handle(DynamicPriorityQueue<E> queue, E element, boolean indexed) {
+            super(null, -1);
+            this.handle = this;
+            this.queue = queue;
+            this.element = element;
+            this.indexed = indexed;
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<E> done() {
+            return (Node<E>) DONE;
+        }
+
+        /**
+         * @return the element this handle stands for
+         */
+        public E element() {
+            return element;
+        }
+
+        /**
+         * @return whether the element is currently queued
+         */
+        public boolean isQueued() {
+            Node<E> current = node;
+            return current != null && current != DONE;
+        }
+
+        /**
+         * @return the level the element is queued at, or -1 if it is not queued
+         */
+        public int priority() {
+            Node<E> current = node;
+            return current == null || current == DONE ? -1 : current.level;
+        }
+
+        /**
+         * Changes the priority of the element in O(1).
+         *
+         * @param newPriority the new priority level
+         * @return true if the priority was changed
+         * @see DynamicPriorityQueue#changePriority(Handle, int)
+         */
+        public boolean changePriority(int newPriority) {
+            return queue.changePriority(this, newPriority);
+        }
+
+        /**
+         * Removes the element from its queue in O(1).
+         *
+         * @return true if this call removed the element
+         * @see DynamicPriorityQueue#remove(Handle)
+         */
+        public boolean remove() {
+            return queue.remove(this);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A concurrent queue that moves elements in batches as well as one at a time.
+ * <p>
+ * Implementations restrict who may produce and consume (see each class), never hold
+ * {@code null}, and only support weakly consistent iteration: the iterator sees elements that
+ * were queued when it passed them and does not support removal. {@link #size()} is a snapshot.
+ *
+ * @param <E> the type of elements held in this queue
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public interface MessageQueue<E> extends Queue<E> {
+
+    /**
+     * Marks an unbounded queue in {@link #capacity()}.
+     */
+    int UNBOUNDED = -1;
+
+    /**
+     * @return the most elements this queue holds at once, or {@link #UNBOUNDED}
+     */
+    int capacity();
+
+    /**
+     * Removes up to {@code limit} elements and hands them to {@code consumer} in queue order.
+     *
+     * @param consumer receives the removed elements
+     * @param limit    the most elements to remove
+     * @return the number of elements removed
+     */
+    default int drain(Consumer<? super E> consumer, int limit) {
+        Objects.requireNonNull(consumer, "Consumer must not be null");
+        int drained = 0;
+        E element;
+        while (drained < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Queues up to {@code limit} elements taken from {@code supplier}, stopping early when the
+     * queue is full. Slots are claimed before the supplier is asked, so every element it returns
+     * is queued; it must not return {@code null} or throw, as a claimed slot must be filled.
+     *
+     * @param supplier provides the elements
+     * @param limit    the most elements to queue
+     * @return the number of elements queued
+     */
+    int fill(Supplier<? extends E> supplier, int limit);
+}
@@ -0,0 +1,137 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A bounded multi-producer, multi-consumer queue on a padded ring.
+ * <p>
+ * Every slot carries a sequence number that tells which lap of the ring it is ready for, in the
+ * style of Vyukov's bounded queue: a producer may write slot {@code i} when its sequence is
+ * {@code i}, a consumer may take it once it is {@code i + 1}. Producers and consumers each claim
+ * a slot with one CAS on their own index and never touch the other side's index while the ring
+ * has room and elements. Offering or polling allocates nothing.
+ *
+ * @param <E> the type of elements held in this queue
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class MpmcArrayQueue<E> extends PaddedRingQueue<E> {
+
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] sequences;
+
+    /**
+     * @param capacity the most elements the queue holds, rounded up to a power of two
+     */
+    public MpmcArrayQueue(int capacity) {
+        super(capacity);
+        this.sequences = new long[capacity()];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element, "Element cannot be null");
+        long producer = claim();
+        if (producer < 0) {
+            return false;
+        }
+        publish(producer, element);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc} Slots are claimed one at a time, since consumers free them out of order.
+     */
+    @Override
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        Objects.requireNonNull(supplier, "Supplier must not be null");
+        int filled = 0;
+        long producer;
+        while (filled < limit && (producer = claim()) >= 0) {
+            publish(producer, Objects.requireNonNull(supplier.get(), "Element cannot be null"));
+            filled++;
+        }
+        return filled;
+    }
+
+    /**
+     * Claims the next slot for writing.
+     *
+     * @return the index of the claimed slot, or -1 if the ring is full
+     */
+    private long claim() {
+        int spins = 0;
+        while (true) {
+            long producer = (long) INDEX.getVolatile(indices, PRODUCER);
+            long sequence = (long) SEQUENCE.getAcquire(sequences, (int) (producer & mask));
+            if (sequence == producer) {
+                if (INDEX.compareAndSet(indices, PRODUCER, producer, producer + 1)) {
+                    return producer;
+                }
+            } else if (sequence < producer) {
+                // The slot still holds last lap's element: the ring is full unless its consumer is mid-poll
+                if (producer - consumerIndex() >= capacity()) {
+                    return -1;
+                }
+                spins = backOff(spins);
+            }
+        }
+    }
+
+    private void publish(long producer, E element) {
+        int index = (int) (producer & mask);
+        SLOT.setOpaque(buffer, slot(producer), element);
+        SEQUENCE.setRelease(sequences, index, producer + 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        int spins = 0;
+        while (true) {
+            long consumer = (long) INDEX.getVolatile(indices, CONSUMER);
+            int index = (int) (consumer & mask);
+            long sequence = (long) SEQUENCE.getAcquire(sequences, index);
+            if (sequence == consumer + 1) {
+                if (INDEX.compareAndSet(indices, CONSUMER, consumer, consumer + 1)) {
+                    int slot = slot(consumer);
+                    Object element = SLOT.getOpaque(buffer, slot);
+                    SLOT.setOpaque(buffer, slot, null);
+                    SEQUENCE.setRelease(sequences, index, consumer + capacity());
+                    return (E) element;
+                }
+            } else if (sequence <= consumer) {
+                // Not written yet: empty, unless a producer claimed the slot and is writing it
+                if (consumer >= producerIndex()) {
+                    return null;
+                }
+                spins = backOff(spins);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        while (true) {
+            long consumer = (long) INDEX.getVolatile(indices, CONSUMER);
+            long sequence = (long) SEQUENCE.getAcquire(sequences, (int) (consumer & mask));
+            if (sequence <= consumer && consumer >= producerIndex()) {
+                return null;
+            }
+            Object element = SLOT.getAcquire(buffer, slot(consumer));
+            // Only trust the element if no consumer took it meanwhile
+            if (element != null && (long) INDEX.getVolatile(indices, CONSUMER) == consumer) {
+                return (E) element;
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A bounded multi-producer, single-consumer queue on a padded ring.
+ * <p>
+ * Producers claim slots by a CAS on the producer index and then write them; they only read the
+ * consumer index once the ring looked full to them, so it is mostly left to the consumer's
+ * cache. The consumer owns its index and frees slots without a CAS. Only one thread at a time
+ * may poll, peek or drain.
+ *
+ * @param <E> the type of elements held in this queue
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class MpscArrayQueue<E> extends PaddedRingQueue<E> {
+
+    /**
+     * @param capacity the most elements the queue holds, rounded up to a power of two
+     */
+    public MpscArrayQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element, "Element cannot be null");
+        long producer = claim();
+        if (producer < 0) {
+            return false;
+        }
+        SLOT.setRelease(buffer, slot(producer), element);
+        return true;
+    }
+
+    @Override
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        Objects.requireNonNull(supplier, "Supplier must not be null");
+        if (limit <= 0) {
+            return 0;
+        }
+
+        long producerLimit = (long) INDEX.getOpaque(indices, PRODUCER_LIMIT);
+        long producer;
+        int count;
+        do {
+            producer = (long) INDEX.getVolatile(indices, PRODUCER);
+            if (producer + limit > producerLimit) {
+                producerLimit = refreshLimit();
+                if (producer >= producerLimit) {
+                    return 0;
+                }
+            }
+            count = (int) Math.min(limit, producerLimit - producer);
+        } while (!INDEX.compareAndSet(indices, PRODUCER, producer, producer + count));
+
+        for (int i = 0; i < count; i++) {
+            SLOT.setRelease(buffer, slot(producer + i), Objects.requireNonNull(supplier.get(), "Element cannot be null"));
+        }
+        return count;
+    }
+
+    /**
+     * Claims the next slot.
+     *
+     * @return the index of the claimed slot, or -1 if the ring is full
+     */
+    private long claim() {
+        long producerLimit = (long) INDEX.getOpaque(indices, PRODUCER_LIMIT);
+        while (true) {
+            long producer = (long) INDEX.getVolatile(indices, PRODUCER);
+            if (producer >= producerLimit) {
+                producerLimit = refreshLimit();
+                if (producer >= producerLimit) {
+                    return -1;
+                }
+            }
+            if (INDEX.compareAndSet(indices, PRODUCER, producer, producer + 1)) {
+                return producer;
+            }
+        }
+    }
+
+    /**
+     * Reads the consumer index and caches how far producers may now go. Racing producers may
+     * store an older limit, which only costs another refresh: every limit stored was valid.
+     */
+    private long refreshLimit() {
+        long producerLimit = consumerIndex() + capacity();
+        INDEX.setOpaque(indices, PRODUCER_LIMIT, producerLimit);
+        return producerLimit;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long consumer = (long) INDEX.getOpaque(indices, CONSUMER);
+        int slot = slot(consumer);
+        Object element = SLOT.getAcquire(buffer, slot);
+        if (element == null) {
+            if (consumer >= producerIndex()) {
+                return null;
+            }
+            element = awaitSlot(slot);
+        }
+        SLOT.setOpaque(buffer, slot, null);
+        // Releasing the index also publishes the freed slot to producers
+        INDEX.setRelease(indices, CONSUMER, consumer + 1);
+        return (E) element;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long consumer = (long) INDEX.getOpaque(indices, CONSUMER);
+        int slot = slot(consumer);
+        Object element = SLOT.getAcquire(buffer, slot);
+        if (element == null && consumer < producerIndex()) {
+            element = awaitSlot(slot);
+        }
+        return (E) element;
+    }
+}
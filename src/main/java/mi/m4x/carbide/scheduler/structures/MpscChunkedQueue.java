@@ -0,0 +1,271 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * An unbounded multi-producer, single-consumer queue built from linked array chunks.
+ * <p>
+ * Producers claim a slot in the newest chunk with a single fetch-and-add and write it; the one
+ * that claims past the end of a chunk links the next. The consumer walks the chunks in order and
+ * drops each once it is used up. An offer therefore allocates a chunk every
+ * {@code chunkSize} elements instead of a node per element. Only one thread at a time may poll,
+ * peek or drain.
+ *
+ * @param <E> the type of elements held in this queue
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class MpscChunkedQueue<E> extends AbstractQueue<E> implements MessageQueue<E> {
+
+    private static final VarHandle TAIL;
+    private static final VarHandle CONSUMER = PaddedRingQueue.INDEX;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(MpscChunkedQueue.class, "tail", Chunk.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // The consumer's position, on a line of its own since it is written on every poll
+    private static final int CONSUMER_INDEX = PaddedRingQueue.STRIDE;
+
+    private final int chunkSize;
+    private final long[] consumerIndex = new long[2 * PaddedRingQueue.STRIDE];
+    // Both only change once per chunk; head is read by iterators on other threads
+    private volatile Chunk head;
+    private volatile Chunk tail;
+
+    /**
+     * Creates a queue with chunks of 1024 elements.
+     */
+    public MpscChunkedQueue() {
+        this(1024);
+    }
+
+    /**
+     * @param chunkSize the number of elements per chunk
+     */
+    public MpscChunkedQueue(int chunkSize) {
+        Assertions.assertTrue(chunkSize > 1, "Chunk size must be greater than 1");
+        this.chunkSize = chunkSize;
+        this.head = this.tail = new Chunk(0L, chunkSize);
+    }
+
+    @Override
+    public int capacity() {
+        return UNBOUNDED;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element, "Element cannot be null");
+        while (true) {
+            Chunk chunk = tail;
+            int index = (int) Chunk.CLAIMED.getAndAdd(chunk, 1);
+            if (index < chunkSize) {
+                Chunk.SLOT.setRelease(chunk.slots, index, element);
+                return true;
+            }
+            advanceTail(chunk);
+        }
+    }
+
+    /**
+     * {@inheritDoc} The queue is unbounded, so all {@code limit} elements are queued, claimed
+     * with one fetch-and-add per chunk.
+     */
+    @Override
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        Objects.requireNonNull(supplier, "Supplier must not be null");
+        int filled = 0;
+        while (filled < limit) {
+            Chunk chunk = tail;
+            // Claiming at most a chunk at a time keeps the claim counter far from overflowing
+            int wanted = Math.min(chunkSize, limit - filled);
+            int index = (int) Chunk.CLAIMED.getAndAdd(chunk, wanted);
+            int end = Math.min(chunkSize, index + wanted);
+            for (int i = index; i < end; i++) {
+                Chunk.SLOT.setRelease(chunk.slots, i, Objects.requireNonNull(supplier.get(), "Element cannot be null"));
+                filled++;
+            }
+            if (filled < limit) {
+                advanceTail(chunk);
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * Makes sure the chunk after a full one exists and moves the tail past the full one.
+     */
+    private void advanceTail(Chunk full) {
+        Chunk next = full.next;
+        if (next == null) {
+            Chunk created = new Chunk(full.base + chunkSize, chunkSize);
+            next = Chunk.NEXT.compareAndSet(full, null, created) ? created : full.next;
+        }
+        TAIL.compareAndSet(this, full, next);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long consumer = (long) CONSUMER.getOpaque(consumerIndex, CONSUMER_INDEX);
+        Chunk chunk = head;
+        int index = (int) (consumer - chunk.base);
+        if (index == chunkSize) {
+            Chunk next = chunk.next;
+            if (next == null) {
+                return null;
+            }
+            head = chunk = next;
+            index = 0;
+        }
+
+        Object element = Chunk.SLOT.getAcquire(chunk.slots, index);
+        if (element == null) {
+            if (index >= chunk.claimed()) {
+                return null;
+            }
+            element = awaitSlot(chunk, index);
+        }
+        chunk.slots[index] = null;
+        CONSUMER.setRelease(consumerIndex, CONSUMER_INDEX, consumer + 1);
+        return (E) element;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long consumer = (long) CONSUMER.getOpaque(consumerIndex, CONSUMER_INDEX);
+        Chunk chunk = head;
+        int index = (int) (consumer - chunk.base);
+        if (index == chunkSize) {
+            chunk = chunk.next;
+            if (chunk == null) {
+                return null;
+            }
+            index = 0;
+        }
+
+        Object element = Chunk.SLOT.getAcquire(chunk.slots, index);
+        if (element == null && index < chunk.claimed()) {
+            element = awaitSlot(chunk, index);
+        }
+        return (E) element;
+    }
+
+    /**
+     * Waits for the producer that claimed a slot to write it.
+     */
+    private static Object awaitSlot(Chunk chunk, int index) {
+        Object element;
+        int spins = 0;
+        while ((element = Chunk.SLOT.getAcquire(chunk.slots, index)) == null) {
+            spins = PaddedRingQueue.backOff(spins);
+        }
+        return element;
+    }
+
+    @Override
+    public int size() {
+        while (true) {
+            long consumer = (long) CONSUMER.getAcquire(consumerIndex, CONSUMER_INDEX);
+            Chunk last = tail;
+            long produced = last.base + Math.min(chunkSize, last.claimed());
+            if (consumer == (long) CONSUMER.getAcquire(consumerIndex, CONSUMER_INDEX)) {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, produced - consumer));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private Chunk chunk = head;
+            private int index = (int) Math.max(0L, (long) CONSUMER.getAcquire(consumerIndex, CONSUMER_INDEX) - chunk.base);
+            private E next = advance();
+
+            @SuppressWarnings("unchecked")
+            private E advance() {
+                while (chunk != null) {
+                    int end = Math.min(chunkSize, chunk.claimed());
+                    while (index < end) {
+                        Object element = Chunk.SLOT.getAcquire(chunk.slots, index++);
+                        if (element != null) {
+                            return (E) element;
+                        }
+                    }
+                    chunk = end == chunkSize ? chunk.next : null;
+                    index = 0;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                E element = next;
+                if (element == null) {
+                    throw new NoSuchElementException();
+                }
+                next = advance();
+                return element;
+            }
+        };
+    }
+
+    /**
+     * A block of slots, numbered from {@code base} in the queue's overall order.
+     */
+    private static final class Chunk {
+
+        static final VarHandle SLOT = PaddedRingQueue.SLOT;
+        static final VarHandle CLAIMED;
+        static final VarHandle NEXT;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                CLAIMED = lookup.findVarHandle(Chunk.class, "claimed", int.class);
+                NEXT = lookup.findVarHandle(Chunk.class, "next", Chunk.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final long base;
+        final Object[] slots;
+        // Slots handed out so far; producers that find it past the end move on to the next chunk
+        volatile int claimed;
+        volatile Chunk next;
+
+        Chunk(long base, int size) {
+            this.base = base;
+            this.slots = new Object[size];
+        }
+
+        int claimed() {
+            return claimed;
+        }
+    }
+}
@@ -2,7 +2,10 @@ package mi.m4x.carbide.scheduler.structures;
 
 import mi.m4x.carbide.scheduler.utility.Assertions;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -10,6 +13,13 @@ import java.util.function.Function;
  * A high-performance, fixed-size object pool that recycles instances to minimize GC overhead.
  * Supports overflow instantiation beyond capacity, optional initialization and cleanup hooks,
  * and is safe for multi-threaded use.
+ * <p>
+ * Pools built with the constructor keep their objects behind a single monitor. Pools built with
+ * {@link #threadCached} put a magazine layer in front of it, in the style of a slab allocator:
+ * every thread keeps two small magazines of objects and only goes to the shared depot to trade a
+ * whole magazine, so most alloc/release pairs touch no shared state. Pools built with
+ * {@link #adaptive} start empty and size themselves from demand: they retain as many objects as were
+ * checked out at the peak, up to a hard cap, and trim idle objects once that peak decays.
  *
  * @param <T> the type of object managed by this pool
  * @since 1.0.0
@@ -21,11 +31,33 @@ public final class ObjectPool<T> {
     private final Consumer<T> initializer;
     private final Consumer<T> postRelease;
     private final int capacity;
-    private final Object[] buffer;
+    private Object[] buffer;
 
     // The number of objects currently checked out (also serves as index for the next free slot)
     private int count;
 
+    // Adaptive sizing, guarded by this. For fixed pools limit stays at capacity
+    private final int minCapacity;
+    private final long decayNanos;
+    private int limit;
+    private int outstanding;
+    private int peakDemand;
+    private int windowPeak;
+    private long windowStart;
+    private long trimmed;
+
+    // Magazine layer, null for a plain pool. The depot queues are guarded by this
+    private final ThreadLocal<Magazines> magazines;
+    private final int magazineSize;
+    private final int depotLimit;
+    private final ArrayDeque<Magazine> fullMagazines;
+    private final ArrayDeque<Magazine> emptyMagazines;
+
+    // Usage counters, striped so that counting does not bring back a shared hot spot
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
     /**
      * Constructs a new ObjectPool.
      *
@@ -38,20 +70,130 @@ public final class ObjectPool<T> {
                       Consumer<T> initializer,
                       Consumer<T> postRelease,
                       int capacity) {
+        this(constructor, initializer, postRelease, capacity, 0, capacity, 0L);
+    }
+
+    private ObjectPool(Function<ObjectPool<T>, T> constructor,
+                       Consumer<T> initializer,
+                       Consumer<T> postRelease,
+                       int capacity,
+                       int magazineSize,
+                       int minCapacity,
+                       long decayNanos) {
 
         Assertions.assertTrue(capacity > 0, "ObjectPool capacity must be positive");
         this.constructor = Objects.requireNonNull(constructor, "Constructor must not be null");
         this.initializer = Objects.requireNonNull(initializer, "Initializer must not be null");
         this.postRelease = Objects.requireNonNull(postRelease, "PostRelease must not be null");
         this.capacity = capacity;
-        this.buffer = new Object[capacity];
+        this.magazineSize = magazineSize;
+        this.minCapacity = minCapacity;
+        this.decayNanos = decayNanos;
+        this.limit = capacity;
 
-        // Pre-fill the pool to avoid on-demand creation
-        for (int i = 0; i < capacity; i++) {
-            buffer[i] = constructor.apply(this);
+        if (decayNanos > 0L) {
+            // Adaptive: nothing is built up front, the buffer grows with the retained limit
+            this.buffer = new Object[Math.min(capacity, Math.max(16, minCapacity))];
+            this.magazines = null;
+            this.depotLimit = 0;
+            this.fullMagazines = null;
+            this.emptyMagazines = null;
+            this.limit = minCapacity;
+            this.windowStart = System.nanoTime();
+            return;
         }
 
-        this.count = capacity;
+        if (magazineSize == 0) {
+            this.buffer = new Object[capacity];
+            this.magazines = null;
+            this.depotLimit = 0;
+            this.fullMagazines = null;
+            this.emptyMagazines = null;
+
+            // Pre-fill the pool to avoid on-demand creation
+            for (int i = 0; i < capacity; i++) {
+                buffer[i] = constructor.apply(this);
+            }
+
+            this.count = capacity;
+            return;
+        }
+
+        this.buffer = null;
+        this.magazines = ThreadLocal.withInitial(() -> new Magazines(magazineSize));
+        this.depotLimit = (capacity + magazineSize - 1) / magazineSize;
+        this.fullMagazines = new ArrayDeque<>(depotLimit);
+        this.emptyMagazines = new ArrayDeque<>(depotLimit);
+
+        // Pre-fill the depot with capacity objects, the last magazine may be partial
+        for (int filled = 0; filled < capacity; ) {
+            Magazine magazine = new Magazine(magazineSize);
+            while (magazine.count < magazineSize && filled < capacity) {
+                magazine.slots[magazine.count++] = constructor.apply(this);
+                filled++;
+            }
+            fullMagazines.add(magazine);
+        }
+    }
+
+    /**
+     * Creates a pool with a per-thread magazine layer.
+     * <p>
+     * Each thread allocates from and releases into its own two magazines of
+     * {@code magazineSize} objects. Only when both are empty (on alloc) or full (on release) does
+     * it trade a whole magazine with the shared depot under the pool's monitor. The depot holds up
+     * to {@code capacity} objects, and each thread caches up to {@code 2 * magazineSize} more.
+     * The hooks behave as with a plain pool: {@code initializer} runs on every alloc and
+     * {@code postRelease} on every release, whether the object ends up pooled or dropped.
+     *
+     * @param constructor  function to create new objects
+     * @param initializer  function to initialize objects before use
+     * @param postRelease  function to clean up objects before reuse
+     * @param capacity     maximum number of objects held by the shared depot
+     * @param magazineSize number of objects a magazine holds
+     * @param <T>          the type of object managed by the pool
+     * @return a new thread-cached pool
+     * @since 1.0.5
+     */
+    public static <T> ObjectPool<T> threadCached(Function<ObjectPool<T>, T> constructor,
+                                                 Consumer<T> initializer,
+                                                 Consumer<T> postRelease,
+                                                 int capacity,
+                                                 int magazineSize) {
+        Assertions.assertTrue(magazineSize > 0, "Magazine size must be positive");
+        return new ObjectPool<>(constructor, initializer, postRelease, capacity, magazineSize, capacity, 0L);
+    }
+
+    /**
+     * Creates a pool that sizes itself from demand.
+     * <p>
+     * The pool starts empty and constructs objects as they are first needed. It retains released
+     * objects up to the peak number checked out at once, never fewer than {@code minCapacity} and
+     * never more than {@code maxCapacity}; anything beyond is dropped as with a full fixed pool.
+     * Demand is tracked in windows of {@code decayNanos}: when a window closes, the retained limit
+     * falls back to that window's peak and idle objects above it are trimmed, so a burst keeps its
+     * objects for one to two decay periods. Trimming happens as the pool is used.
+     *
+     * @param constructor function to create new objects
+     * @param initializer function to initialize objects before use
+     * @param postRelease function to clean up objects before reuse
+     * @param minCapacity number of idle objects the pool always keeps once it has built them
+     * @param maxCapacity hard cap on retained objects
+     * @param decayNanos  length of a demand window in nanoseconds
+     * @param <T>         the type of object managed by the pool
+     * @return a new adaptive pool
+     * @since 1.0.5
+     */
+    public static <T> ObjectPool<T> adaptive(Function<ObjectPool<T>, T> constructor,
+                                             Consumer<T> initializer,
+                                             Consumer<T> postRelease,
+                                             int minCapacity,
+                                             int maxCapacity,
+                                             long decayNanos) {
+        Assertions.assertTrue(minCapacity >= 0 && minCapacity <= maxCapacity,
+                "Minimum capacity must be between 0 and the maximum capacity");
+        Assertions.assertTrue(decayNanos > 0L, "Decay period must be positive");
+        return new ObjectPool<>(constructor, initializer, postRelease, maxCapacity, 0, minCapacity, decayNanos);
     }
 
     /**
@@ -60,19 +202,28 @@ public final class ObjectPool<T> {
      * @return an initialized object, never null
      */
     public T alloc() {
-        final T obj;
+        if (magazines != null) {
+            return allocCached();
+        }
 
+        T obj = null;
+        long now = decayNanos > 0L ? System.nanoTime() : 0L;
         synchronized (this) {
+            if (decayNanos > 0L) {
+                recordAlloc(now);
+            }
             if (count > 0) {
                 obj = getFromPool();
-            } else {
-                // Overflow: create a new instance on demand
-                obj = constructor.apply(this);
-                initializer.accept(obj);
-                return obj;
             }
         }
 
+        if (obj != null) {
+            hits.increment();
+        } else {
+            // Overflow: create a new instance on demand, outside the monitor
+            misses.increment();
+            obj = constructor.apply(this);
+        }
         initializer.accept(obj);
         return obj;
     }
@@ -87,12 +238,205 @@ public final class ObjectPool<T> {
 
         postRelease.accept(obj);
 
+        if (magazines != null) {
+            releaseCached(obj);
+            return;
+        }
+
+        boolean pooled;
+        long now = decayNanos > 0L ? System.nanoTime() : 0L;
         synchronized (this) {
-            if (count < capacity) {
+            if (decayNanos > 0L) {
+                recordRelease(now);
+            }
+            pooled = count < limit;
+            if (pooled) {
+                if (count == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(capacity, buffer.length * 2));
+                }
                 buffer[count++] = obj;
             }
-            // Else: silently drop the object
         }
+        if (!pooled) {
+            // Silently drop the object
+            overflows.increment();
+        }
+    }
+
+    /**
+     * Returns how many allocations were served from pooled instances.
+     *
+     * @return the hit count
+     * @since 1.0.5
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns how many allocations found the pool empty and constructed a new instance.
+     *
+     * @return the miss count
+     * @since 1.0.5
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns how many released objects were dropped because the pool was full.
+     *
+     * @return the overflow count
+     * @since 1.0.5
+     */
+    public long overflowCount() {
+        return overflows.sum();
+    }
+
+    /**
+     * Returns how many idle objects the pool currently retains at most. Fixed pools always report
+     * their capacity.
+     *
+     * @return the retained capacity
+     * @since 1.0.5
+     */
+    public synchronized int retainedCapacity() {
+        return magazines != null ? capacity : limit;
+    }
+
+    /**
+     * Returns the highest number of objects an adaptive pool has seen checked out at once.
+     *
+     * @return the peak demand, or 0 for pools that do not track demand
+     * @since 1.0.5
+     */
+    public synchronized int peakDemand() {
+        return peakDemand;
+    }
+
+    /**
+     * Returns how many idle objects an adaptive pool dropped because its demand decayed.
+     *
+     * @return the trim count
+     * @since 1.0.5
+     */
+    public synchronized long trimCount() {
+        return trimmed;
+    }
+
+    private void recordAlloc(long now) {
+        decay(now);
+        if (++outstanding > windowPeak) {
+            windowPeak = outstanding;
+            peakDemand = Math.max(peakDemand, outstanding);
+            limit = Math.max(limit, Math.min(capacity, outstanding));
+        }
+    }
+
+    private void recordRelease(long now) {
+        decay(now);
+        // Objects that were never allocated here may be released, don't let that go negative
+        if (outstanding > 0) {
+            outstanding--;
+        }
+    }
+
+    /**
+     * Closes the demand window if it is over: the limit falls back to the window's peak and idle
+     * objects above it are let go.
+     */
+    private void decay(long now) {
+        if (now - windowStart < decayNanos) {
+            return;
+        }
+        limit = Math.max(minCapacity, Math.min(capacity, windowPeak));
+        while (count > limit) {
+            buffer[--count] = null;
+            trimmed++;
+        }
+        windowPeak = outstanding;
+        windowStart = now;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T allocCached() {
+        Magazines cache = magazines.get();
+        Magazine loaded = cache.loaded;
+
+        if (loaded.count == 0) {
+            if (cache.previous.count > 0) {
+                cache.loaded = cache.previous;
+                cache.previous = loaded;
+                loaded = cache.loaded;
+            } else {
+                Magazine full = tradeForFull(loaded);
+                if (full == null) {
+                    misses.increment();
+                    T obj = constructor.apply(this);
+                    initializer.accept(obj);
+                    return obj;
+                }
+                cache.loaded = loaded = full;
+            }
+        }
+
+        hits.increment();
+        int index = --loaded.count;
+        T obj = (T) loaded.slots[index];
+        loaded.slots[index] = null;
+        initializer.accept(obj);
+        return obj;
+    }
+
+    private void releaseCached(T obj) {
+        Magazines cache = magazines.get();
+        Magazine loaded = cache.loaded;
+
+        if (loaded.count == magazineSize) {
+            if (cache.previous.count < magazineSize) {
+                cache.loaded = cache.previous;
+                cache.previous = loaded;
+                loaded = cache.loaded;
+            } else {
+                Magazine empty = tradeForEmpty(cache.previous);
+                if (empty == null) {
+                    // The depot is full as well
+                    overflows.increment();
+                    return;
+                }
+                cache.previous = loaded;
+                cache.loaded = loaded = empty;
+            }
+        }
+
+        loaded.slots[loaded.count++] = obj;
+    }
+
+    /**
+     * Hands an empty magazine to the depot in exchange for a full one.
+     *
+     * @return a full magazine, or {@code null} if the depot has none
+     */
+    private synchronized Magazine tradeForFull(Magazine empty) {
+        Magazine full = fullMagazines.poll();
+        if (full != null && emptyMagazines.size() < depotLimit) {
+            emptyMagazines.push(empty);
+        }
+        return full;
+    }
+
+    /**
+     * Hands a full magazine to the depot in exchange for an empty one.
+     *
+     * @return an empty magazine, or {@code null} if the depot cannot take more objects
+     */
+    private synchronized Magazine tradeForEmpty(Magazine full) {
+        if (fullMagazines.size() >= depotLimit) {
+            return null;
+        }
+        fullMagazines.push(full);
+        Magazine empty = emptyMagazines.poll();
+        return empty != null ? empty : new Magazine(magazineSize);
     }
 
     /**
@@ -104,4 +448,30 @@ public final class ObjectPool<T> {
     private T getFromPool() {
         return (T) buffer[--count];
     }
+
+    /**
+     * A fixed-size stack of pooled objects, traded between threads as a whole.
+     */
+    private static final class Magazine {
+        final Object[] slots;
+        int count;
+
+        Magazine(int size) {
+            this.slots = new Object[size];
+        }
+    }
+
+    /**
+     * The two magazines a thread works from: it allocates and releases with the loaded one and
+     * swaps in the previous one before going to the depot.
+     */
+    private static final class Magazines {
+        Magazine loaded;
+        Magazine previous;
+
+        Magazines(int size) {
+            this.loaded = new Magazine(size);
+            this.previous = new Magazine(size);
+        }
+    }
 }
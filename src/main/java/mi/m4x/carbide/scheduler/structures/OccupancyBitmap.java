@@ -0,0 +1,115 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Concurrent hierarchical bitmap of non-empty priority levels.
+ * <p>
+ * The bottom row holds one bit per level. Every row above holds one bit per word of the row
+ * below, set while that word has any bit set, up to a single top word. Finding the first set bit
+ * therefore takes one {@link Long#numberOfTrailingZeros(long)} per row: one step for up to 64
+ * levels, two for up to 4096 and three for up to 262144.
+ * <p>
+ * Bits are hints kept up to date with atomic fetch-or and fetch-and. A clear that races with a
+ * set re-checks what it cleared and restores it, so a bit is never lost while its level or word
+ * is non-empty. A bit may briefly stay set for an empty level, so callers confirm emptiness with
+ * the level's own counter and move on to the next set bit.
+ *
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+final class OccupancyBitmap {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // rows[0] is the single top word, rows[rows.length - 1] has one bit per level
+    private final long[][] rows;
+
+    OccupancyBitmap(int levels) {
+        int depth = 1;
+        for (long covered = 64; covered < levels; covered <<= 6) {
+            depth++;
+        }
+
+        this.rows = new long[depth][];
+        int bits = levels;
+        for (int row = depth - 1; row >= 0; row--) {
+            int words = (bits + 63) >>> 6;
+            rows[row] = new long[words];
+            bits = words;
+        }
+    }
+
+    /**
+     * Marks a level as non-empty.
+     */
+    void set(int level) {
+        set(rows.length - 1, level);
+    }
+
+    /**
+     * Marks a level as empty. The caller must re-check the level afterwards and call
+     * {@link #set(int)} again if it was refilled in the meantime.
+     */
+    void clear(int level) {
+        clear(rows.length - 1, level);
+    }
+
+    /**
+     * Returns the first level at or after {@code from} whose bit is set.
+     *
+     * @param from the first level to consider
+     * @return the level, or -1 if no later bit is set
+     */
+    int next(int from) {
+        return next(rows.length - 1, from);
+    }
+
+    private void set(int row, int bit) {
+        long old = (long) WORDS.getAndBitwiseOr(rows[row], bit >>> 6, 1L << bit);
+        if (old == 0 && row > 0) {
+            // The word was empty, so its summary bit may be clear
+            set(row - 1, bit >>> 6);
+        }
+    }
+
+    private void clear(int row, int bit) {
+        long[] words = rows[row];
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        long old = (long) WORDS.getAndBitwiseAnd(words, word, ~mask);
+        if ((old & ~mask) == 0 && row > 0) {
+            clear(row - 1, word);
+            // A racing set saw the word non-empty and skipped the summary bit
+            if ((long) WORDS.getVolatile(words, word) != 0) {
+                set(row - 1, word);
+            }
+        }
+    }
+
+    private int next(int row, int from) {
+        long[] words = rows[row];
+        while (true) {
+            int word = from >>> 6;
+            if (word >= words.length) {
+                return -1;
+            }
+
+            long bits = (long) WORDS.getVolatile(words, word) & (-1L << from);
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (row == 0) {
+                return -1; // the top row is a single word
+            }
+
+            // Skip to the next non-empty word; its summary bit may be stale, hence the loop
+            int nextWord = next(row - 1, word + 1);
+            if (nextWord < 0) {
+                return -1;
+            }
+            from = nextWord << 6;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import mi.m4x.carbide.scheduler.utility.Assertions;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Shared layout of the array-backed {@link MessageQueue}s: a power-of-two ring of slots and the
+ * producer and consumer indices, which only ever grow.
+ * <p>
+ * The indices live in one {@code long} array, a stride of 16 longs apart, so producers and
+ * consumers never write to the same cache line. The ring is padded at both ends for the same
+ * reason, keeping its first and last slots off the lines of neighbouring objects.
+ *
+ * @param <E> the type of elements held in this queue
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+abstract class PaddedRingQueue<E> extends AbstractQueue<E> implements MessageQueue<E> {
+
+    static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+    static final VarHandle INDEX = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // 16 longs span two cache lines, which also keeps the adjacent-line prefetcher apart
+    static final int STRIDE = 16;
+    static final int PRODUCER = STRIDE;
+    // Producer-side cache of how far producers may go before looking at the consumer index
+    static final int PRODUCER_LIMIT = STRIDE + 1;
+    static final int CONSUMER = 2 * STRIDE;
+    private static final int RING_PAD = 32;
+    // Spins on a claimed but not yet written slot before yielding to its producer
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    final Object[] buffer;
+    final int mask;
+    final long[] indices = new long[3 * STRIDE];
+
+    PaddedRingQueue(int capacity) {
+        Assertions.assertTrue(capacity > 0 && capacity <= 1 << 30, "Queue capacity must be between 1 and 2^30");
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.buffer = new Object[size + 2 * RING_PAD];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the index of the ring slot that sequence {@code index} maps to
+     */
+    final int slot(long index) {
+        return RING_PAD + (int) (index & mask);
+    }
+
+    final long producerIndex() {
+        return (long) INDEX.getAcquire(indices, PRODUCER);
+    }
+
+    final long consumerIndex() {
+        return (long) INDEX.getAcquire(indices, CONSUMER);
+    }
+
+    /**
+     * Waits for a producer that claimed {@code slot} to write it.
+     *
+     * @return the element written to the slot
+     */
+    final Object awaitSlot(int slot) {
+        Object element;
+        int spins = 0;
+        while ((element = SLOT.getAcquire(buffer, slot)) == null) {
+            spins = backOff(spins);
+        }
+        return element;
+    }
+
+    /**
+     * Waits a little for another thread to finish with a slot it claimed. That thread may have
+     * been descheduled in between, so after a few spins the processor is handed over.
+     *
+     * @return the spins so far, to pass to the next call
+     */
+    static int backOff(int spins) {
+        if (spins < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+        return spins + 1;
+    }
+
+    /**
+     * {@inheritDoc} The capacity is the requested one rounded up to a power of two.
+     */
+    @Override
+    public final int capacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public final int size() {
+        while (true) {
+            long before = consumerIndex();
+            long producer = producerIndex();
+            long after = consumerIndex();
+            if (before == after) {
+                return (int) Math.max(0L, Math.min(capacity(), producer - after));
+            }
+        }
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        return consumerIndex() >= producerIndex();
+    }
+
+    @Override
+    public final Iterator<E> iterator() {
+        return new Iterator<>() {
+            private long index = consumerIndex();
+            private final long end = producerIndex();
+            private E next = advance();
+
+            @SuppressWarnings("unchecked")
+            private E advance() {
+                while (index < end) {
+                    Object element = SLOT.getAcquire(buffer, slot(index++));
+                    if (element != null) {
+                        return (E) element;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                E element = next;
+                if (element == null) {
+                    throw new NoSuchElementException();
+                }
+                next = advance();
+                return element;
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package mi.m4x.carbide.scheduler.structures;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A bounded single-producer, single-consumer queue on a padded ring.
+ * <p>
+ * A slot is free while it holds {@code null}, so neither side reads the other's index on the
+ * fast path: offering and polling are each one ordered read and two ordered writes, with no CAS.
+ * Only one thread at a time may offer or fill, and only one at a time may poll, peek or drain.
+ *
+ * @param <E> the type of elements held in this queue
+ * @author M4ximumpizza
+ * @since 1.0.5
+ */
+public final class SpscArrayQueue<E> extends PaddedRingQueue<E> {
+
+    /**
+     * @param capacity the most elements the queue holds, rounded up to a power of two
+     */
+    public SpscArrayQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element, "Element cannot be null");
+        long producer = (long) INDEX.getOpaque(indices, PRODUCER);
+        int slot = slot(producer);
+        if (SLOT.getAcquire(buffer, slot) != null) {
+            return false;
+        }
+        SLOT.setRelease(buffer, slot, element);
+        INDEX.setRelease(indices, PRODUCER, producer + 1);
+        return true;
+    }
+
+    @Override
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        Objects.requireNonNull(supplier, "Supplier must not be null");
+        long producer = (long) INDEX.getOpaque(indices, PRODUCER);
+        int count = (int) Math.min(limit, capacity() - (producer - consumerIndex()));
+        for (int i = 0; i < count; i++) {
+            SLOT.setRelease(buffer, slot(producer + i), Objects.requireNonNull(supplier.get(), "Element cannot be null"));
+        }
+        if (count > 0) {
+            INDEX.setRelease(indices, PRODUCER, producer + count);
+        }
+        return Math.max(0, count);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long consumer = (long) INDEX.getOpaque(indices, CONSUMER);
+        int slot = slot(consumer);
+        Object element = SLOT.getAcquire(buffer, slot);
+        if (element == null) {
+            return null;
+        }
+        SLOT.setOpaque(buffer, slot, null);
+        // Releasing the index also publishes the freed slot to the producer
+        INDEX.setRelease(indices, CONSUMER, consumer + 1);
+        return (E) element;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return (E) SLOT.getAcquire(buffer, slot((long) INDEX.getOpaque(indices, CONSUMER)));
+    }
+}
@@ -1,19 +1,25 @@
 package mi.m4x.carbide.scheduler.utility;
 
-import java.util.PriorityQueue;
+import mi.m4x.carbide.scheduler.executor.QueueingPolicy;
+import mi.m4x.carbide.scheduler.structures.DeadlineQueue;
 
 /**
  * Real-Time Scheduler using Earliest Deadline First (EDF) policy.
  * <p>
  * Tasks are scheduled according to their deadlines.
- * The task with the earliest deadline is executed first.
+ * The task with the earliest deadline is executed first, on the thread calling
+ * {@link #executeNext()}. Any number of threads may submit and execute at once; the tasks are
+ * kept in a striped {@link DeadlineQueue} rather than behind one lock.
+ * <p>
+ * To run deadline tasks on an executor's workers, with lock tokens, use
+ * {@link QueueingPolicy#EARLIEST_DEADLINE_FIRST} instead.
  *
  * @since 1.0.4
  * @author M4ximumpizza
  */
 public class EDFScheduler {
 
-    private final PriorityQueue<EDFTask> queue = new PriorityQueue<>();
+    private final DeadlineQueue<Runnable> queue = new DeadlineQueue<>();
 
     /**
      * Submits a task with a specific deadline.
@@ -21,17 +27,17 @@ public class EDFScheduler {
      * @param task     The task to execute.
      * @param deadline The absolute time in milliseconds by which the task should complete.
      */
-    public synchronized void submit(Runnable task, long deadline) {
-        queue.offer(new EDFTask(task, deadline));
+    public void submit(Runnable task, long deadline) {
+        queue.offer(task, deadline);
     }
 
     /**
      * Executes the next task according to the earliest deadline.
      */
-    public synchronized void executeNext() {
-        EDFTask next = queue.poll();
+    public void executeNext() {
+        Runnable next = queue.poll();
         if (next != null) {
-            next.getTask().run();
+            next.run();
         }
     }
 
@@ -40,7 +46,7 @@ public class EDFScheduler {
      *
      * @return true if there are tasks waiting.
      */
-    public synchronized boolean hasTasks() {
+    public boolean hasTasks() {
         return !queue.isEmpty();
     }
 }
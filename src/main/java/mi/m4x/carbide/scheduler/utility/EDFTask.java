@@ -5,7 +5,10 @@ package mi.m4x.carbide.scheduler.utility;
  *
  * @since 1.0.4
  * @author M4ximumpizza
+ * @deprecated {@link EDFScheduler} takes the task and its deadline separately and no longer uses
+ *             this class.
  */
+@Deprecated
 public class EDFTask implements Comparable<EDFTask> {
     private final Runnable task;
     private final long deadline; // in milliseconds
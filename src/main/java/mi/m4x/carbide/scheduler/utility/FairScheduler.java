@@ -1,5 +1,7 @@
 package mi.m4x.carbide.scheduler.utility;
 
+import mi.m4x.carbide.scheduler.executor.TaskGroup;
+
 import java.util.PriorityQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -8,6 +10,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p>
  * Each task is assigned a weight. Tasks with higher weights get more CPU time,
  * but all tasks are guaranteed fair execution over time.
+ * <p>
+ * Weights apply per task and tasks run inline on the calling thread. To share an executor's
+ * workers fairly between task sources, schedule each source into its own {@link TaskGroup}.
  *
  * @since 1.0.4
  * @author M4ximumpizza
@@ -0,0 +1,95 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.ObjectPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestAdaptivePool {
+
+    private static final int MAX_CAPACITY = 1024;
+    private static final int MIN_CAPACITY = 8;
+    private static final int BURST = 400;
+    private static final int BURSTS = 200;
+    private static final long DECAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public static void main(String[] args) throws InterruptedException {
+        lifecycle();
+        bursts();
+    }
+
+    /**
+     * Lazy fill, growth to the observed peak, the hard cap, and trimming once demand decays.
+     */
+    private static void lifecycle() throws InterruptedException {
+        AtomicLong constructed = new AtomicLong();
+        ObjectPool<long[]> pool = ObjectPool.adaptive(owner -> construct(constructed), array -> {}, array -> {},
+                MIN_CAPACITY, MAX_CAPACITY, DECAY_NANOS);
+        check(constructed.get() == 0, "pool built objects up front: " + constructed.get());
+
+        cycle(pool, BURST);
+        check(pool.retainedCapacity() == BURST, "retained " + pool.retainedCapacity() + " after a burst of " + BURST);
+        cycle(pool, BURST);
+        check(constructed.get() == BURST, "second burst constructed again: " + constructed.get());
+
+        cycle(pool, 2 * MAX_CAPACITY);
+        check(pool.retainedCapacity() == MAX_CAPACITY, "retained " + pool.retainedCapacity() + " past the cap");
+        check(pool.overflowCount() == MAX_CAPACITY, "dropped " + pool.overflowCount() + " past the cap");
+
+        // Two quiet windows: the first still remembers the burst, the second lets it go
+        for (int window = 0; window < 2; window++) {
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(DECAY_NANOS) + 10);
+            cycle(pool, 1);
+        }
+        check(pool.retainedCapacity() == MIN_CAPACITY, "retained " + pool.retainedCapacity() + " after decay");
+        check(pool.trimCount() == MAX_CAPACITY - MIN_CAPACITY, "trimmed " + pool.trimCount());
+
+        System.out.printf("Lifecycle: peak %d, retained %d, hits %d, misses %d, overflows %d, trimmed %d%n",
+                pool.peakDemand(), pool.retainedCapacity(), pool.hitCount(), pool.missCount(),
+                pool.overflowCount(), pool.trimCount());
+    }
+
+    /**
+     * Repeated bursts above a fixed pool's capacity construct fresh objects every time, while the
+     * adaptive pool settles on the burst size.
+     */
+    private static void bursts() {
+        AtomicLong fixedConstructed = new AtomicLong();
+        AtomicLong adaptiveConstructed = new AtomicLong();
+        ObjectPool<long[]> fixed = new ObjectPool<>(owner -> construct(fixedConstructed), array -> {}, array -> {}, 64);
+        ObjectPool<long[]> adaptive = ObjectPool.adaptive(owner -> construct(adaptiveConstructed), array -> {},
+                array -> {}, MIN_CAPACITY, MAX_CAPACITY, DECAY_NANOS);
+
+        for (int i = 0; i < BURSTS; i++) {
+            cycle(fixed, BURST);
+            cycle(adaptive, BURST);
+        }
+        check(adaptiveConstructed.get() == BURST, "adaptive pool constructed " + adaptiveConstructed.get());
+
+        System.out.printf("%d bursts of %d: fixed(64) constructed %d, adaptive constructed %d%n",
+                BURSTS, BURST, fixedConstructed.get(), adaptiveConstructed.get());
+    }
+
+    private static void cycle(ObjectPool<long[]> pool, int demand) {
+        List<long[]> held = new ArrayList<>(demand);
+        for (int i = 0; i < demand; i++) {
+            held.add(pool.alloc());
+        }
+        for (long[] array : held) {
+            pool.release(array);
+        }
+    }
+
+    private static long[] construct(AtomicLong constructed) {
+        constructed.incrementAndGet();
+        return new long[1];
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package scheduler;
+
+import mi.m4x.carbide.natives.CpuTopology;
+import mi.m4x.carbide.natives.ThreadAffinity;
+import mi.m4x.carbide.scheduler.executor.ExecutionMode;
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.WorkerPlacement;
+import mi.m4x.carbide.scheduler.executor.WorkerThread;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
+
+public class TestCpuTopology {
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("carbide-sysfs");
+        try {
+            sysfsTree(root.resolve("dual-socket"));
+            fallback(root.resolve("missing"));
+            hostTopology();
+            affinity();
+            pinnedWorkers();
+            socketLocalWakeups(root.resolve("two-by-two"));
+            placedStealing(root.resolve("two-by-two"));
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * A dual-socket host with two hyper-threads per core, package ids 0 and 3, one NUMA node per
+     * socket and the last CPU offline.
+     */
+    private static void sysfsTree(Path system) throws Exception {
+        writeTree(system, new int[]{0, 3}, 4, 2, "0-14");
+        CpuTopology topology = CpuTopology.read(system);
+        check(topology.isDetected(), "read topology marked as fallback");
+        check(topology.cpuCount() == 15 && topology.coreCount() == 8 && topology.socketCount() == 2
+                && topology.nodeCount() == 2, "counts " + topology);
+        check(topology.socketOf(0) == 0 && topology.socketOf(5) == 1 && topology.socketOf(12) == 1,
+                "sockets not numbered from 0");
+        check(topology.coreOf(1) == topology.coreOf(9) && topology.coreOf(1) != topology.coreOf(2), "siblings");
+        check(topology.nodeOf(10) == 0 && topology.nodeOf(14) == 1, "nodes");
+        check(Arrays.equals(topology.cpusOfSocket(0), new int[]{0, 1, 2, 3, 8, 9, 10, 11}), "socket 0 CPUs");
+
+        int[] placement = topology.placement();
+        int[] expected = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14};
+        check(Arrays.equals(placement, expected), "placement " + Arrays.toString(placement));
+        expect(IllegalArgumentException.class, () -> topology.socketOf(15));
+        System.out.println("Sysfs tree: " + topology + ", placement " + Arrays.toString(placement));
+    }
+
+    private static void fallback(Path missing) {
+        expect(NoSuchFileException.class, () -> CpuTopology.read(missing));
+        CpuTopology uniform = CpuTopology.uniform(4);
+        check(!uniform.isDetected() && uniform.cpuCount() == 4 && uniform.coreCount() == 4
+                && uniform.socketCount() == 1 && uniform.nodeCount() == 1, "uniform " + uniform);
+        check(Arrays.equals(uniform.placement(), new int[]{0, 1, 2, 3}), "uniform placement");
+        expect(IllegalArgumentException.class, () -> CpuTopology.uniform(0));
+        System.out.println("Fallback: missing sysfs rejected, " + uniform);
+    }
+
+    private static void hostTopology() {
+        CpuTopology topology = CpuTopology.detect();
+        int[] placement = topology.placement();
+        int[] sorted = placement.clone();
+        Arrays.sort(sorted);
+        check(topology.cpuCount() >= 1 && Arrays.equals(sorted, topology.cpus()), "placement is not a permutation");
+        System.out.println("Host: " + topology);
+    }
+
+    /**
+     * Where pinning is supported a thread pinned to the CPU it runs on stays there, and a set
+     * without any existing CPU is rejected. Elsewhere nothing is pinned.
+     */
+    private static void affinity() throws Exception {
+        AtomicInteger pinnedTo = new AtomicInteger(-2);
+        AtomicInteger ranOn = new AtomicInteger(-2);
+        AtomicInteger rejected = new AtomicInteger();
+        Thread thread = Thread.ofPlatform().start(() -> {
+            int cpu = Math.max(0, ThreadAffinity.currentCpu());
+            if (ThreadAffinity.pinCurrentThread(cpu)) {
+                pinnedTo.set(cpu);
+            }
+            ranOn.set(ThreadAffinity.currentCpu());
+            if (!ThreadAffinity.pinCurrentThread(100_000)) {
+                rejected.incrementAndGet();
+            }
+        });
+        thread.join();
+        check(rejected.get() == 1, "pinned to a CPU that does not exist");
+        expect(IllegalArgumentException.class, ThreadAffinity::pinCurrentThread);
+        if (ThreadAffinity.isSupported()) {
+            check(pinnedTo.get() >= 0 && ranOn.get() == pinnedTo.get(), "pinned to " + pinnedTo.get() + ", ran on " + ranOn.get());
+            System.out.println("Affinity: pinned to CPU " + pinnedTo.get() + " and ran there");
+        } else {
+            check(pinnedTo.get() == -2 && ranOn.get() == -1, "pinned without support");
+            System.out.println("Affinity: not supported here, nothing pinned");
+        }
+    }
+
+    /**
+     * Workers placed per core on the host each stay on a single CPU of the topology.
+     */
+    private static void pinnedWorkers() throws Exception {
+        ExecutorManager manager = new ExecutorManager(4, thread -> {}, ExecutorConfig.builder()
+                .workerPlacement(WorkerPlacement.PER_CORE)
+                .build());
+        CpuTopology topology = manager.cpuTopology();
+        Map<Thread, Set<Integer>> cpusByWorker = new ConcurrentHashMap<>();
+        int tasks = 2000;
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            manager.schedule(() -> {
+                cpusByWorker.computeIfAbsent(Thread.currentThread(), thread -> ConcurrentHashMap.newKeySet())
+                        .add(ThreadAffinity.currentCpu());
+                done.countDown();
+            }, 8);
+        }
+        check(done.await(10, TimeUnit.SECONDS), "placed workers lost tasks");
+        manager.shutdown();
+
+        int[] cpus = topology.cpus();
+        for (Map.Entry<Thread, Set<Integer>> worker : cpusByWorker.entrySet()) {
+            Set<Integer> seen = worker.getValue();
+            if (ThreadAffinity.isSupported()) {
+                int cpu = seen.iterator().next();
+                check(seen.size() == 1 && Arrays.binarySearch(cpus, cpu) >= 0,
+                        worker.getKey().getName() + " ran on CPUs " + seen);
+            } else {
+                check(seen.equals(Set.of(-1)), "CPUs reported without support: " + seen);
+            }
+            check(((WorkerThread) worker.getKey()).socket() >= 0, "worker not placed");
+        }
+        System.out.printf("Pinned workers: %d workers on %s each stayed on one CPU%n", cpusByWorker.size(), topology);
+    }
+
+    /**
+     * On a two-socket topology, a task scheduled from a worker wakes a parked worker of the same
+     * socket, so it runs there rather than on the other socket. The parent waits for its child, so
+     * the child must run on the worker that was woken.
+     */
+    private static void socketLocalWakeups(Path system) throws Exception {
+        writeTree(system, new int[]{0, 1}, 2, 1, "0-3");
+        ExecutorManager manager = new ExecutorManager(4, thread -> {}, ExecutorConfig.builder()
+                .workerPlacement(WorkerPlacement.PER_CORE)
+                .cpuTopology(CpuTopology.read(system))
+                .build());
+        int rounds = 500;
+        AtomicInteger local = new AtomicInteger();
+        AtomicIntegerArray parentSockets = new AtomicIntegerArray(2);
+        for (int round = 0; round < rounds; round++) {
+            CountDownLatch done = new CountDownLatch(1);
+            manager.schedule(() -> {
+                int parent = ((WorkerThread) Thread.currentThread()).socket();
+                parentSockets.incrementAndGet(parent);
+                manager.schedule(() -> {
+                    if (((WorkerThread) Thread.currentThread()).socket() == parent) {
+                        local.incrementAndGet();
+                    }
+                    done.countDown();
+                }, 8);
+                awaitQuietly(done);
+            }, 8);
+            check(done.await(5, TimeUnit.SECONDS), "child task lost");
+            // Let the parent and the child's worker park again, only woken workers take tasks
+            Thread.sleep(1);
+        }
+        manager.shutdown();
+        double share = local.get() / (double) rounds;
+        check(parentSockets.get(0) > 0 && parentSockets.get(1) > 0, "only one socket used: " + parentSockets);
+        check(share >= 0.8, "only " + share + " of the children ran on their parent's socket");
+        System.out.printf("Socket-local wakeups: %.3f of %d children ran on their parent's socket, parents on sockets %s%n",
+                share, rounds, parentSockets);
+    }
+
+    /**
+     * Placed workers stealing from each other across sockets, in an elastic pool that starts and
+     * retires placed workers, never lose or repeat a task.
+     */
+    private static void placedStealing(Path system) throws Exception {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder()
+                .executionMode(ExecutionMode.WORK_STEALING)
+                .workerPlacement(WorkerPlacement.PER_SOCKET)
+                .cpuTopology(CpuTopology.read(system))
+                .maxWorkers(4)
+                .growWaitNanos(250_000L)
+                .growQueueDepth(16)
+                .workerKeepAliveNanos(3_000_000L)
+                .build());
+        int rounds = 20;
+        int parents = 200;
+        int children = 4;
+        AtomicIntegerArray ran = new AtomicIntegerArray(rounds * parents * (children + 1));
+        for (int round = 0; round < rounds; round++) {
+            CountDownLatch done = new CountDownLatch(parents * (children + 1));
+            int base = round * parents * (children + 1);
+            for (int p = 0; p < parents; p++) {
+                final int parent = base + p * (children + 1);
+                manager.schedule(() -> {
+                    ran.incrementAndGet(parent);
+                    done.countDown();
+                    for (int c = 1; c <= children; c++) {
+                        final int child = parent + c;
+                        manager.schedule(() -> {
+                            ran.incrementAndGet(child);
+                            done.countDown();
+                        }, 4);
+                    }
+                }, 8);
+            }
+            check(done.await(30, TimeUnit.SECONDS), "round " + round + " lost " + done.getCount() + " tasks");
+            Thread.sleep(round % 4 * 2);
+        }
+        manager.shutdown();
+        for (int i = 0; i < ran.length(); i++) {
+            check(ran.get(i) == 1, "task " + i + " ran " + ran.get(i) + " times");
+        }
+        System.out.printf("Placed stealing: %d tasks each ran once on socket-placed workers%n", ran.length());
+    }
+
+    /**
+     * Writes a sysfs tree of {@code packageIds.length} sockets, numbering the first hyper-thread
+     * of every core before the second ones as Linux does, with one NUMA node per socket.
+     */
+    private static void writeTree(Path system, int[] packageIds, int coresPerSocket, int threadsPerCore,
+                                  String online) throws IOException {
+        int cores = packageIds.length * coresPerSocket;
+        StringBuilder[] nodeLists = new StringBuilder[packageIds.length];
+        for (int s = 0; s < packageIds.length; s++) {
+            nodeLists[s] = new StringBuilder();
+        }
+        for (int thread = 0; thread < threadsPerCore; thread++) {
+            for (int core = 0; core < cores; core++) {
+                int cpu = thread * cores + core;
+                int socket = core / coresPerSocket;
+                StringBuilder siblings = new StringBuilder();
+                for (int t = 0; t < threadsPerCore; t++) {
+                    siblings.append(t == 0 ? "" : ",").append(t * cores + core);
+                }
+                Path topology = system.resolve("cpu/cpu" + cpu + "/topology");
+                Files.createDirectories(topology);
+                Files.writeString(topology.resolve("physical_package_id"), packageIds[socket] + "\n");
+                Files.writeString(topology.resolve("thread_siblings_list"), siblings + "\n");
+                nodeLists[socket].append(nodeLists[socket].length() == 0 ? "" : ",").append(cpu);
+            }
+        }
+        Files.writeString(system.resolve("cpu/online"), online + "\n");
+        for (int s = 0; s < packageIds.length; s++) {
+            Path node = system.resolve("node/node" + s);
+            Files.createDirectories(node);
+            Files.writeString(node.resolve("cpulist"), nodeLists[s] + "\n");
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface ThrowingAction {
+        void run() throws Exception;
+    }
+
+    private static void expect(Class<? extends Throwable> type, ThrowingAction action) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            check(type.isInstance(thrown), "expected " + type.getSimpleName() + ", got " + thrown);
+            return;
+        }
+        throw new IllegalStateException("expected " + type.getSimpleName());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
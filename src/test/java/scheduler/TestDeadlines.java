@@ -0,0 +1,310 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.DeadlineMissedException;
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.ExecutorMetrics;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.MissedDeadlinePolicy;
+import mi.m4x.carbide.scheduler.executor.QueueingPolicy;
+import mi.m4x.carbide.scheduler.executor.Task;
+import mi.m4x.carbide.scheduler.structures.DeadlineQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class TestDeadlines {
+
+    private static final long MICROS = 1000L;
+
+    public static void main(String[] args) throws Exception {
+        deadlineQueue();
+        ordering();
+        locks();
+        mixedUrgency();
+        overload();
+    }
+
+    /**
+     * The striped queue hands out elements in deadline order, and every element exactly once
+     * under concurrent producers and consumers.
+     */
+    private static void deadlineQueue() throws Exception {
+        DeadlineQueue<Integer> queue = new DeadlineQueue<>(8);
+        Random random = new Random(7);
+        long[] deadlines = new long[10_000];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = random.nextInt(1_000_000);
+            queue.offer(i, deadlines[i]);
+        }
+        check(queue.size() == deadlines.length && queue.peekDeadline() == Arrays.stream(deadlines).min().getAsLong(), "peek");
+        long previous = Long.MIN_VALUE;
+        Integer element;
+        while ((element = queue.poll()) != null) {
+            check(deadlines[element] >= previous, "out of order at " + element);
+            previous = deadlines[element];
+        }
+        check(queue.isEmpty() && queue.peekDeadline() == Long.MAX_VALUE, "not drained");
+
+        int threads = 4;
+        int perThread = 100_000;
+        AtomicIntegerArray seen = new AtomicIntegerArray(threads * perThread);
+        AtomicInteger polled = new AtomicInteger();
+        Thread[] workers = new Thread[2 * threads];
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            workers[t] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    queue.offer(base + i, i);
+                }
+            });
+            workers[threads + t] = Thread.ofPlatform().start(() -> {
+                while (polled.get() < threads * perThread) {
+                    Integer value = queue.poll();
+                    if (value != null) {
+                        seen.incrementAndGet(value);
+                        polled.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) worker.join();
+        for (int i = 0; i < seen.length(); i++) {
+            check(seen.get(i) == 1, "element " + i + " polled " + seen.get(i) + " times");
+        }
+        System.out.printf("DeadlineQueue: sorted drain, %d concurrent elements each polled once%n", seen.length());
+    }
+
+    /**
+     * Queued deadline tasks run earliest deadline first whatever their priority, and tasks
+     * without a deadline only run after them.
+     */
+    private static void ordering() throws Exception {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder()
+                .queueingPolicy(QueueingPolicy.EARLIEST_DEADLINE_FIRST)
+                .build());
+        CountDownLatch release = new CountDownLatch(1);
+        hold(manager, release);
+
+        int count = 200;
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < count; i++) offsets.add(i);
+        Collections.shuffle(offsets, new Random(3));
+        ConcurrentLinkedQueue<Integer> order = new ConcurrentLinkedQueue<>();
+        long base = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        Random random = new Random(5);
+        for (int offset : offsets) {
+            manager.schedule(() -> order.add(offset), random.nextInt(64), base + offset);
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        manager.schedule(done::countDown, 0);
+
+        release.countDown();
+        check(done.await(5, TimeUnit.SECONDS), "no-deadline task did not run");
+        Integer[] ran = order.toArray(new Integer[0]);
+        check(ran.length == count, "ran " + ran.length);
+        for (int i = 0; i < count; i++) {
+            check(ran[i] == i, "deadline order broken at " + i + ": " + ran[i]);
+        }
+        manager.shutdown();
+        System.out.printf("Ordering: %d tasks ran by deadline across random priorities, no-deadline task last%n", count);
+    }
+
+    /**
+     * Deadline tasks still coordinate through lock tokens.
+     */
+    private static void locks() throws Exception {
+        ExecutorManager manager = new ExecutorManager(4, thread -> {}, ExecutorConfig.builder()
+                .queueingPolicy(QueueingPolicy.EARLIEST_DEADLINE_FIRST)
+                .build());
+        int tasks = 20_000;
+        int[] counter = new int[1];
+        CountDownLatch done = new CountDownLatch(tasks);
+        IndexedLockToken lock = () -> 11;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (int i = 0; i < tasks; i++) {
+            manager.schedule(new DeadlineTask(() -> {
+                counter[0]++;
+                done.countDown();
+            }, 8, deadline + i, lock));
+        }
+        check(done.await(30, TimeUnit.SECONDS), "locked deadline tasks lost");
+        manager.submit(() -> {}, 8).get();
+        check(counter[0] == tasks, "lost updates: " + (tasks - counter[0]));
+        manager.shutdown();
+        System.out.printf("Locks: %d deadline tasks on one lock, no lost updates%n", tasks);
+    }
+
+    /**
+     * Per-tick batches whose urgency is unrelated to their priority: priority order misses the
+     * urgent tasks, deadline order fits the whole batch.
+     */
+    private static void mixedUrgency() throws Exception {
+        long[] missed = new long[QueueingPolicy.values().length];
+        for (QueueingPolicy policy : QueueingPolicy.values()) {
+            ExecutorMetrics.Deadlines result = runTicks(policy, MissedDeadlinePolicy.RUN, 30, 20,
+                    k -> 600 * MICROS + (k + 1) * 80 * MICROS);
+            missed[policy.ordinal()] = result.missed();
+            System.out.printf("Mixed urgency, %s: met %d, missed %d, p99 lateness %.2f ms%n", policy,
+                    result.met(), result.missed(), result.lateness().percentileNanos(99) / 1e6);
+        }
+        // Relative, as preemption of the single worker makes either policy miss a varying number
+        check(missed[QueueingPolicy.EARLIEST_DEADLINE_FIRST.ordinal()] < missed[QueueingPolicy.PRIORITY.ordinal()],
+                "EDF missed more deadlines than priority order: " + Arrays.toString(missed));
+    }
+
+    /**
+     * Batches that cannot all make it, three 50 µs tasks per 100 µs of deadlines: running late
+     * tasks anyway makes the rest miss as well, dropping or demoting them keeps the tasks that can still make it.
+     */
+    private static void overload() throws Exception {
+        long[] met = new long[MissedDeadlinePolicy.values().length];
+        for (MissedDeadlinePolicy missed : MissedDeadlinePolicy.values()) {
+            ExecutorMetrics.Deadlines result = runTicks(QueueingPolicy.EARLIEST_DEADLINE_FIRST, missed, 30, 60,
+                    k -> 200 * MICROS + (k % 20) * 100 * MICROS);
+            met[missed.ordinal()] = result.met();
+            System.out.printf("Overload, %s: met %d, missed %d, dropped %d, demoted %d%n", missed,
+                    result.met(), result.missed(), result.dropped(), result.demoted());
+        }
+        long run = met[MissedDeadlinePolicy.RUN.ordinal()];
+        check(met[MissedDeadlinePolicy.DROP.ordinal()] > 2 * run && met[MissedDeadlinePolicy.DEMOTE.ordinal()] > 2 * run,
+                "skipping late tasks did not save deadlines: " + Arrays.toString(met));
+    }
+
+    private interface Offsets {
+        long deadlineOffset(int k);
+    }
+
+    /**
+     * Runs {@code ticks} batches of {@code tasks} 50 µs tasks on one worker. Each batch is queued
+     * while the worker is held, with random priorities, and released at once.
+     */
+    private static ExecutorMetrics.Deadlines runTicks(QueueingPolicy policy, MissedDeadlinePolicy missed, int ticks,
+                                                      int tasks, Offsets offsets) throws Exception {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder()
+                .queueingPolicy(policy)
+                .missedDeadlinePolicy(missed)
+                .metricsEnabled(true)
+                .build());
+        Random random = new Random(11);
+        AtomicInteger dropped = new AtomicInteger();
+        for (int tick = 0; tick < ticks; tick++) {
+            CountDownLatch release = new CountDownLatch(1);
+            hold(manager, release);
+            CountDownLatch done = new CountDownLatch(tasks);
+            long start = System.nanoTime() + 300 * MICROS;
+            for (int k = 0; k < tasks; k++) {
+                manager.schedule(new DeadlineTask(() -> {
+                    spin(50 * MICROS);
+                    done.countDown();
+                }, 1 + random.nextInt(60), start + offsets.deadlineOffset(k)) {
+                    @Override
+                    public void propagateException(Throwable t) {
+                        check(t instanceof DeadlineMissedException, "unexpected " + t);
+                        dropped.incrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+            while (System.nanoTime() < start) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+            check(done.await(10, TimeUnit.SECONDS), "tick lost tasks");
+        }
+        // The single worker records a run after the task counted down, so let it finish the last one
+        manager.submit(() -> {}, 0).get();
+        ExecutorMetrics.Deadlines result = manager.metrics().deadlines();
+        manager.shutdown();
+        check(result.dropped() == dropped.get() && result.met() + result.missed() == (long) ticks * tasks,
+                "counts " + result + ", dropped seen " + dropped.get());
+        return result;
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static class DeadlineTask implements Task {
+        private static final LockToken[] NO_LOCKS = new LockToken[0];
+
+        private final Runnable body;
+        private final int priority;
+        private final long deadlineNanos;
+        private final LockToken[] locks;
+
+        DeadlineTask(Runnable body, int priority, long deadlineNanos, LockToken... locks) {
+            this.body = body;
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+            this.locks = locks.length == 0 ? NO_LOCKS : locks;
+        }
+
+        @Override
+        public void run(Runnable releaseLocks) {
+            try {
+                body.run();
+            } finally {
+                releaseLocks.run();
+            }
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            t.printStackTrace();
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return locks;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+
+        @Override
+        public long deadlineNanos() {
+            return deadlineNanos;
+        }
+    }
+
+    /**
+     * Keeps the only worker busy until released, so the tasks queued meanwhile are ordered as a whole.
+     */
+    private static void hold(ExecutorManager manager, CountDownLatch release) throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        manager.schedule(() -> {
+            held.countDown();
+            awaitQuietly(release);
+        }, 0);
+        held.await();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutionMode;
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IdleStrategy;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.PoolListener;
+import mi.m4x.carbide.scheduler.executor.PriorityTask;
+import mi.m4x.carbide.scheduler.executor.WorkerThread;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class TestElasticPool {
+
+    private static final long MILLIS = 1_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        growAndShrink();
+        shortBurst();
+        spinningIdle();
+        churn(ExecutionMode.GLOBAL_QUEUE);
+        churn(ExecutionMode.WORK_STEALING);
+        retireWhileMoving();
+        validation();
+    }
+
+    /**
+     * A backlog of blocking tasks grows the pool towards its maximum, every new worker goes
+     * through the thread initializer, and the pool shrinks back to its minimum once idle.
+     */
+    private static void growAndShrink() throws Exception {
+        AtomicInteger initialized = new AtomicInteger();
+        CountingListener listener = new CountingListener();
+        ExecutorManager manager = new ExecutorManager(1, thread -> initialized.incrementAndGet(), ExecutorConfig.builder()
+                .maxWorkers(8)
+                .growWaitNanos(2 * MILLIS)
+                .workerKeepAliveNanos(100 * MILLIS)
+                .poolListener(listener)
+                .build());
+
+        int tasks = 800;
+        AtomicIntegerArray ran = new AtomicIntegerArray(tasks);
+        CountDownLatch done = new CountDownLatch(tasks);
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            final int index = i;
+            manager.schedule(() -> {
+                sleep(2);
+                ran.incrementAndGet(index);
+                done.countDown();
+            }, 8);
+        }
+        check(done.await(30, TimeUnit.SECONDS), "tasks lost");
+        long elapsed = System.nanoTime() - start;
+        int peak = listener.peak.get();
+        checkOnce(ran);
+        // One worker alone needs 1.6 s
+        check(peak == 8 && elapsed < 800 * MILLIS, "peak " + peak + " workers, " + elapsed / MILLIS + " ms");
+
+        long idleStart = System.nanoTime();
+        while (manager.workerCount() > 1 && System.nanoTime() - idleStart < 5_000 * MILLIS) {
+            Thread.sleep(10);
+        }
+        check(manager.workerCount() == 1, "pool did not shrink: " + manager.workerCount());
+        check(listener.started.get() == listener.retired.get(),
+                "started " + listener.started.get() + ", retired " + listener.retired.get());
+        check(initialized.get() == 1 + listener.started.get(), "initializer ran " + initialized.get() + " times");
+
+        // Shrunk workers are replaced on the next backlog
+        int startedBefore = listener.started.get();
+        CountDownLatch again = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            manager.schedule(() -> {
+                sleep(2);
+                again.countDown();
+            }, 8);
+        }
+        check(again.await(30, TimeUnit.SECONDS), "second burst lost");
+        check(listener.started.get() > startedBefore, "pool did not grow again");
+        manager.shutdown();
+        System.out.printf("Grow and shrink: %d blocking tasks on up to %d workers in %d ms, back to 1 worker %d ms after going idle%n",
+                tasks, peak, elapsed / MILLIS, (System.nanoTime() - idleStart) / MILLIS);
+    }
+
+    /**
+     * A burst the workers absorb within the grow wait starts no worker.
+     */
+    private static void shortBurst() throws Exception {
+        CountingListener listener = new CountingListener();
+        ExecutorManager manager = new ExecutorManager(2, thread -> {}, ExecutorConfig.builder()
+                .maxWorkers(8)
+                .growWaitNanos(200 * MILLIS)
+                .growQueueDepth(10_000)
+                .poolListener(listener)
+                .build());
+        for (int burst = 0; burst < 20; burst++) {
+            int tasks = 1000;
+            CountDownLatch done = new CountDownLatch(tasks);
+            for (int i = 0; i < tasks; i++) {
+                manager.schedule(done::countDown, 8);
+            }
+            check(done.await(5, TimeUnit.SECONDS), "burst lost tasks");
+            Thread.sleep(5);
+        }
+        check(listener.started.get() == 0 && manager.workerCount() == 2, "started " + listener.started.get());
+        manager.shutdown();
+        System.out.println("Short bursts: 20 bursts of 1000 tasks absorbed by 2 workers, none started");
+    }
+
+    /**
+     * Workers that spin instead of parking are idle all the same, so a trickle of tasks they keep
+     * up with starts no worker.
+     */
+    private static void spinningIdle() throws Exception {
+        CountingListener listener = new CountingListener();
+        ExecutorManager manager = new ExecutorManager(2, thread -> {}, ExecutorConfig.builder()
+                .idleStrategy(IdleStrategy.busySpin())
+                .maxWorkers(8)
+                .growWaitNanos(MILLIS)
+                .poolListener(listener)
+                .build());
+        int tasks = 2000;
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            manager.schedule(done::countDown, 8);
+            if (i % 10 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        check(done.await(5, TimeUnit.SECONDS), "trickle lost tasks");
+        check(listener.started.get() == 0 && manager.workerCount() == 2, "started " + listener.started.get());
+        manager.shutdown();
+        System.out.printf("Spinning idle: %d trickled tasks on 2 busy-spinning workers, none started%n", tasks);
+    }
+
+    /**
+     * Workers starting and retiring all the time, with tasks spawning tasks from the workers, never
+     * lose or repeat a task.
+     */
+    private static void churn(ExecutionMode mode) throws Exception {
+        CountingListener listener = new CountingListener();
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder()
+                .executionMode(mode)
+                .maxWorkers(6)
+                .growWaitNanos(MILLIS / 4)
+                .growQueueDepth(16)
+                .workerKeepAliveNanos(3 * MILLIS)
+                .poolListener(listener)
+                .build());
+
+        int rounds = 40;
+        int parents = 200;
+        int children = 4;
+        AtomicIntegerArray ran = new AtomicIntegerArray(rounds * parents * (children + 1));
+        for (int round = 0; round < rounds; round++) {
+            CountDownLatch done = new CountDownLatch(parents * (children + 1));
+            int base = round * parents * (children + 1);
+            for (int p = 0; p < parents; p++) {
+                final int parent = base + p * (children + 1);
+                manager.schedule(() -> {
+                    ran.incrementAndGet(parent);
+                    done.countDown();
+                    // Scheduled from a worker, so they land on its local queue in work-stealing mode
+                    for (int c = 1; c <= children; c++) {
+                        final int child = parent + c;
+                        manager.schedule(() -> {
+                            if ((child & 15) == 0) {
+                                sleep(1);
+                            }
+                            ran.incrementAndGet(child);
+                            done.countDown();
+                        }, 4);
+                    }
+                }, 8);
+            }
+            check(done.await(30, TimeUnit.SECONDS), mode + " round " + round + " lost " + done.getCount() + " tasks");
+            // Idle long enough for some workers to retire
+            Thread.sleep(round % 4 * 2);
+        }
+        manager.shutdown();
+        checkOnce(ran);
+        check(listener.started.get() > 0 && listener.retired.get() > 0,
+                "no churn: started " + listener.started.get() + ", retired " + listener.retired.get());
+        System.out.printf("Churn, %s: %d tasks each ran once while %d workers started and %d retired%n",
+                mode, ran.length(), listener.started.get(), listener.retired.get());
+    }
+
+    /**
+     * Tasks queued on workers' local queues are reprioritized from another thread all the time
+     * while workers retire, and still each run once: a retiring worker's queue refuses moves and
+     * is drained until no move is in flight.
+     */
+    private static void retireWhileMoving() throws Exception {
+        CountingListener listener = new CountingListener();
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder()
+                .executionMode(ExecutionMode.WORK_STEALING)
+                .priorityCount(16)
+                .maxWorkers(4)
+                .growWaitNanos(MILLIS / 4)
+                .growQueueDepth(8)
+                .workerKeepAliveNanos(MILLIS)
+                .poolListener(listener)
+                .build());
+
+        int rounds = 60;
+        int tasks = 400;
+        AtomicReferenceArray<MovingTask> queued = new AtomicReferenceArray<>(tasks);
+        AtomicBoolean moving = new AtomicBoolean(true);
+        AtomicInteger moves = new AtomicInteger();
+        Thread mover = Thread.ofPlatform().start(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (moving.get()) {
+                MovingTask task = queued.get(random.nextInt(tasks));
+                if (task != null && task.isQueued()) {
+                    task.priority = random.nextInt(16);
+                    manager.notifyPriorityChange(task);
+                    moves.incrementAndGet();
+                }
+            }
+        });
+
+        AtomicIntegerArray ran = new AtomicIntegerArray(rounds * tasks);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                CountDownLatch done = new CountDownLatch(tasks);
+                int base = round * tasks;
+                // Scheduled from a worker, so they land on its local queue
+                manager.schedule(() -> {
+                    for (int i = 0; i < tasks; i++) {
+                        MovingTask task = new MovingTask(ran, base + i, done);
+                        queued.set(i, task);
+                        manager.schedule(task);
+                    }
+                }, 0);
+                check(done.await(30, TimeUnit.SECONDS), "round " + round + " lost " + done.getCount() + " tasks");
+                // Idle long enough for some workers to retire
+                Thread.sleep(round % 3 * 2);
+            }
+        } finally {
+            moving.set(false);
+            mover.join();
+            manager.shutdown();
+        }
+        checkOnce(ran);
+        check(listener.retired.get() > 0, "no worker retired");
+        System.out.printf("Retire while moving: %d tasks each ran once through %d moves while %d workers retired%n",
+                ran.length(), moves.get(), listener.retired.get());
+    }
+
+    private static final class MovingTask extends PriorityTask {
+        private static final LockToken[] NO_LOCKS = new LockToken[0];
+
+        private final AtomicIntegerArray ran;
+        private final int index;
+        private final CountDownLatch done;
+        volatile int priority = 8;
+
+        MovingTask(AtomicIntegerArray ran, int index, CountDownLatch done) {
+            this.ran = ran;
+            this.index = index;
+            this.done = done;
+        }
+
+        @Override
+        public void run(Runnable releaseLocks) {
+            releaseLocks.run();
+            if ((index & 63) == 0) {
+                sleep(1);
+            }
+            ran.incrementAndGet(index);
+            done.countDown();
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            t.printStackTrace();
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return NO_LOCKS;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+    }
+
+    private static void validation() throws Exception {
+        ExecutorManager fixed = new ExecutorManager(3, thread -> {});
+        check(fixed.workerCount() == 3, "fixed pool has " + fixed.workerCount() + " workers");
+        fixed.shutdown();
+        quietly(() -> {
+            expect(AssertionError.class, () -> new ExecutorManager(4, thread -> {}, ExecutorConfig.builder().maxWorkers(2).build()));
+            expect(AssertionError.class, () -> new ExecutorManager(0, thread -> {}, ExecutorConfig.builder().maxWorkers(2).build()));
+            expect(AssertionError.class, () -> ExecutorConfig.builder().workerKeepAliveNanos(0));
+        });
+        System.out.println("Validation: fixed pool unchanged, bad bounds rejected");
+    }
+
+    private static final class CountingListener implements PoolListener {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger retired = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger(1);
+
+        @Override
+        public void workerStarted(WorkerThread worker, int workerCount) {
+            started.incrementAndGet();
+            peak.accumulateAndGet(workerCount, Math::max);
+        }
+
+        @Override
+        public void workerRetired(WorkerThread worker, int workerCount) {
+            retired.incrementAndGet();
+        }
+    }
+
+    private static void checkOnce(AtomicIntegerArray ran) {
+        for (int i = 0; i < ran.length(); i++) {
+            check(ran.get(i) == 1, "task " + i + " ran " + ran.get(i) + " times");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs an action with stack traces of expected failures kept off the console.
+     */
+    private static void quietly(ThrowingAction action) throws Exception {
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            action.run();
+        } finally {
+            System.setErr(err);
+        }
+    }
+
+    private interface ThrowingAction {
+        void run() throws Exception;
+    }
+
+    private static void expect(Class<? extends Throwable> type, ThrowingAction action) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            check(type.isInstance(thrown), "expected " + type.getSimpleName() + ", got " + thrown);
+            return;
+        }
+        throw new IllegalStateException("expected " + type.getSimpleName());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
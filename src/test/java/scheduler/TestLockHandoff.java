@@ -0,0 +1,177 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.Task;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+public class TestLockHandoff {
+
+    private static final int NUM_TASKS = 200_000;
+    private static final int HOT_TOKENS = 4; // few tokens, heavy contention
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) throws InterruptedException {
+        LockToken[] plain = new LockToken[HOT_TOKENS];
+        LockToken[] indexed = new LockToken[HOT_TOKENS];
+        for (int i = 0; i < HOT_TOKENS; i++) {
+            final long index = i;
+            plain[i] = new LockToken() {};
+            indexed[i] = (IndexedLockToken) () -> index;
+        }
+
+        report("Hot map tokens", plain);
+        report("Hot indexed tokens", indexed);
+        staleCallback();
+    }
+
+    /**
+     * A reused release callback kept past its run and called from another thread must not release
+     * the locks of the task its worker runs by then.
+     */
+    private static void staleCallback() throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(2, thread -> {}, ExecutorConfig.builder()
+                .reuseReleaseCallbacks(true)
+                .build());
+        IndexedLockToken lock = () -> 3;
+        AtomicReference<Runnable> kept = new AtomicReference<>();
+        AtomicBoolean holderRunning = new AtomicBoolean();
+        AtomicInteger violations = new AtomicInteger();
+        CountDownLatch otherGate = new CountDownLatch(1);
+        CountDownLatch otherBlocked = new CountDownLatch(1);
+        CountDownLatch holderStarted = new CountDownLatch(1);
+        CountDownLatch holderGate = new CountDownLatch(1);
+        CountDownLatch contenderDone = new CountDownLatch(1);
+
+        // Keeps the second worker away, so the first one runs both tasks with the same callback
+        manager.schedule(() -> {
+            otherBlocked.countDown();
+            awaitQuietly(otherGate);
+        }, 0);
+        otherBlocked.await();
+
+        manager.schedule(new LockedTask(lock, releaseLocks -> {
+            kept.set(releaseLocks);
+            manager.schedule(new LockedTask(lock, holderLocks -> {
+                holderRunning.set(true);
+                holderStarted.countDown();
+                awaitQuietly(holderGate);
+                holderRunning.set(false);
+            }));
+        }));
+        holderStarted.await();
+
+        kept.get().run();
+        manager.schedule(new LockedTask(lock, contenderLocks -> {
+            if (holderRunning.get()) {
+                violations.incrementAndGet();
+            }
+            contenderDone.countDown();
+        }));
+        otherGate.countDown();
+        Thread.sleep(50); // the contender would run now if the stale call released the lock
+        holderGate.countDown();
+        contenderDone.await();
+        manager.shutdown();
+
+        System.out.printf("Stale reused callback: exclusion violations %d%n", violations.get());
+        if (violations.get() != 0) {
+            throw new IllegalStateException("A stale release callback released another task's lock");
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record LockedTask(LockToken lock, Consumer<Runnable> body) implements Task {
+        @Override
+        public void run(Runnable releaseLocks) {
+            body.accept(releaseLocks);
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            t.printStackTrace();
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return new LockToken[]{lock};
+        }
+
+        @Override
+        public int priority() {
+            return 0;
+        }
+    }
+
+    private static void report(String name, LockToken[] hotTokens) throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(THREADS);
+        CountDownLatch latch = new CountDownLatch(NUM_TASKS);
+        long[] counters = new long[HOT_TOKENS]; // only ever touched under the token's lock
+        long[] expected = new long[HOT_TOKENS];
+
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < NUM_TASKS; i++) {
+            int first = ThreadLocalRandom.current().nextInt(HOT_TOKENS);
+            int second = (first + 1 + ThreadLocalRandom.current().nextInt(HOT_TOKENS - 1)) % HOT_TOKENS;
+            LockToken[] tokens = {hotTokens[first], hotTokens[second]};
+            expected[first]++;
+            expected[second]++;
+
+            manager.schedule(new Task() {
+                @Override
+                public void run(Runnable releaseLocks) {
+                    try {
+                        counters[first]++;
+                        counters[second]++;
+                    } finally {
+                        releaseLocks.run();
+                        latch.countDown();
+                    }
+                }
+
+                @Override
+                public void propagateException(Throwable t) {
+                    t.printStackTrace();
+                }
+
+                @Override
+                public LockToken[] lockTokens() {
+                    return tokens;
+                }
+
+                @Override
+                public int priority() {
+                    return first;
+                }
+            });
+        }
+
+        latch.await();
+        long endTime = System.nanoTime();
+        manager.shutdown();
+
+        int lostUpdates = 0;
+        for (int i = 0; i < HOT_TOKENS; i++) {
+            lostUpdates += (int) (expected[i] - counters[i]);
+        }
+
+        System.out.printf("%s: %.2f rps, lost updates %d%n",
+                name, NUM_TASKS * 1e9 / (endTime - startTime), lostUpdates);
+    }
+}
@@ -0,0 +1,219 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+import mi.m4x.carbide.scheduler.structures.MessageQueue;
+import mi.m4x.carbide.scheduler.structures.MpmcArrayQueue;
+import mi.m4x.carbide.scheduler.structures.MpscArrayQueue;
+import mi.m4x.carbide.scheduler.structures.MpscChunkedQueue;
+import mi.m4x.carbide.scheduler.structures.SpscArrayQueue;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class TestMessageQueues {
+
+    private static final int ELEMENTS = 1 << 21;
+    private static final int PRODUCERS = 4;
+    private static final int CONSUMERS = 4;
+
+    public static void main(String[] args) throws InterruptedException {
+        batches();
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            run("SpscArrayQueue", () -> new SpscArrayQueue<>(1024), 1, 1, print);
+            run("CLQ (1:1)", ConcurrentLinkedQueue::new, 1, 1, print);
+            run("MpscArrayQueue", () -> new MpscArrayQueue<>(1024), PRODUCERS, 1, print);
+            run("MpscChunkedQueue", MpscChunkedQueue::new, PRODUCERS, 1, print);
+            run("CLQ (n:1)", ConcurrentLinkedQueue::new, PRODUCERS, 1, print);
+            run("MpmcArrayQueue", () -> new MpmcArrayQueue<>(1024), PRODUCERS, CONSUMERS, print);
+            run("ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(1024), PRODUCERS, CONSUMERS, print);
+            run("CLQ (n:n)", ConcurrentLinkedQueue::new, PRODUCERS, CONSUMERS, print);
+        }
+        ringLevels();
+    }
+
+    /**
+     * Bounds, rounding and the batch operations on a single thread.
+     */
+    private static void batches() {
+        MessageQueue<?>[] bounded = {new SpscArrayQueue<>(100), new MpscArrayQueue<>(100), new MpmcArrayQueue<>(100)};
+        for (MessageQueue<?> raw : bounded) {
+            @SuppressWarnings("unchecked")
+            MessageQueue<Integer> queue = (MessageQueue<Integer>) raw;
+            String name = queue.getClass().getSimpleName();
+            int[] next = {0};
+            check(queue.capacity() == 128, name + " capacity " + queue.capacity());
+            check(queue.fill(() -> next[0]++, 200) == 128, name + " filled past capacity");
+            check(!queue.offer(-1) && queue.size() == 128, name + " accepted an element when full");
+
+            int[] expected = {0};
+            check(queue.drain(element -> check(element == expected[0]++, name + " out of order"), 100) == 100,
+                    name + " drained too few");
+            check(queue.fill(() -> next[0]++, 200) == 100, name + " refilled wrong");
+            int seen = 0;
+            for (Integer ignored : queue) seen++;
+            check(seen == 128 && queue.peek() == 100, name + " iterated " + seen + ", peek " + queue.peek());
+            check(queue.drain(element -> check(element == expected[0]++, name + " out of order"), 1000) == 128
+                    && queue.isEmpty() && queue.poll() == null, name + " not empty after drain");
+        }
+
+        MpscChunkedQueue<Integer> chunked = new MpscChunkedQueue<>(16);
+        int[] next = {0};
+        check(chunked.fill(() -> next[0]++, 1000) == 1000 && chunked.size() == 1000, "chunked fill");
+        int[] expected = {0};
+        check(chunked.drain(element -> check(element == expected[0]++, "chunked out of order"), 2000) == 1000
+                && chunked.isEmpty(), "chunked drain");
+        System.out.println("Batch operations: ok");
+    }
+
+    /**
+     * Every element must be consumed exactly once, and each producer's elements in the order it
+     * produced them.
+     */
+    private static void run(String name, Supplier<Queue<Integer>> factory, int producers, int consumers,
+                            boolean print) throws InterruptedException {
+        Queue<Integer> queue = factory.get();
+        AtomicIntegerArray seen = new AtomicIntegerArray(ELEMENTS);
+        AtomicLong consumed = new AtomicLong();
+        AtomicLong disorder = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+        int perProducer = ELEMENTS / producers;
+
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            Thread.ofPlatform().start(() -> {
+                await(start);
+                for (int i = 0; i < perProducer; i++) {
+                    Integer element = base + i;
+                    while (!queue.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            Thread.ofPlatform().start(() -> {
+                int[] last = new int[producers];
+                Arrays.fill(last, -1);
+                await(start);
+                while (consumed.get() < ELEMENTS) {
+                    Integer element = queue.poll();
+                    if (element == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    int producer = element / perProducer;
+                    if (element <= last[producer]) disorder.incrementAndGet();
+                    last[producer] = element;
+                    seen.incrementAndGet(element);
+                    consumed.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long endTime = System.nanoTime();
+
+        int missing = 0;
+        int duplicates = 0;
+        for (int i = 0; i < ELEMENTS; i++) {
+            int count = seen.get(i);
+            if (count == 0) missing++;
+            if (count > 1) duplicates++;
+        }
+        check(missing == 0 && duplicates == 0 && disorder.get() == 0 && queue.isEmpty(),
+                name + ": " + missing + " missing, " + duplicates + " duplicates, " + disorder.get() + " out of order");
+        if (print) {
+            System.out.printf("%-20s %d:%d  %6.2fM elements/s%n", name, producers, consumers,
+                    ELEMENTS / ((endTime - startTime) / 1e9) / 1e6);
+        }
+    }
+
+    /**
+     * The priority queue with small rings, so levels keep spilling into their linked queues.
+     */
+    private static void ringLevels() throws InterruptedException {
+        DynamicPriorityQueue<Integer> queue = new DynamicPriorityQueue<>(8, 0L, 16);
+        AtomicIntegerArray seen = new AtomicIntegerArray(ELEMENTS);
+        AtomicLong consumed = new AtomicLong();
+        AtomicLong disorder = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(PRODUCERS + CONSUMERS);
+        int perProducer = ELEMENTS / PRODUCERS;
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int base = p * perProducer;
+            Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    // Both lanes, and some keyed entries moved so stale entries pass through the rings
+                    if ((i & 1) == 0) {
+                        queue.offerUnkeyed(base + i, 3);
+                    } else if ((i & 7) == 1) {
+                        queue.offer(base + i, 5).changePriority(3);
+                    } else {
+                        queue.offer(base + i, 3);
+                    }
+                }
+                done.countDown();
+            });
+        }
+        for (int c = 0; c < CONSUMERS; c++) {
+            Thread.ofPlatform().start(() -> {
+                int[] last = new int[PRODUCERS];
+                Arrays.fill(last, -1);
+                while (consumed.get() < ELEMENTS) {
+                    Integer element = queue.dequeue();
+                    if (element == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    int producer = element / perProducer;
+                    if (element <= last[producer]) disorder.incrementAndGet();
+                    last[producer] = element;
+                    seen.incrementAndGet(element);
+                    consumed.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+
+        int missing = 0;
+        int duplicates = 0;
+        for (int i = 0; i < ELEMENTS; i++) {
+            int count = seen.get(i);
+            if (count == 0) missing++;
+            if (count > 1) duplicates++;
+        }
+        check(missing == 0 && duplicates == 0 && queue.size() == 0,
+                "ring levels: " + missing + " missing, " + duplicates + " duplicates");
+        // A dequeue scans the levels one after another, so an entry offered at level 5 may overtake
+        // one just counted at level 3
+        System.out.printf("Ring levels: %d consumed, 0 missing, 0 duplicates, %d reordered within a producer%n",
+                consumed.get(), disorder.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
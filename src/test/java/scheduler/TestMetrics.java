@@ -0,0 +1,98 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.ExecutorMetrics;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.Task;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TestMetrics {
+
+    private static final int NUM_TASKS = 1 << 20;
+    private static final int PRIORITIES = 4;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final LongAdder accumulation = new LongAdder();
+    private static final LockToken[] HOT_TOKENS = {new LockToken() {}, new LockToken() {}};
+
+    /**
+     * Prints metrics snapshots of a loaded executor, one taken while the workers keep running and
+     * one after every task ran. The cost of recording is measured by the {@code metrics} parameter
+     * of {@code ExecutorManagerBenchmark}; a single run here is too noisy to tell it apart.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        ExecutorConfig recorded = ExecutorConfig.builder().priorityCount(PRIORITIES).metricsEnabled(true).build();
+        double rps = run(recorded);
+
+        System.out.printf("With metrics: %.2f rps%n", rps);
+        System.out.printf("Accumulation sum: %e%n", (double) accumulation.sum());
+    }
+
+    private static double run(ExecutorConfig config) throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(THREADS, thread -> {}, config);
+        CountDownLatch latch = new CountDownLatch(NUM_TASKS);
+
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < NUM_TASKS; i++) {
+            final int priority = i % PRIORITIES;
+            // Every 16th task takes a hot token, so some lock contention shows up
+            final LockToken[] tokens = (i & 15) == 0 ? new LockToken[]{HOT_TOKENS[(i >> 4) & 1]} : new LockToken[0];
+
+            manager.schedule(new Task() {
+                @Override
+                public void run(Runnable releaseLocks) {
+                    accumulation.add(ThreadLocalRandom.current().nextInt(10));
+                    releaseLocks.run();
+                    latch.countDown();
+                }
+
+                @Override
+                public void propagateException(Throwable t) {
+                    t.printStackTrace();
+                }
+
+                @Override
+                public LockToken[] lockTokens() {
+                    return tokens;
+                }
+
+                @Override
+                public int priority() {
+                    return priority;
+                }
+            });
+
+            if (i == NUM_TASKS / 2) {
+                // Snapshots are taken while the workers keep running
+                print(manager.metrics());
+            }
+        }
+
+        latch.await();
+        long endTime = System.nanoTime();
+
+        print(manager.metrics());
+        manager.shutdown();
+
+        return NUM_TASKS * 1e9 / (endTime - startTime);
+    }
+
+    private static void print(ExecutorMetrics metrics) {
+        System.out.printf("--- metrics after %.1f ms ---%n", metrics.uptimeNanos() / 1e6);
+        for (int priority = 0; priority < metrics.priorityCount(); priority++) {
+            System.out.printf("priority %d: depth %d, queue wait [%s], run time [%s]%n", priority,
+                    metrics.queueDepth(priority), metrics.queueWait(priority), metrics.runTime(priority));
+        }
+        metrics.lockContention().forEach((tokenClass, contention) ->
+                System.out.printf("lock %s: %s%n", tokenClass.getName(), contention));
+        System.out.printf("handed over: %d%n", metrics.handedOverTasks());
+        for (int worker = 0; worker < metrics.workerCount(); worker++) {
+            System.out.printf("worker %d busy: %.1f%%%n", worker, metrics.workerBusyRatio(worker) * 100.0);
+        }
+    }
+}
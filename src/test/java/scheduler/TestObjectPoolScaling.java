@@ -0,0 +1,107 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.ObjectPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TestObjectPoolScaling {
+
+    private static final int CAPACITY = 256;
+    private static final int MAGAZINE_SIZE = 16;
+    private static final int OPERATIONS = 1 << 22;
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) {
+            boolean print = round == 2;
+            run("monitor", false, print);
+            run("magazine", true, print);
+        }
+    }
+
+    /**
+     * Every thread borrows a few objects at a time and returns them; hooks and counters must add up
+     * and no object may be handed out twice at once.
+     */
+    private static void run(String name, boolean threadCached, boolean print) throws InterruptedException {
+        LongAdder initialized = new LongAdder();
+        LongAdder cleaned = new LongAdder();
+        AtomicLong constructed = new AtomicLong();
+        LongAdder conflicts = new LongAdder();
+
+        ObjectPool<long[]> pool = threadCached
+                ? ObjectPool.threadCached(owner -> construct(constructed), array -> initialize(array, initialized),
+                        array -> cleanup(array, cleaned), CAPACITY, MAGAZINE_SIZE)
+                : new ObjectPool<>(owner -> construct(constructed), array -> initialize(array, initialized),
+                        array -> cleanup(array, cleaned), CAPACITY);
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        int perThread = OPERATIONS / THREADS;
+
+        for (int t = 0; t < THREADS; t++) {
+            Thread.ofPlatform().start(() -> {
+                List<long[]> held = new ArrayList<>(8);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (int i = 0; i < perThread; i++) {
+                    // Mostly pairs, sometimes a small batch to move objects across magazines
+                    int batch = (i & 63) == 0 ? 8 : 1;
+                    for (int b = 0; b < batch; b++) {
+                        long[] array = pool.alloc();
+                        if (array[0] != 1L) conflicts.increment();
+                        held.add(array);
+                    }
+                    for (long[] array : held) {
+                        pool.release(array);
+                    }
+                    held.clear();
+                }
+                done.countDown();
+            });
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long endTime = System.nanoTime();
+
+        long allocs = pool.hitCount() + pool.missCount();
+        long retained = constructed.get() - pool.overflowCount();
+        long bound = CAPACITY + (threadCached ? 2L * MAGAZINE_SIZE * THREADS : 0L);
+        if (allocs != initialized.sum() || allocs != cleaned.sum() || conflicts.sum() != 0
+                || pool.missCount() != constructed.get() - CAPACITY || retained > bound) {
+            throw new IllegalStateException(name + ": allocs " + allocs + ", initialized " + initialized.sum()
+                    + ", cleaned " + cleaned.sum() + ", conflicts " + conflicts.sum()
+                    + ", retained " + retained + " of " + bound);
+        }
+
+        if (print) {
+            System.out.printf("%-8s %d threads: %.1f ns per alloc+release, %d misses, %d overflows, %d retained%n",
+                    name, THREADS, (endTime - startTime) * (double) THREADS / allocs,
+                    pool.missCount(), pool.overflowCount(), retained);
+        }
+    }
+
+    private static long[] construct(AtomicLong constructed) {
+        constructed.incrementAndGet();
+        return new long[1];
+    }
+
+    private static void initialize(long[] array, LongAdder initialized) {
+        initialized.increment();
+        array[0]++;
+    }
+
+    private static void cleanup(long[] array, LongAdder cleaned) {
+        cleaned.increment();
+        array[0]--;
+    }
+}
@@ -0,0 +1,172 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.ObjectFactory;
+import mi.m4x.carbide.scheduler.structures.ConcurrentInt2ObjectMap;
+import mi.m4x.carbide.scheduler.structures.ConcurrentIntSet;
+import mi.m4x.carbide.scheduler.structures.ConcurrentLong2ObjectMap;
+import mi.m4x.carbide.scheduler.structures.ConcurrentLongSet;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+public class TestPrimitiveMaps {
+
+    private static final int ENTRIES = 1 << 20;
+    private static final int THREADS = 4;
+    private static final Object VALUE = new Object();
+
+    public static void main(String[] args) throws InterruptedException {
+        ObjectFactory factory = new ObjectFactory.DefaultObjectFactory();
+        concurrent(factory);
+        footprint(factory);
+        allocation(factory);
+    }
+
+    /**
+     * Threads insert, look up and remove overlapping packed coordinates; the final contents must
+     * match what each thread left behind.
+     */
+    private static void concurrent(ObjectFactory factory) throws InterruptedException {
+        ConcurrentLong2ObjectMap<Long> map = factory.createConcurrentLong2ObjectMap();
+        ConcurrentIntSet set = factory.createConcurrentIntSet();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            Thread.ofPlatform().start(() -> {
+                for (int i = thread; i < ENTRIES; i += THREADS) {
+                    long key = pack(i, -i);
+                    if (map.putIfAbsent(key, key) != null) errors.incrementAndGet();
+                    if (map.get(key) != key || !set.add(i)) errors.incrementAndGet();
+                    // Every other entry is taken out again
+                    if ((i & 1) == 1 && (map.remove(key) == null || !set.remove(i))) errors.incrementAndGet();
+                    if (map.computeIfAbsent(key, k -> k) == null) errors.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+
+        long[] sum = {0};
+        map.forEach((key, value) -> sum[0] += key == value ? 1 : ENTRIES);
+        check(errors.get() == 0 && map.size() == ENTRIES && sum[0] == ENTRIES && set.size() == ENTRIES / 2,
+                "concurrent: " + errors.get() + " errors, map " + map.size() + ", set " + set.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            check(map.containsKey(pack(i, -i)) && set.contains(i) == ((i & 1) == 0), "missing entry " + i);
+        }
+        map.clear();
+        set.clear();
+        check(map.isEmpty() && set.isEmpty(), "not empty after clear");
+        System.out.printf("Concurrent: %d threads, 0 errors, %d entries%n", THREADS, ENTRIES);
+    }
+
+    /**
+     * Retained heap per entry, boxed against primitive keys.
+     */
+    private static void footprint(ObjectFactory factory) {
+        ConcurrentMap<Long, Object> boxedMap = factory.createConcurrentHashMap();
+        long boxedMapBytes = retained(() -> {
+            for (int i = 0; i < ENTRIES; i++) boxedMap.put(pack(i, i * 31), VALUE);
+        });
+        ConcurrentLong2ObjectMap<Object> longMap = factory.createConcurrentLong2ObjectMap();
+        long longMapBytes = retained(() -> {
+            for (int i = 0; i < ENTRIES; i++) longMap.put(pack(i, i * 31), VALUE);
+        });
+        Set<Integer> boxedSet = factory.createConcurrentSet();
+        long boxedSetBytes = retained(() -> {
+            for (int i = 0; i < ENTRIES; i++) boxedSet.add(i * 31);
+        });
+        ConcurrentIntSet intSet = factory.createConcurrentIntSet();
+        long intSetBytes = retained(() -> {
+            for (int i = 0; i < ENTRIES; i++) intSet.add(i * 31);
+        });
+        check(boxedMap.size() == longMap.size() && boxedSet.size() == intSet.size(), "footprint sizes differ");
+
+        System.out.printf("Retained per entry: ConcurrentHashMap<Long> %.1f B, ConcurrentLong2ObjectMap %.1f B%n",
+                boxedMapBytes / (double) ENTRIES, longMapBytes / (double) ENTRIES);
+        System.out.printf("Retained per entry: ConcurrentHashMap set<Integer> %.1f B, ConcurrentIntSet %.1f B%n",
+                boxedSetBytes / (double) ENTRIES, intSetBytes / (double) ENTRIES);
+    }
+
+    /**
+     * Bytes allocated per lookup and per put-then-remove, boxed against primitive keys.
+     */
+    private static void allocation(ObjectFactory factory) {
+        ConcurrentMap<Long, Object> boxed = factory.createConcurrentHashMap();
+        ConcurrentLong2ObjectMap<Object> primitive = factory.createConcurrentLong2ObjectMap();
+        ConcurrentLongSet set = factory.createConcurrentLongSet();
+        ConcurrentInt2ObjectMap<Object> intMap = factory.createConcurrentInt2ObjectMap();
+        // Keys outside the small-Long cache, as packed coordinates are
+        for (int i = 0; i < 4096; i++) {
+            boxed.put(pack(i, 1), VALUE);
+            primitive.put(pack(i, 1), VALUE);
+            set.add(pack(i, 1));
+            intMap.put(i << 8, VALUE);
+        }
+
+        double boxedGet = allocated(i -> boxed.get(pack(i & 4095, 1)));
+        double primitiveGet = allocated(i -> primitive.get(pack(i & 4095, 1)));
+        double intGet = allocated(i -> intMap.get((i & 4095) << 8));
+        double boxedChurn = allocated(i -> {
+            long key = pack(4096 + (i & 63), 1);
+            boxed.put(key, VALUE);
+            boxed.remove(key);
+        });
+        double primitiveChurn = allocated(i -> {
+            long key = pack(4096 + (i & 63), 1);
+            primitive.put(key, VALUE);
+            primitive.remove(key);
+        });
+        double setChurn = allocated(i -> {
+            long key = pack(4096 + (i & 63), 1);
+            set.add(key);
+            set.remove(key);
+        });
+        check(primitiveGet < 0.01 && primitiveChurn < 0.01 && setChurn < 0.01 && intGet < 0.01,
+                "primitive structures allocated: get " + primitiveGet + ", churn " + primitiveChurn + ", set " + setChurn
+                        + ", int get " + intGet);
+
+        System.out.printf("Bytes per get: boxed %.1f, primitive %.2f; per put+remove: boxed %.1f, primitive %.2f%n",
+                boxedGet, primitiveGet, boxedChurn, primitiveChurn);
+    }
+
+    private static long pack(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static long retained(Runnable fill) {
+        long before = usedHeap();
+        fill.run();
+        return usedHeap() - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double allocated(IntConsumer operation) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().threadId();
+        int operations = 1 << 20;
+        // Warm up so the measurement sees compiled code
+        for (int i = 0; i < operations; i++) operation.accept(i);
+        long before = bean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < operations; i++) operation.accept(i);
+        return (bean.getThreadAllocatedBytes(id) - before) / (double) operations;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+
+public class TestPriorityAging {
+
+    private static final int LEVELS = 64;
+    private static final int[] LOW_LEVELS = {8, 40, 63};
+    private static final long AGING_NANOS = 100_000L; // 0.1 ms per level
+    // Far longer than a round, so a GC pause or preemption cannot age a level within one
+    private static final long IDLE_AGING_NANOS = 1_000_000_000L;
+    private static final long RUN_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        for (int level : LOW_LEVELS) {
+            report("No aging", 0L, level);
+            report("Aging", AGING_NANOS, level);
+        }
+        checkStrictOrderWhenIdle();
+    }
+
+    /**
+     * Keeps level 0 busy and reports how long a single element at a lower level waits.
+     */
+    private static void report(String name, long agingNanos, int lowLevel) {
+        DynamicPriorityQueue<Object> queue = new DynamicPriorityQueue<>(LEVELS, agingNanos);
+        Object low = new Object();
+
+        for (int i = 0; i < 16; i++) {
+            queue.enqueue(new Object(), 0);
+        }
+        long start = System.nanoTime();
+        queue.enqueue(low, lowLevel);
+
+        long dequeues = 0;
+        long waited = -1;
+        while (System.nanoTime() - start < RUN_NANOS) {
+            Object element = queue.dequeue();
+            dequeues++;
+            if (element == low) {
+                waited = System.nanoTime() - start;
+                break;
+            }
+            // A steady flow of high-priority work
+            queue.enqueue(new Object(), 0);
+        }
+
+        if (waited < 0) {
+            System.out.printf("%s, level %d: still waiting after %d ms and %d dequeues%n",
+                    name, lowLevel, RUN_NANOS / 1_000_000, dequeues);
+        } else {
+            System.out.printf("%s, level %d: served after %.3f ms and %d dequeues (bound ~%.3f ms)%n",
+                    name, lowLevel, waited / 1e6, dequeues, lowLevel * agingNanos / 1e6);
+        }
+    }
+
+    /**
+     * Elements that are dequeued before they age must come out in strict priority order. The
+     * levels sit at least 7 apart, so a level would need to wait 7 s to be promoted.
+     */
+    private static void checkStrictOrderWhenIdle() {
+        DynamicPriorityQueue<Integer> queue = new DynamicPriorityQueue<>(LEVELS, IDLE_AGING_NANOS);
+        int outOfOrder = 0;
+
+        for (int round = 0; round < 10_000; round++) {
+            for (int level = LEVELS - 1; level >= 0; level -= 7) {
+                queue.enqueue(round * LEVELS + level, level);
+            }
+            int previous = -1;
+            Integer element;
+            while ((element = queue.dequeue()) != null) {
+                int level = element % LEVELS;
+                if (level < previous) {
+                    outOfOrder++;
+                }
+                previous = level;
+            }
+        }
+
+        if (outOfOrder != 0) {
+            throw new IllegalStateException(outOfOrder + " out-of-order dequeues while no level aged");
+        }
+        System.out.println("Lightly loaded: every round dequeued in strict priority order");
+    }
+}
@@ -0,0 +1,260 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.PriorityTask;
+import mi.m4x.carbide.scheduler.executor.Task;
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestPriorityChange {
+
+    private static final int PRIORITIES = 64;
+    private static final int QUEUED_TASKS = 20_000;
+    private static final int STRESS_ELEMENTS = 1 << 18;
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) {
+            report("Plain tasks", false, false, round == 2);
+            report("Indexed plain tasks", false, true, round == 2);
+            report("PriorityTasks", true, false, round == 2);
+        }
+        duplicates();
+        stress();
+    }
+
+    /**
+     * Queues tasks behind a blocked worker, then moves every one of them to another level.
+     */
+    private static void report(String name, boolean handles, boolean indexed, boolean print) throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder().indexTasks(indexed).build());
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(QUEUED_TASKS);
+        manager.schedule(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0);
+        Thread.sleep(50); // let the worker pick up the blocking task
+
+        MovableTask[] tasks = new MovableTask[QUEUED_TASKS];
+        for (int i = 0; i < QUEUED_TASKS; i++) {
+            tasks[i] = handles ? new MovableTask(done) : new PlainMovableTask(done);
+            tasks[i].priority = PRIORITIES - 1;
+            manager.schedule(tasks[i].task());
+        }
+
+        long startTime = System.nanoTime();
+        for (MovableTask task : tasks) {
+            task.priority = 0;
+            manager.notifyPriorityChange(task.task());
+        }
+        long endTime = System.nanoTime();
+
+        gate.countDown();
+        done.await();
+        manager.shutdown();
+
+        if (print) {
+            System.out.printf("%s: %.2f us per notifyPriorityChange with %d queued%n",
+                    name, (endTime - startTime) / 1e3 / QUEUED_TASKS, QUEUED_TASKS);
+        }
+    }
+
+    /**
+     * A task still queued is rejected when scheduled again, alone or listed twice in one batch,
+     * and a rejected batch runs none of its tasks. Plain tasks are only checked while indexed.
+     */
+    private static void duplicates() throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder().indexTasks(true).build());
+        CountDownLatch gate = new CountDownLatch(1);
+        manager.schedule(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0);
+        Thread.sleep(50); // let the worker pick up the blocking task
+
+        CountDownLatch done = new CountDownLatch(2);
+        MovableTask priorityTask = new MovableTask(done);
+        MovableTask plainTask = new PlainMovableTask(done);
+        MovableTask other = new MovableTask(done);
+        expect(() -> manager.scheduleAll(new Task[]{priorityTask, other, priorityTask}));
+        expect(() -> manager.scheduleAll(new Task[]{plainTask.task(), other, plainTask.task()}));
+        check(!priorityTask.isQueued() && !other.isQueued(), "a rejected batch left tasks queued");
+
+        manager.schedule(priorityTask);
+        manager.schedule(plainTask.task());
+        expect(() -> manager.schedule(priorityTask));
+        expect(() -> manager.schedule(plainTask.task()));
+        expect(() -> manager.scheduleAll(new Task[]{other, plainTask.task()}));
+
+        gate.countDown();
+        done.await();
+        Thread.sleep(50); // a task queued twice would run late
+        manager.shutdown();
+        check(done.getCount() == 0 && priorityTask.runs.get() == 1 && plainTask.runs.get() == 1
+                && other.runs.get() == 0, "rejected tasks ran");
+        System.out.println("Duplicate schedules rejected");
+    }
+
+    private static void expect(Runnable action) {
+        try {
+            action.run();
+        } catch (IllegalArgumentException rejected) {
+            return;
+        }
+        throw new IllegalStateException("duplicate schedule was accepted");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Movers, consumers and removers race on the same handles; every element must be dequeued
+     * or removed exactly once and the level counts must end at zero.
+     */
+    @SuppressWarnings("unchecked")
+    private static void stress() throws InterruptedException {
+        DynamicPriorityQueue<Integer> queue = new DynamicPriorityQueue<>(PRIORITIES);
+        DynamicPriorityQueue.Handle<Integer>[] handles = new DynamicPriorityQueue.Handle[STRESS_ELEMENTS];
+        for (int i = 0; i < STRESS_ELEMENTS; i++) {
+            handles[i] = queue.offer(i, PRIORITIES - 1);
+        }
+
+        AtomicIntegerArray taken = new AtomicIntegerArray(STRESS_ELEMENTS);
+        AtomicLong finished = new AtomicLong();
+        int movers = Math.max(1, THREADS / 2);
+        int consumers = Math.max(1, THREADS - movers);
+        CountDownLatch done = new CountDownLatch(movers + consumers);
+
+        for (int m = 0; m < movers; m++) {
+            Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (finished.get() < STRESS_ELEMENTS) {
+                    DynamicPriorityQueue.Handle<Integer> handle = handles[random.nextInt(STRESS_ELEMENTS)];
+                    if (random.nextInt(16) == 0) {
+                        if (handle.remove()) {
+                            taken.incrementAndGet(handle.element());
+                            finished.incrementAndGet();
+                        }
+                    } else {
+                        handle.changePriority(random.nextInt(PRIORITIES));
+                    }
+                }
+                done.countDown();
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            Thread.ofPlatform().start(() -> {
+                while (finished.get() < STRESS_ELEMENTS) {
+                    Integer element = queue.dequeue();
+                    if (element != null) {
+                        taken.incrementAndGet(element);
+                        finished.incrementAndGet();
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+
+        int duplicates = 0;
+        int missing = 0;
+        for (int i = 0; i < STRESS_ELEMENTS; i++) {
+            int count = taken.get(i);
+            if (count == 0) missing++;
+            if (count > 1) duplicates++;
+        }
+        System.out.printf("Concurrent moves: %d taken, %d missing, %d duplicates, left size %d, peek %d%n",
+                finished.get(), missing, duplicates, queue.size(), queue.peekPriority());
+    }
+
+    private static class MovableTask extends PriorityTask {
+        final CountDownLatch done;
+        final AtomicInteger runs = new AtomicInteger();
+        volatile int priority;
+
+        MovableTask(CountDownLatch done) {
+            this.done = done;
+        }
+
+        Task task() {
+            return this;
+        }
+
+        @Override
+        public void run(Runnable releaseLocks) {
+            releaseLocks.run();
+            runs.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            t.printStackTrace();
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return new LockToken[0];
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+    }
+
+    /**
+     * Same task seen by the manager as a plain {@link Task}, so it is looked up in the queues.
+     */
+    private static final class PlainMovableTask extends MovableTask {
+        private final Task plain = new Task() {
+            @Override
+            public void run(Runnable releaseLocks) {
+                PlainMovableTask.this.run(releaseLocks);
+            }
+
+            @Override
+            public void propagateException(Throwable t) {
+                PlainMovableTask.this.propagateException(t);
+            }
+
+            @Override
+            public LockToken[] lockTokens() {
+                return PlainMovableTask.this.lockTokens();
+            }
+
+            @Override
+            public int priority() {
+                return PlainMovableTask.this.priority();
+            }
+        };
+
+        PlainMovableTask(CountDownLatch done) {
+            super(done);
+        }
+
+        @Override
+        Task task() {
+            return plain;
+        }
+    }
+}
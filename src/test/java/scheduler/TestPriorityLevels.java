@@ -0,0 +1,99 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.structures.DynamicPriorityQueue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestPriorityLevels {
+
+    private static final int[] LEVEL_COUNTS = {8, 64, 1024, 4096, 65536};
+    private static final int OPERATIONS = 1 << 21;
+    private static final int STRESS_ELEMENTS = 1 << 20;
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    public static void main(String[] args) throws InterruptedException {
+        // Dequeue cost should not grow with the number of levels
+        for (int round = 0; round < 3; round++) {
+            for (int levels : LEVEL_COUNTS) {
+                report(levels, round == 2);
+            }
+        }
+        stress(4096);
+    }
+
+    /**
+     * Cycles elements through the lowest level, the worst case for a linear level scan.
+     */
+    private static void report(int levels, boolean print) {
+        DynamicPriorityQueue<Integer> queue = new DynamicPriorityQueue<>(levels);
+        Integer[] elements = new Integer[64];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = i;
+            queue.enqueue(elements[i], levels - 1 - (i & 3));
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            Integer element = queue.dequeue();
+            queue.enqueue(element, levels - 1 - (i & 3));
+        }
+        long endTime = System.nanoTime();
+
+        if (print) {
+            System.out.printf("%6d levels: %.1f ns per dequeue+enqueue%n",
+                    levels, (endTime - startTime) / (double) OPERATIONS);
+        }
+    }
+
+    /**
+     * Producers and consumers race over sparse levels; every element must come out exactly once.
+     */
+    private static void stress(int levels) throws InterruptedException {
+        DynamicPriorityQueue<Integer> queue = new DynamicPriorityQueue<>(levels);
+        AtomicIntegerArray seen = new AtomicIntegerArray(STRESS_ELEMENTS);
+        AtomicLong consumed = new AtomicLong();
+        int producers = THREADS / 2;
+        int consumers = THREADS - producers;
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = producer; i < STRESS_ELEMENTS; i += producers) {
+                    // Few distinct levels, so levels keep emptying and refilling
+                    queue.enqueue(i, random.nextInt(8) * (levels / 8));
+                }
+                done.countDown();
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            Thread.ofPlatform().start(() -> {
+                while (consumed.get() < STRESS_ELEMENTS) {
+                    Integer element = queue.dequeue();
+                    if (element != null) {
+                        seen.incrementAndGet(element);
+                        consumed.incrementAndGet();
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+
+        int duplicates = 0;
+        int missing = 0;
+        for (int i = 0; i < STRESS_ELEMENTS; i++) {
+            int count = seen.get(i);
+            if (count == 0) missing++;
+            if (count > 1) duplicates++;
+        }
+        System.out.printf("Stress at %d levels: %d consumed, %d missing, %d duplicates, left size %d, peek %d%n",
+                levels, consumed.get(), missing, duplicates, queue.size(), queue.peekPriority());
+    }
+}
@@ -0,0 +1,97 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.Task;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSharedLocks {
+
+    private static final int NUM_TASKS = 20_000;
+    private static final int WRITE_EVERY = 50; // one writer per 50 readers
+    private static final int WORK_MICROS = 50;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final LockToken REGION = new LockToken() {};
+    private static final IndexedLockToken INDEXED_REGION = () -> 42L;
+
+    public static void main(String[] args) throws InterruptedException {
+        report("Exclusive readers", REGION, false);
+        report("Shared readers", REGION, true);
+        report("Shared indexed readers", INDEXED_REGION, true);
+    }
+
+    private static void report(String name, LockToken region, boolean sharedReads) throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(THREADS);
+        CountDownLatch latch = new CountDownLatch(NUM_TASKS);
+        AtomicInteger readers = new AtomicInteger();
+        AtomicInteger writers = new AtomicInteger();
+        AtomicInteger peakReaders = new AtomicInteger();
+        AtomicInteger violations = new AtomicInteger();
+
+        LockToken[] readTokens = {sharedReads ? region.shared() : region};
+        LockToken[] writeTokens = {region};
+
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < NUM_TASKS; i++) {
+            boolean write = i % WRITE_EVERY == 0;
+            manager.schedule(new Task() {
+                @Override
+                public void run(Runnable releaseLocks) {
+                    try {
+                        if (write) {
+                            if (writers.incrementAndGet() != 1 || readers.get() != 0) {
+                                violations.incrementAndGet();
+                            }
+                            spin();
+                            writers.decrementAndGet();
+                        } else {
+                            peakReaders.accumulateAndGet(readers.incrementAndGet(), Math::max);
+                            if (writers.get() != 0) {
+                                violations.incrementAndGet();
+                            }
+                            spin();
+                            readers.decrementAndGet();
+                        }
+                    } finally {
+                        releaseLocks.run();
+                        latch.countDown();
+                    }
+                }
+
+                @Override
+                public void propagateException(Throwable t) {
+                    t.printStackTrace();
+                }
+
+                @Override
+                public LockToken[] lockTokens() {
+                    return write ? writeTokens : readTokens;
+                }
+
+                @Override
+                public int priority() {
+                    return 0;
+                }
+            });
+        }
+
+        latch.await();
+        long endTime = System.nanoTime();
+        manager.shutdown();
+
+        System.out.printf("%s: %.2f rps, peak concurrent readers %d, exclusion violations %d%n",
+                name, NUM_TASKS * 1e9 / (endTime - startTime), peakReaders.get(), violations.get());
+    }
+
+    private static void spin() {
+        long end = System.nanoTime() + WORK_MICROS * 1_000L;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
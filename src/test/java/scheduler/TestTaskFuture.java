@@ -0,0 +1,314 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.TaskFuture;
+import mi.m4x.carbide.scheduler.executor.TaskGraph;
+import mi.m4x.carbide.scheduler.executor.WorkerThread;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestTaskFuture {
+
+    private static final int WORKERS = 4;
+    private static final int PRIORITY = 8;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorManager manager = new ExecutorManager(WORKERS, thread -> {}, 64);
+        chains(manager);
+        failures(manager);
+        combining(manager);
+        cancellation(manager);
+        registrationRace(manager);
+        timedWaits(manager);
+        allocation(manager);
+        manager.shutdown();
+    }
+
+    /**
+     * Results flow down a long chain, and every continuation runs on one of the manager's workers.
+     */
+    private static void chains(ExecutorManager manager) throws Exception {
+        AtomicLong foreignThreads = new AtomicLong();
+        TaskFuture<Integer> future = manager.submit(() -> 0, PRIORITY);
+        for (int i = 0; i < 10_000; i++) {
+            future = future.thenApply(value -> {
+                if (!(Thread.currentThread() instanceof WorkerThread)) foreignThreads.incrementAndGet();
+                return value + 1;
+            }, i & 31);
+        }
+        check(future.get(30, TimeUnit.SECONDS) == 10_000 && foreignThreads.get() == 0,
+                "chain: " + future.join() + ", " + foreignThreads.get() + " continuations off the workers");
+
+        AtomicInteger ran = new AtomicInteger();
+        IndexedLockToken lock = () -> 7;
+        TaskFuture<Void> locked = manager.submit(ran::incrementAndGet, PRIORITY, lock)
+                .thenRun(ran::incrementAndGet, PRIORITY)
+                .thenAccept(ignored -> ran.incrementAndGet(), PRIORITY);
+        check(locked.get() == null && ran.get() == 3, "run/accept chain ran " + ran.get());
+
+        check(TaskFuture.completed(manager, "done").thenApply(String::length, PRIORITY).join() == 4, "completed");
+
+        TaskFuture<String> promise = TaskFuture.promise(manager);
+        expect(TimeoutException.class, () -> promise.get(10, TimeUnit.MILLISECONDS));
+        TaskFuture<Integer> length = promise.thenApply(String::length, PRIORITY);
+        check(promise.complete("promise") && !promise.complete("again") && length.join() == 7, "promise");
+        System.out.println("Chains: 10000 continuations, all on workers");
+    }
+
+    /**
+     * A failure skips the continuations after it until one handles it.
+     */
+    private static void failures(ExecutorManager manager) throws Exception {
+        IllegalStateException boom = new IllegalStateException("boom");
+        AtomicInteger skippedRan = new AtomicInteger();
+        TaskFuture<Integer> failed = manager.<Integer>submit(() -> {
+            throw boom;
+        }, PRIORITY).thenApply(value -> skippedRan.incrementAndGet(), PRIORITY);
+
+        try {
+            failed.get();
+            throw new IllegalStateException("failure was not reported");
+        } catch (ExecutionException e) {
+            check(e.getCause() == boom && skippedRan.get() == 0, "failure: " + e.getCause() + ", skipped ran " + skippedRan.get());
+        }
+
+        TaskFuture<String> handled = failed.handle((value, failure) -> failure == boom ? "recovered" : "lost", PRIORITY);
+        check(handled.join().equals("recovered"), "handle");
+
+        // An exception thrown by a continuation fails its own future
+        TaskFuture<Object> throwing = manager.submit(() -> 1, PRIORITY).thenApply(value -> {
+            throw boom;
+        }, PRIORITY);
+        expect(boom.getClass(), () -> {
+            try {
+                throwing.join();
+            } catch (RuntimeException e) {
+                throw (RuntimeException) e.getCause();
+            }
+        });
+
+        Throwable[] listened = new Throwable[1];
+        CountDownLatch listener = new CountDownLatch(1);
+        failed.addListener(failure -> {
+            listened[0] = failure;
+            listener.countDown();
+        });
+        check(listener.await(5, TimeUnit.SECONDS) && listened[0] == boom, "listener got " + listened[0]);
+        expect(IllegalArgumentException.class, () -> failed.thenRun(() -> {}, 64));
+        System.out.println("Failures: propagated, handled and listened to");
+    }
+
+    /**
+     * Results of many futures are combined, and a graph run can be followed like a future.
+     */
+    private static void combining(ExecutorManager manager) throws Exception {
+        int count = 1000;
+        @SuppressWarnings("unchecked")
+        TaskFuture<Integer>[] parts = new TaskFuture[count];
+        AtomicLong sum = new AtomicLong();
+        for (int i = 0; i < count; i++) {
+            final int value = i;
+            parts[i] = manager.submit(() -> {
+                sum.addAndGet(value);
+                return value;
+            }, PRIORITY);
+        }
+        TaskFuture<Long> total = TaskFuture.allOf(manager, parts).thenApply(ignored -> sum.get(), PRIORITY);
+        check(total.join() == (long) count * (count - 1) / 2, "allOf sum " + total.join());
+        check(TaskFuture.allOf(manager).isDone(), "empty allOf");
+
+        TaskFuture<Integer> combined = parts[3].thenCombine(parts[4], Integer::sum, PRIORITY);
+        check(combined.join() == 7, "thenCombine " + combined.join());
+
+        TaskGraph graph = new TaskGraph();
+        AtomicInteger ran = new AtomicInteger();
+        graph.add(ran::incrementAndGet, PRIORITY).dependsOn(graph.add(ran::incrementAndGet, PRIORITY));
+        TaskFuture<Integer> afterGraph = TaskFuture.of(manager, graph.submit(manager)).thenApply(ignored -> ran.get(), PRIORITY);
+        check(afterGraph.join() == 2, "graph future " + afterGraph.join());
+        System.out.printf("Combining: allOf over %d futures, thenCombine, graph runs%n", count);
+    }
+
+    /**
+     * A task cancelled while queued never runs, and its continuations see the cancellation.
+     */
+    private static void cancellation(ExecutorManager manager) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(WORKERS);
+        for (int i = 0; i < WORKERS; i++) {
+            manager.submit(() -> {
+                blocked.countDown();
+                release.await();
+                return null;
+            }, 0);
+        }
+        blocked.await();
+
+        AtomicInteger ran = new AtomicInteger();
+        TaskFuture<Integer> queued = manager.submit(ran::incrementAndGet, PRIORITY);
+        TaskFuture<String> dependent = queued.thenApply(value -> "ran", PRIORITY);
+        check(queued.cancel(false) && queued.isCancelled() && queued.isDone(), "cancel");
+        release.countDown();
+
+        expect(CancellationException.class, dependent::join);
+        expect(CancellationException.class, queued::get);
+        // The cancelled task still passes through a worker, which skips it
+        manager.submit(() -> {}, PRIORITY + 1).get();
+        check(ran.get() == 0, "cancelled task ran");
+        System.out.println("Cancellation: queued task skipped");
+    }
+
+    /**
+     * Continuations registered while the future completes fire exactly once either way.
+     */
+    private static void registrationRace(ExecutorManager manager) throws Exception {
+        int rounds = 2000;
+        int registrants = 4;
+        AtomicIntegerArray fired = new AtomicIntegerArray(rounds * registrants);
+        CountDownLatch allFired = new CountDownLatch(rounds * registrants);
+        for (int round = 0; round < rounds; round++) {
+            TaskFuture<Integer> promise = TaskFuture.promise(manager);
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[registrants];
+            for (int r = 0; r < registrants; r++) {
+                final int slot = round * registrants + r;
+                threads[r] = Thread.ofPlatform().start(() -> {
+                    awaitQuietly(start);
+                    promise.addListener(failure -> {
+                        fired.incrementAndGet(slot);
+                        allFired.countDown();
+                    });
+                });
+            }
+            start.countDown();
+            promise.complete(round);
+            for (Thread thread : threads) thread.join();
+        }
+        check(allFired.await(10, TimeUnit.SECONDS), "listeners lost");
+        for (int i = 0; i < fired.length(); i++) {
+            check(fired.get(i) == 1, "listener " + i + " fired " + fired.get(i) + " times");
+        }
+        System.out.printf("Registration race: %d listeners, each fired once%n", fired.length());
+    }
+
+    /**
+     * Waiters that time out are dropped again, so threads polling a pending future with timed
+     * gets keep the future's memory flat, and listeners registered in between still fire.
+     */
+    private static void timedWaits(ExecutorManager manager) throws Exception {
+        TaskFuture<Integer> promise = TaskFuture.promise(manager);
+        AtomicInteger fired = new AtomicInteger();
+        int waitsPerThread = 250_000;
+        int listenerEvery = 10_000;
+        long before = usedHeap();
+        Thread[] pollers = new Thread[2];
+        for (int t = 0; t < pollers.length; t++) {
+            pollers[t] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < waitsPerThread; i++) {
+                    if (i % listenerEvery == 0) {
+                        promise.addListener(failure -> fired.incrementAndGet());
+                    }
+                    try {
+                        promise.get(1, TimeUnit.NANOSECONDS);
+                        throw new IllegalStateException("pending future returned a result");
+                    } catch (TimeoutException expected) {
+                        // Still pending
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        for (Thread poller : pollers) poller.join();
+        long retained = usedHeap() - before;
+
+        promise.complete(1);
+        int listeners = pollers.length * waitsPerThread / listenerEvery;
+        check(fired.get() == listeners, "fired " + fired.get() + " of " + listeners + " listeners");
+        // Every timed-out waiter kept would hold on to 24 bytes or more
+        check(retained < 4L << 20, "timed waits retained " + retained + " bytes");
+        System.out.printf("Timed waits: %d timed-out gets on a pending future retained %d KiB%n",
+                pollers.length * waitsPerThread, Math.max(0L, retained) >> 10);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Bytes allocated on all threads per submitted task with one continuation, next to the same
+     * work through CompletableFuture on the manager's executor.
+     */
+    private static void allocation(ExecutorManager manager) throws Exception {
+        Executor executor = manager.executor(PRIORITY);
+        int operations = 200_000;
+        for (int round = 0; round < 2; round++) {
+            long carbide = allocated(() -> {
+                TaskFuture<Integer> last = null;
+                for (int i = 0; i < operations; i++) {
+                    last = manager.submit(() -> 1, PRIORITY).thenApply(value -> value + 1, PRIORITY);
+                }
+                last.join();
+            });
+            long completable = allocated(() -> {
+                CompletableFuture<Integer> last = null;
+                for (int i = 0; i < operations; i++) {
+                    last = CompletableFuture.supplyAsync(() -> 1, executor).thenApplyAsync(value -> value + 1, executor);
+                }
+                last.join();
+            });
+            if (round == 1) {
+                System.out.printf("Bytes per submit + continuation: TaskFuture %.0f, CompletableFuture %.0f%n",
+                        carbide / (double) operations, completable / (double) operations);
+            }
+        }
+    }
+
+    private static long allocated(Runnable work) throws InterruptedException {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = bean.getTotalThreadAllocatedBytes();
+        work.run();
+        // Let the workers finish the tail of the batch
+        Thread.sleep(100);
+        return bean.getTotalThreadAllocatedBytes() - before;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface ThrowingAction {
+        void run() throws Exception;
+    }
+
+    private static void expect(Class<? extends Throwable> type, ThrowingAction action) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            check(type.isInstance(thrown), "expected " + type.getSimpleName() + ", got " + thrown);
+            return;
+        }
+        throw new IllegalStateException("expected " + type.getSimpleName());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
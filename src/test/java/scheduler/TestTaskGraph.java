@@ -0,0 +1,310 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.BusyReferenceCounter;
+import mi.m4x.carbide.scheduler.CancellationSignaller;
+import mi.m4x.carbide.scheduler.executor.ExecutionMode;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.SimpleTask;
+import mi.m4x.carbide.scheduler.executor.TaskGraph;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class TestTaskGraph {
+
+    private static final int WORKERS = 4;
+    private static final int PRIORITY = 8;
+    private static final int ROUNDS = 5; // the median is reported
+
+    public static void main(String[] args) throws InterruptedException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            ExecutorManager manager = new ExecutorManager(WORKERS, thread -> {}, 64, mode);
+            dependencies(manager, mode);
+            failure(manager);
+            cancellation(manager);
+            manager.shutdown();
+        }
+        validation();
+
+        ExecutorManager manager = new ExecutorManager(WORKERS, thread -> {}, 64);
+        pipeline(manager);
+        criticalPath(manager);
+        manager.shutdown();
+    }
+
+    /**
+     * A random DAG with locked nodes, submitted repeatedly: every node runs once per submission,
+     * after all of its parents, and never alongside a node holding the same lock.
+     */
+    private static void dependencies(ExecutorManager manager, ExecutionMode mode) throws InterruptedException {
+        int count = 2000;
+        SplittableRandom random = new SplittableRandom(42);
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node[] nodes = new TaskGraph.Node[count];
+        int[][] parents = new int[count][];
+        AtomicLongArray finished = new AtomicLongArray(count);
+        AtomicInteger[] holders = new AtomicInteger[8];
+        Arrays.setAll(holders, i -> new AtomicInteger());
+        AtomicLong clock = new AtomicLong();
+        AtomicLong violations = new AtomicLong();
+
+        for (int i = 0; i < count; i++) {
+            final int node = i;
+            int lock = random.nextInt(holders.length + 4);
+            // Parents always have lower indices, so the graph is acyclic
+            parents[i] = random.ints(i == 0 ? 0 : random.nextInt(Math.min(i, 4) + 1), 0, Math.max(i, 1)).toArray();
+            Runnable body = () -> {
+                if (lock < holders.length && holders[lock].incrementAndGet() != 1) violations.incrementAndGet();
+                long now = clock.incrementAndGet();
+                for (int parent : parents[node]) {
+                    if (finished.get(parent) == 0 || finished.get(parent) >= now) violations.incrementAndGet();
+                }
+                if (lock < holders.length) holders[lock].decrementAndGet();
+                if (finished.getAndSet(node, clock.incrementAndGet()) != 0) violations.incrementAndGet();
+            };
+            nodes[i] = lock < holders.length
+                    ? graph.add(body, PRIORITY, (IndexedLockToken) () -> lock)
+                    : graph.add(body, PRIORITY);
+        }
+        for (int i = 0; i < count; i++) {
+            for (int parent : parents[i]) {
+                nodes[i].dependsOn(nodes[parent]);
+            }
+        }
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < count; i++) finished.set(i, 0);
+            Throwable result = await(graph.submit(manager));
+            check(result == null, mode + ": graph failed with " + result);
+            for (int i = 0; i < count; i++) {
+                check(finished.get(i) != 0, mode + ": node " + i + " did not run");
+            }
+        }
+        check(violations.get() == 0, mode + ": " + violations.get() + " ordering or lock violations");
+        System.out.printf("%-15s %d nodes x 3 submissions, 0 violations%n", mode, count);
+    }
+
+    /**
+     * A failing node skips its descendants and the nodes that did not start yet; the run
+     * completes with its exception once nothing is running.
+     */
+    private static void failure(ExecutorManager manager) throws InterruptedException {
+        TaskGraph graph = new TaskGraph();
+        AtomicInteger ran = new AtomicInteger();
+        RuntimeException boom = new RuntimeException("boom");
+        TaskGraph.Node root = graph.add(ran::incrementAndGet, PRIORITY);
+        TaskGraph.Node failing = graph.add(() -> {
+            throw boom;
+        }, PRIORITY).dependsOn(root);
+        TaskGraph.Node previous = failing;
+        for (int i = 0; i < 100; i++) {
+            previous = graph.add(ran::incrementAndGet, PRIORITY).dependsOn(previous, root);
+        }
+
+        Throwable result = await(graph.submit(manager));
+        check(result == boom && ran.get() == 1, "failure: result " + result + ", " + ran.get() + " nodes ran");
+    }
+
+    /**
+     * Cancelling a chain stops it at the node running at the time.
+     */
+    private static void cancellation(ExecutorManager manager) throws InterruptedException {
+        TaskGraph graph = new TaskGraph();
+        AtomicInteger ran = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        TaskGraph.Node previous = graph.add(() -> {
+            started.countDown();
+            awaitQuietly(cancelled);
+        }, PRIORITY);
+        for (int i = 0; i < 100; i++) {
+            previous = graph.add(ran::incrementAndGet, PRIORITY).dependsOn(previous);
+        }
+
+        CancellationSignaller signaller = graph.submit(manager);
+        started.await();
+        signaller.cancel();
+        cancelled.countDown();
+        Throwable result = await(signaller);
+        check(result instanceof CancellationException && ran.get() == 0 && signaller.isCancelled(),
+                "cancellation: result " + result + ", " + ran.get() + " nodes ran");
+
+        // An empty graph completes on submission
+        check(new TaskGraph().submit(manager).isComplete(), "empty graph did not complete");
+    }
+
+    private static void validation() {
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node a = graph.add(() -> {}, PRIORITY);
+        TaskGraph.Node b = graph.add(() -> {}, PRIORITY).dependsOn(a);
+        TaskGraph other = new TaskGraph();
+        expect(IllegalArgumentException.class, () -> a.dependsOn(a));
+        expect(IllegalArgumentException.class, () -> other.add(() -> {}, 0).dependsOn(a));
+        a.dependsOn(b);
+        ExecutorManager manager = new ExecutorManager(1);
+        expect(IllegalStateException.class, () -> graph.submit(manager));
+
+        // A lone node is critical, so 64 is promoted into range but 65 is not
+        TaskGraph high = new TaskGraph();
+        high.add(() -> {}, 65);
+        expect(IllegalArgumentException.class, () -> high.submit(manager));
+        manager.shutdown();
+        System.out.println("Validation: ok");
+    }
+
+    /**
+     * A generation pipeline over a row of chunks, where each stage of a chunk needs the previous
+     * stage of the chunk and of its two neighbours. Task durations vary, so a stage barrier
+     * waits for the slowest chunk of every stage while the graph lets chunks run ahead.
+     */
+    private static void pipeline(ExecutorManager manager) throws InterruptedException {
+        int chunks = 32;
+        int stages = 6;
+        long[][] micros = new long[stages][chunks];
+        SplittableRandom random = new SplittableRandom(7);
+        for (long[] stage : micros) {
+            for (int c = 0; c < chunks; c++) stage[c] = 200 + random.nextInt(1800);
+        }
+
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node[] previous = null;
+        for (int s = 0; s < stages; s++) {
+            TaskGraph.Node[] current = new TaskGraph.Node[chunks];
+            for (int c = 0; c < chunks; c++) {
+                long work = micros[s][c];
+                current[c] = graph.add(() -> sleepMicros(work), PRIORITY);
+                if (previous != null) {
+                    current[c].dependsOn(previous[c]);
+                    if (c > 0) current[c].dependsOn(previous[c - 1]);
+                    if (c < chunks - 1) current[c].dependsOn(previous[c + 1]);
+                }
+            }
+            previous = current;
+        }
+
+        double[] staged = new double[ROUNDS];
+        double[] graphed = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            staged[round] = stagedMillis(manager, micros);
+            long start = System.nanoTime();
+            check(await(graph.submit(manager)) == null, "pipeline failed");
+            graphed[round] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(staged);
+        Arrays.sort(graphed);
+        System.out.printf("Pipeline %dx%d: staged %.1f ms, graph %.1f ms (%.2fx)%n", stages, chunks,
+                staged[ROUNDS / 2], graphed[ROUNDS / 2], staged[ROUNDS / 2] / graphed[ROUNDS / 2]);
+    }
+
+    /**
+     * The same pipeline the way it is hand-built without a graph: every stage is submitted from
+     * a counter listener once the previous stage has drained.
+     */
+    private static double stagedMillis(ExecutorManager manager, long[][] micros) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        submitStage(manager, micros, 0, done);
+        done.await();
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static void submitStage(ExecutorManager manager, long[][] micros, int stage, CountDownLatch done) {
+        if (stage == micros.length) {
+            done.countDown();
+            return;
+        }
+        BusyReferenceCounter counter = new BusyReferenceCounter();
+        for (int c = 0; c < micros[stage].length; c++) counter.incrementRefCount();
+        counter.addListenerOnce(() -> submitStage(manager, micros, stage + 1, done));
+        for (long work : micros[stage]) {
+            manager.schedule(new SimpleTask(() -> {
+                sleepMicros(work);
+                counter.decrementRefCount();
+            }, PRIORITY));
+        }
+    }
+
+    /**
+     * A long chain next to many independent nodes: promoting the chain keeps it from queueing
+     * behind the independent work after every link.
+     */
+    private static void criticalPath(ExecutorManager manager) throws InterruptedException {
+        int chain = 40;
+        int independent = 160;
+        double[] plain = new double[ROUNDS];
+        double[] boosted = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int boost = 0; boost <= 1; boost++) {
+                TaskGraph graph = new TaskGraph().criticalPathBoost(boost);
+                for (int i = 0; i < independent; i++) {
+                    graph.add(() -> sleepMicros(1000), PRIORITY);
+                }
+                TaskGraph.Node link = graph.add(() -> sleepMicros(1000), PRIORITY);
+                for (int i = 1; i < chain; i++) {
+                    link = graph.add(() -> sleepMicros(1000), PRIORITY).dependsOn(link);
+                }
+                check(graph.criticalPath().size() == chain, "critical path of " + graph.criticalPath().size());
+
+                long start = System.nanoTime();
+                check(await(graph.submit(manager)) == null, "critical path graph failed");
+                (boost == 0 ? plain : boosted)[round] = (System.nanoTime() - start) / 1e6;
+            }
+        }
+        Arrays.sort(plain);
+        Arrays.sort(boosted);
+        System.out.printf("Critical path: %d-link chain + %d nodes, %d workers (ideal %d ms): "
+                        + "no boost %.1f ms, boost %.1f ms%n", chain, independent, WORKERS,
+                Math.max(chain, (chain + independent) / WORKERS), plain[ROUNDS / 2], boosted[ROUNDS / 2]);
+    }
+
+    private static Throwable await(CancellationSignaller signaller) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Throwable> result = new AtomicReference<>();
+        signaller.addListener(throwable -> {
+            result.set(throwable);
+            latch.countDown();
+        });
+        check(latch.await(30, TimeUnit.SECONDS), "graph did not complete");
+        return result.get();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void sleepMicros(long micros) {
+        long deadline = System.nanoTime() + micros * 1000;
+        for (long remaining; (remaining = deadline - System.nanoTime()) > 0; ) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static void expect(Class<? extends Throwable> type, Runnable action) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            check(type.isInstance(thrown), "expected " + type.getSimpleName() + ", got " + thrown);
+            return;
+        }
+        throw new IllegalStateException("expected " + type.getSimpleName());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.Task;
+import mi.m4x.carbide.scheduler.executor.TaskGroup;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TestTaskGroups {
+
+    private static final long MICROS = 1000L;
+
+    public static void main(String[] args) throws Exception {
+        weightedShares(1, 0.15);
+        weightedShares(3, 0.35);
+        noisyNeighbour();
+        idleCredit();
+        priorityWithinGroup();
+        locks();
+        handedOverLocks();
+        validation();
+    }
+
+    /**
+     * Saturated groups with different task lengths and random priorities get run time in
+     * proportion to their weights, not to how many tasks they queue or how long those take.
+     */
+    private static void weightedShares(int workers, double tolerance) throws Exception {
+        ExecutorManager manager = new ExecutorManager(workers, thread -> {});
+        int[] weights = {1, 2, 4};
+        long[] taskNanos = {20 * MICROS, 50 * MICROS, 10 * MICROS};
+        Spinner[] spinners = new Spinner[weights.length];
+        for (int g = 0; g < weights.length; g++) {
+            spinners[g] = new Spinner(manager.createGroup("group-" + g, weights[g]), taskNanos[g], 4 * workers);
+        }
+
+        Thread.sleep(200);
+        long[] before = new long[weights.length];
+        for (int g = 0; g < weights.length; g++) before[g] = spinners[g].ranNanos.sum();
+        Thread.sleep(1000);
+        long[] ran = new long[weights.length];
+        long total = 0L;
+        for (int g = 0; g < weights.length; g++) {
+            ran[g] = spinners[g].ranNanos.sum() - before[g];
+            total += ran[g];
+        }
+        for (Spinner spinner : spinners) spinner.stop();
+        manager.shutdown();
+
+        double[] shares = new double[weights.length];
+        for (int g = 0; g < weights.length; g++) {
+            shares[g] = ran[g] / (double) total;
+            double expected = weights[g] / 7.0;
+            check(Math.abs(shares[g] - expected) <= expected * tolerance,
+                    workers + " workers: shares " + Arrays.toString(shares) + " for weights " + Arrays.toString(weights));
+        }
+        System.out.printf("Weighted shares, %d workers: %.3f / %.3f / %.3f of run time for weights 1 / 2 / 4%n",
+                workers, shares[0], shares[1], shares[2]);
+    }
+
+    /**
+     * A flood of top-priority tasks on the manager no longer holds back a lighter group: the group
+     * gets its share while the flood is still being worked off.
+     */
+    private static void noisyNeighbour() throws Exception {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {});
+        TaskGroup quiet = manager.createGroup("quiet", 1);
+        int flood = 100_000;
+        AtomicInteger floodRan = new AtomicInteger();
+        Runnable noisy = () -> {
+            spin(5 * MICROS);
+            floodRan.incrementAndGet();
+        };
+        for (int i = 0; i < flood; i++) {
+            manager.schedule(noisy, 0);
+        }
+
+        int tasks = 2000;
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            quiet.schedule(() -> {
+                spin(5 * MICROS);
+                done.countDown();
+            }, 63);
+        }
+        check(done.await(30, TimeUnit.SECONDS), "quiet group starved");
+        int floodAtDone = floodRan.get();
+        manager.shutdown();
+        check(floodAtDone < flood / 2, "quiet group only finished after " + floodAtDone + " flood tasks");
+        System.out.printf("Noisy neighbour: %d quiet tasks at the lowest priority done after %d of %d top-priority flood tasks%n",
+                tasks, floodAtDone, flood);
+    }
+
+    /**
+     * A group that was idle resumes at the current virtual time instead of catching up on the
+     * time it did not use.
+     */
+    private static void idleCredit() throws Exception {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {});
+        Spinner busy = new Spinner(manager.createGroup("busy", 1), 20 * MICROS, 4);
+        TaskGroup late = manager.createGroup("late", 1);
+        Thread.sleep(300);
+
+        long busyBefore = busy.ranNanos.sum();
+        Spinner joined = new Spinner(late, 20 * MICROS, 4);
+        Thread.sleep(200);
+        long busyRan = busy.ranNanos.sum() - busyBefore;
+        long lateRan = joined.ranNanos.sum();
+        busy.stop();
+        joined.stop();
+        manager.shutdown();
+
+        double share = lateRan / (double) (busyRan + lateRan);
+        check(share > 0.35 && share < 0.65, "late group took " + share + " of the run time");
+        System.out.printf("Idle credit: a group joining after 300 ms takes %.3f of the run time, not all of it%n", share);
+    }
+
+    /**
+     * Within a group, tasks still run strictly by priority.
+     */
+    private static void priorityWithinGroup() throws Exception {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {});
+        TaskGroup group = manager.createGroup("ordered", 3);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        manager.schedule(() -> {
+            held.countDown();
+            awaitQuietly(release);
+        }, 0);
+        held.await();
+
+        ConcurrentLinkedQueue<Integer> order = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(10);
+        for (int priority = 9; priority >= 0; priority--) {
+            final int level = priority;
+            group.schedule(() -> {
+                order.add(level);
+                done.countDown();
+            }, priority);
+        }
+        check(group.queuedTasks() == 10, "queued " + group.queuedTasks());
+        release.countDown();
+        check(done.await(5, TimeUnit.SECONDS), "group tasks lost");
+        manager.shutdown();
+        Integer[] ran = order.toArray(new Integer[0]);
+        for (int i = 0; i < ran.length; i++) {
+            check(ran[i] == i, "order " + Arrays.toString(ran));
+        }
+        System.out.println("Priority within group: ran " + Arrays.toString(ran));
+    }
+
+    /**
+     * Tasks of different groups still coordinate through lock tokens.
+     */
+    private static void locks() throws Exception {
+        ExecutorManager manager = new ExecutorManager(4, thread -> {});
+        TaskGroup[] groups = {manager.createGroup("a", 1), manager.createGroup("b", 5), manager.defaultGroup()};
+        int tasks = 30_000;
+        int[] counter = new int[1];
+        CountDownLatch done = new CountDownLatch(tasks);
+        IndexedLockToken lock = () -> 5;
+        for (int i = 0; i < tasks; i++) {
+            groups[i % groups.length].schedule(new LockedTask(() -> {
+                counter[0]++;
+                done.countDown();
+            }, i & 7, lock));
+        }
+        check(done.await(30, TimeUnit.SECONDS), "locked group tasks lost");
+        manager.submit(() -> {}, 0).get();
+        check(counter[0] == tasks, "lost updates: " + (tasks - counter[0]));
+        manager.shutdown();
+        System.out.printf("Locks: %d tasks over %d groups on one lock, no lost updates%n", tasks, groups.length);
+    }
+
+    /**
+     * A task handed a lock runs right away, even though it waited as a task of the low-weight,
+     * backlogged default group, instead of holding the lock until that group's next turn.
+     */
+    private static void handedOverLocks() throws Exception {
+        ExecutorManager manager = new ExecutorManager(2, thread -> {}, ExecutorConfig.builder()
+                .defaultGroupWeight(1)
+                .build());
+        TaskGroup heavy = manager.createGroup("heavy", 10_000);
+        Spinner heavySpinner = new Spinner(heavy, 200 * MICROS, 8);
+        Spinner defaultSpinner = new Spinner(manager.defaultGroup(), 200 * MICROS, 8);
+        IndexedLockToken lock = () -> 7;
+
+        long worstWait = 0L;
+        for (int round = 0; round < 5; round++) {
+            long[] releasedAt = new long[1];
+            long[] startedAt = new long[1];
+            CountDownLatch done = new CountDownLatch(1);
+            heavy.schedule(new LockedTask(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                releasedAt[0] = System.nanoTime();
+            }, 0, lock));
+            // Taken by the other worker while the lock is held, so it waits for the lock to be handed over
+            heavy.schedule(new LockedTask(() -> {
+                startedAt[0] = System.nanoTime();
+                done.countDown();
+            }, 0, lock));
+            check(done.await(10, TimeUnit.SECONDS), "handed-over task never ran");
+            worstWait = Math.max(worstWait, startedAt[0] - releasedAt[0]);
+        }
+        heavySpinner.stop();
+        defaultSpinner.stop();
+        manager.shutdown();
+        check(worstWait < 100 * MICROS * 1000, "handed-over task waited " + worstWait / 1e6 + " ms for its group's turn");
+        System.out.printf("Handed-over locks: ran at most %.2f ms after the release, ahead of a backlogged default group%n",
+                worstWait / 1e6);
+    }
+
+    private static void validation() {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, ExecutorConfig.builder()
+                .defaultGroupWeight(3)
+                .build());
+        manager.createGroup("taken", 1);
+        expect(IllegalArgumentException.class, () -> manager.createGroup("taken", 1));
+        expect(IllegalArgumentException.class, () -> manager.createGroup("default", 1));
+        expect(IllegalArgumentException.class, () -> manager.createGroup("zero", 0));
+        expect(IllegalArgumentException.class, () -> manager.createGroup("heavy", TaskGroup.MAX_WEIGHT + 1));
+        expect(IllegalArgumentException.class, () -> manager.createGroup("taken-2", 1).schedule(() -> {}, 64));
+        check(manager.defaultGroup().weight() == 3, "default weight " + manager.defaultGroup().weight());
+        manager.shutdown();
+        System.out.println("Validation: duplicate names, weights and priorities out of range rejected");
+    }
+
+    /**
+     * Keeps a group backlogged with tasks of a fixed length at random priorities, each
+     * rescheduling itself, and adds up their run time.
+     */
+    private static final class Spinner implements Runnable {
+        private final TaskGroup group;
+        private final long taskNanos;
+        final LongAdder ranNanos = new LongAdder();
+        private volatile boolean stopped;
+
+        Spinner(TaskGroup group, long taskNanos, int inFlight) {
+            this.group = group;
+            this.taskNanos = taskNanos;
+            for (int i = 0; i < inFlight; i++) {
+                group.schedule(this, ThreadLocalRandom.current().nextInt(64));
+            }
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            spin(taskNanos);
+            ranNanos.add(System.nanoTime() - start);
+            if (!stopped) {
+                group.schedule(this, ThreadLocalRandom.current().nextInt(64));
+            }
+        }
+
+        void stop() {
+            stopped = true;
+        }
+    }
+
+    private record LockedTask(Runnable body, int priority, IndexedLockToken lock) implements Task {
+        @Override
+        public void run(Runnable releaseLocks) {
+            try {
+                body.run();
+            } finally {
+                releaseLocks.run();
+            }
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            t.printStackTrace();
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return new LockToken[]{lock};
+        }
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface ThrowingAction {
+        void run() throws Exception;
+    }
+
+    private static void expect(Class<? extends Throwable> type, ThrowingAction action) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            check(type.isInstance(thrown), "expected " + type.getSimpleName() + ", got " + thrown);
+            return;
+        }
+        throw new IllegalStateException("expected " + type.getSimpleName());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.Cancellable;
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.Task;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class TestTimers {
+
+    private static final int WORKERS = 4;
+    private static final int PRIORITY = 8;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorManager manager = new ExecutorManager(WORKERS, thread -> {}, ExecutorConfig.builder()
+                .timerTickNanos(TimeUnit.MICROSECONDS.toNanos(100))
+                .build());
+        // Workers are not daemons, so a failed check must still shut them down for the JVM to exit
+        try {
+            deadlines(manager);
+            priorityOrder();
+            fixedRate(manager);
+            cancellation(manager);
+            farFuture();
+            throughput(manager);
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    /**
+     * Delays spanning several wheel levels never fire early, and fire shortly after their deadline.
+     */
+    private static void deadlines(ExecutorManager manager) throws Exception {
+        int count = 5000;
+        long[] deadlines = new long[count];
+        AtomicLongArray fired = new AtomicLongArray(count);
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            long delay = ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(400));
+            deadlines[i] = System.nanoTime() + delay;
+            manager.scheduleAt(() -> {
+                fired.set(index, System.nanoTime());
+                done.countDown();
+            }, deadlines[i], PRIORITY);
+        }
+        check(done.await(10, TimeUnit.SECONDS), "timers lost, " + done.getCount() + " left");
+
+        long[] lateness = new long[count];
+        for (int i = 0; i < count; i++) {
+            lateness[i] = fired.get(i) - deadlines[i];
+            check(lateness[i] >= 0L, "timer " + i + " fired " + -lateness[i] + " ns early");
+        }
+        Arrays.sort(lateness);
+        check(manager.pendingTimers() == 0, "pending after firing: " + manager.pendingTimers());
+        System.out.printf("Deadlines: %d timers over 400 ms, none early, late by p50 %.2f ms, p99 %.2f ms%n",
+                count, lateness[count / 2] / 1e6, lateness[count * 99 / 100] / 1e6);
+    }
+
+    /**
+     * Timers expiring together enter the queue as one batch, so they run by priority, and a
+     * delayed task's locks are taken when it runs.
+     */
+    private static void priorityOrder() throws Exception {
+        ExecutorManager single = new ExecutorManager(1, thread -> {}, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        int levels = 10;
+        int[] order = new int[levels];
+        try {
+            single.schedule(() -> awaitQuietly(release), 0);
+
+            AtomicInteger position = new AtomicInteger();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+            for (int priority = levels - 1; priority >= 0; priority--) {
+                final int level = priority;
+                single.scheduleAt(() -> order[position.getAndIncrement()] = level, deadline, priority);
+            }
+            CountDownLatch lockedRan = new CountDownLatch(1);
+            single.scheduleAfter(new LockedTask(lockedRan::countDown, levels, () -> 3), 5, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(20);
+            release.countDown();
+            check(lockedRan.await(5, TimeUnit.SECONDS), "locked timer did not run");
+            for (int i = 0; i < levels; i++) {
+                check(order[i] == i, "order " + Arrays.toString(order));
+            }
+            expect(IllegalArgumentException.class, () -> single.scheduleAfter(() -> {}, 1, TimeUnit.SECONDS, 16));
+        } finally {
+            // Frees the blocked worker if a check failed before the release
+            release.countDown();
+            single.shutdown();
+        }
+        System.out.println("Priority order: expired batch ran " + Arrays.toString(order));
+    }
+
+    /**
+     * A fixed-rate timer keeps its rate without drifting, never overlaps itself, and stops when
+     * cancelled.
+     */
+    private static void fixedRate(ExecutorManager manager) throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(2);
+        long scheduled = System.nanoTime();
+        Cancellable timer = manager.scheduleAtFixedRate(() -> {
+            if (running.incrementAndGet() != 1) overlaps.incrementAndGet();
+            runs.incrementAndGet();
+            running.decrementAndGet();
+        }, 0, periodNanos, TimeUnit.NANOSECONDS, PRIORITY);
+
+        Thread.sleep(500);
+        timer.cancel();
+        // The sleep may overrun, so the expected count follows the time actually elapsed
+        long elapsed = System.nanoTime() - scheduled;
+        int atCancel = runs.get();
+        Thread.sleep(50);
+        int afterCancel = runs.get();
+        // Run n is due n periods after scheduling, the first at zero delay, and none runs early
+        long due = elapsed / periodNanos + 1;
+        check(atCancel >= due - 10 && atCancel <= due,
+                "fixed rate ran " + atCancel + " times in " + elapsed / 1_000_000 + " ms, " + due + " were due");
+        check(afterCancel - atCancel <= 1 && overlaps.get() == 0,
+                "ran " + (afterCancel - atCancel) + " times after cancel, " + overlaps.get() + " overlaps");
+
+        AtomicInteger failing = new AtomicInteger();
+        quietly(() -> {
+            manager.scheduleAtFixedRate(() -> {
+                failing.incrementAndGet();
+                throw new IllegalStateException("expected");
+            }, 0, 1, TimeUnit.MILLISECONDS, PRIORITY);
+            Thread.sleep(50);
+        });
+        expect(IllegalArgumentException.class, () -> manager.scheduleAtFixedRate(() -> {}, 0, 0, TimeUnit.MILLISECONDS, PRIORITY));
+        check(failing.get() == 1, "failing periodic timer ran " + failing.get() + " times");
+        System.out.printf("Fixed rate: %d runs in %d ms at a 2 ms period, none after cancel%n", atCancel, elapsed / 1_000_000);
+    }
+
+    /**
+     * Hundreds of thousands of timeouts that are cancelled before they expire never run, and
+     * leave the wheel without waiting for their deadline.
+     */
+    private static void cancellation(ExecutorManager manager) throws Exception {
+        int count = 500_000;
+        AtomicInteger ran = new AtomicInteger();
+        Runnable timeout = ran::incrementAndGet;
+        Cancellable[] timers = new Cancellable[count];
+        for (int i = 0; i < count; i++) {
+            timers[i] = manager.scheduleAfter(timeout, 5000 + (i & 1023), TimeUnit.MILLISECONDS, PRIORITY);
+        }
+        for (int i = 0; i < count; i++) {
+            timers[i].cancel();
+        }
+        for (int i = 0; i < 100 && manager.pendingTimers() != 0; i++) {
+            manager.submit(() -> {}, PRIORITY).get();
+            Thread.sleep(1);
+        }
+        // Out of the wheel long before their deadline, so they can no longer run
+        check(manager.pendingTimers() == 0, "pending after cancelling: " + manager.pendingTimers());
+        check(ran.get() == 0, ran.get() + " cancelled timeouts ran");
+        System.out.printf("Cancellation: %d timeouts cancelled, none ran, none pending%n", count);
+    }
+
+    /**
+     * With a 1 ns tick the wheel covers 68 seconds, so a deadline beyond that is clamped and
+     * re-placed as the wheel turns, while near timers keep firing.
+     */
+    private static void farFuture() throws Exception {
+        ExecutorManager fine = new ExecutorManager(2, thread -> {}, ExecutorConfig.builder()
+                .timerTickNanos(1)
+                .build());
+        AtomicInteger farRan = new AtomicInteger();
+        Cancellable far = fine.scheduleAfter(farRan::incrementAndGet, 100, TimeUnit.SECONDS, PRIORITY);
+        fine.scheduleAfter(farRan::incrementAndGet, 365, TimeUnit.DAYS, PRIORITY);
+        AtomicInteger nearRuns = new AtomicInteger();
+        try {
+            Cancellable near = fine.scheduleAtFixedRate(nearRuns::incrementAndGet, 0, 1, TimeUnit.MILLISECONDS, PRIORITY);
+
+            Thread.sleep(300);
+            near.cancel();
+            far.cancel();
+            check(nearRuns.get() >= 250 && farRan.get() == 0, "near ran " + nearRuns.get() + ", far ran " + farRan.get());
+        } finally {
+            fine.shutdown();
+        }
+        System.out.printf("Far future: %d near runs at a 1 ns tick, far deadlines held%n", nearRuns.get());
+    }
+
+    /**
+     * Cost of scheduling and cancelling a timeout, the common case of a timer guarding an
+     * operation that usually finishes in time, next to a ScheduledThreadPoolExecutor.
+     */
+    private static void throughput(ExecutorManager manager) throws InterruptedException {
+        int count = 1_000_000;
+        Runnable timeout = () -> {};
+        // Under load a round can outlast the shortest delays, so the pool's timeouts count their runs
+        AtomicLong poolFired = new AtomicLong();
+        Runnable poolTimeout = poolFired::incrementAndGet;
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1);
+        pool.setRemoveOnCancelPolicy(true);
+        Cancellable[] timers = new Cancellable[count];
+        @SuppressWarnings("unchecked")
+        ScheduledFuture<?>[] futures = new ScheduledFuture[count];
+        AtomicLong sink = new AtomicLong();
+
+        try {
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    timers[i] = manager.scheduleAfter(timeout, 1000 + (i & 4095), TimeUnit.MILLISECONDS, PRIORITY);
+                }
+                long scheduled = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    timers[i].cancel();
+                }
+                long carbideEnd = System.nanoTime();
+
+                for (int i = 0; i < count; i++) {
+                    futures[i] = pool.schedule(poolTimeout, 1000 + (i & 4095), TimeUnit.MILLISECONDS);
+                }
+                long poolScheduled = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    sink.addAndGet(futures[i].cancel(false) ? 1 : 0);
+                }
+                long poolEnd = System.nanoTime();
+
+                if (round == 2) {
+                    System.out.printf("Schedule + cancel ns/op with %d outstanding: wheel %.0f + %.0f, ScheduledThreadPoolExecutor %.0f + %.0f%n",
+                            count, (scheduled - start) / (double) count, (carbideEnd - scheduled) / (double) count,
+                            (poolScheduled - carbideEnd) / (double) count, (poolEnd - poolScheduled) / (double) count);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        check(pool.awaitTermination(5, TimeUnit.SECONDS), "pool did not terminate");
+        check(sink.get() + poolFired.get() == 3L * count, "pool cancels " + sink.get() + ", fired " + poolFired.get());
+    }
+
+    private record LockedTask(Runnable body, int priority, IndexedLockToken lock) implements Task {
+        @Override
+        public void run(Runnable releaseLocks) {
+            try {
+                body.run();
+            } finally {
+                releaseLocks.run();
+            }
+        }
+
+        @Override
+        public void propagateException(Throwable t) {
+            t.printStackTrace();
+        }
+
+        @Override
+        public LockToken[] lockTokens() {
+            return new LockToken[]{lock};
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs an action with stack traces of expected failures kept off the console.
+     */
+    private static void quietly(ThrowingAction action) throws Exception {
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            action.run();
+        } finally {
+            System.setErr(err);
+        }
+    }
+
+    private interface ThrowingAction {
+        void run() throws Exception;
+    }
+
+    private static void expect(Class<? extends Throwable> type, ThrowingAction action) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            check(type.isInstance(thrown), "expected " + type.getSimpleName() + ", got " + thrown);
+            return;
+        }
+        throw new IllegalStateException("expected " + type.getSimpleName());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.SimpleTask;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TestUnkeyedLane {
+
+    private static final int NUM_TASKS = 1 << 21;
+    private static final int PRIORITIES = 64;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int ROUNDS = 5; // alternating rounds, the median is reported
+
+    private static final LongAdder accumulation = new LongAdder();
+
+    public static void main(String[] args) throws InterruptedException {
+        run(false);
+        run(true);
+
+        double[] keyed = new double[ROUNDS];
+        double[] unkeyed = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            keyed[round] = run(false);
+            unkeyed[round] = run(true);
+        }
+        Arrays.sort(keyed);
+        Arrays.sort(unkeyed);
+
+        System.out.printf("Keyed lane:   %.2f rps%n", keyed[ROUNDS / 2]);
+        System.out.printf("Unkeyed lane: %.2f rps (%.2fx)%n", unkeyed[ROUNDS / 2], unkeyed[ROUNDS / 2] / keyed[ROUNDS / 2]);
+        System.out.printf("Accumulation sum: %e%n", (double) accumulation.sum());
+
+        checkOrder();
+    }
+
+    private static double run(boolean unkeyed) throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(THREADS, thread -> {}, PRIORITIES);
+        CountDownLatch latch = new CountDownLatch(NUM_TASKS);
+        Runnable work = () -> {
+            accumulation.increment();
+            latch.countDown();
+        };
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUM_TASKS; i++) {
+            if (unkeyed) {
+                manager.schedule(work, i & (PRIORITIES - 1));
+            } else {
+                manager.schedule(new SimpleTask(work, i & (PRIORITIES - 1)));
+            }
+        }
+        latch.await();
+        long endTime = System.nanoTime();
+        manager.shutdown();
+
+        return NUM_TASKS * 1e9 / (endTime - startTime);
+    }
+
+    /**
+     * Keyed and unkeyed tasks queued behind a blocked worker must run by priority, then in
+     * submission order, whatever lane they took.
+     */
+    private static void checkOrder() throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, PRIORITIES);
+        CountDownLatch gate = new CountDownLatch(1);
+        manager.schedule(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0);
+        Thread.sleep(50); // let the worker pick up the blocking task
+
+        int count = 10_000;
+        int[] order = new int[count];
+        AtomicInteger position = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final int id = i;
+            Runnable record = () -> {
+                order[position.getAndIncrement()] = id;
+                done.countDown();
+            };
+            int priority = (i * 7) % 8;
+            if ((i & 1) == 0) {
+                manager.schedule(record, priority);
+            } else {
+                manager.schedule(new SimpleTask(record, priority));
+            }
+        }
+        gate.countDown();
+        done.await();
+        manager.shutdown();
+
+        int outOfOrder = 0;
+        for (int i = 1; i < count; i++) {
+            int previous = order[i - 1];
+            int current = order[i];
+            int previousPriority = (previous * 7) % 8;
+            int currentPriority = (current * 7) % 8;
+            if (currentPriority < previousPriority || (currentPriority == previousPriority && current < previous)) {
+                outOfOrder++;
+            }
+        }
+        System.out.printf("Mixed lanes: %d out-of-order runs%n", outOfOrder);
+    }
+}
@@ -0,0 +1,54 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutionMode;
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestVirtualThreads {
+
+    private static final int NUM_TASKS = 10_000;
+    private static final int BLOCKING_MILLIS = 10; // simulated disk or network wait
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int VIRTUAL_LIMIT = 5_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        ExecutorConfig virtual = ExecutorConfig.builder()
+                .executionMode(ExecutionMode.VIRTUAL_THREADS)
+                .virtualThreadLimit(VIRTUAL_LIMIT)
+                .build();
+
+        report("Platform workers", new ExecutorManager(THREADS));
+        report("Virtual threads", new ExecutorManager(1, thread -> {}, virtual));
+    }
+
+    private static void report(String name, ExecutorManager manager) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(NUM_TASKS);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < NUM_TASKS; i++) {
+            manager.schedule(() -> {
+                peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(BLOCKING_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                latch.countDown();
+            }, i & 7);
+        }
+
+        latch.await();
+        long endTime = System.nanoTime();
+        manager.shutdown();
+
+        System.out.printf("%s: %.2f rps, peak in-flight %d%n",
+                name, NUM_TASKS * 1e9 / (endTime - startTime), peakInFlight.get());
+    }
+}
@@ -0,0 +1,63 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutionMode;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TestWorkStealingScaling {
+
+    private static final int ROOT_TASKS = 1 << 10;
+    private static final int CHILDREN_PER_ROOT = 1 << 10; // ~1M tasks per run
+    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final LongAdder accumulation = new LongAdder();
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%-8s %-14s %16s%n", "Threads", "Mode", "Throughput (rps)");
+
+        for (int threads = 1; threads <= MAX_THREADS; threads = nextThreadCount(threads)) {
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                double throughput = run(threads, mode);
+                System.out.printf("%-8d %-14s %16.2f%n", threads, mode, throughput);
+            }
+        }
+
+        System.out.printf("Accumulation sum: %e%n", (double) accumulation.sum());
+    }
+
+    private static double run(int threads, ExecutionMode mode) throws InterruptedException {
+        ExecutorManager manager = new ExecutorManager(threads, thread -> {}, 64, mode);
+        CountDownLatch latch = new CountDownLatch(ROOT_TASKS * CHILDREN_PER_ROOT);
+
+        long startTime = System.nanoTime();
+
+        // Each root task fans out from inside a worker, which is where local queues pay off
+        for (int i = 0; i < ROOT_TASKS; i++) {
+            final int priority = i & 7;
+            manager.schedule(() -> {
+                for (int j = 0; j < CHILDREN_PER_ROOT; j++) {
+                    manager.schedule(() -> {
+                        accumulation.add(ThreadLocalRandom.current().nextInt(10));
+                        latch.countDown();
+                    }, priority);
+                }
+            }, priority);
+        }
+
+        latch.await();
+        long endTime = System.nanoTime();
+        manager.shutdown();
+
+        return ROOT_TASKS * (double) CHILDREN_PER_ROOT * 1e9 / (endTime - startTime);
+    }
+
+    private static int nextThreadCount(int threads) {
+        if (threads == MAX_THREADS) {
+            return MAX_THREADS + 1;
+        }
+        return Math.min(threads * 2, MAX_THREADS);
+    }
+}
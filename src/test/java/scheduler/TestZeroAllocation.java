@@ -0,0 +1,127 @@
+package scheduler;
+
+import mi.m4x.carbide.scheduler.executor.ExecutorConfig;
+import mi.m4x.carbide.scheduler.executor.ExecutorManager;
+import mi.m4x.carbide.scheduler.executor.IndexedLockToken;
+import mi.m4x.carbide.scheduler.executor.LockToken;
+import mi.m4x.carbide.scheduler.executor.Task;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+public class TestZeroAllocation {
+
+    private static final int NUM_TASKS = 200_000;
+    private static final int PRIORITIES = 8;
+    private static final int ROUNDS = 10; // the last round is measured, the others warm up
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Written by the single worker only
+    private static long accumulation;
+    private static long allocatedAtStart;
+    private static long allocatedAtEnd;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counters are not supported by this JVM");
+            return;
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        ExecutorConfig config = ExecutorConfig.builder()
+                .priorityCount(PRIORITIES)
+                .reuseReleaseCallbacks(true)
+                .build();
+        ExecutorManager manager = new ExecutorManager(1, thread -> {}, config);
+
+        // Created up front, so the worker's measured window only covers dispatching them
+        Task[] tasks = new Task[NUM_TASKS];
+        for (int i = 0; i < NUM_TASKS; i++) {
+            tasks[i] = createTask(i);
+        }
+
+        double bytesPerTask = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            bytesPerTask = runRound(manager, tasks);
+        }
+        manager.shutdown();
+
+        System.out.printf("Worker allocated %.4f bytes per task (accumulation %d)%n", bytesPerTask, accumulation);
+        if (bytesPerTask > 0.01) {
+            throw new IllegalStateException("Dispatching tasks allocated " + bytesPerTask + " bytes per task");
+        }
+    }
+
+    private static double runRound(ExecutorManager manager, Task[] tasks) throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Hold the worker until every task is queued; the first and last task bracket the window
+        manager.schedule(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            allocatedAtStart = THREADS.getCurrentThreadAllocatedBytes();
+        }, 0);
+        for (Task task : tasks) {
+            if (task.lockTokens().length == 0) {
+                manager.scheduleUnkeyed(task);
+            } else {
+                manager.schedule(task);
+            }
+        }
+        manager.schedule(() -> {
+            allocatedAtEnd = THREADS.getCurrentThreadAllocatedBytes();
+            done.countDown();
+        }, PRIORITIES - 1);
+
+        gate.countDown();
+        done.await();
+        return (double) (allocatedAtEnd - allocatedAtStart) / tasks.length;
+    }
+
+    /**
+     * A mix of lock-free tasks, exclusive and shared indexed locks, some released early by the
+     * task and some released by the worker when the task returns.
+     */
+    private static Task createTask(int i) {
+        int priority = 1 + i % (PRIORITIES - 2);
+        IndexedLockToken region = () -> i % 512;
+        LockToken[] tokens = switch (i % 4) {
+            case 0 -> new LockToken[0];
+            case 1 -> new LockToken[]{region};
+            case 2 -> new LockToken[]{region.shared()};
+            default -> new LockToken[]{region, (IndexedLockToken) () -> 1_000_000L + i % 64};
+        };
+        boolean releaseEarly = (i & 8) != 0;
+
+        return new Task() {
+            @Override
+            public void run(Runnable releaseLocks) {
+                accumulation += i;
+                if (releaseEarly) {
+                    releaseLocks.run();
+                }
+            }
+
+            @Override
+            public void propagateException(Throwable t) {
+                t.printStackTrace();
+            }
+
+            @Override
+            public LockToken[] lockTokens() {
+                return tokens;
+            }
+
+            @Override
+            public int priority() {
+                return priority;
+            }
+        };
+    }
+}